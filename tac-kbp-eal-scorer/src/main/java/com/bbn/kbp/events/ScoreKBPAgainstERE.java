@@ -36,7 +36,11 @@ import com.bbn.kbp.events2014.ResponseLinking;
 import com.bbn.kbp.events2014.ResponseSet;
 import com.bbn.kbp.events2014.SystemOutputLayout;
 import com.bbn.kbp.events2014.TACKBPEALException;
+import com.bbn.kbp.events2014.diagnostics.Diagnostics;
+import com.bbn.kbp.events2014.io.CachingSystemOutputStore;
+import com.bbn.kbp.events2014.io.PrefetchingDocumentIterator;
 import com.bbn.kbp.events2014.io.SystemOutputStore;
+import com.bbn.kbp.events2014.metrics.StageMetrics;
 import com.bbn.kbp.events2014.transformers.QuoteFilter;
 import com.bbn.nlp.corenlp.CoreNLPDocument;
 import com.bbn.nlp.corenlp.CoreNLPParseNode;
@@ -46,7 +50,6 @@ import com.bbn.nlp.corpora.ere.EREDocument;
 import com.bbn.nlp.corpora.ere.EREEvent;
 import com.bbn.nlp.corpora.ere.EREEventMention;
 import com.bbn.nlp.corpora.ere.ERELoader;
-import com.bbn.nlp.corpora.ere.ERESpan;
 import com.bbn.nlp.corpora.ere.LinkRealis;
 import com.bbn.nlp.events.HasEventType;
 import com.bbn.nlp.parsing.HeadFinder;
@@ -70,6 +73,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Multiset;
 import com.google.common.collect.Multisets;
 import com.google.common.collect.SetMultimap;
@@ -80,6 +84,7 @@ import com.google.inject.AbstractModule;
 import com.google.inject.Binder;
 import com.google.inject.Guice;
 import com.google.inject.Provides;
+import com.google.inject.Singleton;
 import com.google.inject.TypeLiteral;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.FactoryModuleBuilder;
@@ -96,7 +101,9 @@ import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.util.BitSet;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
@@ -158,6 +165,8 @@ public final class ScoreKBPAgainstERE {
   private final Predicate<DocLevelEventArg> inScopePredicate;
   private final ImmutableSortedMap<String, Inspector<EvalPair<ResponsesAndLinking, ResponsesAndLinking>>>
       responseAndLinkingObservers;
+  private final int numDocumentsToPrefetch;
+  private final Diagnostics diagnostics;
 
   @Inject
   ScoreKBPAgainstERE(
@@ -168,7 +177,8 @@ public final class ScoreKBPAgainstERE {
       ResponsesAndLinkingFromKBPExtractorFactory responsesAndLinkingFromKBPExtractorFactory,
       @DocIDsToScoreP Set<Symbol> docIdsToScore,
       EREDocumentSource ereDocumentSource,
-      Predicate<DocLevelEventArg> inScopePredicate) {
+      Predicate<DocLevelEventArg> inScopePredicate,
+      Diagnostics diagnostics) {
     this.params = checkNotNull(params);
     // we use a sorted map because the binding of plugins may be non-deterministic
     this.scoringEventObservers = ImmutableSortedMap.copyOf(scoringEventObservers);
@@ -178,8 +188,13 @@ public final class ScoreKBPAgainstERE {
     this.docIdsToScore = ImmutableSet.copyOf(docIdsToScore);
     this.ereDocumentSource = ereDocumentSource;
     this.inScopePredicate = inScopePredicate;
+    this.diagnostics = checkNotNull(diagnostics);
+    this.numDocumentsToPrefetch =
+        params.getOptionalPositiveInteger("prefetchDocuments").or(DEFAULT_DOCUMENTS_TO_PREFETCH);
   }
 
+  private static final int DEFAULT_DOCUMENTS_TO_PREFETCH = 4;
+
   public void go() throws IOException {
     log.info(params.dump());
 
@@ -187,15 +202,20 @@ public final class ScoreKBPAgainstERE {
     final SystemOutputLayout outputLayout = SystemOutputLayout.ParamParser.fromParamVal(
         params.getString("outputLayout"));
 
-    if (params.isPresent("systemOutputBase")) {
-      for (final File dir : params.getExistingDirectory("systemOutputBase").listFiles()) {
-        if (dir.isDirectory()) {
-          processSystem(outputLayout.open(dir), new File(outputDir, dir.getName()));
+    // diagnostics are shared by all systems, so they are closed only once every system is scored
+    try {
+      if (params.isPresent("systemOutputBase")) {
+        for (final File dir : params.getExistingDirectory("systemOutputBase").listFiles()) {
+          if (dir.isDirectory()) {
+            processSystem(outputLayout.open(dir), new File(outputDir, dir.getName()));
+          }
         }
+      } else {
+        processSystem(outputLayout.open(params.getExistingDirectory("systemOutput")),
+            outputDir);
       }
-    } else {
-      processSystem(outputLayout.open(params.getExistingDirectory("systemOutput")),
-          outputDir);
+    } finally {
+      diagnostics.close();
     }
   }
 
@@ -213,8 +233,12 @@ public final class ScoreKBPAgainstERE {
 
   }
 
-  void processSystem(SystemOutputStore outputStore, File outputDir) throws IOException {
+  void processSystem(SystemOutputStore rawOutputStore, File outputDir) throws IOException {
     outputDir.mkdirs();
+    // each document is read once below, so a single-document cache suffices. We wrap the
+    // store mostly so we can check we aren't parsing the system output more than once
+    final CachingSystemOutputStore outputStore = CachingSystemOutputStore.wrap(rawOutputStore, 1);
+    final StageMetrics metrics = StageMetrics.create();
 
 
     log.info("Scoring over {} documents", docIdsToScore.size());
@@ -242,30 +266,73 @@ public final class ScoreKBPAgainstERE {
     setupScoring(input, responsesAndLinkingFromKBPExtractor, responsesAndLinkingFromEREExtractor,
         scoringEventObservers.values(), outputDir);
 
-    for (Symbol docId : docIdsToScore) {
-      final EREDocument ereDoc = ereDocumentSource.ereDocumentForDocId(docId);
-      // the LDC provides certain ERE documents with "-kbp" in the name. The -kbp is used by them
-      // internally for some form of tracking but doesn't appear to the world, so we remove it.
-      if (!ereDoc.getDocId().replace("-kbp", "").equals(docId.asString().replace(".kbp", ""))) {
-        log.warn("Fetched document ID {} does not equal stored {}", ereDoc.getDocId(), docId);
+    // the gold ERE and system output for the next few documents are read in the background
+    // while we score the current one.  We use only one I/O thread because we don't know that
+    // the ERE loader is safe for concurrent use.
+    final PrefetchingDocumentIterator<EvalPair<EREDocument, EREDocAndResponses>> inputIt =
+        PrefetchingDocumentIterator.create(docIdsToScore,
+            new PrefetchingDocumentIterator.DocumentLoader<EvalPair<EREDocument, EREDocAndResponses>>() {
+              @Override
+              public EvalPair<EREDocument, EREDocAndResponses> load(final Symbol docId)
+                  throws IOException {
+                return loadScoringInput(docId, outputStore, metrics);
+              }
+            }, numDocumentsToPrefetch, 1);
+    final StageMetrics.Timer scoringTimer = metrics.timer("aligning and scoring");
+    try {
+      while (inputIt.hasNext()) {
+        final EvalPair<EREDocument, EREDocAndResponses> docInput = inputIt.next();
+        // feed this ERE doc/ KBP output pair to the scoring network
+        try (StageMetrics.Timer.Context ignored = scoringTimer.start()) {
+          input.inspect(docInput);
+        }
       }
-      final Iterable<Response> responses = outputStore.read(docId).arguments().responses();
-      final ResponseLinking linking =
-          ((DocumentSystemOutput2015) outputStore.read(docId)).linking();
-      linking.copyWithFilteredResponses(in(ImmutableSet.copyOf(responses)));
-      // feed this ERE doc/ KBP output pair to the scoring network
-      input.inspect(EvalPair.of(ereDoc, new EREDocAndResponses(ereDoc, responses, linking)));
-
+    } finally {
+      inputIt.close();
     }
 
-    // trigger the scoring network to write its summary files
-    input.finish();
+    // trigger the scoring network to bootstrap and write its summary files
+    try (StageMetrics.Timer.Context ignored = metrics.timePhase("bootstrapping and writing results")) {
+      input.finish();
+    }
     // log alignment failures
     responsesAndLinkingFromKBPExtractor.finish();
     responsesAndLinkingFromEREExtractor.finish();
+    metrics.logSummary();
+    metrics.writeJSON(new File(outputDir, "scoringMetrics.json"));
+
+    log.info("{} system output reads for {} documents required {} parses",
+        outputStore.numReads(), docIdsToScore.size(), outputStore.numUnderlyingReads());
+    if (!outputStore.docIDsReadMoreThanOnce().isEmpty()) {
+      log.warn("System output for documents {} was parsed more than once",
+          outputStore.docIDsReadMoreThanOnce());
+    }
   }
 
 
+  private EvalPair<EREDocument, EREDocAndResponses> loadScoringInput(final Symbol docId,
+      final SystemOutputStore outputStore, final StageMetrics metrics) throws IOException {
+    final EREDocument ereDoc;
+    try (StageMetrics.Timer.Context ignored = metrics.time("reading ERE")) {
+      ereDoc = ereDocumentSource.ereDocumentForDocId(docId);
+    }
+    // the LDC provides certain ERE documents with "-kbp" in the name. The -kbp is used by them
+    // internally for some form of tracking but doesn't appear to the world, so we remove it.
+    if (!ereDoc.getDocId().replace("-kbp", "").equals(docId.asString().replace(".kbp", ""))) {
+      log.warn("Fetched document ID {} does not equal stored {}", ereDoc.getDocId(), docId);
+    }
+    // a single read supplies both the arguments and the linking. The linking store resolves
+    // the linking against these same arguments, so no further filtering is needed
+    final DocumentSystemOutput2015 docOutput;
+    try (StageMetrics.Timer.Context ignored = metrics.time("reading system output")) {
+      docOutput = (DocumentSystemOutput2015) outputStore.read(docId);
+    }
+    metrics.histogram("system responses per document").record(docOutput.arguments().size());
+    final Iterable<Response> responses = docOutput.arguments().responses();
+    final ResponseLinking linking = docOutput.linking();
+    return EvalPair.of(ereDoc, new EREDocAndResponses(ereDoc, responses, linking));
+  }
+
   private static final ImmutableSet<Symbol> linkableRealis = SymbolUtils.setFrom("Other", "Actual");
 
   private static Function<EvalPair<? extends Iterable<? extends DocLevelEventArg>, ? extends Iterable<? extends DocLevelEventArg>>, ProvenancedAlignment<DocLevelEventArg, DocLevelEventArg, DocLevelEventArg, DocLevelEventArg>>
@@ -550,9 +617,13 @@ public final class ScoreKBPAgainstERE {
 
       final ImmutableSet<DocLevelEventArg> toDelete = toDeleteB.build();
       final Predicate<DocLevelEventArg> notDeleted = not(in(toDelete));
-      if (Sets.filter(input.test().args(), notDeleted).size() < input.test().args().size()) {
-        log.info("The following argument were deleted by the temporal specificity rule: {}",
-            Sets.filter(input.test().args(), in(toDelete)));
+      // this runs for every document, so the deleted arguments are only gathered when wanted
+      if (log.isDebugEnabled()) {
+        final Set<DocLevelEventArg> deleted = Sets.filter(input.test().args(), in(toDelete));
+        if (!deleted.isEmpty()) {
+          log.debug("The following argument were deleted by the temporal specificity rule: {}",
+              deleted);
+        }
       }
       return EvalPair.of(input.key().filter(notDeleted), input.test().filter(notDeleted));
     }
@@ -643,7 +714,7 @@ public final class ScoreKBPAgainstERE {
         return;
       }
       final Symbol docId = checkNotNull(getFirst(args, null)).docID();
-      log.info("Gathering arg scores for {}", docId);
+      log.debug("Gathering arg scores for {}", docId);
       int docTPs = evalPair.leftAligned().size();
       checkArgument(evalPair.leftAligned().equals(evalPair.rightAligned()));
       this.aggregateTPs += docTPs;
@@ -729,18 +800,68 @@ public final class ScoreKBPAgainstERE {
 
     private final SimpleEventOntologyMapper mapper;
     private final QuoteFilter quoteFilter;
+    private final Diagnostics.Channel quotedGoldDiagnostics;
 
     @Inject
     ResponsesAndLinkingFromEREExtractor(final SimpleEventOntologyMapper mapper,
-        final QuoteFilter quoteFilter) {
+        final QuoteFilter quoteFilter, final Diagnostics diagnostics) {
       this.mapper = checkNotNull(mapper);
       this.quoteFilter = checkNotNull(quoteFilter);
+      this.quotedGoldDiagnostics = diagnostics.channel("quotedGold");
     }
 
-    private boolean inQuotedRegion(String docId, ERESpan span) {
+    /**
+     * Finds all event mentions whose triggers and all arguments whose extents lie in quoted
+     * regions of {@code doc}. All the document's spans are checked against the quote filter in a
+     * single pass.
+     */
+    private QuotedItems inQuotedRegions(final EREDocument doc) {
+      final List<EREEventMention> eventMentions = Lists.newArrayList();
+      final List<EREArgument> arguments = Lists.newArrayList();
+      final List<CharOffsetSpan> triggerSpans = Lists.newArrayList();
+      final List<CharOffsetSpan> argumentSpans = Lists.newArrayList();
+      for (final EREEvent ereEvent : doc.getEvents()) {
+        for (final EREEventMention ereEventMention : ereEvent.getEventMentions()) {
+          eventMentions.add(ereEventMention);
+          triggerSpans.add(CharOffsetSpan.of(ereEventMention.getTrigger().asCharOffsets()));
+          for (final EREArgument ereArgument : ereEventMention.getArguments()) {
+            arguments.add(ereArgument);
+            argumentSpans.add(CharOffsetSpan.of(ereArgument.getExtent().asCharOffsets()));
+          }
+        }
+      }
+
+      final QuotedItems ret = new QuotedItems();
+      // a document without event mentions has nothing to check, and the quote filter need not
+      // know about it
+      if (eventMentions.isEmpty()) {
+        return ret;
+      }
+
       // the kbp replacement is a hack to handle dry run docids having additional tracking information on them sometimes.
-      return quoteFilter.isInQuote(Symbol.from(docId.replaceAll("-kbp", "")),
-          CharOffsetSpan.of(span.asCharOffsets()));
+      // triggers come first in the checked spans, followed by argument extents
+      final BitSet quoted = quoteFilter.spansInQuotes(
+          Symbol.from(doc.getDocId().replaceAll("-kbp", "")),
+          ImmutableList.copyOf(Iterables.concat(triggerSpans, argumentSpans)));
+      for (int i = quoted.nextSetBit(0); i >= 0; i = quoted.nextSetBit(i + 1)) {
+        if (i < eventMentions.size()) {
+          ret.eventMentions.add(eventMentions.get(i));
+        } else {
+          ret.arguments.add(arguments.get(i - eventMentions.size()));
+        }
+      }
+      return ret;
+    }
+
+    /**
+     * The event mentions and arguments of one document which lie in quoted regions. ERE objects do
+     * not define equality, so these are compared by identity, which is all we need to recognize the
+     * very objects {@link #inQuotedRegions(EREDocument)} iterated over.
+     */
+    private static final class QuotedItems {
+
+      private final Set<EREEventMention> eventMentions = Sets.newIdentityHashSet();
+      private final Set<EREArgument> arguments = Sets.newIdentityHashSet();
     }
 
     @Override
@@ -749,14 +870,15 @@ public final class ScoreKBPAgainstERE {
       // every event mention argument within a hopper is linked
       final DocLevelArgLinking.Builder linking = DocLevelArgLinking.builder()
           .docID(Symbol.from(doc.getDocId()));
+      final QuotedItems inQuotedRegions = inQuotedRegions(doc);
       for (final EREEvent ereEvent : doc.getEvents()) {
         final ScoringEventFrame.Builder eventFrame = ScoringEventFrame.builder();
         boolean addedArg = false;
         for (final EREEventMention ereEventMention : ereEvent.getEventMentions()) {
           // events from quoted regions are invalid
-          if (!inQuotedRegion(doc.getDocId(), ereEventMention.getTrigger())) {
+          if (!inQuotedRegions.eventMentions.contains(ereEventMention)) {
             for (final EREArgument ereArgument : ereEventMention.getArguments()) {
-              if (!inQuotedRegion(doc.getDocId(), ereArgument.getExtent())) {
+              if (!inQuotedRegions.arguments.contains(ereArgument)) {
                 // arguments from quoted regions are invalid
                 final Symbol ereEventMentionType = Symbol.from(ereEventMention.getType());
                 final Symbol ereEventMentionSubtype = Symbol.from(ereEventMention.getSubtype());
@@ -805,12 +927,14 @@ public final class ScoreKBPAgainstERE {
                       ereEventMention);
                 }
               } else {
-                log.info("Ignoring ERE event mention argument {} as within a quoted region",
+                quotedGoldDiagnostics.record(doc.getDocId(),
+                    "Ignoring ERE event mention argument {} as within a quoted region",
                     ereArgument);
               }
             }
           } else {
-            log.info("Ignoring ERE event mention {} as within a quoted region", ereEventMention);
+            quotedGoldDiagnostics.record(doc.getDocId(),
+                "Ignoring ERE event mention {} as within a quoted region", ereEventMention);
           }
           if (addedArg) {
             linking.addEventFrames(eventFrame.build());
@@ -891,16 +1015,18 @@ public final class ScoreKBPAgainstERE {
     private final CoreNLPXMLLoader coreNLPXMLLoader;
     private final EREToKBPEventOntologyMapper ontologyMapper;
     private final File outputDir;
+    private final Diagnostics.Channel alignmentFailureDiagnostics;
 
     @javax.inject.Inject
     public ResponsesAndLinkingFromKBPExtractor(
         @CoreNLPProcessedRawDocsP final Optional<ImmutableMap<Symbol, File>> coreNLPDocs,
         final CoreNLPXMLLoader coreNLPXMLLoader, final EREToKBPEventOntologyMapper ontologyMapper,
-        @Assisted File outputDir) {
+        final Diagnostics diagnostics, @Assisted File outputDir) {
       this.coreNLPDocs = coreNLPDocs;
       this.coreNLPXMLLoader = coreNLPXMLLoader;
       this.ontologyMapper = ontologyMapper;
       this.outputDir = outputDir;
+      this.alignmentFailureDiagnostics = diagnostics.channel("alignmentFailures");
     }
 
     @Override
@@ -950,7 +1076,7 @@ public final class ScoreKBPAgainstERE {
 
       final Optional<ScoringCorefID> alignedCorefIDOpt = ereAligner.argumentForResponse(response);
       if (!alignedCorefIDOpt.isPresent()) {
-        log.info("Alignment failed for {}", response);
+        alignmentFailureDiagnostics.record(doc.getDocId(), "Alignment failed for {}", response);
         mentionAlignmentFailuresB.put(errKey(response), response.toString());
       }
 
@@ -1099,6 +1225,12 @@ public final class ScoreKBPAgainstERE {
           });
     }
 
+    @Provides
+    @Singleton
+    Diagnostics getDiagnostics(Parameters params) throws IOException {
+      return Diagnostics.fromParameters(params);
+    }
+
     @Provides
     QuoteFilter getQuoteFilter(Parameters params) throws IOException {
       return QuoteFilter.loadFrom(Files.asByteSource(params.getExistingFile("quoteFilter")));
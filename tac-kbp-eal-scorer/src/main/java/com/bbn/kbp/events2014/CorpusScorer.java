@@ -22,6 +22,7 @@ import com.bbn.bue.common.parameters.Parameters;
 import com.bbn.bue.common.symbols.Symbol;
 import com.bbn.kbp.events2014.io.DefaultCorpusQueryLoader;
 import com.bbn.kbp.events2014.io.SingleFileQueryAssessmentsLoader;
+import com.bbn.kbp.events2014.metrics.StageMetrics;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Function;
@@ -136,11 +137,19 @@ public final class CorpusScorer {
 
     setUpAssessedScoring(outputDir, inputSets);
 
+    // each query is scored as a unit, so it plays the part of a document in the metrics
+    final StageMetrics metrics = StageMetrics.create();
+    final StageMetrics.Timer filteringTimer = metrics.timer("selecting query assessments");
+    final StageMetrics.Timer scoringTimer = metrics.timer("aligning and scoring");
     for (final CorpusQuery2016 query : queries) {
-      final CorpusQueryAssessments filteredForID = queryAssessments.filterForQuery(query.id());
-      final CorpusQueryAssessments correctReferenceQueries =
-          filteredForID.filterForAssessment(ImmutableSet.of(QueryAssessment2016.CORRECT));
-      final CorpusQueryAssessments systemResults = filteredForID.filterForSystem(systemToScore);
+      final CorpusQueryAssessments correctReferenceQueries;
+      final CorpusQueryAssessments systemResults;
+      try (StageMetrics.Timer.Context ignored = filteringTimer.start()) {
+        final CorpusQueryAssessments filteredForID = queryAssessments.filterForQuery(query.id());
+        correctReferenceQueries =
+            filteredForID.filterForAssessment(ImmutableSet.of(QueryAssessment2016.CORRECT));
+        systemResults = filteredForID.filterForSystem(systemToScore);
+      }
       log.info("Answer key for {} has {} correct answers, \"{}\" has {}", query.id(),
           correctReferenceQueries.assessments().size(), systemToScore,
           systemResults.assessments().size());
@@ -153,10 +162,16 @@ public final class CorpusScorer {
           continue;
         }
       }
-      inputAssessments.inspect(EvalPair.of(correctReferenceQueries, systemResults));
+      try (StageMetrics.Timer.Context ignored = scoringTimer.start()) {
+        inputAssessments.inspect(EvalPair.of(correctReferenceQueries, systemResults));
+      }
     }
 
-    inputAssessments.finish();
+    try (StageMetrics.Timer.Context ignored = metrics.timePhase("bootstrapping and writing results")) {
+      inputAssessments.finish();
+    }
+    metrics.logSummary();
+    metrics.writeJSON(new File(outputDir, "scoringMetrics.json"));
   }
 
 
@@ -0,0 +1,383 @@
+package com.bbn.kbp.events2014.assessmentDiff;
+
+import com.bbn.kbp.events2014.AnswerKey;
+import com.bbn.kbp.events2014.AssessedResponse;
+import com.bbn.kbp.events2014.FieldAssessment;
+import com.bbn.kbp.events2014.FillerMentionType;
+import com.bbn.kbp.events2014.KBPRealis;
+import com.bbn.kbp.events2014.ResponseAssessment;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+/**
+ * Measures agreement among any number of annotators who assessed the same responses.  Answer keys
+ * are observed one document at a time, so memory use does not depend on the size of the stores.
+ * Within a document, responses are matched across annotators by their {@link
+ * com.bbn.kbp.events2014.Response#uniqueIdentifier()}.
+ *
+ * For each assessment {@link Dimension} we report observed agreement and Fleiss' kappa over all
+ * annotators, along with observed agreement and Cohen's kappa for each pair of annotators.
+ * Responses may be assessed by any subset of the annotators; for Fleiss' kappa we use the usual
+ * generalization to a varying number of ratings per item, counting only responses which at least
+ * two annotators assessed on that dimension.
+ *
+ * Not thread-safe.
+ */
+public final class AssessmentAgreement {
+
+  /**
+   * The parts of a {@link ResponseAssessment} annotators can agree or disagree on.
+   */
+  public enum Dimension {
+    AET(FieldAssessment.values()) {
+      @Override
+      Optional<? extends Enum<?>> label(final ResponseAssessment assessment) {
+        return assessment.justificationSupportsEventType();
+      }
+    },
+    AER(FieldAssessment.values()) {
+      @Override
+      Optional<? extends Enum<?>> label(final ResponseAssessment assessment) {
+        return assessment.justificationSupportsRole();
+      }
+    },
+    CAS(FieldAssessment.values()) {
+      @Override
+      Optional<? extends Enum<?>> label(final ResponseAssessment assessment) {
+        return assessment.entityCorrectFiller();
+      }
+    },
+    BASE_FILLER(FieldAssessment.values()) {
+      @Override
+      Optional<? extends Enum<?>> label(final ResponseAssessment assessment) {
+        return assessment.baseFillerCorrect();
+      }
+    },
+    REALIS(KBPRealis.values()) {
+      @Override
+      Optional<? extends Enum<?>> label(final ResponseAssessment assessment) {
+        return assessment.realis();
+      }
+    },
+    MENTION_TYPE(FillerMentionType.values()) {
+      @Override
+      Optional<? extends Enum<?>> label(final ResponseAssessment assessment) {
+        return assessment.mentionTypeOfCAS();
+      }
+    };
+
+    private final ImmutableList<Enum<?>> labels;
+
+    Dimension(final Enum<?>[] labels) {
+      this.labels = ImmutableList.copyOf(labels);
+    }
+
+    abstract Optional<? extends Enum<?>> label(ResponseAssessment assessment);
+  }
+
+  private static final int NO_LABEL = -1;
+
+  private final ImmutableList<String> annotatorNames;
+  private final DimensionCounts[] countsByDimension;
+  private int numDocuments = 0;
+  // indexed by the number of annotators who assessed a response
+  private final int[] numResponsesByNumAssessors;
+
+  private AssessmentAgreement(final List<String> annotatorNames) {
+    checkArgument(annotatorNames.size() >= 2, "Agreement requires at least two annotators");
+    this.annotatorNames = ImmutableList.copyOf(annotatorNames);
+    final int numPairs = annotatorNames.size() * (annotatorNames.size() - 1) / 2;
+    this.countsByDimension = new DimensionCounts[Dimension.values().length];
+    for (final Dimension dimension : Dimension.values()) {
+      countsByDimension[dimension.ordinal()] =
+          new DimensionCounts(dimension.labels.size(), numPairs);
+    }
+    this.numResponsesByNumAssessors = new int[annotatorNames.size() + 1];
+  }
+
+  /**
+   * @param annotatorNames the names of the annotators, in the order their answer keys will be
+   *                       passed to {@link #observe(List)}.
+   */
+  public static AssessmentAgreement create(final List<String> annotatorNames) {
+    return new AssessmentAgreement(annotatorNames);
+  }
+
+  /**
+   * Observes the assessments of a single document.
+   *
+   * @param answerKeysByAnnotator each annotator's answer key for the document, in the same order
+   *                              as the annotator names this was created with.  Use an empty key
+   *                              for an annotator who did not assess the document.
+   */
+  public void observe(final List<AnswerKey> answerKeysByAnnotator) {
+    checkArgument(answerKeysByAnnotator.size() == annotatorNames.size(),
+        "Expected answer keys from %s annotators but got %s", annotatorNames.size(),
+        answerKeysByAnnotator.size());
+    ++numDocuments;
+
+    // hash join of every annotator's assessments on response ID
+    final Map<String, ResponseAssessment[]> assessmentsByResponse = Maps.newHashMap();
+    for (int annotator = 0; annotator < answerKeysByAnnotator.size(); ++annotator) {
+      for (final AssessedResponse assessedResponse
+          : answerKeysByAnnotator.get(annotator).annotatedResponses()) {
+        final String responseID = assessedResponse.response().uniqueIdentifier();
+        ResponseAssessment[] assessments = assessmentsByResponse.get(responseID);
+        if (assessments == null) {
+          assessments = new ResponseAssessment[annotatorNames.size()];
+          assessmentsByResponse.put(responseID, assessments);
+        }
+        assessments[annotator] = assessedResponse.assessment();
+      }
+    }
+
+    final int[] labels = new int[annotatorNames.size()];
+    for (final ResponseAssessment[] assessments : assessmentsByResponse.values()) {
+      int numAssessors = 0;
+      for (final ResponseAssessment assessment : assessments) {
+        if (assessment != null) {
+          ++numAssessors;
+        }
+      }
+      ++numResponsesByNumAssessors[numAssessors];
+      if (numAssessors < 2) {
+        continue;
+      }
+
+      for (final Dimension dimension : Dimension.values()) {
+        for (int annotator = 0; annotator < assessments.length; ++annotator) {
+          labels[annotator] = NO_LABEL;
+          if (assessments[annotator] != null) {
+            final Optional<? extends Enum<?>> label = dimension.label(assessments[annotator]);
+            if (label.isPresent()) {
+              labels[annotator] = label.get().ordinal();
+            }
+          }
+        }
+        countsByDimension[dimension.ordinal()].observe(labels);
+      }
+    }
+  }
+
+  /**
+   * The mean over responses of the fraction of pairs of annotators who agree on {@code
+   * dimension}, or {@link Double#NaN} if no response was assessed on it by two annotators.
+   */
+  public double observedAgreement(final Dimension dimension) {
+    return countsByDimension[dimension.ordinal()].fleissObservedAgreement();
+  }
+
+  /**
+   * Fleiss' kappa over all annotators for {@code dimension}. This is {@link Double#NaN} if no
+   * response was assessed on it by two annotators, or if every assessment gave the same label, so
+   * that chance agreement is perfect.
+   */
+  public double fleissKappa(final Dimension dimension) {
+    return countsByDimension[dimension.ordinal()].fleissKappa();
+  }
+
+  /**
+   * The fraction of responses assessed on {@code dimension} by both annotators on which they agree,
+   * or {@link Double#NaN} if there are none. Annotators are identified by their position in the
+   * names this was created with.
+   */
+  public double observedAgreement(final Dimension dimension, final int firstAnnotator,
+      final int secondAnnotator) {
+    return countsByDimension[dimension.ordinal()].pairObservedAgreement(
+        pairIndex(firstAnnotator, secondAnnotator));
+  }
+
+  /**
+   * Cohen's kappa between two annotators for {@code dimension}. This is {@link Double#NaN} under
+   * the same conditions as {@link #fleissKappa(Dimension)}, restricted to the responses both
+   * annotators assessed.
+   */
+  public double cohensKappa(final Dimension dimension, final int firstAnnotator,
+      final int secondAnnotator) {
+    return countsByDimension[dimension.ordinal()].cohensKappa(
+        pairIndex(firstAnnotator, secondAnnotator));
+  }
+
+  // pairs are numbered in the order (0, 1), (0, 2), ..., (1, 2), ...
+  private int pairIndex(final int firstAnnotator, final int secondAnnotator) {
+    final int numAnnotators = annotatorNames.size();
+    checkElementIndex(secondAnnotator, numAnnotators);
+    checkArgument(0 <= firstAnnotator && firstAnnotator < secondAnnotator,
+        "Annotator pairs must be given in increasing order but got %s, %s", firstAnnotator,
+        secondAnnotator);
+    return firstAnnotator * (2 * numAnnotators - firstAnnotator - 1) / 2
+        + (secondAnnotator - firstAnnotator - 1);
+  }
+
+  /**
+   * A human-readable report of agreement on each dimension.
+   */
+  public String report() {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("Annotators: ").append(annotatorNames).append("\n");
+    sb.append("Documents: ").append(numDocuments).append("\n");
+    for (int numAssessors = 1; numAssessors < numResponsesByNumAssessors.length;
+         ++numAssessors) {
+      sb.append(String.format("Responses assessed by %d annotator(s): %d\n", numAssessors,
+          numResponsesByNumAssessors[numAssessors]));
+    }
+
+    for (final Dimension dimension : Dimension.values()) {
+      final DimensionCounts counts = countsByDimension[dimension.ordinal()];
+      sb.append("\n== ").append(dimension).append(" ==\n");
+      sb.append(String.format("All annotators: %d responses, observed agreement %s, "
+              + "Fleiss' kappa %s\n", counts.numItems,
+          format(counts.fleissObservedAgreement()), format(counts.fleissKappa())));
+      sb.append("Pairwise:\n");
+      int pair = 0;
+      for (int a = 0; a < annotatorNames.size(); ++a) {
+        for (int b = a + 1; b < annotatorNames.size(); ++b) {
+          sb.append(String.format("\t%s vs %s: %d responses, observed agreement %s, "
+                  + "Cohen's kappa %s\n", annotatorNames.get(a), annotatorNames.get(b),
+              counts.numPairItems(pair), format(counts.pairObservedAgreement(pair)),
+              format(counts.cohensKappa(pair))));
+          ++pair;
+        }
+      }
+      sb.append("Label distribution:");
+      for (int label = 0; label < dimension.labels.size(); ++label) {
+        sb.append(" ").append(dimension.labels.get(label)).append("=")
+            .append(counts.labelTotals[label]);
+      }
+      sb.append("\n");
+    }
+    return sb.toString();
+  }
+
+  private static String format(final double x) {
+    return Double.isNaN(x) ? "N/A" : String.format("%.4f", x);
+  }
+
+  /**
+   * Counts needed to compute agreement on one dimension.
+   */
+  private static final class DimensionCounts {
+
+    private final int numLabels;
+    // the number of times each label was given, over items with at least two labels
+    private final long[] labelTotals;
+    private long numRatings = 0;
+    private int numItems = 0;
+    // the sum over items of the fraction of pairs of annotators who agree on that item
+    private double sumItemAgreement = 0.0;
+    // for each pair of annotators, counts of label pairs, indexed by
+    // firstLabel * numLabels + secondLabel
+    private final long[][] pairConfusion;
+    private final int[] itemLabelCounts;
+
+    private DimensionCounts(final int numLabels, final int numPairs) {
+      this.numLabels = numLabels;
+      this.labelTotals = new long[numLabels];
+      this.pairConfusion = new long[numPairs][numLabels * numLabels];
+      this.itemLabelCounts = new int[numLabels];
+    }
+
+    private void observe(final int[] labels) {
+      int numLabelled = 0;
+      for (final int label : labels) {
+        if (label != NO_LABEL) {
+          ++itemLabelCounts[label];
+          ++numLabelled;
+        }
+      }
+
+      if (numLabelled >= 2) {
+        long agreeingPairs = 0;
+        for (int label = 0; label < numLabels; ++label) {
+          agreeingPairs += (long) itemLabelCounts[label] * (itemLabelCounts[label] - 1);
+          labelTotals[label] += itemLabelCounts[label];
+        }
+        sumItemAgreement += agreeingPairs / ((double) numLabelled * (numLabelled - 1));
+        numRatings += numLabelled;
+        ++numItems;
+
+        int pair = 0;
+        for (int a = 0; a < labels.length; ++a) {
+          for (int b = a + 1; b < labels.length; ++b) {
+            if (labels[a] != NO_LABEL && labels[b] != NO_LABEL) {
+              ++pairConfusion[pair][labels[a] * numLabels + labels[b]];
+            }
+            ++pair;
+          }
+        }
+      }
+      Arrays.fill(itemLabelCounts, 0);
+    }
+
+    private double fleissObservedAgreement() {
+      return numItems == 0 ? Double.NaN : sumItemAgreement / numItems;
+    }
+
+    private double fleissKappa() {
+      if (numItems == 0) {
+        return Double.NaN;
+      }
+      double expectedAgreement = 0.0;
+      for (final long labelTotal : labelTotals) {
+        final double p = labelTotal / (double) numRatings;
+        expectedAgreement += p * p;
+      }
+      return kappa(fleissObservedAgreement(), expectedAgreement);
+    }
+
+    private long numPairItems(final int pair) {
+      long ret = 0;
+      for (final long count : pairConfusion[pair]) {
+        ret += count;
+      }
+      return ret;
+    }
+
+    private double pairObservedAgreement(final int pair) {
+      final long total = numPairItems(pair);
+      if (total == 0) {
+        return Double.NaN;
+      }
+      long agreeing = 0;
+      for (int label = 0; label < numLabels; ++label) {
+        agreeing += pairConfusion[pair][label * numLabels + label];
+      }
+      return agreeing / (double) total;
+    }
+
+    private double cohensKappa(final int pair) {
+      final long total = numPairItems(pair);
+      if (total == 0) {
+        return Double.NaN;
+      }
+      double expectedAgreement = 0.0;
+      for (int label = 0; label < numLabels; ++label) {
+        long firstTotal = 0;
+        long secondTotal = 0;
+        for (int other = 0; other < numLabels; ++other) {
+          firstTotal += pairConfusion[pair][label * numLabels + other];
+          secondTotal += pairConfusion[pair][other * numLabels + label];
+        }
+        expectedAgreement += (firstTotal / (double) total) * (secondTotal / (double) total);
+      }
+      return kappa(pairObservedAgreement(pair), expectedAgreement);
+    }
+
+    private static double kappa(final double observedAgreement, final double expectedAgreement) {
+      // if chance agreement is perfect, kappa is undefined
+      if (expectedAgreement >= 1.0) {
+        return Double.NaN;
+      }
+      return (observedAgreement - expectedAgreement) / (1.0 - expectedAgreement);
+    }
+  }
+}
@@ -0,0 +1,156 @@
+package com.bbn.kbp.events2014.assessmentDiff;
+
+import com.bbn.bue.common.files.FileUtils;
+import com.bbn.bue.common.parameters.Parameters;
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.bue.common.symbols.SymbolUtils;
+import com.bbn.kbp.events2014.AnswerKey;
+import com.bbn.kbp.events2014.io.AnnotationStore;
+import com.bbn.kbp.events2014.io.AssessmentSpecFormats;
+import com.bbn.kbp.events2014.io.PrefetchingDocumentIterator;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Measures agreement among any number of annotation stores for the same documents. Unlike {@link
+ * KBPAssessmentDiff}, which compares exactly two stores, this reports agreement over all the
+ * annotators at once as well as for each pair. See {@link AssessmentAgreement}.
+ */
+public final class KBPAssessmentAgreement {
+
+  private static final Logger log = LoggerFactory.getLogger(KBPAssessmentAgreement.class);
+
+  private KBPAssessmentAgreement() {
+    throw new UnsupportedOperationException();
+  }
+
+  private static void usage() {
+    log.error("usage: KBPAssessmentAgreement parameterFile\n"
+        + "Parameters:\n"
+        + "\tannotationStores: a file of tab-separated pairs of annotator name and annotation "
+        + "store directory\n"
+        + "\tfileFormat: the format of the annotation stores (e.g. KBP2015)\n"
+        + "\toutputDirectory: where to write agreement.txt\n"
+        + "\trestrictTo: (optional) a file listing the only document IDs to consider\n"
+        + "\tnumThreads: (optional) number of documents to read in parallel. Defaults to the "
+        + "number of processors\n");
+    System.exit(1);
+  }
+
+  private static void trueMain(String[] argv) throws IOException {
+    if (argv.length != 1) {
+      usage();
+    }
+    final Parameters params = Parameters.loadSerifStyle(new File(argv[0]));
+    log.info(params.dump());
+
+    final AssessmentSpecFormats.Format fileFormat =
+        params.getEnum("fileFormat", AssessmentSpecFormats.Format.class);
+    final ImmutableMap<Symbol, File> annotatorToStore =
+        FileUtils.loadSymbolToFileMap(params.getExistingFile("annotationStores"));
+    final File outputDirectory = params.getCreatableDirectory("outputDirectory");
+    final int numThreads = params.getOptionalPositiveInteger("numThreads")
+        .or(Runtime.getRuntime().availableProcessors());
+    final Optional<File> restrictTo;
+    if (params.isPresent("restrictTo")) {
+      restrictTo = Optional.of(params.getExistingFile("restrictTo"));
+    } else {
+      restrictTo = Optional.absent();
+    }
+
+    final ImmutableList.Builder<String> annotatorNamesB = ImmutableList.builder();
+    final List<AnnotationStore> stores = Lists.newArrayList();
+    try {
+      for (final Map.Entry<Symbol, File> entry : annotatorToStore.entrySet()) {
+        annotatorNamesB.add(entry.getKey().asString());
+        stores.add(AssessmentSpecFormats.openAnnotationStore(entry.getValue(), fileFormat));
+      }
+      final String report =
+          measureAgreement(annotatorNamesB.build(), stores, restrictTo, numThreads);
+      Files.asCharSink(new File(outputDirectory, "agreement.txt"), Charsets.UTF_8).write(report);
+    } finally {
+      // closing a store releases its lock on the store's directory
+      for (final AnnotationStore store : stores) {
+        store.close();
+      }
+    }
+  }
+
+  private static String measureAgreement(final ImmutableList<String> annotatorNames,
+      final List<AnnotationStore> stores, final Optional<File> restrictToFile,
+      final int numThreads) throws IOException {
+    // only documents assessed by at least two annotators can tell us anything about agreement
+    final Multiset<Symbol> numStoresContaining = HashMultiset.create();
+    for (final AnnotationStore store : stores) {
+      numStoresContaining.addAll(store.docIDs());
+    }
+    Set<Symbol> docIDs = Sets.newHashSet();
+    for (final Multiset.Entry<Symbol> entry : numStoresContaining.entrySet()) {
+      if (entry.getCount() >= 2) {
+        docIDs.add(entry.getElement());
+      }
+    }
+    if (restrictToFile.isPresent()) {
+      final Set<Symbol> restrictTo = SymbolUtils.setFrom(Files.readLines(
+          restrictToFile.get(), Charsets.UTF_8));
+      docIDs = Sets.intersection(docIDs, restrictTo);
+    }
+    log.info("Measuring agreement among {} annotators over {} documents", annotatorNames.size(),
+        docIDs.size());
+
+    // every annotator's answer key for a document is read together, so at most a few documents'
+    // keys are in memory at once
+    final PrefetchingDocumentIterator<List<AnswerKey>> answerKeys =
+        PrefetchingDocumentIterator.create(
+            SymbolUtils.byStringOrdering().immutableSortedCopy(docIDs),
+            new PrefetchingDocumentIterator.DocumentLoader<List<AnswerKey>>() {
+              @Override
+              public List<AnswerKey> load(final Symbol docID) throws IOException {
+                final ImmutableList.Builder<AnswerKey> ret = ImmutableList.builder();
+                for (final AnnotationStore store : stores) {
+                  ret.add(store.readOrEmpty(docID));
+                }
+                return ret.build();
+              }
+            }, 2 * numThreads, numThreads);
+
+    final AssessmentAgreement agreement = AssessmentAgreement.create(annotatorNames);
+    try {
+      while (answerKeys.hasNext()) {
+        agreement.observe(answerKeys.next());
+      }
+    } finally {
+      answerKeys.close();
+    }
+
+    final String report = agreement.report();
+    log.info("\n{}", report);
+    return report;
+  }
+
+  public static void main(String[] argv) {
+    try {
+      trueMain(argv);
+    } catch (Exception e) {
+      log.error("Failed to measure assessment agreement", e);
+      System.exit(1);
+    }
+  }
+}
@@ -23,6 +23,8 @@ import com.bbn.kbp.events2014.assessmentDiff.observers.MentionTypeObserver;
 import com.bbn.kbp.events2014.assessmentDiff.observers.RealisObserver;
 import com.bbn.kbp.events2014.io.AnnotationStore;
 import com.bbn.kbp.events2014.io.AssessmentSpecFormats;
+import com.bbn.kbp.events2014.io.PrefetchingDocumentIterator;
+import com.bbn.kbp.events2014.io.SourceCorpusIndex;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
@@ -79,66 +81,145 @@ public final class KBPAssessmentDiff {
     logCoverage(leftName, leftAnnotationStore.docIDs(), rightName, rightAnnotationStore.docIDs(),
         Files.asCharSink(new File(outputDirectory, "coverage.txt"), Charsets.UTF_8));
 
+    final boolean inexactAsCorrect = params.getBoolean("inexactAsCorrect");
+    final int numThreads = params.getOptionalPositiveInteger("numThreads")
+        .or(Runtime.getRuntime().availableProcessors());
     final AssessmentOverlapObserver overlapObserver = new AssessmentOverlapObserver();
     final Map<String, AssessmentPairObserver> observers = createObservers(outputDirectory,
-        params.getBoolean("inexactAsCorrect"));
+        inexactAsCorrect);
 
     //final DiffLogger diffLogger = new BasicDiffLogger();
 
     final DiffLogger diffLogger;
+    final Optional<SourceCorpusIndex> sourceText;
+    final Optional<PlainDocCache> plainDocCache;
     if (params.isPresent("plainDocidMap")) {
       log.info("Using fancy diff logger");
       final File plainDocMapFile = params.getExistingFile("plainDocidMap");
       final ImmutableMap<Symbol, File> plainDocidMap =
           FileUtils.loadSymbolToFileMap(plainDocMapFile);
-      diffLogger = new FancierDiffLogger(PlainDocCache.createFromDocIDToFileMap(plainDocidMap));
+      // only documents being diffed can be logged, so we need not index the rest of the corpus
+      sourceText = Optional.of(SourceCorpusIndex.build(plainDocidMap, commonDocIds));
+      // the index keeps the recently used text, so the loggers read straight through it
+      plainDocCache = Optional.of(PlainDocCache.createFromIndex(sourceText.get()));
+      diffLogger = new FancierDiffLogger(plainDocCache.get());
     } else {
       log.info("Using basic diff loggier. For fancier diffs, specify plainDocidMap param");
+      sourceText = Optional.absent();
+      plainDocCache = Optional.absent();
       diffLogger = new BasicDiffLogger();
     }
 
+    // differences are written to each observer's report as documents are merged in, so they are
+    // never all held in memory at once
+    for (final Map.Entry<String, AssessmentPairObserver> entry : observers.entrySet()) {
+      final File observerOutputDir = new File(outputDirectory, entry.getKey());
+      observerOutputDir.mkdirs();
+      entry.getValue().startReport(diffLogger, observerOutputDir);
+    }
+
+    // each document is read and diffed into its own observers on a worker thread. These are
+    // merged into the overall observers in document ID order, so the output does not depend on
+    // how the work was scheduled
+    final PrefetchingDocumentIterator<DocumentDiff> documentDiffs =
+        PrefetchingDocumentIterator.create(
+            SymbolUtils.byStringOrdering().immutableSortedCopy(commonDocIds),
+            new PrefetchingDocumentIterator.DocumentLoader<DocumentDiff>() {
+              @Override
+              public DocumentDiff load(final Symbol docId) throws IOException {
+                return diffDocument(docId, leftAnnotationStore, rightAnnotationStore,
+                    baselineAnnotationStore, createObservers(outputDirectory, inexactAsCorrect));
+              }
+            }, 2 * numThreads, numThreads);
+
     int totalCommonResponses = 0;
     int totalCommonResponsesNotInBaseline = 0;
-    for (final Symbol docId : commonDocIds) {
-      final AnswerKey leftAnswers = leftAnnotationStore.readOrEmpty(docId);
-      final AnswerKey rightAnswers = rightAnnotationStore.read(docId);
-      overlapObserver.observe(leftAnswers, rightAnswers);
-
-      final Set<Response> baselineResponses = getBaselineResponses(docId, baselineAnnotationStore);
-
-      // we want to compare assessments for responses which are
-      final Set<Response> commonResponses =
-          Sets.intersection(
-              FluentIterable.from(leftAnswers.annotatedResponses())
-                  .transform(AssessedResponseFunctions.response())
-                  .toSet(),
-              FluentIterable.from(rightAnswers.annotatedResponses())
-                  .transform(AssessedResponseFunctions.response())
-                  .toSet());
-      totalCommonResponses += commonResponses.size();
-
-      final Set<Response> commonResponsesMinusBaseline =
-          Sets.difference(commonResponses, baselineResponses);
-      totalCommonResponsesNotInBaseline += commonResponsesMinusBaseline.size();
-
-      for (final Response response : commonResponsesMinusBaseline) {
-        final ResponseAssessment leftAssessment = leftAnswers.assessment(response).get();
-        final ResponseAssessment rightAssessment = rightAnswers.assessment(response).get();
-
-        for (final AssessmentPairObserver observer : observers.values()) {
-          observer.observe(response, leftAssessment, rightAssessment);
+    try {
+      while (documentDiffs.hasNext()) {
+        final DocumentDiff documentDiff = documentDiffs.next();
+        overlapObserver.merge(documentDiff.overlapObserver);
+        for (final Map.Entry<String, AssessmentPairObserver> entry : observers.entrySet()) {
+          entry.getValue().merge(documentDiff.observers.get(entry.getKey()));
         }
+        totalCommonResponses += documentDiff.numCommonResponses;
+        totalCommonResponsesNotInBaseline += documentDiff.numCommonResponsesNotInBaseline;
       }
+    } finally {
+      documentDiffs.close();
     }
 
     log.info("Total common responses: {}; total not in baseline: {}.",
         totalCommonResponses, totalCommonResponsesNotInBaseline);
 
     overlapObserver.report();
-    for (final Map.Entry<String, AssessmentPairObserver> entry : observers.entrySet()) {
-      final File observerOutputDir = new File(outputDirectory, entry.getKey());
-      observerOutputDir.mkdirs();
-      entry.getValue().finish(diffLogger, observerOutputDir);
+    for (final AssessmentPairObserver observer : observers.values()) {
+      observer.finish();
+    }
+    if (plainDocCache.isPresent()) {
+      plainDocCache.get().logStats();
+    }
+    if (sourceText.isPresent()) {
+      sourceText.get().close();
+    }
+  }
+
+  /**
+   * Compares the assessments of a single document, recording them in the supplied {@code
+   * observers}. May be called from several threads at once.
+   */
+  private static DocumentDiff diffDocument(final Symbol docId,
+      final AnnotationStore leftAnnotationStore, final AnnotationStore rightAnnotationStore,
+      final Optional<AnnotationStore> baselineAnnotationStore,
+      final Map<String, AssessmentPairObserver> observers) throws IOException {
+    final AnswerKey leftAnswers = leftAnnotationStore.readOrEmpty(docId);
+    final AnswerKey rightAnswers = rightAnnotationStore.read(docId);
+    final AssessmentOverlapObserver overlapObserver = new AssessmentOverlapObserver();
+    overlapObserver.observe(leftAnswers, rightAnswers);
+
+    final Set<Response> baselineResponses = getBaselineResponses(docId, baselineAnnotationStore);
+
+    // we want to compare assessments for responses which are
+    final Set<Response> commonResponses =
+        Sets.intersection(
+            FluentIterable.from(leftAnswers.annotatedResponses())
+                .transform(AssessedResponseFunctions.response())
+                .toSet(),
+            FluentIterable.from(rightAnswers.annotatedResponses())
+                .transform(AssessedResponseFunctions.response())
+                .toSet());
+
+    final Set<Response> commonResponsesMinusBaseline =
+        Sets.difference(commonResponses, baselineResponses);
+
+    for (final Response response : commonResponsesMinusBaseline) {
+      final ResponseAssessment leftAssessment = leftAnswers.assessment(response).get();
+      final ResponseAssessment rightAssessment = rightAnswers.assessment(response).get();
+
+      for (final AssessmentPairObserver observer : observers.values()) {
+        observer.observe(response, leftAssessment, rightAssessment);
+      }
+    }
+    return new DocumentDiff(overlapObserver, observers, commonResponses.size(),
+        commonResponsesMinusBaseline.size());
+  }
+
+  /**
+   * The observations made while diffing a single document.
+   */
+  private static final class DocumentDiff {
+
+    private final AssessmentOverlapObserver overlapObserver;
+    private final Map<String, AssessmentPairObserver> observers;
+    private final int numCommonResponses;
+    private final int numCommonResponsesNotInBaseline;
+
+    private DocumentDiff(final AssessmentOverlapObserver overlapObserver,
+        final Map<String, AssessmentPairObserver> observers, final int numCommonResponses,
+        final int numCommonResponsesNotInBaseline) {
+      this.overlapObserver = overlapObserver;
+      this.observers = observers;
+      this.numCommonResponses = numCommonResponses;
+      this.numCommonResponsesNotInBaseline = numCommonResponsesNotInBaseline;
     }
   }
 
@@ -156,16 +156,15 @@ public final class FancierDiffLogger implements DiffLogger {
       unitedSpans.add(CharOffsetSpan.fromOffsetsOnly(range.lowerEndpoint(), range.upperEndpoint()));
     }
     Collections.sort(unitedSpans);
-    String justificationsString = "";
+    final StringBuilder justificationsString = new StringBuilder();
     if (unitedSpans.get(0).startInclusive() != 0) {
-      justificationsString += "[.....]";
+      justificationsString.append("[.....]");
     }
     for (CharOffsetSpan span : unitedSpans) {
-      justificationsString +=
-          originalDocText.substring(span.startInclusive(), span.endInclusive() + 1);
-      justificationsString += "[.....]";
+      justificationsString.append(originalDocText, span.startInclusive(), span.endInclusive() + 1);
+      justificationsString.append("[.....]");
     }
-    return justificationsString;
+    return justificationsString.toString();
   }
 
 }
@@ -1,36 +1,118 @@
 package com.bbn.kbp.events2014.assessmentDiff.diffLoggers;
 
 import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.kbp.events2014.io.SourceCorpusIndex;
 
 import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.Weigher;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.io.Files;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.File;
 import java.io.IOException;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import static com.google.common.base.Preconditions.checkArgument;
 
+/**
+ * Provides the original text of documents. Text read from the original files is kept in memory
+ * for recently used documents up to a bound on its total length. Text read from a {@link
+ * SourceCorpusIndex} is not cached again here, since the index keeps its own bounded cache of
+ * encoded text. Safe to share between threads and between all the loggers which need document
+ * text.
+ */
 public final class PlainDocCache {
 
-  private final Map<Symbol, File> docIDToFileMap;
+  private static final Logger log = LoggerFactory.getLogger(PlainDocCache.class);
+
+  public static final long DEFAULT_MAX_CACHED_CHARS = 64L * 1024 * 1024;
+
+  private final ImmutableSet<Symbol> knownDocIDs;
+  // exactly one of these is present
+  private final Optional<LoadingCache<Symbol, String>> cache;
+  private final Optional<SourceCorpusIndex> index;
 
-  private PlainDocCache(final Map<Symbol, File> fileMap) {
-    docIDToFileMap = ImmutableMap.copyOf(fileMap);
+  private PlainDocCache(final Set<Symbol> knownDocIDs,
+      final Optional<LoadingCache<Symbol, String>> cache,
+      final Optional<SourceCorpusIndex> index) {
+    checkArgument(cache.isPresent() != index.isPresent(),
+        "Text must come from exactly one of a cache or an index");
+    this.knownDocIDs = ImmutableSet.copyOf(knownDocIDs);
+    this.cache = cache;
+    this.index = index;
   }
 
   public static PlainDocCache createFromDocIDToFileMap(final Map<Symbol, File> fileMap) {
-    return new PlainDocCache(fileMap);
+    return createFromDocIDToFileMap(fileMap, DEFAULT_MAX_CACHED_CHARS);
+  }
+
+  /**
+   * @param maxCachedChars the most characters of document text to keep in memory at once. A
+   *                       single document longer than this is still returned but not retained.
+   */
+  public static PlainDocCache createFromDocIDToFileMap(final Map<Symbol, File> fileMap,
+      final long maxCachedChars) {
+    checkArgument(maxCachedChars > 0, "Must be able to cache some text");
+    final ImmutableMap<Symbol, File> docIDToFileMap = ImmutableMap.copyOf(fileMap);
+    final LoadingCache<Symbol, String> cache = CacheBuilder.newBuilder()
+        .maximumWeight(maxCachedChars)
+        .weigher(new Weigher<Symbol, String>() {
+          @Override
+          public int weigh(final Symbol docID, final String text) {
+            return text.length();
+          }
+        })
+        .recordStats()
+        .build(new CacheLoader<Symbol, String>() {
+          @Override
+          public String load(final Symbol docID) throws IOException {
+            return Files.toString(docIDToFileMap.get(docID), Charsets.UTF_8);
+          }
+        });
+    return new PlainDocCache(docIDToFileMap.keySet(), Optional.of(cache),
+        Optional.<SourceCorpusIndex>absent());
+  }
+
+  /**
+   * Provides the text of the documents in {@code sourceText}, which must remain open while this
+   * cache is in use. Each request decodes the document from the index's cached encoded text.
+   */
+  public static PlainDocCache createFromIndex(final SourceCorpusIndex sourceText) {
+    return new PlainDocCache(sourceText.docIDs(),
+        Optional.<LoadingCache<Symbol, String>>absent(), Optional.of(sourceText));
   }
 
-  // despite the name, this does not appear to actually do any caching? I've cleaned it up
-  // a little, but I'm not sure this is actually even used, so I won't bother with it
-  // more for now...
   public String getPlainDoc(final Symbol docid) throws IOException {
-    final File file = this.docIDToFileMap.get(docid);
-    if (file != null) {
-      return Files.toString(file, Charsets.UTF_8);
-    } else {
+    if (!knownDocIDs.contains(docid)) {
       throw new RuntimeException("Don't know original text for " + docid);
     }
+    if (index.isPresent()) {
+      return index.get().text(docid);
+    }
+    try {
+      return cache.get().get(docid);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      } else {
+        throw new RuntimeException(e.getCause());
+      }
+    }
+  }
+
+  public void logStats() {
+    if (cache.isPresent()) {
+      log.info("Original text cache: {}", cache.get().stats());
+    }
   }
 }
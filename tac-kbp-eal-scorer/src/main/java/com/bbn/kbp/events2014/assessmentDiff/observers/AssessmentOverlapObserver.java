@@ -27,6 +27,15 @@ public final class AssessmentOverlapObserver {
     numRightOnly += Sets.difference(rightResponses, leftResponses).size();
   }
 
+  /**
+   * Adds the counts from {@code other} to this observer's.
+   */
+  public void merge(AssessmentOverlapObserver other) {
+    numCommon += other.numCommon;
+    numLeftOnly += other.numLeftOnly;
+    numRightOnly += other.numRightOnly;
+  }
+
   public String report() {
     return String.format("%d response in common, %d in left only, %d in right only",
         numCommon, numLeftOnly, numRightOnly);
@@ -14,5 +14,21 @@ public interface AssessmentPairObserver {
 
   public void observe(Response response, ResponseAssessment left, ResponseAssessment right);
 
-  public void finish(DiffLogger diffLogger, File outputDir) throws IOException;
+  /**
+   * Starts writing this observer's report to {@code outputDir}. Anything observed or merged in
+   * from then on is written out as it arrives rather than held until {@link #finish()}.
+   */
+  public void startReport(DiffLogger diffLogger, File outputDir) throws IOException;
+
+  /**
+   * Adds everything observed by {@code other}, which must be the same kind of observer, to this
+   * observer, as if this observer had seen it after all its own observations. This lets separate
+   * observers watch different documents in parallel and then be combined.
+   */
+  public void merge(AssessmentPairObserver other) throws IOException;
+
+  /**
+   * Completes the report begun by {@link #startReport(DiffLogger, File)}.
+   */
+  public void finish() throws IOException;
 }
@@ -3,7 +3,6 @@ package com.bbn.kbp.events2014.assessmentDiff.observers;
 import com.bbn.bue.common.collections.MapUtils;
 import com.bbn.bue.common.diff.FMeasureTableRenderer;
 import com.bbn.bue.common.evaluation.FMeasureCounts;
-import com.bbn.bue.common.evaluation.ProvenancedConfusionMatrix;
 import com.bbn.bue.common.evaluation.SummaryConfusionMatrices;
 import com.bbn.bue.common.evaluation.SummaryConfusionMatrix;
 import com.bbn.bue.common.symbols.Symbol;
@@ -12,17 +11,33 @@ import com.bbn.kbp.events2014.ResponseAssessment;
 import com.bbn.kbp.events2014.assessmentDiff.diffLoggers.DiffLogger;
 
 import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.Files;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
 import java.util.Map;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
 public abstract class ConfusionMatrixAssessmentPairObserver implements AssessmentPairObserver {
 
-  private final ProvenancedConfusionMatrix.Builder<Response> confusionMatrixBuilder =
-      ProvenancedConfusionMatrix.builder();
+  private static final int OUTPUT_BUFFER_CHARS = 64 * 1024;
+
+  // only the counts are needed for the summary, so agreements are not kept at all
+  private final SummaryConfusionMatrices.Builder counts = SummaryConfusionMatrices.builder();
+  // differences which have not yet been written to a report, in the order observed
+  private final List<Observation> pendingDifferences = Lists.newArrayList();
+  private Optional<Report> report = Optional.absent();
 
   public ConfusionMatrixAssessmentPairObserver() {
 
@@ -39,32 +54,55 @@ public abstract class ConfusionMatrixAssessmentPairObserver implements Assessmen
       final Symbol leftKey = toKey(left);
       final Symbol rightKey = toKey(right);
 
-      confusionMatrixBuilder.record(leftKey, rightKey, response);
+      counts.accumulatePredictedGold(leftKey, rightKey, 1.0);
+      if (leftKey != rightKey) {
+        pendingDifferences.add(new Observation(leftKey, rightKey, response));
+      }
     }
   }
 
   @Override
-  public final void finish(DiffLogger diffLogger, File outputDir) throws IOException {
-    final ProvenancedConfusionMatrix<Response> confusionMatrix = confusionMatrixBuilder.build();
+  public final void startReport(DiffLogger diffLogger, File outputDir) throws IOException {
+    checkState(!report.isPresent(), "Report already started");
+    report = Optional.of(new Report(diffLogger, new BufferedWriter(new OutputStreamWriter(
+        new FileOutputStream(new File(outputDir, "examples.html")), Charsets.UTF_8),
+        OUTPUT_BUFFER_CHARS), outputDir));
+    report.get().out.write("<html><body>");
+    report.get().out.write("<br><br>");
+    writePendingDifferences();
+  }
 
-    final StringBuilder sb = new StringBuilder();
-    sb.append("<html><body>");
-    sb.append("<br><br>");
-
-    for (final Symbol leftKey : confusionMatrix.leftLabels()) {
-      for (final Symbol rightKey : confusionMatrix.rightLabels()) {
-        if (leftKey != rightKey) {
-          for (final Response response : confusionMatrix.cell(leftKey, rightKey)) {
-            diffLogger.logDifference(response, leftKey, rightKey, sb);
-          }
+  @Override
+  public final void merge(AssessmentPairObserver other) throws IOException {
+    checkArgument(getClass().equals(other.getClass()), "Cannot merge a %s into a %s",
+        other.getClass(), getClass());
+    final ConfusionMatrixAssessmentPairObserver otherObserver =
+        (ConfusionMatrixAssessmentPairObserver) other;
+    final SummaryConfusionMatrix otherCounts = otherObserver.counts.build();
+    for (final Symbol leftKey : otherCounts.leftLabels()) {
+      for (final Symbol rightKey : otherCounts.rightLabels()) {
+        final double count = otherCounts.cell(leftKey, rightKey);
+        if (count > 0) {
+          counts.accumulatePredictedGold(leftKey, rightKey, count);
         }
       }
     }
+    pendingDifferences.addAll(otherObserver.pendingDifferences);
+    writePendingDifferences();
+  }
 
-    sb.append("</body></html>");
-    Files.asCharSink(new File(outputDir, "examples.html"), Charsets.UTF_8).write(sb.toString());
+  @Override
+  public final void finish() throws IOException {
+    checkState(report.isPresent(), "Report was never started");
+    writePendingDifferences();
+    final Report finishedReport = report.get();
+    try {
+      finishedReport.out.write("</body></html>");
+    } finally {
+      finishedReport.out.close();
+    }
 
-    final SummaryConfusionMatrix summaryConfusionMatrix = confusionMatrix.buildSummaryMatrix();
+    final SummaryConfusionMatrix summaryConfusionMatrix = counts.build();
     final StringBuilder msg = new StringBuilder();
     msg.append(SummaryConfusionMatrices.prettyPrint(summaryConfusionMatrix)).append("\n\n");
     final Map<String, FMeasureCounts> fMeasureCountsMap = Maps.newHashMap();
@@ -76,6 +114,52 @@ public abstract class ConfusionMatrixAssessmentPairObserver implements Assessmen
     msg.append(tableRenderer.render(fMeasureCountsMap));
     msg.append(String.format("Accuracy: %5.2f\n",
         100.0 * SummaryConfusionMatrices.accuracy(summaryConfusionMatrix)));
-    Files.asCharSink(new File(outputDir, "summary.html"), Charsets.UTF_8).write(msg.toString());
+    Files.asCharSink(new File(finishedReport.outputDir, "summary.html"), Charsets.UTF_8)
+        .write(msg.toString());
+  }
+
+  /**
+   * Once a report has been started, renders every difference not yet written to it and drops
+   * them, so differences are held only until the document they come from is merged in.
+   */
+  private void writePendingDifferences() throws IOException {
+    if (!report.isPresent()) {
+      return;
+    }
+    final Report currentReport = report.get();
+    final StringBuilder sb = new StringBuilder();
+    for (final Observation difference : pendingDifferences) {
+      currentReport.diffLogger.logDifference(difference.response, difference.leftKey,
+          difference.rightKey, sb);
+      currentReport.out.append(sb);
+      sb.setLength(0);
+    }
+    pendingDifferences.clear();
+  }
+
+  private static final class Report {
+
+    private final DiffLogger diffLogger;
+    private final Writer out;
+    private final File outputDir;
+
+    private Report(final DiffLogger diffLogger, final Writer out, final File outputDir) {
+      this.diffLogger = checkNotNull(diffLogger);
+      this.out = checkNotNull(out);
+      this.outputDir = checkNotNull(outputDir);
+    }
+  }
+
+  private static final class Observation {
+
+    private final Symbol leftKey;
+    private final Symbol rightKey;
+    private final Response response;
+
+    private Observation(final Symbol leftKey, final Symbol rightKey, final Response response) {
+      this.leftKey = leftKey;
+      this.rightKey = rightKey;
+      this.response = response;
+    }
   }
 }
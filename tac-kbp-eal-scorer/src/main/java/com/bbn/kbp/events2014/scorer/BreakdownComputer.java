@@ -3,20 +3,51 @@ package com.bbn.kbp.events2014.scorer;
 import com.bbn.bue.common.evaluation.BrokenDownProvenancedConfusionMatrix;
 import com.bbn.bue.common.evaluation.BrokenDownSummaryConfusionMatrix;
 import com.bbn.bue.common.evaluation.ProvenancedConfusionMatrix;
+import com.bbn.bue.common.evaluation.SummaryConfusionMatrices;
+import com.bbn.bue.common.evaluation.SummaryConfusionMatrix;
 import com.bbn.bue.common.symbols.Symbol;
 import com.bbn.bue.common.symbols.SymbolUtils;
 
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
+import com.google.common.collect.Table;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Breaks confusion matrices down by functions of their provenances.
+ *
+ * A computer is mutable: as it {@link #record(BreakdownCounts, Symbol, Symbol, Object)}s items,
+ * it assigns ordinals to the breakdown keys and matrix cells it has not seen before. It is
+ * therefore not thread-safe, and {@link BreakdownCounts} may only be used with the computer which
+ * created them.
+ */
 public final class BreakdownComputer<ProvenanceType> {
 
   private final Map<String, Function<? super ProvenanceType, Symbol>> breakdownFunctions;
 
+  // the state below is used for computing breakdowns via BreakdownCounts. Breakdown keys and
+  // confusion matrix cells are assigned ordinals as they are first seen, so they are consistent
+  // across all the counts created by this computer.
+  private final ImmutableList<String> breakdownNames;
+  private final ImmutableList<Function<? super ProvenanceType, Symbol>> breakdownFunctionList;
+  private final List<Map<Symbol, Integer>> keyToOrdinal;
+  private final List<List<Symbol>> ordinalToKey;
+  private final Table<Symbol, Symbol, Integer> cellToOrdinal = HashBasedTable.create();
+  private final List<Symbol> cellOrdinalToPredicted = Lists.newArrayList();
+  private final List<Symbol> cellOrdinalToGold = Lists.newArrayList();
+
   private BreakdownComputer(Map<String, Function<ProvenanceType, Symbol>>
       breakdownFunctions) {
     final ImmutableMap.Builder<String, Function<? super ProvenanceType, Symbol>> builder =
@@ -24,6 +55,15 @@ public final class BreakdownComputer<ProvenanceType> {
     builder.put("Aggregate", Functions.constant(Symbol.from("Aggregate")));
     builder.putAll(breakdownFunctions);
     this.breakdownFunctions = builder.build();
+
+    this.breakdownNames = ImmutableList.copyOf(this.breakdownFunctions.keySet());
+    this.breakdownFunctionList = ImmutableList.copyOf(this.breakdownFunctions.values());
+    this.keyToOrdinal = Lists.newArrayList();
+    this.ordinalToKey = Lists.newArrayList();
+    for (int i = 0; i < breakdownNames.size(); ++i) {
+      keyToOrdinal.add(Maps.<Symbol, Integer>newHashMap());
+      ordinalToKey.add(Lists.<Symbol>newArrayList());
+    }
   }
 
   public static <ProvenanceType> BreakdownComputer create(
@@ -50,4 +90,159 @@ public final class BreakdownComputer<ProvenanceType> {
 
     return ret.build();
   }
+
+  /**
+   * Creates empty counts to {@link #record(BreakdownCounts, Symbol, Symbol, Object)} into.
+   */
+  public BreakdownCounts newCounts() {
+    return new BreakdownCounts(this, breakdownNames.size());
+  }
+
+  /**
+   * Records {@code item} in the confusion matrix cell for {@code predicted} and {@code gold} for
+   * every breakdown. Each breakdown function is applied to {@code item} exactly once.
+   *
+   * This and {@link #toSummaries(BreakdownCounts)} are not thread-safe.
+   */
+  public void record(final BreakdownCounts counts, final Symbol predicted, final Symbol gold,
+      final ProvenanceType item) {
+    checkCreatedHere(counts);
+    final int cell = cellOrdinal(predicted, gold);
+    for (int breakdown = 0; breakdown < breakdownFunctionList.size(); ++breakdown) {
+      final Symbol key = checkNotNull(breakdownFunctionList.get(breakdown).apply(item));
+      counts.increment(breakdown, cell, keyOrdinal(breakdown, key));
+    }
+  }
+
+  /**
+   * Converts {@code counts} to a summary confusion matrix for each breakdown, ordered by breakdown
+   * name. Within each breakdown, keys are ordered by their string forms and those with no counts
+   * are omitted. This matches what {@link #computeBreakdownSummaries(ProvenancedConfusionMatrix)}
+   * would give for the combined data the counts were recorded from.
+   */
+  public ImmutableMap<String, BrokenDownSummaryConfusionMatrix<Symbol>> toSummaries(
+      final BreakdownCounts counts) {
+    checkCreatedHere(counts);
+    final ImmutableMap.Builder<String, BrokenDownSummaryConfusionMatrix<Symbol>> ret =
+        ImmutableMap.builder();
+    for (final String breakdownName : Ordering.natural().sortedCopy(breakdownNames)) {
+      final int breakdown = breakdownNames.indexOf(breakdownName);
+      final int[][] byCell = counts.counts[breakdown];
+      final List<Symbol> keys = ordinalToKey.get(breakdown);
+      final Map<Symbol, Integer> keysToOrdinals = keyToOrdinal.get(breakdown);
+
+      final ImmutableMap.Builder<Symbol, SummaryConfusionMatrix> matrices = ImmutableMap.builder();
+      for (final Symbol key : BREAKDOWN_KEY_ORDERING.sortedCopy(keys)) {
+        final int keyOrdinal = keysToOrdinals.get(key);
+        SummaryConfusionMatrices.Builder matrix = null;
+        for (int cell = 0; cell < byCell.length; ++cell) {
+          final int count = keyOrdinal < byCell[cell].length ? byCell[cell][keyOrdinal] : 0;
+          if (count > 0) {
+            if (matrix == null) {
+              matrix = SummaryConfusionMatrices.builder();
+            }
+            matrix.accumulatePredictedGold(cellOrdinalToPredicted.get(cell),
+                cellOrdinalToGold.get(cell), count);
+          }
+        }
+        if (matrix != null) {
+          matrices.put(key, matrix.build());
+        }
+      }
+      ret.put(breakdownName, BrokenDownSummaryConfusionMatrix.fromMap(matrices.build()));
+    }
+    return ret.build();
+  }
+
+  private void checkCreatedHere(final BreakdownCounts counts) {
+    checkArgument(counts.computer == this,
+        "Breakdown counts can only be used with the computer which created them");
+  }
+
+  private int cellOrdinal(final Symbol predicted, final Symbol gold) {
+    Integer ret = cellToOrdinal.get(predicted, gold);
+    if (ret == null) {
+      ret = cellOrdinalToPredicted.size();
+      cellToOrdinal.put(predicted, gold, ret);
+      cellOrdinalToPredicted.add(predicted);
+      cellOrdinalToGold.add(gold);
+    }
+    return ret;
+  }
+
+  private int keyOrdinal(final int breakdown, final Symbol key) {
+    final Map<Symbol, Integer> keysToOrdinals = keyToOrdinal.get(breakdown);
+    Integer ret = keysToOrdinals.get(key);
+    if (ret == null) {
+      final List<Symbol> keys = ordinalToKey.get(breakdown);
+      ret = keys.size();
+      keysToOrdinals.put(key, ret);
+      keys.add(key);
+    }
+    return ret;
+  }
+
+  /**
+   * Confusion matrix counts for every breakdown, held as a dense tensor indexed by breakdown,
+   * matrix cell, and breakdown key. Counts for several documents are combined by adding their
+   * tensors. Only meaningful to the {@link BreakdownComputer} which created it.
+   */
+  public static final class BreakdownCounts {
+
+    // the computer whose ordinals index these counts
+    private final BreakdownComputer<?> computer;
+    // indexed by breakdown, cell, key. Rows grow as new cells and keys are seen.
+    private final int[][][] counts;
+
+    private BreakdownCounts(final BreakdownComputer<?> computer, final int numBreakdowns) {
+      this.computer = checkNotNull(computer);
+      this.counts = new int[numBreakdowns][0][];
+    }
+
+    private void increment(final int breakdown, final int cell, final int key) {
+      int[][] byCell = counts[breakdown];
+      if (cell >= byCell.length) {
+        byCell = grow(byCell, cell + 1);
+        counts[breakdown] = byCell;
+      }
+      if (key >= byCell[cell].length) {
+        byCell[cell] = Arrays.copyOf(byCell[cell], Math.max(key + 1, 2 * byCell[cell].length));
+      }
+      ++byCell[cell][key];
+    }
+
+    /**
+     * Adds all of {@code other}'s counts to these. Both must come from the same {@link
+     * BreakdownComputer}, since otherwise their ordinals would mean different keys and cells.
+     */
+    public void add(final BreakdownCounts other) {
+      checkArgument(other.computer == computer,
+          "Cannot add breakdown counts from a different computer");
+      for (int breakdown = 0; breakdown < counts.length; ++breakdown) {
+        final int[][] otherByCell = other.counts[breakdown];
+        if (otherByCell.length > counts[breakdown].length) {
+          counts[breakdown] = grow(counts[breakdown], otherByCell.length);
+        }
+        final int[][] byCell = counts[breakdown];
+        for (int cell = 0; cell < otherByCell.length; ++cell) {
+          final int[] otherByKey = otherByCell[cell];
+          if (otherByKey.length > byCell[cell].length) {
+            byCell[cell] = Arrays.copyOf(byCell[cell], otherByKey.length);
+          }
+          final int[] byKey = byCell[cell];
+          for (int key = 0; key < otherByKey.length; ++key) {
+            byKey[key] += otherByKey[key];
+          }
+        }
+      }
+    }
+
+    private static int[][] grow(final int[][] byCell, final int numCells) {
+      final int[][] ret = Arrays.copyOf(byCell, numCells);
+      for (int cell = byCell.length; cell < numCells; ++cell) {
+        ret[cell] = new int[0];
+      }
+      return ret;
+    }
+  }
 }
@@ -0,0 +1,464 @@
+package com.bbn.kbp.events2014.scorer;
+
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.kbp.events2014.AnswerKey;
+import com.bbn.kbp.events2014.ArgumentOutput;
+import com.bbn.kbp.events2014.AssessedResponse;
+import com.bbn.kbp.events2014.EventArgScoringAlignment;
+import com.bbn.kbp.events2014.Response;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Scores system responses against an answer key exactly as {@link StandardScoringAligner} does,
+ * but without building multimaps keyed by equivalence class objects.
+ *
+ * Each document's equivalence classes are interned to dense integer IDs, with the equivalence class
+ * function applied only once per response. System and answer key responses are then bucketed by
+ * ID with a counting sort, and the true positive, false positive, false negative, and unassessed
+ * decisions are made in a single pass over the IDs. The resulting {@link Alignment} provides
+ * counts directly; the full {@link EventArgScoringAlignment} with its provenance is only built if
+ * {@link Alignment#fullAlignment()} is called.
+ */
+public final class IndexedScoringAligner<EquivClassType>
+    implements ScoringAligner<EquivClassType> {
+
+  // outcomes for an equivalence class, stored as bit flags. A correct equivalence class whose
+  // selected system response was assessed as wrong is both a false positive and a false negative.
+  // An equivalence class with no flags set is a true negative.
+  public static final byte TRUE_POSITIVE = 1;
+  public static final byte FALSE_POSITIVE = 2;
+  public static final byte FALSE_NEGATIVE = 4;
+  public static final byte UNASSESSED = 8;
+  private static final byte ALL_OUTCOMES =
+      TRUE_POSITIVE | FALSE_POSITIVE | FALSE_NEGATIVE | UNASSESSED;
+
+  private final Function<Response, EquivClassType> equivClassFunction;
+
+  private IndexedScoringAligner(final Function<Response, EquivClassType> equivClassFunction) {
+    this.equivClassFunction = checkNotNull(equivClassFunction);
+  }
+
+  public static <EquivClassType> IndexedScoringAligner<EquivClassType> forEquivalenceClassFunction(
+      Function<Response, EquivClassType> equivClassFunction) {
+    return new IndexedScoringAligner<EquivClassType>(equivClassFunction);
+  }
+
+  @Override
+  public EventArgScoringAlignment<EquivClassType> align(final AnswerKey answerKey,
+      final ArgumentOutput argumentOutput) {
+    return alignIndexed(answerKey, argumentOutput).fullAlignment();
+  }
+
+  public Alignment<EquivClassType> alignIndexed(final AnswerKey answerKey,
+      final ArgumentOutput argumentOutput) {
+    checkArgument(answerKey.docId() == argumentOutput.docId());
+
+    // intern equivalence classes, system responses first so IDs follow the order in which
+    // StandardScoringAligner encounters them
+    final EquivalenceClassInterner<EquivClassType> interner =
+        new EquivalenceClassInterner<EquivClassType>();
+    final Response[] systemResponses =
+        argumentOutput.responses().toArray(new Response[argumentOutput.responses().size()]);
+    final int[] systemClasses = new int[systemResponses.length];
+    for (int i = 0; i < systemResponses.length; ++i) {
+      systemClasses[i] = interner.intern(equivClassFunction.apply(systemResponses[i]));
+    }
+    final AssessedResponse[] keyResponses = answerKey.annotatedResponses()
+        .toArray(new AssessedResponse[answerKey.annotatedResponses().size()]);
+    final int[] keyClasses = new int[keyResponses.length];
+    for (int i = 0; i < keyResponses.length; ++i) {
+      keyClasses[i] = interner.intern(equivClassFunction.apply(keyResponses[i].response()));
+    }
+
+    final int numClasses = interner.size();
+    final int[] systemStarts = bucketStarts(systemClasses, numClasses);
+    final Response[] systemByClass =
+        bucket(systemResponses, systemClasses, systemStarts, new Response[systemResponses.length]);
+    final int[] keyStarts = bucketStarts(keyClasses, numClasses);
+    final AssessedResponse[] keyByClass =
+        bucket(keyResponses, keyClasses, keyStarts, new AssessedResponse[keyResponses.length]);
+
+    final byte[] outcomes = new byte[numClasses];
+    for (int ec = 0; ec < numClasses; ++ec) {
+      final int systemStart = systemStarts[ec];
+      final int systemEnd = systemStarts[ec + 1];
+      final int keyStart = keyStarts[ec];
+      final int keyEnd = keyStarts[ec + 1];
+
+      // a key equivalence class is correct if anyone found a correct response in that class
+      boolean isCorrectEquivClass = false;
+      for (int i = keyStart; i < keyEnd; ++i) {
+        if (keyByClass[i].isCorrectUpToInexactJustifications()) {
+          isCorrectEquivClass = true;
+          break;
+        }
+      }
+
+      if (isCorrectEquivClass) {
+        if (systemEnd > systemStart) {
+          // only the top-scoring system response for an equivalence class counts
+          final Response selectedSystemResponse = argumentOutput.selectFromMultipleSystemResponses(
+              Arrays.asList(systemByClass).subList(systemStart, systemEnd)).get();
+          final Optional<AssessedResponse> assessmentOfSelectedResponse =
+              AssessedResponse.findAnnotationForArgument(selectedSystemResponse,
+                  Arrays.asList(keyByClass).subList(keyStart, keyEnd));
+          if (assessmentOfSelectedResponse.isPresent()) {
+            if (assessmentOfSelectedResponse.get().isCorrectUpToInexactJustifications()) {
+              outcomes[ec] = TRUE_POSITIVE;
+            } else {
+              // see StandardScoringAligner for why this is both
+              outcomes[ec] = FALSE_POSITIVE | FALSE_NEGATIVE;
+            }
+          } else {
+            outcomes[ec] = UNASSESSED;
+          }
+        } else {
+          // it was a correct equivalence class, but we didn't find any responses
+          outcomes[ec] = FALSE_NEGATIVE;
+        }
+      } else if (systemEnd > systemStart) {
+        // if the equivalence class is incorrect, the system is wrong if it returned *any* response
+        outcomes[ec] = FALSE_POSITIVE;
+      }
+    }
+
+    return new Alignment<EquivClassType>(argumentOutput.docId(), interner.equivalenceClasses(),
+        outcomes, null, new AlignedResponses(argumentOutput, answerKey, systemResponses,
+        systemClasses, keyResponses, keyClasses));
+  }
+
+  /**
+   * Returns an array whose {@code i}-th entry is the index of the first item of class {@code i}
+   * after sorting by class. The final entry is the total number of items.
+   */
+  private static int[] bucketStarts(final int[] classes, final int numClasses) {
+    final int[] starts = new int[numClasses + 1];
+    for (final int ec : classes) {
+      ++starts[ec + 1];
+    }
+    for (int i = 0; i < numClasses; ++i) {
+      starts[i + 1] += starts[i];
+    }
+    return starts;
+  }
+
+  // stable counting sort of items by class, so that items within a class keep their input order
+  private static <T> T[] bucket(final T[] items, final int[] classes, final int[] starts,
+      final T[] ret) {
+    final int[] next = Arrays.copyOf(starts, starts.length - 1);
+    for (int i = 0; i < items.length; ++i) {
+      ret[next[classes[i]]++] = items[i];
+    }
+    return ret;
+  }
+
+  /**
+   * The result of aligning a single document. Counts are available without building any
+   * collections of equivalence classes.
+   */
+  public static final class Alignment<EquivClassType> {
+
+    private final Symbol docID;
+    private final ImmutableList<EquivClassType> equivalenceClasses;
+    private final byte[] outcomes;
+    // if non-null, only the equivalence classes with set bits are part of this alignment
+    private final BitSet included;
+    // null if released by withoutResponses()
+    private final AlignedResponses responses;
+
+    private final int numTruePositives;
+    private final int numFalsePositives;
+    private final int numFalseNegatives;
+    private final int numUnassessed;
+
+    private final Supplier<EventArgScoringAlignment<EquivClassType>> fullAlignment =
+        Suppliers.memoize(new Supplier<EventArgScoringAlignment<EquivClassType>>() {
+          @Override
+          public EventArgScoringAlignment<EquivClassType> get() {
+            return buildFullAlignment();
+          }
+        });
+
+    private Alignment(final Symbol docID, final ImmutableList<EquivClassType> equivalenceClasses,
+        final byte[] outcomes, final BitSet included, final AlignedResponses responses) {
+      this.docID = checkNotNull(docID);
+      this.equivalenceClasses = checkNotNull(equivalenceClasses);
+      this.outcomes = checkNotNull(outcomes);
+      this.included = included;
+      this.responses = responses;
+
+      int tp = 0;
+      int fp = 0;
+      int fn = 0;
+      int unassessed = 0;
+      for (int ec = 0; ec < outcomes.length; ++ec) {
+        if (isIncluded(ec)) {
+          final byte outcome = outcomes[ec];
+          if ((outcome & TRUE_POSITIVE) != 0) {
+            ++tp;
+          }
+          if ((outcome & FALSE_POSITIVE) != 0) {
+            ++fp;
+          }
+          if ((outcome & FALSE_NEGATIVE) != 0) {
+            ++fn;
+          }
+          if ((outcome & UNASSESSED) != 0) {
+            ++unassessed;
+          }
+        }
+      }
+      this.numTruePositives = tp;
+      this.numFalsePositives = fp;
+      this.numFalseNegatives = fn;
+      this.numUnassessed = unassessed;
+    }
+
+    /**
+     * Creates an alignment from the outcome of each equivalence class, for example one saved from
+     * {@link #equivalenceClasses()} and {@link #outcomeFlags()}. The result has no responses.
+     */
+    public static <EquivClassType> Alignment<EquivClassType> fromOutcomeFlags(
+        final Symbol docID, final List<EquivClassType> equivalenceClasses,
+        final byte[] outcomeFlags) {
+      checkArgument(equivalenceClasses.size() == outcomeFlags.length,
+          "Must have one outcome per equivalence class");
+      for (final byte outcome : outcomeFlags) {
+        checkArgument((outcome & ~ALL_OUTCOMES) == 0, "Invalid outcome flags %s", outcome);
+      }
+      return new Alignment<EquivClassType>(docID, ImmutableList.copyOf(equivalenceClasses),
+          outcomeFlags.clone(), null, null);
+    }
+
+    public Symbol docID() {
+      return docID;
+    }
+
+    /**
+     * All equivalence classes in this alignment, including true negatives.
+     */
+    public ImmutableList<EquivClassType> equivalenceClasses() {
+      if (included == null) {
+        return equivalenceClasses;
+      }
+      final ImmutableList.Builder<EquivClassType> ret = ImmutableList.builder();
+      for (int ec = included.nextSetBit(0); ec >= 0; ec = included.nextSetBit(ec + 1)) {
+        ret.add(equivalenceClasses.get(ec));
+      }
+      return ret.build();
+    }
+
+    /**
+     * The outcome flags ({@link #TRUE_POSITIVE}, etc.) of each equivalence class, parallel to
+     * {@link #equivalenceClasses()}.
+     */
+    public byte[] outcomeFlags() {
+      if (included == null) {
+        return outcomes.clone();
+      }
+      final byte[] ret = new byte[included.cardinality()];
+      int i = 0;
+      for (int ec = included.nextSetBit(0); ec >= 0; ec = included.nextSetBit(ec + 1)) {
+        ret[i++] = outcomes[ec];
+      }
+      return ret;
+    }
+
+    public int numTruePositives() {
+      return numTruePositives;
+    }
+
+    public int numFalsePositives() {
+      return numFalsePositives;
+    }
+
+    public int numFalseNegatives() {
+      return numFalseNegatives;
+    }
+
+    public int numUnassessed() {
+      return numUnassessed;
+    }
+
+    /**
+     * The true positive equivalence classes followed by the false negative ones. These are the
+     * same as {@link EventArgScoringAlignment#allEquivalenceClassess()} but do not require the
+     * full alignment.
+     */
+    public ImmutableList<EquivClassType> truePositiveAndFalseNegativeEquivalenceClasses() {
+      final ImmutableList.Builder<EquivClassType> ret = ImmutableList.builder();
+      for (int ec = 0; ec < outcomes.length; ++ec) {
+        if (isIncluded(ec) && (outcomes[ec] & TRUE_POSITIVE) != 0) {
+          ret.add(equivalenceClasses.get(ec));
+        }
+      }
+      for (int ec = 0; ec < outcomes.length; ++ec) {
+        if (isIncluded(ec) && (outcomes[ec] & FALSE_NEGATIVE) != 0) {
+          ret.add(equivalenceClasses.get(ec));
+        }
+      }
+      return ret.build();
+    }
+
+    /**
+     * The full alignment, including which responses fell into each equivalence class. This is
+     * built the first time it is requested.
+     *
+     * @throws IllegalStateException if this alignment was created by {@link #withoutResponses()}
+     */
+    public EventArgScoringAlignment<EquivClassType> fullAlignment() {
+      checkState(hasResponses(), "Responses for the alignment of %s have been released", docID);
+      return fullAlignment.get();
+    }
+
+    public boolean hasResponses() {
+      return responses != null;
+    }
+
+    /**
+     * Returns a copy of this alignment which keeps only the outcome for each equivalence class,
+     * releasing the system output, answer key, and any full alignment built so far. Counts and
+     * {@link #copyFiltered(Predicate)} still work on the copy, but {@link #fullAlignment()} does
+     * not.
+     */
+    public Alignment<EquivClassType> withoutResponses() {
+      if (!hasResponses()) {
+        return this;
+      }
+      return new Alignment<EquivClassType>(docID, equivalenceClasses, outcomes, included, null);
+    }
+
+    /**
+     * Equivalent to {@link EventArgScoringAlignment#copyFiltered(Predicate)}, but the filter is
+     * applied once per equivalence class and the full alignment is not built.
+     */
+    public Alignment<EquivClassType> copyFiltered(final Predicate<EquivClassType> filter) {
+      final BitSet newIncluded = new BitSet(outcomes.length);
+      for (int ec = 0; ec < outcomes.length; ++ec) {
+        if (isIncluded(ec) && filter.apply(equivalenceClasses.get(ec))) {
+          newIncluded.set(ec);
+        }
+      }
+      return new Alignment<EquivClassType>(docID, equivalenceClasses, outcomes, newIncluded,
+          responses);
+    }
+
+    private boolean isIncluded(final int ec) {
+      return included == null || included.get(ec);
+    }
+
+    private EventArgScoringAlignment<EquivClassType> buildFullAlignment() {
+      final ImmutableSet.Builder<EquivClassType> truePositives = ImmutableSet.builder();
+      final ImmutableSet.Builder<EquivClassType> falsePositives = ImmutableSet.builder();
+      final ImmutableSet.Builder<EquivClassType> falseNegatives = ImmutableSet.builder();
+      final ImmutableSet.Builder<EquivClassType> unassessed = ImmutableSet.builder();
+      for (int ec = 0; ec < outcomes.length; ++ec) {
+        if (isIncluded(ec)) {
+          final EquivClassType equivClass = equivalenceClasses.get(ec);
+          if ((outcomes[ec] & TRUE_POSITIVE) != 0) {
+            truePositives.add(equivClass);
+          }
+          if ((outcomes[ec] & FALSE_POSITIVE) != 0) {
+            falsePositives.add(equivClass);
+          }
+          if ((outcomes[ec] & FALSE_NEGATIVE) != 0) {
+            falseNegatives.add(equivClass);
+          }
+          if ((outcomes[ec] & UNASSESSED) != 0) {
+            unassessed.add(equivClass);
+          }
+        }
+      }
+
+      final ImmutableSetMultimap.Builder<EquivClassType, Response> ecsToSystem =
+          ImmutableSetMultimap.builder();
+      for (int i = 0; i < responses.systemResponses.length; ++i) {
+        final int ec = responses.systemClasses[i];
+        if (isIncluded(ec)) {
+          ecsToSystem.put(equivalenceClasses.get(ec), responses.systemResponses[i]);
+        }
+      }
+      final ImmutableSetMultimap.Builder<EquivClassType, AssessedResponse> ecsToAnswerKey =
+          ImmutableSetMultimap.builder();
+      for (int i = 0; i < responses.keyResponses.length; ++i) {
+        final int ec = responses.keyClasses[i];
+        if (isIncluded(ec)) {
+          ecsToAnswerKey.put(equivalenceClasses.get(ec), responses.keyResponses[i]);
+        }
+      }
+
+      return EventArgScoringAlignment.create(docID, responses.argumentOutput,
+          responses.answerKey, truePositives.build(), falsePositives.build(),
+          falseNegatives.build(), unassessed.build(), ecsToAnswerKey.build(), ecsToSystem.build());
+    }
+  }
+
+  /**
+   * The system and answer key responses which were aligned, in their original order, with their
+   * equivalence class IDs.
+   */
+  private static final class AlignedResponses {
+
+    private final ArgumentOutput argumentOutput;
+    private final AnswerKey answerKey;
+    private final Response[] systemResponses;
+    private final int[] systemClasses;
+    private final AssessedResponse[] keyResponses;
+    private final int[] keyClasses;
+
+    private AlignedResponses(final ArgumentOutput argumentOutput, final AnswerKey answerKey,
+        final Response[] systemResponses, final int[] systemClasses,
+        final AssessedResponse[] keyResponses, final int[] keyClasses) {
+      this.argumentOutput = checkNotNull(argumentOutput);
+      this.answerKey = checkNotNull(answerKey);
+      this.systemResponses = checkNotNull(systemResponses);
+      this.systemClasses = checkNotNull(systemClasses);
+      this.keyResponses = checkNotNull(keyResponses);
+      this.keyClasses = checkNotNull(keyClasses);
+    }
+  }
+
+  private static final class EquivalenceClassInterner<EquivClassType> {
+
+    private final Map<EquivClassType, Integer> ids = Maps.newHashMap();
+    private final ImmutableList.Builder<EquivClassType> equivalenceClasses =
+        ImmutableList.builder();
+
+    int intern(final EquivClassType equivClass) {
+      final Integer id = ids.get(equivClass);
+      if (id != null) {
+        return id;
+      }
+      final int newID = ids.size();
+      ids.put(equivClass, newID);
+      equivalenceClasses.add(equivClass);
+      return newID;
+    }
+
+    int size() {
+      return ids.size();
+    }
+
+    ImmutableList<EquivClassType> equivalenceClasses() {
+      return equivalenceClasses.build();
+    }
+  }
+}
@@ -9,7 +9,6 @@ import com.bbn.kbp.events2014.scorer.ImmutableAggregate2015ScoringResult;
 import com.bbn.kbp.linking.EALScorer2015Style;
 
 import com.google.common.base.Charsets;
-import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.io.Files;
@@ -29,10 +28,16 @@ final class AggregateResultWriter implements KBP2015Scorer.SimpleResultWriter {
     this.lambda = lambda;
   }
 
+  @Override
+  public boolean needsResultDetails() {
+    return false;
+  }
+
   @Override
   public void writeResult(final List<EALScorer2015Style.Result> perDocResults,
-      final File outputDir) throws IOException {
-    final ImmutableAggregate2015ScoringResult result = computeAggregateScore(perDocResults);
+      final DocumentScoreTable documentScores, final File outputDir) throws IOException {
+    final ImmutableAggregate2015ScoringResult result =
+        computeAggregateScore(documentScores, documentScores.allDocuments(), lambda);
 
     Files.asCharSink(new File(outputDir, "aggregateScore.txt"), Charsets.UTF_8).write(
         String
@@ -56,10 +61,16 @@ final class AggregateResultWriter implements KBP2015Scorer.SimpleResultWriter {
     jacksonSerializer.serializeTo(result, GZIPByteSink.gzipCompress(Files.asByteSink(jsonFile)));
   }
 
-  private ImmutableAggregate2015ScoringResult computeAggregateScore(
-      final List<EALScorer2015Style.Result> perDocResults) {
-    final ImmutableAggregate2015ArgScoringResult argScores = computeArgScores(perDocResults);
-    final ImmutableAggregate2015LinkScoringResult linkScores = computeLinkScores(perDocResults);
+  /**
+   * Aggregates the scores of {@code docs}, weighting the linking score by {@code lambda} and the
+   * argument score by {@code 1 - lambda}.
+   */
+  static ImmutableAggregate2015ScoringResult computeAggregateScore(
+      final DocumentScoreTable documentScores, final int[] docs, final double lambda) {
+    final ImmutableAggregate2015ArgScoringResult argScores =
+        documentScores.argumentCounts().aggregate(docs);
+    final ImmutableAggregate2015LinkScoringResult linkScores =
+        documentScores.aggregateLinkScores(docs);
 
     final double aggregateScore = (1.0 - lambda) * argScores.overall()
         + lambda * linkScores.overall();
@@ -71,81 +82,6 @@ final class AggregateResultWriter implements KBP2015Scorer.SimpleResultWriter {
         .build();
   }
 
-  private ImmutableAggregate2015LinkScoringResult computeLinkScores(
-      final List<EALScorer2015Style.Result> perDocResults) {
-    double rawLinkScoreSum = 0.0;
-    double linkNormalizerSum = 0.0;
-    double rawLinkPrecisionSum = 0.0;
-    double rawLinkRecallSum = 0.0;
-    for (final EALScorer2015Style.Result perDocResult : perDocResults) {
-      rawLinkScoreSum += perDocResult.linkResult().unscaledLinkingScore();
-      linkNormalizerSum += perDocResult.linkResult().linkingNormalizer();
-      rawLinkPrecisionSum += perDocResult.linkResult().unscaledLinkingPrecision();
-      rawLinkRecallSum += perDocResult.linkResult().unscaledLinkingRecall();
-    }
-
-    double aggregateLinkScore =
-        (linkNormalizerSum > 0.0) ? rawLinkScoreSum / linkNormalizerSum : 0.0;
-
-    double aggregateLinkPrecision =
-        (linkNormalizerSum > 0.0) ? rawLinkPrecisionSum / linkNormalizerSum : 0.0;
-    double aggregateLinkRecall =
-        (linkNormalizerSum > 0.0) ? rawLinkRecallSum / linkNormalizerSum : 0.0;
-
-    return ImmutableAggregate2015LinkScoringResult.builder()
-        .precision(100.0 * aggregateLinkPrecision)
-        .recall(100.0 * aggregateLinkRecall)
-        .overall(100.0 * aggregateLinkScore).build();
-  }
-
-  static ImmutableAggregate2015ArgScoringResult computeArgScores(
-      final List<EALScorer2015Style.Result> perDocResults) {
-    return computeArgScoresFromArgResults(Lists.transform(perDocResults,
-        new Function<EALScorer2015Style.Result, EALScorer2015Style.ArgResult>() {
-          @Override
-          public EALScorer2015Style.ArgResult apply(final EALScorer2015Style.Result input) {
-            return input.argResult();
-          }
-        }));
-  }
-
-  static ImmutableAggregate2015ArgScoringResult computeArgScoresFromArgResults(
-      final List<EALScorer2015Style.ArgResult> perDocResults) {
-    double rawArgScoreSum = 0.0;
-    double argNormalizerSum = 0.0;
-    double argTruePositives = 0.0;
-    double argFalsePositives = 0.0;
-
-    double argTP = 0.0;
-    double argFP = 0.0;
-    double argFN = 0.0;
-    for (final EALScorer2015Style.ArgResult perDocResult : perDocResults) {
-      rawArgScoreSum += Math.max(0.0, perDocResult.unscaledArgumentScore());
-      argNormalizerSum += perDocResult.argumentNormalizer();
-      argTruePositives += perDocResult.unscaledTruePositiveArguments();
-      argFalsePositives += perDocResult.unscaledFalsePositiveArguments();
-
-      argTP += perDocResult.unscaledTruePositiveArguments();
-      argFP += perDocResult.unscaledFalsePositiveArguments();
-      argFN += perDocResult.unscaledFalseNegativeArguments();
-    }
-
-    double aggregateArgPrecision = (argTruePositives > 0.0)
-                                   ? (argTruePositives) / (argFalsePositives + argTruePositives)
-                                   : 0.0;
-    double aggregateArgRecall =
-        (argTruePositives > 0.0) ? (argTruePositives / argNormalizerSum) : 0.0;
-    double aggregateArgScore = (argNormalizerSum > 0.0) ? rawArgScoreSum / argNormalizerSum : 0.0;
-
-    return ImmutableAggregate2015ArgScoringResult.builder()
-        .precision(100.0 * aggregateArgPrecision)
-        .recall(100.0 * aggregateArgRecall)
-        .overall(100.0 * aggregateArgScore)
-        .truePositives(argTP)
-        .falsePositives(argFP)
-        .falseNegatives(argFN).build();
-  }
-
   public KBP2015Scorer.BootstrappedResultWriterSource asBootstrappedResultWriterSource() {
     return new KBP2015Scorer.BootstrappedResultWriterSource() {
       @Override
@@ -161,8 +97,8 @@ final class AggregateResultWriter implements KBP2015Scorer.SimpleResultWriter {
     private List<ImmutableAggregate2015ScoringResult> results = Lists.newArrayList();
 
     @Override
-    public void observeSample(final Iterable<EALScorer2015Style.Result> perDocResults) {
-      results.add(computeAggregateScore(ImmutableList.copyOf(perDocResults)));
+    public void observeSample(final DocumentScoreTable documentScores, final int[] sample) {
+      results.add(computeAggregateScore(documentScores, sample, lambda));
     }
 
     @Override
@@ -2,14 +2,8 @@ package com.bbn.kbp.events2014.scorer.bin;
 
 import com.bbn.bue.common.io.GZIPByteSink;
 import com.bbn.bue.common.serialization.jackson.JacksonSerializer;
-import com.bbn.bue.common.symbols.Symbol;
-import com.bbn.kbp.events2014.TypeRoleFillerRealisFunctions;
 import com.bbn.kbp.events2014.scorer.ImmutableAggregate2015ArgScoringResult;
-import com.bbn.kbp.linking.EALScorer2015Style;
 
-import com.google.common.base.Function;
-import com.google.common.collect.FluentIterable;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Multiset;
 import com.google.common.collect.Multisets;
@@ -20,9 +14,6 @@ import java.io.IOException;
 import java.util.Collection;
 import java.util.Map;
 
-import static com.google.common.base.Predicates.compose;
-import static com.google.common.base.Predicates.equalTo;
-
 /**
  * Created by rgabbard on 8/24/15.
  */
@@ -34,30 +25,15 @@ public final class BootstrappedPerEventResultWriter
       ImmutableMultimap.builder();
 
   @Override
-  public void observeSample(final Iterable<EALScorer2015Style.Result> perDocResults) {
-    // TODO: refactor this with non-bootstrapped version
-    final Multiset<Symbol>
-        eventTypesSeen = ByEventTypeResultWriter.gatherEventTypesSeen(perDocResults);
+  public void observeSample(final DocumentScoreTable documentScores, final int[] sample) {
+    final Multiset<Integer> eventTypesSeen =
+        ByEventTypeResultWriter.gatherEventTypesSeen(documentScores, sample);
 
-    for (final Multiset.Entry<Symbol> typeEntry : Multisets.copyHighestCountFirst(eventTypesSeen)
+    for (final Multiset.Entry<Integer> typeEntry : Multisets.copyHighestCountFirst(eventTypesSeen)
         .entrySet()) {
-      final Symbol type = typeEntry.getElement();
-      final Function<EALScorer2015Style.ArgResult, EALScorer2015Style.ArgResult>
-          filterFunction =
-          new Function<EALScorer2015Style.ArgResult, EALScorer2015Style.ArgResult>() {
-            @Override
-            public EALScorer2015Style.ArgResult apply(final
-            EALScorer2015Style.ArgResult input) {
-              return input
-                  .copyFiltered(compose(equalTo(type), TypeRoleFillerRealisFunctions.type()));
-            }
-          };
-      final ImmutableList<EALScorer2015Style.ArgResult> relevantArgumentScores =
-          FluentIterable.from(perDocResults).transform(ByEventTypeResultWriter.GET_ARG_SCORES_ONLY)
-              .transform(filterFunction)
-              .toList();
-      eventTypeToArgScores.put(typeEntry.getElement().asString(),
-          AggregateResultWriter.computeArgScoresFromArgResults(relevantArgumentScores));
+      final int typeIndex = typeEntry.getElement();
+      eventTypeToArgScores.put(documentScores.eventTypes().get(typeIndex).asString(),
+          documentScores.argumentCountsForEventType(typeIndex).aggregate(sample));
     }
   }
 
@@ -3,15 +3,11 @@ package com.bbn.kbp.events2014.scorer.bin;
 import com.bbn.bue.common.io.GZIPByteSink;
 import com.bbn.bue.common.serialization.jackson.JacksonSerializer;
 import com.bbn.bue.common.symbols.Symbol;
-import com.bbn.kbp.events2014.TypeRoleFillerRealis;
 import com.bbn.kbp.events2014.scorer.ImmutableAggregate2015ArgScoringResult;
 import com.bbn.kbp.linking.EALScorer2015Style;
 
 import com.google.common.base.Charsets;
-import com.google.common.base.Function;
-import com.google.common.collect.FluentIterable;
 import com.google.common.collect.HashMultiset;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Multiset;
 import com.google.common.collect.Multisets;
 import com.google.common.io.Files;
@@ -20,68 +16,58 @@ import java.io.File;
 import java.io.IOException;
 import java.util.List;
 
-import static com.bbn.kbp.events2014.TypeRoleFillerRealisFunctions.type;
-import static com.google.common.base.Predicates.compose;
-import static com.google.common.base.Predicates.equalTo;
-
 /**
  * Created by rgabbard on 8/10/15.
  */
 public final class ByEventTypeResultWriter implements KBP2015Scorer.SimpleResultWriter {
 
+  @Override
+  public boolean needsResultDetails() {
+    return false;
+  }
+
   @Override
   public void writeResult(final List<EALScorer2015Style.Result> perDocResults,
-      final File eventTypesDir) throws IOException {
-    final Multiset<Symbol> eventTypesSeen = gatherEventTypesSeen(perDocResults);
+      final DocumentScoreTable documentScores, final File eventTypesDir) throws IOException {
+    final int[] allDocs = documentScores.allDocuments();
+    final Multiset<Integer> eventTypesSeen = gatherEventTypesSeen(documentScores, allDocs);
 
-    for (final Multiset.Entry<Symbol> typeEntry : Multisets.copyHighestCountFirst(eventTypesSeen)
+    for (final Multiset.Entry<Integer> typeEntry : Multisets.copyHighestCountFirst(eventTypesSeen)
         .entrySet()) {
-      final Symbol type = typeEntry.getElement();
-      final Function<EALScorer2015Style.ArgResult, EALScorer2015Style.ArgResult>
-          filterFunction =
-          new Function<EALScorer2015Style.ArgResult, EALScorer2015Style.ArgResult>() {
-            @Override
-            public EALScorer2015Style.ArgResult apply(final
-            EALScorer2015Style.ArgResult input) {
-              return input.copyFiltered(compose(equalTo(type), type()));
-            }
-          };
+      final int typeIndex = typeEntry.getElement();
+      final Symbol type = documentScores.eventTypes().get(typeIndex);
       final File eventTypeDir = new File(eventTypesDir, type.asString());
       eventTypeDir.mkdirs();
-      writeOverallArgumentScoresForTransformedResults(perDocResults, filterFunction,
-          eventTypeDir);
+      writeOverallArgumentScores(documentScores,
+          documentScores.argumentCountsForEventType(typeIndex), allDocs, eventTypeDir);
     }
   }
 
-  static Multiset<Symbol> gatherEventTypesSeen(
-      final Iterable<EALScorer2015Style.Result> perDocResults) {
-    final Multiset<Symbol> eventTypesSeen = HashMultiset.create();
-    for (final EALScorer2015Style.Result perDocResult : perDocResults) {
-      for (final TypeRoleFillerRealis trfr : perDocResult.argResult().argumentScoringAlignment()
-          .allEquivalenceClassess()) {
-        eventTypesSeen.add(trfr.type());
+  /**
+   * Counts the true positive and false negative equivalence classes of each event type in
+   * {@code docs}, keyed by the index of the type in {@link DocumentScoreTable#eventTypes()}. Types
+   * with none are omitted.
+   */
+  static Multiset<Integer> gatherEventTypesSeen(final DocumentScoreTable documentScores,
+      final int[] docs) {
+    final Multiset<Integer> eventTypesSeen = HashMultiset.create();
+    for (int typeIndex = 0; typeIndex < documentScores.eventTypes().size(); ++typeIndex) {
+      final int count =
+          documentScores.argumentCountsForEventType(typeIndex).argumentNormalizer(docs);
+      if (count > 0) {
+        eventTypesSeen.add(typeIndex, count);
       }
     }
     return eventTypesSeen;
   }
 
-
-  private void writeOverallArgumentScoresForTransformedResults(
-      final List<EALScorer2015Style.Result> perDocResults,
-      final Function<EALScorer2015Style.ArgResult, EALScorer2015Style.ArgResult> filterFunction,
+  private void writeOverallArgumentScores(final DocumentScoreTable documentScores,
+      final DocumentScoreTable.ArgumentColumns argumentCounts, final int[] docs,
       final File outputDir) throws IOException {
-    // this has a lot of repetition with writeBothScores
-    // we'd like to fix this eventually
-    final ImmutableList<EALScorer2015Style.ArgResult> relevantArgumentScores =
-        FluentIterable.from(perDocResults).transform(GET_ARG_SCORES_ONLY)
-            .transform(filterFunction)
-            .toList();
-
-    PerDocResultWriter.writeArgPerDoc(relevantArgumentScores,
+    PerDocResultWriter.writeArgPerDoc(documentScores, argumentCounts,
         new File(outputDir, "scoresByDocument.txt"));
 
-    final ImmutableAggregate2015ArgScoringResult argScores =
-        AggregateResultWriter.computeArgScoresFromArgResults(relevantArgumentScores);
+    final ImmutableAggregate2015ArgScoringResult argScores = argumentCounts.aggregate(docs);
 
     Files.asCharSink(new File(outputDir, "aggregateScore.txt"), Charsets.UTF_8).write(
         String
@@ -97,16 +83,4 @@ public final class ByEventTypeResultWriter implements KBP2015Scorer.SimpleResult
         .prettyOutput().build();
     jacksonSerializer.serializeTo(argScores, GZIPByteSink.gzipCompress(Files.asByteSink(jsonFile)));
   }
-
-  static final Function<EALScorer2015Style.Result, EALScorer2015Style.ArgResult>
-      GET_ARG_SCORES_ONLY =
-      new Function<EALScorer2015Style.Result, EALScorer2015Style.ArgResult>() {
-        @Override
-        public EALScorer2015Style.ArgResult apply(
-            final EALScorer2015Style.Result input) {
-          return input.argResult();
-        }
-      };
-
-
 }
@@ -38,9 +38,14 @@ final class ChartsAboutData implements KBP2015Scorer.SimpleResultWriter {
     this.renderer = checkNotNull(renderer);
   }
 
+  @Override
+  public boolean needsResultDetails() {
+    return true;
+  }
+
   @Override
   public void writeResult(final List<EALScorer2015Style.Result> perDocResults,
-      final File baseOutputDir) throws IOException {
+      final DocumentScoreTable documentScores, final File baseOutputDir) throws IOException {
     final Multiset<String> truePositives = HashMultiset.create();
     final Multiset<String> falsePositives = HashMultiset.create();
 
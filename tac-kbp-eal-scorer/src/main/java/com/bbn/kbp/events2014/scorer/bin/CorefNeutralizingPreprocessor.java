@@ -2,14 +2,13 @@ package com.bbn.kbp.events2014.scorer.bin;
 
 
 import com.bbn.kbp.events2014.AnswerKey;
-import com.bbn.kbp.events2014.ArgumentOutput;
 import com.bbn.kbp.events2014.AssessedResponse;
 import com.bbn.kbp.events2014.FieldAssessment;
 import com.bbn.kbp.events2014.KBPRealis;
 import com.bbn.kbp.events2014.Response;
-import com.bbn.kbp.events2014.ScoringData;
+import com.bbn.kbp.events2014.transformers.AbstractFusableScoringDataTransformation;
+import com.bbn.kbp.events2014.transformers.FusedScoringDataTransformation;
 import com.bbn.kbp.events2014.transformers.ResponseMapping;
-import com.bbn.kbp.events2014.transformers.ScoringDataTransformation;
 
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
@@ -23,6 +22,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
+import java.util.Set;
 
 import static com.bbn.kbp.events2014.AssessedResponseFunctions.response;
 import static com.google.common.base.Preconditions.checkArgument;
@@ -32,7 +32,7 @@ import static com.google.common.collect.Iterables.filter;
  * This preprocessor alters the system output and the answer key together to try to provide an
  * approximation of what scores would be if a system's CAS resolution were perfect.
  */
-public final class CorefNeutralizingPreprocessor implements ScoringDataTransformation {
+public final class CorefNeutralizingPreprocessor extends AbstractFusableScoringDataTransformation {
 
   private static final Logger log = LoggerFactory.getLogger(CorefNeutralizingPreprocessor.class);
 
@@ -50,14 +50,16 @@ public final class CorefNeutralizingPreprocessor implements ScoringDataTransform
 
 
   @Override
-  public ScoringData transform(final ScoringData input) {
-    checkArgument(input.answerKey().isPresent()
-        && input.argumentOutput().isPresent(), "Both systme output and an answer key must be "
+  public void transform(final FusedScoringDataTransformation.DocumentState state) {
+    checkArgument(state.hasAnswerKey()
+        && state.hasArgumentOutput(), "Both systme output and an answer key must be "
         + "present to neutralize coref");
-    assertRealisIsNeutralized(input);
+    state.mapSystemResponses(computeResponseMapping(state.answerKey(), state.systemResponses()));
+  }
 
-    final AnswerKey answerKey = input.answerKey().get();
-    final ArgumentOutput argumentOutput = input.argumentOutput().get();
+  private ResponseMapping computeResponseMapping(final AnswerKey answerKey,
+      final Set<Response> systemResponses) {
+    assertRealisIsNeutralized(answerKey, systemResponses);
 
     final ImmutableMultimap<String, AssessedResponse> answerKeyByTypeRoleBaseFiller =
         Multimaps.index(filter(answerKey.annotatedResponses(),
@@ -71,7 +73,7 @@ public final class CorefNeutralizingPreprocessor implements ScoringDataTransform
     final ImmutableMap.Builder<Response, Response> responseReplacements = ImmutableMap.builder();
     final ImmutableSet.Builder<Response> toDelete = ImmutableSet.builder();
 
-    for (final Response response : argumentOutput.responses()) {
+    for (final Response response : systemResponses) {
       final AssessedResponse assessedResponse = answerKey.assess(response).get();
       if (FieldAssessment.isAcceptable(assessedResponse.assessment().baseFillerCorrect()) &&
           !FieldAssessment.isAcceptable(assessedResponse.assessment().entityCorrectFiller())) {
@@ -112,13 +114,7 @@ public final class CorefNeutralizingPreprocessor implements ScoringDataTransform
     if (!responseMapping.isIdentity()) {
       log.info("Coref neutralization resulted in {}", responseMapping.summaryString());
     }
-
-    final ScoringData.Builder ret = ScoringData.builder().from(input);
-    ret.argumentOutput(responseMapping.apply(argumentOutput));
-    if (input.systemLinking().isPresent()) {
-      ret.systemLinking(responseMapping.apply(input.systemLinking().get()));
-    }
-    return ret.build();
+    return responseMapping;
   }
 
   @Override
@@ -128,16 +124,22 @@ public final class CorefNeutralizingPreprocessor implements ScoringDataTransform
         swappedCASDifferentBF, deleted);
   }
 
+  @Override
+  public String toString() {
+    return "CorefNeutralizingPreprocessor";
+  }
+
 
-  private void assertRealisIsNeutralized(final ScoringData input) {
-    for (final Response response : input.argumentOutput().get().responses()) {
+  private void assertRealisIsNeutralized(final AnswerKey answerKey,
+      final Set<Response> systemResponses) {
+    for (final Response response : systemResponses) {
       if (response.realis() != KBPRealis.Actual) {
         throw new RuntimeException(
             "CorefNeutralizingProcessor is only intended to be used in conjunction with neutralizing realis");
       }
     }
 
-    for (final AssessedResponse annResponse : input.answerKey().get().annotatedResponses()) {
+    for (final AssessedResponse annResponse : answerKey.annotatedResponses()) {
       if (annResponse.response().realis() != KBPRealis.Actual ||
           (annResponse.assessment().realis().isPresent()
                && annResponse.assessment().realis().get() != KBPRealis.Actual)) {
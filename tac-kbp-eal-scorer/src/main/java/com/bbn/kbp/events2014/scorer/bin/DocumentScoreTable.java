@@ -0,0 +1,431 @@
+package com.bbn.kbp.events2014.scorer.bin;
+
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.kbp.events2014.TypeRoleFillerRealis;
+import com.bbn.kbp.events2014.scorer.ImmutableAggregate2015ArgScoringResult;
+import com.bbn.kbp.events2014.scorer.ImmutableAggregate2015LinkScoringResult;
+import com.bbn.kbp.events2014.scorer.IndexedScoringAligner;
+import com.bbn.kbp.linking.EALScorer2015Style;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import com.google.common.io.CharSink;
+import com.google.common.io.CharSource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The per-document counts behind every score {@link KBP2015Scorer} reports, stored by column.
+ *
+ * For each document this holds the true positive, false positive, and false negative argument
+ * equivalence classes overall and for each event type, along with the linking normalizer,
+ * precision, recall, and F1. Every aggregate and per-document score the result writers report can
+ * be computed from these columns for any multiset of documents, such as a bootstrap sample,
+ * without going back to the per-document results.
+ *
+ * The table can be saved as and loaded from CSV so breakdowns can be recomputed without
+ * rescoring.
+ */
+final class DocumentScoreTable {
+
+  private static final String ALL_TYPES = "*";
+  private static final String BETA_HEADER = "# beta=";
+  private static final String COLUMN_HEADER = "docID,eventType,truePositives,falsePositives,"
+      + "falseNegatives,linkingNormalizer,linkingPrecision,linkingRecall,linkingF1";
+
+  private final double beta;
+  private final ImmutableList<Symbol> docIDs;
+  private final ArgumentColumns allTypes;
+  private final ImmutableList<Symbol> eventTypes;
+  private final ImmutableList<ArgumentColumns> byEventType;
+  private final int[] linkingNormalizers;
+  private final double[] linkingPrecisions;
+  private final double[] linkingRecalls;
+  private final double[] linkingF1s;
+
+  private DocumentScoreTable(final double beta, final List<Symbol> docIDs,
+      final List<Symbol> eventTypes, final List<ArgumentColumns> byEventType,
+      final int[] linkingNormalizers, final double[] linkingPrecisions,
+      final double[] linkingRecalls, final double[] linkingF1s) {
+    checkArgument(beta >= 0.0);
+    this.beta = beta;
+    this.docIDs = ImmutableList.copyOf(docIDs);
+    this.eventTypes = ImmutableList.copyOf(eventTypes);
+    this.byEventType = ImmutableList.copyOf(byEventType);
+    this.linkingNormalizers = checkNotNull(linkingNormalizers);
+    this.linkingPrecisions = checkNotNull(linkingPrecisions);
+    this.linkingRecalls = checkNotNull(linkingRecalls);
+    this.linkingF1s = checkNotNull(linkingF1s);
+    checkArgument(this.eventTypes.size() == this.byEventType.size());
+    final int numDocs = this.docIDs.size();
+    checkArgument(linkingNormalizers.length == numDocs && linkingPrecisions.length == numDocs
+        && linkingRecalls.length == numDocs && linkingF1s.length == numDocs);
+
+    // each equivalence class has exactly one event type, so the overall counts are the sums
+    final int[] truePositives = new int[numDocs];
+    final int[] falsePositives = new int[numDocs];
+    final int[] falseNegatives = new int[numDocs];
+    for (final ArgumentColumns forType : this.byEventType) {
+      checkArgument(forType.truePositives.length == numDocs);
+      for (int doc = 0; doc < numDocs; ++doc) {
+        truePositives[doc] += forType.truePositives[doc];
+        falsePositives[doc] += forType.falsePositives[doc];
+        falseNegatives[doc] += forType.falseNegatives[doc];
+      }
+    }
+    this.allTypes = new ArgumentColumns(beta, truePositives, falsePositives, falseNegatives);
+  }
+
+  static DocumentScoreTable fromResults(final List<EALScorer2015Style.Result> perDocResults,
+      final double beta) {
+    final int numDocs = perDocResults.size();
+    final List<Symbol> docIDs = Lists.newArrayListWithCapacity(numDocs);
+    final Map<Symbol, ArgumentColumns> typeToColumns = Maps.newHashMap();
+    final int[] linkingNormalizers = new int[numDocs];
+    final double[] linkingPrecisions = new double[numDocs];
+    final double[] linkingRecalls = new double[numDocs];
+    final double[] linkingF1s = new double[numDocs];
+
+    for (int doc = 0; doc < numDocs; ++doc) {
+      final EALScorer2015Style.Result result = perDocResults.get(doc);
+      docIDs.add(result.docID());
+
+      final IndexedScoringAligner.Alignment<TypeRoleFillerRealis> alignment =
+          result.argResult().indexedAlignment();
+      final ImmutableList<TypeRoleFillerRealis> equivalenceClasses =
+          alignment.equivalenceClasses();
+      final byte[] outcomeFlags = alignment.outcomeFlags();
+      for (int i = 0; i < equivalenceClasses.size(); ++i) {
+        final byte outcome = outcomeFlags[i];
+        if (outcome != 0) {
+          final Symbol type = equivalenceClasses.get(i).type();
+          ArgumentColumns forType = typeToColumns.get(type);
+          if (forType == null) {
+            forType = new ArgumentColumns(beta, numDocs);
+            typeToColumns.put(type, forType);
+          }
+          forType.add(doc, outcome);
+        }
+      }
+
+      final EALScorer2015Style.LinkResult linkResult = result.linkResult();
+      linkingNormalizers[doc] = (int) linkResult.linkingNormalizer();
+      linkingPrecisions[doc] = linkResult.scaledLinkingPrecision();
+      linkingRecalls[doc] = linkResult.scaledLinkingRecall();
+      linkingF1s[doc] = linkResult.scaledLinkingScore();
+    }
+
+    final List<Symbol> eventTypes = Ordering.usingToString().sortedCopy(typeToColumns.keySet());
+    final List<ArgumentColumns> byEventType = Lists.newArrayList();
+    for (final Symbol eventType : eventTypes) {
+      byEventType.add(typeToColumns.get(eventType));
+    }
+    return new DocumentScoreTable(beta, docIDs, eventTypes, byEventType, linkingNormalizers,
+        linkingPrecisions, linkingRecalls, linkingF1s);
+  }
+
+  int numDocuments() {
+    return docIDs.size();
+  }
+
+  Symbol docID(final int doc) {
+    return docIDs.get(doc);
+  }
+
+  /**
+   * The indices of every document, in order.
+   */
+  int[] allDocuments() {
+    final int[] ret = new int[numDocuments()];
+    for (int i = 0; i < ret.length; ++i) {
+      ret[i] = i;
+    }
+    return ret;
+  }
+
+  double beta() {
+    return beta;
+  }
+
+  /**
+   * Event types with any true positive, false positive, or false negative, sorted by name.
+   */
+  ImmutableList<Symbol> eventTypes() {
+    return eventTypes;
+  }
+
+  ArgumentColumns argumentCounts() {
+    return allTypes;
+  }
+
+  /**
+   * Argument counts restricted to equivalence classes of the event type at {@code typeIndex} in
+   * {@link #eventTypes()}.
+   */
+  ArgumentColumns argumentCountsForEventType(final int typeIndex) {
+    return byEventType.get(typeIndex);
+  }
+
+  double scaledLinkingPrecision(final int doc) {
+    return linkingPrecisions[doc];
+  }
+
+  double scaledLinkingRecall(final int doc) {
+    return linkingRecalls[doc];
+  }
+
+  double scaledLinkingScore(final int doc) {
+    return linkingF1s[doc];
+  }
+
+  /**
+   * Computes the aggregate linking scores over {@code docs}, which may contain repeats. Each
+   * document is weighted by its linking normalizer.
+   */
+  ImmutableAggregate2015LinkScoringResult aggregateLinkScores(final int[] docs) {
+    double rawLinkScoreSum = 0.0;
+    double linkNormalizerSum = 0.0;
+    double rawLinkPrecisionSum = 0.0;
+    double rawLinkRecallSum = 0.0;
+    for (final int doc : docs) {
+      final double normalizer = linkingNormalizers[doc];
+      rawLinkScoreSum += linkingF1s[doc] * normalizer;
+      linkNormalizerSum += normalizer;
+      rawLinkPrecisionSum += linkingPrecisions[doc] * normalizer;
+      rawLinkRecallSum += linkingRecalls[doc] * normalizer;
+    }
+
+    final double aggregateLinkScore =
+        (linkNormalizerSum > 0.0) ? rawLinkScoreSum / linkNormalizerSum : 0.0;
+    final double aggregateLinkPrecision =
+        (linkNormalizerSum > 0.0) ? rawLinkPrecisionSum / linkNormalizerSum : 0.0;
+    final double aggregateLinkRecall =
+        (linkNormalizerSum > 0.0) ? rawLinkRecallSum / linkNormalizerSum : 0.0;
+
+    return ImmutableAggregate2015LinkScoringResult.builder()
+        .precision(100.0 * aggregateLinkPrecision)
+        .recall(100.0 * aggregateLinkRecall)
+        .overall(100.0 * aggregateLinkScore).build();
+  }
+
+  /**
+   * Writes one row per document for the counts over all event types and its linking scores,
+   * followed by one row for each event type with any counts in that document.
+   */
+  void writeTo(final CharSink sink) throws IOException {
+    try (Writer out = sink.openBufferedStream()) {
+      out.write(BETA_HEADER + beta + "\n");
+      out.write(COLUMN_HEADER + "\n");
+      for (int doc = 0; doc < numDocuments(); ++doc) {
+        final String docID = docIDs.get(doc).asString();
+        out.write(docID + "," + ALL_TYPES + "," + allTypes.truePositives[doc] + ","
+            + allTypes.falsePositives[doc] + "," + allTypes.falseNegatives[doc] + ","
+            + linkingNormalizers[doc] + "," + linkingPrecisions[doc] + ","
+            + linkingRecalls[doc] + "," + linkingF1s[doc] + "\n");
+        for (int type = 0; type < eventTypes.size(); ++type) {
+          final ArgumentColumns forType = byEventType.get(type);
+          if (forType.truePositives[doc] + forType.falsePositives[doc]
+              + forType.falseNegatives[doc] > 0) {
+            out.write(docID + "," + eventTypes.get(type).asString() + ","
+                + forType.truePositives[doc] + "," + forType.falsePositives[doc] + ","
+                + forType.falseNegatives[doc] + ",,,,\n");
+          }
+        }
+      }
+    }
+  }
+
+  static DocumentScoreTable loadFrom(final CharSource source) throws IOException {
+    final Splitter onComma = Splitter.on(',');
+    final List<String> docIDStrings = Lists.newArrayList();
+    final List<String[]> overallRows = Lists.newArrayList();
+    // event type name -> (document index, tp, fp, fn) rows
+    final Map<String, List<int[]>> typeRows = Maps.newHashMap();
+    double beta = Double.NaN;
+
+    try (BufferedReader in = source.openBufferedStream()) {
+      String line;
+      int lineNo = 0;
+      while ((line = in.readLine()) != null) {
+        ++lineNo;
+        if (line.startsWith(BETA_HEADER)) {
+          beta = Double.parseDouble(line.substring(BETA_HEADER.length()));
+          continue;
+        }
+        if (line.isEmpty() || line.equals(COLUMN_HEADER)) {
+          continue;
+        }
+        final List<String> fields = onComma.splitToList(line);
+        if (fields.size() != 9) {
+          throw new IOException("Expected 9 fields on line " + lineNo + " but got " + line);
+        }
+        if (fields.get(1).equals(ALL_TYPES)) {
+          docIDStrings.add(fields.get(0));
+          overallRows.add(fields.toArray(new String[fields.size()]));
+        } else {
+          checkArgument(!docIDStrings.isEmpty()
+                  && docIDStrings.get(docIDStrings.size() - 1).equals(fields.get(0)),
+              "Event type row on line %s does not follow its document's row", lineNo);
+          List<int[]> rows = typeRows.get(fields.get(1));
+          if (rows == null) {
+            rows = Lists.newArrayList();
+            typeRows.put(fields.get(1), rows);
+          }
+          rows.add(new int[]{docIDStrings.size() - 1, Integer.parseInt(fields.get(2)),
+              Integer.parseInt(fields.get(3)), Integer.parseInt(fields.get(4))});
+        }
+      }
+    }
+    checkArgument(!Double.isNaN(beta), "Document score table lacks a beta header");
+
+    final int numDocs = docIDStrings.size();
+    final List<Symbol> docIDs = Lists.newArrayListWithCapacity(numDocs);
+    final int[] linkingNormalizers = new int[numDocs];
+    final double[] linkingPrecisions = new double[numDocs];
+    final double[] linkingRecalls = new double[numDocs];
+    final double[] linkingF1s = new double[numDocs];
+    for (int doc = 0; doc < numDocs; ++doc) {
+      final String[] row = overallRows.get(doc);
+      docIDs.add(Symbol.from(row[0]));
+      linkingNormalizers[doc] = Integer.parseInt(row[5]);
+      linkingPrecisions[doc] = Double.parseDouble(row[6]);
+      linkingRecalls[doc] = Double.parseDouble(row[7]);
+      linkingF1s[doc] = Double.parseDouble(row[8]);
+    }
+
+    final List<String> typeNames = Ordering.natural().sortedCopy(typeRows.keySet());
+    final List<Symbol> eventTypes = Lists.newArrayList();
+    final List<ArgumentColumns> byEventType = Lists.newArrayList();
+    for (final String typeName : typeNames) {
+      final ArgumentColumns forType = new ArgumentColumns(beta, numDocs);
+      for (final int[] row : typeRows.get(typeName)) {
+        forType.truePositives[row[0]] += row[1];
+        forType.falsePositives[row[0]] += row[2];
+        forType.falseNegatives[row[0]] += row[3];
+      }
+      eventTypes.add(Symbol.from(typeName));
+      byEventType.add(forType);
+    }
+
+    final DocumentScoreTable ret = new DocumentScoreTable(beta, docIDs, eventTypes, byEventType,
+        linkingNormalizers, linkingPrecisions, linkingRecalls, linkingF1s);
+    for (int doc = 0; doc < numDocs; ++doc) {
+      final String[] row = overallRows.get(doc);
+      checkArgument(ret.allTypes.truePositives[doc] == Integer.parseInt(row[2])
+              && ret.allTypes.falsePositives[doc] == Integer.parseInt(row[3])
+              && ret.allTypes.falseNegatives[doc] == Integer.parseInt(row[4]),
+          "Event type counts for %s do not sum to its overall counts", row[0]);
+    }
+    return ret;
+  }
+
+  /**
+   * Per-document argument equivalence class counts, either overall or for one event type.
+   */
+  static final class ArgumentColumns {
+
+    private final double beta;
+    private final int[] truePositives;
+    private final int[] falsePositives;
+    private final int[] falseNegatives;
+
+    private ArgumentColumns(final double beta, final int numDocs) {
+      this(beta, new int[numDocs], new int[numDocs], new int[numDocs]);
+    }
+
+    private ArgumentColumns(final double beta, final int[] truePositives,
+        final int[] falsePositives, final int[] falseNegatives) {
+      this.beta = beta;
+      this.truePositives = truePositives;
+      this.falsePositives = falsePositives;
+      this.falseNegatives = falseNegatives;
+    }
+
+    private void add(final int doc, final byte outcome) {
+      if ((outcome & IndexedScoringAligner.TRUE_POSITIVE) != 0) {
+        ++truePositives[doc];
+      }
+      if ((outcome & IndexedScoringAligner.FALSE_POSITIVE) != 0) {
+        ++falsePositives[doc];
+      }
+      if ((outcome & IndexedScoringAligner.FALSE_NEGATIVE) != 0) {
+        ++falseNegatives[doc];
+      }
+    }
+
+    /**
+     * The number of equivalence classes counted by the argument normalizer of {@code doc}.
+     */
+    int argumentNormalizer(final int doc) {
+      // true positive and false negative equivalence classes never overlap
+      return truePositives[doc] + falseNegatives[doc];
+    }
+
+    double unscaledArgumentScore(final int doc) {
+      return (double) truePositives[doc] - beta * falsePositives[doc];
+    }
+
+    double scaledArgumentScore(final int doc) {
+      return unscaledArgumentScore(doc) / argumentNormalizer(doc);
+    }
+
+    /**
+     * The sum of the argument normalizers of {@code docs}.
+     */
+    int argumentNormalizer(final int[] docs) {
+      int ret = 0;
+      for (final int doc : docs) {
+        ret += argumentNormalizer(doc);
+      }
+      return ret;
+    }
+
+    /**
+     * Computes the aggregate argument scores over {@code docs}, which may contain repeats. Each
+     * document's argument score is floored at zero before summing.
+     */
+    ImmutableAggregate2015ArgScoringResult aggregate(final int[] docs) {
+      double rawArgScoreSum = 0.0;
+      double argNormalizerSum = 0.0;
+      double argTP = 0.0;
+      double argFP = 0.0;
+      double argFN = 0.0;
+      for (final int doc : docs) {
+        rawArgScoreSum += Math.max(0.0, unscaledArgumentScore(doc));
+        argNormalizerSum += argumentNormalizer(doc);
+        argTP += truePositives[doc];
+        argFP += falsePositives[doc];
+        argFN += falseNegatives[doc];
+      }
+
+      final double aggregateArgPrecision = (argTP > 0.0) ? (argTP) / (argFP + argTP) : 0.0;
+      final double aggregateArgRecall = (argTP > 0.0) ? (argTP / argNormalizerSum) : 0.0;
+      final double aggregateArgScore =
+          (argNormalizerSum > 0.0) ? rawArgScoreSum / argNormalizerSum : 0.0;
+
+      return ImmutableAggregate2015ArgScoringResult.builder()
+          .precision(100.0 * aggregateArgPrecision)
+          .recall(100.0 * aggregateArgRecall)
+          .overall(100.0 * aggregateArgScore)
+          .truePositives(argTP)
+          .falsePositives(argFP)
+          .falseNegatives(argFN).build();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "DocumentScoreTable[" + numDocuments() + " documents, " + eventTypes.size()
+        + " event types, beta=" + beta + "]";
+  }
+}
@@ -1,8 +1,8 @@
 package com.bbn.kbp.events2014.scorer.bin;
 
-import com.bbn.bue.common.io.GZIPByteSource;
+import com.bbn.bue.common.collections.BootstrapIterator;
 import com.bbn.bue.common.parameters.Parameters;
-import com.bbn.bue.common.serialization.jackson.JacksonSerializer;
+import com.bbn.bue.common.symbols.Symbol;
 import com.bbn.bue.gnuplot.Axis;
 import com.bbn.bue.gnuplot.BoxPlot;
 import com.bbn.bue.gnuplot.ClusteredBarChart;
@@ -18,25 +18,28 @@ import com.bbn.bue.gnuplot.ScatterData;
 import com.bbn.bue.gnuplot.ScatterPlot;
 import com.bbn.bue.gnuplot.StackedBarChart;
 import com.bbn.kbp.events2014.scorer.Aggregate2015ScoringResult;
+import com.bbn.kbp.linking.EALScorer2015Style;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Function;
-import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Range;
 import com.google.common.io.Files;
 import com.google.common.primitives.Doubles;
+import com.google.common.primitives.Ints;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-
-import static com.google.common.base.Functions.compose;
+import java.util.Random;
 
 /**
  * @author Yee Seng Chan
@@ -74,67 +77,41 @@ public final class GraphAnalyses {
   }
 
   private static void plotOverallScores(final File scoringRoot, final File outputDir,
-      final GnuPlotRenderer renderer, final List<String> systemNames) throws IOException {
-    // a Function mapping a system's name to the file with its bootstrapped overall scores
-    final Function<String, File> systemToOverallScoreFile = new Function<String, File>() {
-      @Override
-      public File apply(final String systemName) {
-        return new File(new File(new File(scoringRoot, systemName), "aggregate"),
-            "aggregate.bootstrapped.json");
-      }
-    };
-
+      final GnuPlotRenderer renderer, final List<String> systemNames,
+      final Bootstrapper bootstrapper) throws IOException {
     // a map from systems to the bootstrapped samples of their overall scores
-    final Map<String, List<Double>> overallScoreMap = FluentIterable.from(systemNames)
-        .toMap(compose(deserializeAndTransformFunction(EXTRACT_OVERALL_SCORE),
-            systemToOverallScoreFile));
+    final Map<String, List<Double>> scoreMap =
+        bootstrappedScores(scoringRoot, systemNames, bootstrapper, EXTRACT_OVERALL_SCORE);
 
-    boxPlot(overallScoreMap, renderer, "Overall score by System", "Overall score",
+    boxPlot(scoreMap, renderer, "Overall score by System", "Overall score",
         new File(outputDir, "scoresGraph.png"));
   }
 
   private static void plotArgumentScores(final File scoringRoot, final File outputDir,
-      final GnuPlotRenderer renderer, final List<String> systemNames) throws IOException {
-    // a Function mapping a system's name to the file with its bootstrapped overall scores
-    final Function<String, File> systemToOverallScoreFile = new Function<String, File>() {
-      @Override
-      public File apply(final String systemName) {
-        return new File(new File(new File(scoringRoot, systemName), "aggregate"),
-            "aggregate.bootstrapped.json");
-      }
-    };
+      final GnuPlotRenderer renderer, final List<String> systemNames,
+      final Bootstrapper bootstrapper) throws IOException {
+    // a map from systems to the bootstrapped samples of their argument scores
+    final Map<String, List<Double>> scoreMap =
+        bootstrappedScores(scoringRoot, systemNames, bootstrapper, EXTRACT_ARGUMENT_SCORE);
 
-    // a map from systems to the bootstrapped samples of their overall scores
-    final Map<String, List<Double>> overallScoreMap = FluentIterable.from(systemNames)
-        .toMap(compose(deserializeAndTransformFunction(EXTRACT_ARGUMENT_SCORE),
-            systemToOverallScoreFile));
-
-    boxPlot(overallScoreMap, renderer, "Argument score by System", "Argument score",
+    boxPlot(scoreMap, renderer, "Argument score by System", "Argument score",
         new File(outputDir, "argumentScoresGraph.png"));
   }
 
   private static void plotArgumentF1(final File scoringRoot, final File outputDir,
-      final GnuPlotRenderer renderer, final List<String> systemNames) throws IOException {
-    // a Function mapping a system's name to the file with its bootstrapped overall scores
-    final Function<String, File> systemToOverallScoreFile = new Function<String, File>() {
-      @Override
-      public File apply(final String systemName) {
-        return new File(new File(new File(scoringRoot, systemName), "aggregate"),
-            "aggregate.bootstrapped.json");
-      }
-    };
+      final GnuPlotRenderer renderer, final List<String> systemNames,
+      final Bootstrapper bootstrapper) throws IOException {
+    // a map from systems to the bootstrapped samples of their argument F1s
+    final Map<String, List<Double>> scoreMap =
+        bootstrappedScores(scoringRoot, systemNames, bootstrapper, EXTRACT_ARGUMENT_F1);
 
-    // a map from systems to the bootstrapped samples of their overall scores
-    final Map<String, List<Double>> overallScoreMap = FluentIterable.from(systemNames)
-        .toMap(compose(deserializeAndTransformFunction(EXTRACT_ARGUMENT_F1),
-            systemToOverallScoreFile));
-
-    boxPlot(overallScoreMap, renderer, "Argument F1 by System", "Argument F1",
+    boxPlot(scoreMap, renderer, "Argument F1 by System", "Argument F1",
         new File(outputDir, "argumentF1Graph.png"));
   }
 
   private static void plotLinkingScores(final File outputDir,
       final GnuPlotRenderer renderer, final Parameters params) throws IOException {
+    final Bootstrapper bootstrapper = Bootstrapper.fromParameters(params);
 
     final File systemScoreRoot = params.getExistingDirectory("linking.system.scoreDirectory");
     final File baselineScoreRoot = params.getExistingDirectory("linking.baseline.scoreDirectory");
@@ -143,20 +120,20 @@ public final class GraphAnalyses {
     final List<String> systemNames = gatherSystemNames(systemScoreRoot);
 
     // system bootstrap scores
-    final Map<String, List<Double>> bootstrapScoreMap = extractLinkingScores(systemScoreRoot,
-        "aggregate.bootstrapped.json", systemNames);
+    final Map<String, List<Double>> bootstrapScoreMap = bootstrappedScores(systemScoreRoot,
+        systemNames, bootstrapper, EXTRACT_LINKING_SCORE);
     boxPlot(bootstrapScoreMap, renderer, "Linking bootstrap score by System", "Linking score",
         new File(outputDir, "linkingBootstrapScoresGraph.png"));
 
     // system scores
     final Map<String, Double> systemScoreMap = extractScore(systemScoreRoot,
-        "aggregateScore.json", systemNames, EXTRACT_LINKING_SCORE);
+        systemNames, EXTRACT_LINKING_SCORE);
     // baseline scores
     final Map<String, Double> baselineScoreMap = extractScore(baselineScoreRoot,
-        "aggregateScore.json", systemNames, EXTRACT_LINKING_SCORE);
+        systemNames, EXTRACT_LINKING_SCORE);
     // max scores
     final Map<String, Double> maxScoreMap = extractScore(maxScoreRoot,
-        "aggregateScore.json", systemNames, EXTRACT_LINKING_SCORE);
+        systemNames, EXTRACT_LINKING_SCORE);
 
     final ImmutableList.Builder<Map<String, Double>> scoresMaps = ImmutableList.builder();
     scoresMaps.add(baselineScoreMap);
@@ -198,13 +175,13 @@ public final class GraphAnalyses {
 
     // ==== Overall scores ====
     final Map<String, Double> withRealisScoreMap = extractScore(withRealisScoreRoot,
-        "aggregateScore.json", systemNames, EXTRACT_OVERALL_SCORE);
+        systemNames, EXTRACT_OVERALL_SCORE);
     final Map<String, Double> neutraliseRealisScoreMap = extractScore(neutralizeRealisScoreRoot,
-        "aggregateScore.json", systemNames, EXTRACT_OVERALL_SCORE);
+        systemNames, EXTRACT_OVERALL_SCORE);
     //final Map<String, Double> neutraliseCorefScoreMap = extractScore(neutralizeCorefScoreRoot,
-    //    "aggregateScore.json", systemNames, EXTRACT_OVERALL_SCORE);
+    //    systemNames, EXTRACT_OVERALL_SCORE);
     final Map<String, Double> neutraliseRealisCorefScoreMap = extractScore(neutralizeRealisCorefScoreRoot,
-        "aggregateScore.json", systemNames, EXTRACT_OVERALL_SCORE);
+        systemNames, EXTRACT_OVERALL_SCORE);
 
     final ImmutableList.Builder<Map<String, Double>> scoresMaps = ImmutableList.builder();
     scoresMaps.add(withRealisScoreMap);
@@ -218,13 +195,13 @@ public final class GraphAnalyses {
 
     // ==== Argument scores ====
     final Map<String, Double> withRealisArgScoreMap = extractScore(withRealisScoreRoot,
-        "aggregateScore.json", systemNames, EXTRACT_ARGUMENT_SCORE);
+        systemNames, EXTRACT_ARGUMENT_SCORE);
     final Map<String, Double> neutraliseRealisArgScoreMap = extractScore(neutralizeRealisScoreRoot,
-        "aggregateScore.json", systemNames, EXTRACT_ARGUMENT_SCORE);
+        systemNames, EXTRACT_ARGUMENT_SCORE);
     //final Map<String, Double> neutraliseCorefArgScoreMap = extractScore(neutralizeCorefScoreRoot,
-    //    "aggregateScore.json", systemNames, EXTRACT_ARGUMENT_SCORE);
+    //    systemNames, EXTRACT_ARGUMENT_SCORE);
     final Map<String, Double> neutraliseRealisCorefArgScoreMap = extractScore(neutralizeRealisCorefScoreRoot,
-        "aggregateScore.json", systemNames, EXTRACT_ARGUMENT_SCORE);
+        systemNames, EXTRACT_ARGUMENT_SCORE);
 
     final ImmutableList.Builder<Map<String, Double>> argScoresMaps = ImmutableList.builder();
     argScoresMaps.add(withRealisArgScoreMap);
@@ -268,10 +245,10 @@ public final class GraphAnalyses {
     final List<String> systemNames = gatherSystemNames(scoreRoot);
 
     final Map<String, Double> precisionMap = extractScore(scoreRoot,
-        "aggregateScore.json", systemNames, EXTRACT_ARGUMENT_PRECISION);
+        systemNames, EXTRACT_ARGUMENT_PRECISION);
 
     final Map<String, Double> recallMap = extractScore(scoreRoot,
-        "aggregateScore.json", systemNames, EXTRACT_ARGUMENT_RECALL);
+        systemNames, EXTRACT_ARGUMENT_RECALL);
 
     final ImmutableList.Builder<Map<String, Double>> scoresMaps = ImmutableList.builder();
     scoresMaps.add(recallMap);
@@ -288,37 +265,28 @@ public final class GraphAnalyses {
   }
 
   private static void plotPerEventScores(final File scoringRoot, final File outputDir,
-      final GnuPlotRenderer renderer, final List<String> systemNames) throws IOException {
-
-    final List<String> eventTypes = gatherSystemNames(new File(new File(scoringRoot, systemNames.get(0)), "byEventTypes"));
-
-    for(final String eventType : eventTypes) {
-      // a Function mapping a system's name to the file with its bootstrapped overall scores
-      final Function<String, File> systemToOverallScoreFile = new Function<String, File>() {
-        @Override
-        public File apply(final String systemName) {
-          return new File(new File(new File(new File(scoringRoot, systemName), "byEventTypes"), eventType),
-              "aggregateScore.json");
-        }
-      };
-
-
-      // a map from systems to the bootstrapped samples of their overall scores
-      final Map<String, List<Double>> overallScoreMap = FluentIterable.from(systemNames)
-          .toMap(compose(deserializeAndTransformFunction(EXTRACT_OVERALL_SCORE),
-              systemToOverallScoreFile));
-
-      boxPlot(overallScoreMap, renderer, "Overall score for "+eventType, "Overall score",
-          new File(outputDir, eventType+"_overallGraph.png"));
-
+      final GnuPlotRenderer renderer, final List<String> systemNames,
+      final Bootstrapper bootstrapper) throws IOException {
+    final Map<String, DocumentScoreTable> tablesBySystem = Maps.newHashMap();
+    for (final String systemName : systemNames) {
+      tablesBySystem.put(systemName, loadDocumentScores(scoringRoot, systemName));
+    }
 
+    // linking is not scored by event type, so we plot only argument scores
+    for (final Symbol eventType : tablesBySystem.get(systemNames.get(0)).eventTypes()) {
       // a map from systems to the bootstrapped samples of their argument scores
-      final Map<String, List<Double>> argumentScoreMap = FluentIterable.from(systemNames)
-          .toMap(compose(deserializeAndTransformFunction(EXTRACT_ARGUMENT_SCORE),
-              systemToOverallScoreFile));
+      final Map<String, List<Double>> argumentScoreMap = Maps.newLinkedHashMap();
+      for (final String systemName : systemNames) {
+        final DocumentScoreTable table = tablesBySystem.get(systemName);
+        final int typeIndex = table.eventTypes().indexOf(eventType);
+        if (typeIndex >= 0) {
+          argumentScoreMap.put(systemName, bootstrapper.argumentScores(table,
+              table.argumentCountsForEventType(typeIndex)));
+        }
+      }
 
-      boxPlot(overallScoreMap, renderer, "Argument score for "+eventType, "Argument score",
-          new File(outputDir, eventType+"_argumentGraph.png"));
+      boxPlot(argumentScoreMap, renderer, "Argument score for " + eventType, "Argument score",
+          new File(outputDir, eventType + "_argumentGraph.png"));
     }
   }
 
@@ -341,46 +309,45 @@ public final class GraphAnalyses {
     return ret.build();
   }
 
-  private static Map<String, List<Double>> extractLinkingScores(final File scoringRoot, final String filename,
-      final List<String> systemNames) throws IOException {
-    // a Function mapping a system's name to the file with its bootstrapped overall scores
-    final Function<String, File> systemToOverallScoreFile = new Function<String, File>() {
-      @Override
-      public File apply(final String systemName) {
-        return new File(new File(new File(scoringRoot, systemName), "aggregate"),
-            filename);
-      }
-    };
-
-    // a map from systems to the bootstrapped samples of their overall scores
-    final Map<String, List<Double>> overallScoreMap = FluentIterable.from(systemNames)
-        .toMap(compose(deserializeAndTransformFunction(EXTRACT_LINKING_SCORE),
-            systemToOverallScoreFile));
-
-    return overallScoreMap;
-  }
-
-  private static Map<String, Double> extractScore(final File scoringRoot, final String filename,
+  /**
+   * Gets each system's score over the whole corpus, computed from its per-document score table.
+   */
+  private static Map<String, Double> extractScore(final File scoringRoot,
       final List<String> systemNames,
       final Function<Aggregate2015ScoringResult, Double> scoreExtractionFunction) throws IOException {
-    // a Function mapping a system's name to the file with its bootstrapped overall scores
-    final Function<String, File> systemToOverallScoreFile = new Function<String, File>() {
-      @Override
-      public File apply(final String systemName) {
-        return new File(new File(new File(scoringRoot, systemName), "aggregate"),
-            filename);
-      }
-    };
-
-    // a map from systems to the bootstrapped samples of their overall scores
-    final Map<String, Double> overallScoreMap = FluentIterable.from(systemNames)
-        .toMap(compose(deserializeSingleAndTransformFunction(scoreExtractionFunction),
-            systemToOverallScoreFile));
-
-    return overallScoreMap;
+    final Map<String, Double> ret = Maps.newLinkedHashMap();
+    for (final String systemName : systemNames) {
+      final DocumentScoreTable table = loadDocumentScores(scoringRoot, systemName);
+      ret.put(systemName, scoreExtractionFunction.apply(
+          AggregateResultWriter.computeAggregateScore(table, table.allDocuments(), LAMBDA)));
+    }
+    return ret;
   }
 
+  /**
+   * Gets bootstrapped samples of each system's score, computed from its per-document score table.
+   */
+  private static Map<String, List<Double>> bootstrappedScores(final File scoringRoot,
+      final List<String> systemNames, final Bootstrapper bootstrapper,
+      final Function<Aggregate2015ScoringResult, Double> scoreExtractionFunction)
+      throws IOException {
+    final Map<String, List<Double>> ret = Maps.newLinkedHashMap();
+    for (final String systemName : systemNames) {
+      ret.put(systemName, bootstrapper.aggregateScores(
+          loadDocumentScores(scoringRoot, systemName), scoreExtractionFunction));
+    }
+    return ret;
+  }
 
+  /**
+   * Loads the per-document score table {@link KBP2015Scorer} wrote for a system.
+   */
+  private static DocumentScoreTable loadDocumentScores(final File scoringRoot,
+      final String systemName) throws IOException {
+    return DocumentScoreTable.loadFrom(Files.asCharSource(
+        new File(new File(scoringRoot, systemName), KBP2015Scorer.DOCUMENT_SCORES_FILE),
+        Charsets.UTF_8));
+  }
 
   private static List<String> gatherSystemNames(final File scoringRoot) {
     final ImmutableList.Builder<String> ret = ImmutableList.builder();
@@ -514,46 +481,55 @@ public final class GraphAnalyses {
     renderer.renderTo(chartBuilder.build(), outFile);
   }
 
-  @SuppressWarnings("unchecked")
-  static <T, V> Function<File, List<V>> deserializeAndTransformFunction(
-      final Function<T, V> transformer)
-      throws IOException {
-    final JacksonSerializer jacksonSerializer = JacksonSerializer.json().prettyOutput().build();
+  /**
+   * Draws bootstrap samples of a corpus's documents the way {@link KBP2015Scorer} does, so given
+   * the scorer's {@code bootstrapSeed} and {@code bootstrapSamples} we plot the same samples it
+   * reported.
+   */
+  private static final class Bootstrapper {
 
-    return new Function<File, List<V>>() {
-      @Override
-      public List<V> apply(final File f) {
-        final FluentIterable<T> from;
-        try {
-          from = FluentIterable.from((Iterable<T>) jacksonSerializer
-              .deserializeFrom(GZIPByteSource.fromCompressed(Files.asByteSource(f))));
-        } catch (IOException e) {
-          throw new RuntimeException(e);
-        }
-        return from.transform(transformer).toList();
+    private final int seed;
+    private final int numSamples;
+
+    private Bootstrapper(final int seed, final int numSamples) {
+      this.seed = seed;
+      this.numSamples = numSamples;
+    }
+
+    static Bootstrapper fromParameters(final Parameters params) {
+      return new Bootstrapper(params.getInteger("bootstrapSeed"),
+          params.getPositiveInteger("bootstrapSamples"));
+    }
+
+    List<Double> aggregateScores(final DocumentScoreTable table,
+        final Function<Aggregate2015ScoringResult, Double> scoreExtractionFunction) {
+      final ImmutableList.Builder<Double> ret = ImmutableList.builder();
+      for (final int[] sample : samples(table)) {
+        ret.add(scoreExtractionFunction.apply(
+            AggregateResultWriter.computeAggregateScore(table, sample, LAMBDA)));
       }
-    };
-  }
+      return ret.build();
+    }
 
-  @SuppressWarnings("unchecked")
-  static <T, V> Function<File, V> deserializeSingleAndTransformFunction(
-      final Function<T, V> transformer)
-      throws IOException {
-    final JacksonSerializer jacksonSerializer = JacksonSerializer.json().prettyOutput().build();
+    List<Double> argumentScores(final DocumentScoreTable table,
+        final DocumentScoreTable.ArgumentColumns argumentCounts) {
+      final ImmutableList.Builder<Double> ret = ImmutableList.builder();
+      for (final int[] sample : samples(table)) {
+        ret.add(argumentCounts.aggregate(sample).overall());
+      }
+      return ret.build();
+    }
 
-    return new Function<File, V>() {
-      @Override
-      public V apply(final File f) {
-        final T from;
-        try {
-          from = (T) jacksonSerializer
-              .deserializeFrom(GZIPByteSource.fromCompressed(Files.asByteSource(f)));
-        } catch (IOException e) {
-          throw new RuntimeException(e);
-        }
-        return transformer.apply(from);
+    private List<int[]> samples(final DocumentScoreTable table) {
+      // a bootstrap iterator always has .next()
+      final Iterator<Collection<Integer>> bootstrapIt = BootstrapIterator.forData(
+          Ints.asList(table.allDocuments()), new Random(seed));
+      final List<int[]> ret = Lists.newArrayListWithCapacity(numSamples);
+      for (int i = 0; i < numSamples; ++i) {
+        ret.add(Ints.toArray(bootstrapIt.next()));
       }
-    };
+      return ret;
+    }
   }
 
   public enum ScoreType {
@@ -563,7 +539,8 @@ public final class GraphAnalyses {
           final GnuPlotRenderer renderer, final Parameters params) throws IOException {
         final File scoringRoot = params.getExistingDirectory("scoringDirectory");
         final List<String> systemNames = gatherSystemNames(scoringRoot);
-        plotOverallScores(scoringRoot, outputDir, renderer, systemNames);
+        plotOverallScores(scoringRoot, outputDir, renderer, systemNames,
+            Bootstrapper.fromParameters(params));
       }
     }, ARGUMENT {
       @Override
@@ -571,7 +548,8 @@ public final class GraphAnalyses {
           final GnuPlotRenderer renderer, final Parameters params) throws IOException {
         final File scoringRoot = params.getExistingDirectory("scoringDirectory");
         final List<String> systemNames = gatherSystemNames(scoringRoot);
-        plotArgumentScores(scoringRoot, outputDir, renderer, systemNames);
+        plotArgumentScores(scoringRoot, outputDir, renderer, systemNames,
+            Bootstrapper.fromParameters(params));
       }
     }, F1 {
       @Override
@@ -579,7 +557,8 @@ public final class GraphAnalyses {
           final GnuPlotRenderer renderer, final Parameters params) throws IOException {
         final File scoringRoot = params.getExistingDirectory("scoringDirectory");
         final List<String> systemNames = gatherSystemNames(scoringRoot);
-        plotArgumentF1(scoringRoot, outputDir, renderer, systemNames);
+        plotArgumentF1(scoringRoot, outputDir, renderer, systemNames,
+            Bootstrapper.fromParameters(params));
       }
     }, LINKING {
       @Override
@@ -605,7 +584,8 @@ public final class GraphAnalyses {
           final GnuPlotRenderer renderer, final Parameters params) throws IOException {
         final File scoringRoot = params.getExistingDirectory("scoringDirectory");
         final List<String> systemNames = gatherSystemNames(scoringRoot);
-        plotPerEventScores(scoringRoot, outputDir, renderer, systemNames);
+        plotPerEventScores(scoringRoot, outputDir, renderer, systemNames,
+            Bootstrapper.fromParameters(params));
       }
     };
 
@@ -615,6 +595,9 @@ public final class GraphAnalyses {
 
 
 
+  // the 2015 scorer always weights the argument and linking scores the same way
+  private static final double LAMBDA = EALScorer2015Style.createWithoutPreprocessing().lambda();
+
   private static final Function<Aggregate2015ScoringResult, Double> EXTRACT_OVERALL_SCORE =
       new Function<Aggregate2015ScoringResult, Double>() {
         @Override
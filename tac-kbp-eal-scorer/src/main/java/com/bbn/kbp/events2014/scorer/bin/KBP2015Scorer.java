@@ -9,18 +9,25 @@ import com.bbn.kbp.events2014.ArgumentOutput;
 import com.bbn.kbp.events2014.KBPRealis;
 import com.bbn.kbp.events2014.ResponseLinking;
 import com.bbn.kbp.events2014.ScoringData;
+import com.bbn.kbp.events2014.diagnostics.Diagnostics;
 import com.bbn.kbp.events2014.io.AnnotationStore;
 import com.bbn.kbp.events2014.io.ArgumentStore;
 import com.bbn.kbp.events2014.io.AssessmentSpecFormats;
 import com.bbn.kbp.events2014.io.LinkingStore;
 import com.bbn.kbp.events2014.io.LinkingStoreSource;
+import com.bbn.kbp.events2014.io.PrefetchingDocumentIterator;
 import com.bbn.kbp.events2014.linking.SameEventTypeLinker;
+import com.bbn.kbp.events2014.metrics.StageMetrics;
 import com.bbn.kbp.linking.EALScorer2015Style;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.hash.HashCode;
+import com.google.common.io.Files;
+import com.google.common.primitives.Ints;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,7 +50,8 @@ public final class KBP2015Scorer {
   private KBP2015Scorer(final EALScorer2015Style documentScorer,
       Map<String, SimpleResultWriter> resultWriters,
       Map<String, BootstrappedResultWriterSource> bootstrappedResultWriters,
-      Optional<Integer> bootstrapSeed, Optional<Integer> bootstrapSamples) {
+      Optional<Integer> bootstrapSeed, Optional<Integer> bootstrapSamples,
+      int numDocumentsToPrefetch, Optional<ScoringResultCache> resultCache) {
     this.documentScorer = checkNotNull(documentScorer);
     this.resultWriters = ImmutableMap.copyOf(resultWriters);
     this.bootstrappedResultWriterSources = ImmutableMap.copyOf(bootstrappedResultWriters);
@@ -55,6 +63,14 @@ public final class KBP2015Scorer {
     if (bootstrapSamples.isPresent()) {
       checkArgument(bootstrapSamples.get() > 0, "Num bootstrap samples must be positive");
     }
+    checkArgument(numDocumentsToPrefetch > 0, "Must prefetch at least one document");
+    this.numDocumentsToPrefetch = numDocumentsToPrefetch;
+    this.resultCache = checkNotNull(resultCache);
+    boolean resultsNeedDetails = false;
+    for (final SimpleResultWriter resultWriter : this.resultWriters.values()) {
+      resultsNeedDetails |= resultWriter.needsResultDetails();
+    }
+    this.resultsNeedDetails = resultsNeedDetails;
   }
 
   public static KBP2015Scorer fromParameters(Parameters params) {
@@ -89,9 +105,33 @@ public final class KBP2015Scorer {
       log.info("Bootstrap scoring enabled");
     }
 
+    final Optional<ScoringResultCache> resultCache;
+    if (params.isPresent(RESULT_CACHE_PARAM)) {
+      final File resultCacheDir = params.getCreatableDirectory(RESULT_CACHE_PARAM);
+      log.info("Reusing unchanged document results cached in {}", resultCacheDir);
+      try {
+        resultCache = Optional.of(ScoringResultCache.open(resultCacheDir,
+            describeScoringConfiguration(params, documentScorer)));
+      } catch (IOException e) {
+        throw new RuntimeException("Could not open result cache " + resultCacheDir, e);
+      }
+    } else {
+      resultCache = Optional.absent();
+    }
+
     return new KBP2015Scorer(documentScorer, resultWriters.build(),
         bootstrapWriters.build(), bootstrapSeed,
-        params.getOptionalInteger("bootstrapSamples"));
+        params.getOptionalInteger("bootstrapSamples"),
+        params.getOptionalPositiveInteger("prefetchDocuments").or(DEFAULT_DOCUMENTS_TO_PREFETCH),
+        resultCache);
+  }
+
+  // everything besides the documents themselves which can change a document's result
+  private static String describeScoringConfiguration(final Parameters params,
+      final EALScorer2015Style documentScorer) {
+    return "2015;neutralizeRealis=" + params.getBoolean("neutralizeRealis")
+        + ";attemptToNeutralizeCoref=" + params.getBoolean("attemptToNeutralizeCoref")
+        + ";beta=" + documentScorer.beta() + ";lambda=" + documentScorer.lambda();
   }
 
   private static void usage() {
@@ -100,6 +140,15 @@ public final class KBP2015Scorer {
             "\tanswerKey: argument annotation store to score against\n" +
             "\treferenceLinking: linking store to score against\n" +
             "\tdocumentsToScore: (optional) file listing which documents to score.\n" +
+            "\tprefetchDocuments: (optional) how many documents to read ahead while scoring. "
+            + "Defaults to " + DEFAULT_DOCUMENTS_TO_PREFETCH + "\n" +
+            "\tresultCache: (optional) directory of saved per-document results. Documents whose "
+            + "inputs, scoring parameters and scoring code are unchanged are not rescored. Cached "
+            + "results are not reused when diagnostics or writers needing full alignments are "
+            + "enabled, but fresh results are still saved.\n" +
+            "\t" + Diagnostics.DIAGNOSTICS_DIRECTORY_PARAM + ": (optional) directory to write "
+            + "detailed per-document linking diagnostics to. When scoring multiple stores, a "
+            + "subdirectory is created for each.\n" +
             "\nIf running on a single output store:\n" +
             "\tscoringOutput: directory to write scoring observer logs to\n" +
             "\tsystemOutput: system output to score.\n" +
@@ -108,7 +157,9 @@ public final class KBP2015Scorer {
             +
             "\tsystemOutputsDir: each subdirectory of this is expected to be a system's output to score\n" +
             "\n\nEach system's output directory should have two sub-directories. \"arguments\" " +
-            " and \"linking\""
+            " and \"linking\"\n" +
+            "\nThe time spent in each stage of scoring is written to " + METRICS_FILE
+            + " in each scoring output directory."
 
     );
     System.exit(1);
@@ -156,7 +207,7 @@ public final class KBP2015Scorer {
           getLinkingStore(params, systemOutputDir, argumentStore);
 
       scorer.score(goldAnswerStore, referenceLinkingStore, argumentStore, systemLinkingStore,
-          docsToScore, scoringOutputDir);
+          docsToScore, scoringOutputDir, diagnosticsDirectory(params, Optional.<String>absent()));
     } else {
       final File systemOutputsDir = params.getExistingDirectory("systemOutputsDir");
       final File scoringOutputRoot = params.getCreatableDirectory("scoringOutputRoot");
@@ -175,7 +226,7 @@ public final class KBP2015Scorer {
 
             scorer.score(goldAnswerStore, referenceLinkingStore, argumentStore,
                 systemLinkingStore,
-                docsToScore, outputDir);
+                docsToScore, outputDir, diagnosticsDirectory(params, Optional.of(subDir.getName())));
           }
         } catch (Exception e) {
           throw new RuntimeException("Exception while processing " + subDir, e);
@@ -184,6 +235,21 @@ public final class KBP2015Scorer {
     }
   }
 
+  private static Optional<File> diagnosticsDirectory(final Parameters params,
+      final Optional<String> systemName) {
+    if (params.isPresent(Diagnostics.DIAGNOSTICS_DIRECTORY_PARAM)) {
+      final File diagnosticsRoot =
+          params.getCreatableDirectory(Diagnostics.DIAGNOSTICS_DIRECTORY_PARAM);
+      if (systemName.isPresent()) {
+        return Optional.of(new File(diagnosticsRoot, systemName.get()));
+      } else {
+        return Optional.of(diagnosticsRoot);
+      }
+    } else {
+      return Optional.absent();
+    }
+  }
+
   private static LinkingStore getReferenceLinkingStore(AnnotationStore annStore,
       final Parameters params)
       throws IOException {
@@ -203,60 +269,163 @@ public final class KBP2015Scorer {
   private final boolean doBootstrapping;
   private final int bootstrapSeed;
   private final int numBootstrapSamples;
+  private final int numDocumentsToPrefetch;
+  private final Optional<ScoringResultCache> resultCache;
+  // whether any result writer needs alignments and linkings, which cached results lack
+  private final boolean resultsNeedDetails;
+
+  private static final int DEFAULT_DOCUMENTS_TO_PREFETCH = 4;
+  private static final String RESULT_CACHE_PARAM = "resultCache";
+  static final String DOCUMENT_SCORES_FILE = "documentScores.csv";
+  static final String METRICS_FILE = "scoringMetrics.json";
 
   private void score(final AnnotationStore goldAnswerStore,
       final LinkingStore referenceLinkingStore, final ArgumentStore argumentStore,
-      final LinkingStore systemLinkingStore, Set<Symbol> docsToScore, final File outputDir)
-      throws IOException {
+      final LinkingStore systemLinkingStore, Set<Symbol> docsToScore, final File outputDir,
+      final Optional<File> diagnosticsDir) throws IOException {
 
     final List<EALScorer2015Style.Result> perDocResults = Lists.newArrayList();
+    final StageMetrics metrics = StageMetrics.create();
+    final Diagnostics diagnostics = diagnosticsDir.isPresent()
+        ? Diagnostics.writingTo(diagnosticsDir.get()) : Diagnostics.disabled();
+    // cached results lack the details some writers use and would record no diagnostics
+    final boolean reuseCachedResults = !resultsNeedDetails && !diagnostics.isEnabled();
+    if (resultCache.isPresent() && !reuseCachedResults) {
+      log.info("Not reusing cached results because full results or diagnostics are needed");
+    }
 
-    for (final Symbol docID : docsToScore) {
-      try {
-        final AnswerKey argumentKey = goldAnswerStore.read(docID);
-        final ArgumentOutput argumentOutput = argumentStore.readOrEmpty(docID);
-
-        final Optional<ResponseLinking> referenceLinking = referenceLinkingStore.read(argumentKey);
-        final Optional<ResponseLinking> systemLinking = systemLinkingStore.read(argumentOutput);
+    // reading the next few documents happens in the background while we score the current one
+    final PrefetchingDocumentIterator<ScoringData> scoringDataIt =
+        PrefetchingDocumentIterator.create(docsToScore,
+            new PrefetchingDocumentIterator.DocumentLoader<ScoringData>() {
+              @Override
+              public ScoringData load(final Symbol docID) throws IOException {
+                return loadScoringData(docID, goldAnswerStore, referenceLinkingStore,
+                    argumentStore, systemLinkingStore, metrics);
+              }
+            }, numDocumentsToPrefetch);
 
-        if (!referenceLinking.isPresent()) {
-          throw new RuntimeException("Reference linking missing for " + docID);
+    try {
+      while (scoringDataIt.hasNext()) {
+        final ScoringData scoringData = scoringDataIt.next();
+        try {
+          perDocResults.add(scoreOrReuse(scoringData, reuseCachedResults, metrics,
+              diagnostics));
+        } catch (Exception e) {
+          throw new RuntimeException(
+              "Exception while processing " + scoringData.answerKey().get().docId(), e);
         }
+      }
+    } finally {
+      scoringDataIt.close();
+      diagnostics.close();
+    }
+    documentScorer.logStats();
+    if (resultCache.isPresent()) {
+      resultCache.get().logStats();
+    }
 
-        if (!systemLinking.isPresent()) {
-          throw new RuntimeException("System linking missing for " + docID);
-        }
+    final DocumentScoreTable documentScores;
+    try (StageMetrics.Timer.Context ignored = metrics.timePhase("writing results")) {
+      // all scores we report are computed from this, so it is saved to allow recomputing them or
+      // adding new breakdowns without rescoring
+      documentScores = DocumentScoreTable.fromResults(perDocResults, documentScorer.beta());
+      documentScores.writeTo(
+          Files.asCharSink(new File(outputDir, DOCUMENT_SCORES_FILE), Charsets.UTF_8));
+
+      writeNormalOutput(perDocResults, documentScores, outputDir);
+    }
+    // bootstrapped writers only need the score table, so we release the alignments and linkings
+    // before the many passes over the samples
+    perDocResults.clear();
+    writeBootstrappedOutput(documentScores, outputDir, metrics);
 
-        final ScoringData scoringData = ScoringData.builder()
-            .answerKey(argumentKey)
-            .argumentOutput(argumentOutput)
-            .referenceLinking(referenceLinking.get())
-            .systemLinking(systemLinking.get())
-            .build();
+    metrics.logSummary();
+    metrics.writeJSON(new File(outputDir, METRICS_FILE));
+  }
 
-        perDocResults.add(documentScorer.score(scoringData));
-      } catch (Exception e) {
-        throw new RuntimeException("Exception while processing " + docID, e);
+  /**
+   * @param reuseCachedResults if false, every document is scored, though results are still saved
+   *                           to the cache for later runs
+   */
+  private EALScorer2015Style.Result scoreOrReuse(final ScoringData scoringData,
+      final boolean reuseCachedResults, final StageMetrics metrics, final Diagnostics diagnostics)
+      throws IOException {
+    metrics.histogram("system responses per document")
+        .record(scoringData.argumentOutput().get().size());
+    if (resultCache.isPresent()) {
+      final HashCode key = resultCache.get().key(scoringData);
+      if (reuseCachedResults) {
+        final Symbol docID = scoringData.answerKey().get().docId();
+        final Optional<EALScorer2015Style.Result> cached =
+            resultCache.get().read(docID, key, documentScorer);
+        if (cached.isPresent()) {
+          metrics.counter("documents reused from result cache").increment();
+          return cached.get();
+        }
       }
+      final EALScorer2015Style.Result result =
+          documentScorer.score(scoringData, metrics, diagnostics);
+      resultCache.get().write(result, key);
+      metrics.counter("documents scored").increment();
+      return result;
+    } else {
+      metrics.counter("documents scored").increment();
+      return documentScorer.score(scoringData, metrics, diagnostics);
     }
+  }
+
+  private static ScoringData loadScoringData(final Symbol docID,
+      final AnnotationStore goldAnswerStore, final LinkingStore referenceLinkingStore,
+      final ArgumentStore argumentStore, final LinkingStore systemLinkingStore,
+      final StageMetrics metrics) throws IOException {
+    try {
+      final AnswerKey argumentKey;
+      final ArgumentOutput argumentOutput;
+      try (StageMetrics.Timer.Context ignored = metrics.time("reading arguments")) {
+        argumentKey = goldAnswerStore.read(docID);
+        argumentOutput = argumentStore.readOrEmpty(docID);
+      }
 
-    writeNormalOutput(perDocResults, outputDir);
-    writeBootstrappedOutput(perDocResults, outputDir);
+      final Optional<ResponseLinking> referenceLinking;
+      final Optional<ResponseLinking> systemLinking;
+      try (StageMetrics.Timer.Context ignored = metrics.time("reading linkings")) {
+        referenceLinking = referenceLinkingStore.read(argumentKey);
+        systemLinking = systemLinkingStore.read(argumentOutput);
+      }
+
+      if (!referenceLinking.isPresent()) {
+        throw new RuntimeException("Reference linking missing for " + docID);
+      }
+
+      if (!systemLinking.isPresent()) {
+        throw new RuntimeException("System linking missing for " + docID);
+      }
+
+      return ScoringData.builder()
+          .answerKey(argumentKey)
+          .argumentOutput(argumentOutput)
+          .referenceLinking(referenceLinking.get())
+          .systemLinking(systemLinking.get())
+          .build();
+    } catch (RuntimeException e) {
+      throw new RuntimeException("Exception while processing " + docID, e);
+    }
   }
 
   private void writeNormalOutput(final List<EALScorer2015Style.Result> perDocResults,
-      final File baseOutputDir) throws IOException {
+      final DocumentScoreTable documentScores, final File baseOutputDir) throws IOException {
     for (final Map.Entry<String, SimpleResultWriter> additionalResultWriter : resultWriters
         .entrySet()) {
       final File outputDir = new File(baseOutputDir, additionalResultWriter.getKey());
       outputDir.mkdirs();
-      additionalResultWriter.getValue().writeResult(perDocResults,
+      additionalResultWriter.getValue().writeResult(perDocResults, documentScores,
           outputDir);
     }
   }
 
-  private void writeBootstrappedOutput(final List<EALScorer2015Style.Result> perDocResults,
-      final File baseOutputDir) throws IOException {
+  private void writeBootstrappedOutput(final DocumentScoreTable documentScores,
+      final File baseOutputDir, final StageMetrics metrics) throws IOException {
     if (doBootstrapping) {
       // boostrapped result writers are stateful, so we need to get new ones each time
       final ImmutableMap.Builder<String, BootstrappedResultWriter> builder = ImmutableMap.builder();
@@ -266,31 +435,51 @@ public final class KBP2015Scorer {
       }
       final ImmutableMap<String, BootstrappedResultWriter> bootstrappedWriters = builder.build();
 
-      // this will produce an infinite sequence of bootstrapped samples of the corpus
-      final Iterator<Collection<EALScorer2015Style.Result>>
-          bootstrapIt = BootstrapIterator.forData(perDocResults, new Random(bootstrapSeed));
+      // this will produce an infinite sequence of bootstrapped samples of the corpus. We sample
+      // document indices into the score table, which yields the same samples as sampling the
+      // per-document results themselves
+      final Iterator<Collection<Integer>> bootstrapIt = BootstrapIterator.forData(
+          Ints.asList(documentScores.allDocuments()), new Random(bootstrapSeed));
       // a bootstrap iterator always has .next()
+      final StageMetrics.Timer sampleTimer = metrics.phase("bootstrap sample");
       for (int i = 0; i < numBootstrapSamples; ++i) {
-        // be sure to use the same sample for all observers
-        final Collection<EALScorer2015Style.Result> sample = bootstrapIt.next();
-        for (final KBP2015Scorer.BootstrappedResultWriter bootstrappedResultWriter : bootstrappedWriters
-            .values()) {
-          bootstrappedResultWriter.observeSample(sample);
+        try (StageMetrics.Timer.Context ignored = sampleTimer.start()) {
+          // be sure to use the same sample for all observers
+          final int[] sample = Ints.toArray(bootstrapIt.next());
+          for (final KBP2015Scorer.BootstrappedResultWriter bootstrappedResultWriter : bootstrappedWriters
+              .values()) {
+            bootstrappedResultWriter.observeSample(documentScores, sample);
+          }
         }
       }
 
-      for (final Map.Entry<String, BootstrappedResultWriter> resultWriterEntry : bootstrappedWriters
-          .entrySet()) {
-        final File outputDir = new File(baseOutputDir, resultWriterEntry.getKey());
-        outputDir.mkdirs();
-        resultWriterEntry.getValue().writeResult(outputDir);
+      try (StageMetrics.Timer.Context ignored = metrics.timePhase("writing bootstrapped results")) {
+        for (final Map.Entry<String, BootstrappedResultWriter> resultWriterEntry : bootstrappedWriters
+            .entrySet()) {
+          final File outputDir = new File(baseOutputDir, resultWriterEntry.getKey());
+          outputDir.mkdirs();
+          resultWriterEntry.getValue().writeResult(outputDir);
+        }
       }
     }
   }
 
   interface SimpleResultWriter {
+
+    /**
+     * @param perDocResults the full results for each document, for writers which need
+     *                      alignments or linkings
+     * @param documentScores the counts and scores for each document, in the same order
+     */
     void writeResult(final List<EALScorer2015Style.Result> perDocResults,
-        final File baseOutputDir) throws IOException;
+        final DocumentScoreTable documentScores, final File baseOutputDir) throws IOException;
+
+    /**
+     * Whether this writer uses the alignments or linking scores of {@code perDocResults}. If so,
+     * every document is scored afresh rather than reused from a result cache, since cached
+     * results lack these.
+     */
+    boolean needsResultDetails();
   }
 
   interface BootstrappedResultWriterSource {
@@ -300,7 +489,11 @@ public final class KBP2015Scorer {
 
   interface BootstrappedResultWriter {
 
-    void observeSample(final Iterable<EALScorer2015Style.Result> perDocResults);
+    /**
+     * @param sample the indices into {@code documentScores} of the documents in this sample,
+     *               possibly with repeats
+     */
+    void observeSample(final DocumentScoreTable documentScores, final int[] sample);
 
     void writeResult(File baseOutputDir) throws IOException;
   }
@@ -1,17 +1,14 @@
 package com.bbn.kbp.events2014.scorer.bin;
 
 import com.bbn.bue.common.collections.MapUtils;
-import com.bbn.bue.common.evaluation.FMeasureCounts;
-import com.bbn.bue.common.io.GZIPByteSource;
 import com.bbn.bue.common.parameters.Parameters;
-import com.bbn.bue.common.serialization.jackson.JacksonSerializer;
-import com.bbn.kbp.events2014.scorer.Aggregate2015ScoringResult;
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.bue.common.symbols.SymbolUtils;
+import com.bbn.kbp.events2014.scorer.Aggregate2015ArgScoringResult;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
@@ -74,105 +71,72 @@ public class KBPScoreTabulator2015 {
     return sb.toString();
   }
 
-  private static void writeOverallScoreTables(final String dataset, final File datasetScoreDir,
-      final List<String> configurations, String baselineName,
-      final JacksonSerializer jacksonSerializer,
+  private static void writeOverallScoreTables(final String dataset,
+      final Map<String, DocumentScoreTable> tablesByConfig, String baselineName,
       final OutputStreamWriter writer) throws IOException {
-    final ImmutableMap.Builder<String, FMeasureCounts> allFMeasureCountsMapB =
-        ImmutableMap.builder();
-
-    writer.write(tableHeader(dataset));
-
-    Optional<Double> baselineScore = Optional.absent();
-    final Map<String, Aggregate2015ScoringResult> scoresByConfig = Maps.newHashMap();
-    for (String configuration : configurations) {
-      final File scoreDir =
-          new File(new File(new File(datasetScoreDir, configuration), "score2015"),
-              "aggregate");
-      final File jsonFile = new File(scoreDir, "aggregateScore.json");
-      log.info("Loading scores from {}", jsonFile);
-      final Aggregate2015ScoringResult scores =
-          (Aggregate2015ScoringResult) jacksonSerializer.deserializeFrom(
-              GZIPByteSource.fromCompressed(Files.asByteSource(jsonFile)));
-
-      scoresByConfig.put(configuration, scores);
-
-      if (configuration.equals(baselineName)) {
-        baselineScore = Optional.of(scores.argument().overall());
-      }
+    final Map<String, Aggregate2015ArgScoringResult> scoresByConfig = Maps.newHashMap();
+    for (final Map.Entry<String, DocumentScoreTable> entry : tablesByConfig.entrySet()) {
+      final DocumentScoreTable table = entry.getValue();
+      scoresByConfig.put(entry.getKey(), table.argumentCounts().aggregate(table.allDocuments()));
     }
+    writeTable(dataset, scoresByConfig, baselineName, writer);
+  }
 
-    final Iterable<Map.Entry<String, Aggregate2015ScoringResult>> sortedByScore =
-        MapUtils.<String, Aggregate2015ScoringResult>byValueOrdering(
-            Ordering.natural().onResultOf(new Function<Aggregate2015ScoringResult, Double>() {
-              @Override
-              public Double apply(final Aggregate2015ScoringResult input) {
-                return input.argument().overall();
-              }
-            })).reverse().immutableSortedCopy(scoresByConfig.entrySet());
-
-    for (Map.Entry<String, Aggregate2015ScoringResult> entry : sortedByScore) {
-      writer.write(row(entry.getKey(), entry.getValue(), baselineScore, baselineName));
+  private static void writePerEventTypeTables(final String dataset, final Symbol eventType,
+      final Map<String, DocumentScoreTable> tablesByConfig, final String baselineName,
+      final OutputStreamWriter writer) throws IOException {
+    final Map<String, Aggregate2015ArgScoringResult> scoresByConfig = Maps.newHashMap();
+    for (final Map.Entry<String, DocumentScoreTable> entry : tablesByConfig.entrySet()) {
+      final DocumentScoreTable table = entry.getValue();
+      final int typeIndex = table.eventTypes().indexOf(eventType);
+      // a configuration which never saw this type gets no row rather than a row of zeros
+      if (typeIndex >= 0) {
+        scoresByConfig.put(entry.getKey(),
+            table.argumentCountsForEventType(typeIndex).aggregate(table.allDocuments()));
+      }
     }
-
-    writer.write(tableEnd());
+    writeTable(dataset + " : " + eventType, scoresByConfig, baselineName, writer);
   }
 
-
-  private static void writePerEventTypeTables(final String dataset, final String eventType,
-      final File datasetScoreDir,
-      final List<String> configurations, final String baselineName,
-      final JacksonSerializer jacksonSerializer, final OutputStreamWriter writer)
-      throws IOException {
-    writer.write(tableHeader(dataset + " : " + eventType));
+  private static void writeTable(final String title,
+      final Map<String, Aggregate2015ArgScoringResult> scoresByConfig, final String baselineName,
+      final OutputStreamWriter writer) throws IOException {
+    writer.write(tableHeader(title));
 
     Optional<Double> baselineScore = Optional.absent();
-    final Map<String, Aggregate2015ScoringResult> scoresByConfig = Maps.newHashMap();
-    for (String configuration : configurations) {
-      final File scoreDir = new File(new File(new File(
-          new File(datasetScoreDir, configuration), "score2015"), "byEventTypes"), eventType);
-      final File jsonFile = new File(scoreDir, "aggregateScore.json");
-      log.info("Loading scores from {}", jsonFile);
-      final Aggregate2015ScoringResult scores =
-          (Aggregate2015ScoringResult) jacksonSerializer.deserializeFrom(
-              GZIPByteSource.fromCompressed(Files.asByteSource(jsonFile)));
-
-      scoresByConfig.put(configuration, scores);
-
-      if (configuration.equals(baselineName)) {
-        baselineScore = Optional.of(scores.argument().overall());
-      }
+    if (scoresByConfig.containsKey(baselineName)) {
+      baselineScore = Optional.of(scoresByConfig.get(baselineName).overall());
     }
 
-    final Iterable<Map.Entry<String, Aggregate2015ScoringResult>> sortedByScore =
-        MapUtils.<String, Aggregate2015ScoringResult>byValueOrdering(
-            Ordering.natural().onResultOf(new Function<Aggregate2015ScoringResult, Comparable>() {
+    final Iterable<Map.Entry<String, Aggregate2015ArgScoringResult>> sortedByScore =
+        MapUtils.<String, Aggregate2015ArgScoringResult>byValueOrdering(
+            Ordering.natural().onResultOf(new Function<Aggregate2015ArgScoringResult, Double>() {
               @Override
-              public Comparable apply(final Aggregate2015ScoringResult input) {
-                return input.argument().overall();
+              public Double apply(final Aggregate2015ArgScoringResult input) {
+                return input.overall();
               }
             })).reverse().immutableSortedCopy(scoresByConfig.entrySet());
 
-    for (Map.Entry<String, Aggregate2015ScoringResult> entry : sortedByScore) {
+    for (Map.Entry<String, Aggregate2015ArgScoringResult> entry : sortedByScore) {
       writer.write(row(entry.getKey(), entry.getValue(), baselineScore, baselineName));
     }
 
     writer.write(tableEnd());
   }
 
-  private static String row(String configuration, Aggregate2015ScoringResult scores,
+  private static String row(String configuration, Aggregate2015ArgScoringResult scores,
       Optional<Double> baselineScore, String baselineName) {
     final StringBuilder sb = new StringBuilder();
     sb.append("\t<tr>\n");
     sb.append(cell(configuration, false));
 
-    final double tp = scores.argument().truePositives();
-    final double fp = scores.argument().falsePositives();
-    final double fn = scores.argument().falseNegatives();
+    final double tp = scores.truePositives();
+    final double fp = scores.falsePositives();
+    final double fn = scores.falseNegatives();
 
-    final double p = scores.argument().precision();
-    final double r = scores.argument().recall();
-    final double overallScore = scores.argument().overall();
+    final double p = scores.precision();
+    final double r = scores.recall();
+    final double overallScore = scores.overall();
 
     sb.append(cell(String.format("%5.0f", tp), false));
     sb.append(cell(String.format("%5.0f", fp), false));
@@ -208,8 +172,6 @@ public class KBPScoreTabulator2015 {
     final String baselineName = params.getString("baselineConfig");
     final File outputHTMLFile = params.getCreatableFile("outputHTMLFile");
 
-    final JacksonSerializer jacksonSerializer = JacksonSerializer.forNormalJSON();
-
     final File datasetsDir = new File(masterAnnotationRepo, "datasets");
 
     try {
@@ -221,28 +183,9 @@ public class KBPScoreTabulator2015 {
 
       final List<String> datasets =
           Files.readLines(new File(datasetsDir, "datasets.list"), Charsets.UTF_8);
-      for (String dataset : datasets) {
-        File datasetScoreDir = new File(scoreTrackerDirectory, dataset);
-
-        if (!datasetScoreDir.exists()) {
-          log.info("Dataset score directory does not exist: " + datasetScoreDir);
-          continue;
-        }
-
-        // find the system configurations
-        String[] configurationDirs = datasetScoreDir.list(new FilenameFilter() {
-          @Override
-          public boolean accept(File current, String name) {
-            return new File(current, name).isDirectory();
-          }
-        });
-        List<String> configurations = Arrays.asList(configurationDirs);
-        Collections.sort(configurations);
-        writeOverallScoreTables(dataset, datasetScoreDir, configurations, baselineName,
-            jacksonSerializer,
-            writer);
-      }
-
+      // the per-document score tables are small, so we load each once and use it for both the
+      // overall and the per-event type tables
+      final Map<String, Map<String, DocumentScoreTable>> tablesByDataset = Maps.newLinkedHashMap();
       for (String dataset : datasets) {
         File datasetScoreDir = new File(scoreTrackerDirectory, dataset);
 
@@ -255,11 +198,17 @@ public class KBPScoreTabulator2015 {
         String[] configurationDirs = datasetScoreDir.list(IS_DIRECTORY);
         List<String> configurations = Arrays.asList(configurationDirs);
         Collections.sort(configurations);
+        final Map<String, DocumentScoreTable> tablesByConfig =
+            loadDocumentScores(datasetScoreDir, configurations);
+        tablesByDataset.put(dataset, tablesByConfig);
+        writeOverallScoreTables(dataset, tablesByConfig, baselineName, writer);
+      }
 
-        for (final String eventType : gatherEventTypes(datasetScoreDir, configurations)) {
-          writePerEventTypeTables(dataset, eventType, datasetScoreDir, configurations, baselineName,
-              jacksonSerializer,
-              writer);
+      for (final Map.Entry<String, Map<String, DocumentScoreTable>> datasetEntry
+          : tablesByDataset.entrySet()) {
+        for (final Symbol eventType : gatherEventTypes(datasetEntry.getValue().values())) {
+          writePerEventTypeTables(datasetEntry.getKey(), eventType, datasetEntry.getValue(),
+              baselineName, writer);
         }
       }
 
@@ -272,14 +221,25 @@ public class KBPScoreTabulator2015 {
     }
   }
 
-  private static List<String> gatherEventTypes(final File dir, List<String> configurations) {
-    final Set<String> ret = Sets.newHashSet();
-    for (final String config : configurations) {
-      ret.addAll(ImmutableList.copyOf(
-          new File(new File(new File(dir, config), "score2015"), "byEventTypes")
-              .list(IS_DIRECTORY)));
+  private static Map<String, DocumentScoreTable> loadDocumentScores(final File datasetScoreDir,
+      final List<String> configurations) throws IOException {
+    final Map<String, DocumentScoreTable> ret = Maps.newHashMap();
+    for (final String configuration : configurations) {
+      final File tableFile = new File(new File(new File(datasetScoreDir, configuration),
+          "score2015"), KBP2015Scorer.DOCUMENT_SCORES_FILE);
+      log.info("Loading scores from {}", tableFile);
+      ret.put(configuration,
+          DocumentScoreTable.loadFrom(Files.asCharSource(tableFile, Charsets.UTF_8)));
+    }
+    return ret;
+  }
+
+  private static List<Symbol> gatherEventTypes(final Iterable<DocumentScoreTable> tables) {
+    final Set<Symbol> ret = Sets.newHashSet();
+    for (final DocumentScoreTable table : tables) {
+      ret.addAll(table.eventTypes());
     }
-    return Ordering.natural().immutableSortedCopy(ret);
+    return SymbolUtils.byStringOrdering().immutableSortedCopy(ret);
   }
 
 }
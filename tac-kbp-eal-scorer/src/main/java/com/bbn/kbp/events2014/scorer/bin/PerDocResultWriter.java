@@ -3,9 +3,8 @@ package com.bbn.kbp.events2014.scorer.bin;
 import com.bbn.kbp.linking.EALScorer2015Style;
 
 import com.google.common.base.Charsets;
-import com.google.common.base.Function;
 import com.google.common.base.Joiner;
-import com.google.common.collect.FluentIterable;
+import com.google.common.collect.Lists;
 import com.google.common.io.Files;
 
 import java.io.File;
@@ -24,77 +23,75 @@ final class PerDocResultWriter implements KBP2015Scorer.SimpleResultWriter {
   }
 
 
+  @Override
+  public boolean needsResultDetails() {
+    return false;
+  }
+
   @Override
   public void writeResult(final List<EALScorer2015Style.Result> perDocResults,
-      final File outputDir) throws IOException {
-    writePerDoc(perDocResults, new File(outputDir, "scoresByDocument.txt"));
+      final DocumentScoreTable documentScores, final File outputDir) throws IOException {
+    writePerDoc(documentScores, lambda, new File(outputDir, "scoresByDocument.txt"));
   }
 
-  static void writePerDoc(final List<EALScorer2015Style.Result> perDocResults, final File outFile)
-      throws IOException {
+  static void writePerDoc(final DocumentScoreTable documentScores, final double lambda,
+      final File outFile) throws IOException {
+    final DocumentScoreTable.ArgumentColumns argumentCounts = documentScores.argumentCounts();
+    final List<String> lines = Lists.newArrayList();
+    for (int doc = 0; doc < documentScores.numDocuments(); ++doc) {
+      final double scaledArgumentScore = argumentCounts.scaledArgumentScore(doc);
+      lines.add(String.format("%40s\t%10.2f\t%7s%7s%7s\t%10.2f\t%10.2f",
+          documentScores.docID(doc),
+          100.0 * scaledArgumentScore,
+          String.format("%.1f", 100.0 * documentScores.scaledLinkingPrecision(doc)),
+          String.format("%.1f", 100.0 * documentScores.scaledLinkingRecall(doc)),
+          String.format("%.1f", 100.0 * documentScores.scaledLinkingScore(doc)),
+          100.0 * documentScores.scaledLinkingScore(doc),
+          100.0 * scaledScore(scaledArgumentScore, documentScores, doc, lambda)));
+    }
     Files.asCharSink(outFile, Charsets.UTF_8).write(
         String.format("%40s\t%10s\t%10s\t%10s\t%10s\n", "Document", "Arg", "Link-P,R,F", "Link",
-            "Combined") +
-            Joiner.on("\n").join(
-                FluentIterable.from(perDocResults)
-                    .transform(new Function<EALScorer2015Style.Result, String>() {
-                      @Override
-                      public String apply(final EALScorer2015Style.Result input) {
-                        return String.format("%40s\t%10.2f\t%7s%7s%7s\t%10.2f\t%10.2f",
-                            input.docID(),
-                            100.0 * input.argResult().scaledArgumentScore(),
-                            String
-                                .format("%.1f",
-                                    100.0 * input.linkResult().linkingScore().precision()),
-                            String.format("%.1f",
-                                100.0 * input.linkResult().linkingScore().recall()),
-                            String.format("%.1f", 100.0 * input.linkResult().linkingScore().F1()),
-                            100.0 * input.linkResult().scaledLinkingScore(),
-                            100.0 * input.scaledScore());
-                      }
-                    })));
+            "Combined") + Joiner.on("\n").join(lines));
   }
 
 
-  static void writeArgPerDoc(final List<EALScorer2015Style.ArgResult> perDocResults,
-      final File outFile)
+  static void writeArgPerDoc(final DocumentScoreTable documentScores,
+      final DocumentScoreTable.ArgumentColumns argumentCounts, final File outFile)
       throws IOException {
+    final List<String> lines = Lists.newArrayList();
+    for (int doc = 0; doc < documentScores.numDocuments(); ++doc) {
+      lines.add(String.format("%40s\t%10.2f",
+          documentScores.docID(doc),
+          100.0 * argumentCounts.scaledArgumentScore(doc)));
+    }
     Files.asCharSink(outFile, Charsets.UTF_8).write(
-        String.format("%40s\t%10s\n", "Document", "Arg") +
-            Joiner.on("\n").join(
-                FluentIterable.from(perDocResults)
-                    .transform(new Function<EALScorer2015Style.ArgResult, String>() {
-                      @Override
-                      public String apply(final EALScorer2015Style.ArgResult input) {
-                        return String.format("%40s\t%10.2f",
-                            input.docID(),
-                            100.0 * input.scaledArgumentScore());
-                      }
-                    })));
+        String.format("%40s\t%10s\n", "Document", "Arg") + Joiner.on("\n").join(lines));
   }
 
-  static void writeLinkPerDoc(final List<EALScorer2015Style.Result> perDocResults,
+  static void writeLinkPerDoc(final DocumentScoreTable documentScores, final double lambda,
       final File outFile)
       throws IOException {
+    final DocumentScoreTable.ArgumentColumns argumentCounts = documentScores.argumentCounts();
+    final List<String> lines = Lists.newArrayList();
+    for (int doc = 0; doc < documentScores.numDocuments(); ++doc) {
+      lines.add(String.format("%40s\t%7s%7s%7s\t%10.2f\t%10.2f",
+          documentScores.docID(doc),
+          String.format("%.1f", 100.0 * documentScores.scaledLinkingPrecision(doc)),
+          String.format("%.1f", 100.0 * documentScores.scaledLinkingRecall(doc)),
+          String.format("%.1f", 100.0 * documentScores.scaledLinkingScore(doc)),
+          100.0 * documentScores.scaledLinkingScore(doc),
+          100.0 * scaledScore(argumentCounts.scaledArgumentScore(doc), documentScores, doc,
+              lambda)));
+    }
     Files.asCharSink(outFile, Charsets.UTF_8).write(
         String.format("%40s\t%10s\t%10s\t%10s\n", "Document", "Link-P,R,F", "Link",
-            "Combined") +
-            Joiner.on("\n").join(
-                FluentIterable.from(perDocResults)
-                    .transform(new Function<EALScorer2015Style.Result, String>() {
-                      @Override
-                      public String apply(final EALScorer2015Style.Result input) {
-                        return String.format("%40s\t%7s%7s%7s\t%10.2f\t%10.2f",
-                            input.docID(),
-                            String
-                                .format("%.1f",
-                                    100.0 * input.linkResult().linkingScore().precision()),
-                            String.format("%.1f",
-                                100.0 * input.linkResult().linkingScore().recall()),
-                            String.format("%.1f", 100.0 * input.linkResult().linkingScore().F1()),
-                            100.0 * input.linkResult().scaledLinkingScore(),
-                            100.0 * input.scaledScore());
-                      }
-                    })));
+            "Combined") + Joiner.on("\n").join(lines));
+  }
+
+  // matches EALScorer2015Style.Result#scaledScore
+  private static double scaledScore(final double scaledArgumentScore,
+      final DocumentScoreTable documentScores, final int doc, final double lambda) {
+    return (1.0 - lambda) * scaledArgumentScore
+        + lambda * documentScores.scaledLinkingScore(doc);
   }
 }
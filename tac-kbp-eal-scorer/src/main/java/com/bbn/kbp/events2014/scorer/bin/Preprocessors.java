@@ -3,11 +3,11 @@ package com.bbn.kbp.events2014.scorer.bin;
 import com.bbn.bue.common.parameters.Parameters;
 import com.bbn.kbp.events2014.transformers.DeleteInjureForCorrectDie;
 import com.bbn.kbp.events2014.transformers.FixLowercaseXInTemporals;
+import com.bbn.kbp.events2014.transformers.FusedScoringDataTransformation;
 import com.bbn.kbp.events2014.transformers.MakeAllRealisActual;
 import com.bbn.kbp.events2014.transformers.MakeBrokenTimesWrong;
 import com.bbn.kbp.events2014.transformers.OnlyMostSpecificTemporal;
 import com.bbn.kbp.events2014.transformers.ScoringDataTransformation;
-import com.bbn.kbp.events2014.transformers.ScoringDataTransformationSequence;
 
 import com.google.common.collect.Lists;
 
@@ -51,7 +51,7 @@ public final class Preprocessors {
       log.info("Attempting to neutralize coref");
       transformationsInOrder.add(CorefNeutralizingPreprocessor.create());
     }
-    return ScoringDataTransformationSequence.compose(transformationsInOrder);
+    return FusedScoringDataTransformation.fuse(transformationsInOrder);
   }
 
   public static ScoringDataTransformation for2015FromParameters(Parameters params) {
@@ -75,7 +75,7 @@ public final class Preprocessors {
       log.info("Attempting to neutralize coref");
       transformationsInOrder.add(CorefNeutralizingPreprocessor.create());
     }
-    return ScoringDataTransformationSequence.compose(transformationsInOrder);
+    return FusedScoringDataTransformation.fuse(transformationsInOrder);
   }
 }
 
@@ -0,0 +1,400 @@
+package com.bbn.kbp.events2014.scorer.bin;
+
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.kbp.events2014.AnswerKey;
+import com.bbn.kbp.events2014.ArgumentOutput;
+import com.bbn.kbp.events2014.AssessedResponse;
+import com.bbn.kbp.events2014.CharOffsetSpan;
+import com.bbn.kbp.events2014.KBPRealis;
+import com.bbn.kbp.events2014.KBPString;
+import com.bbn.kbp.events2014.Response;
+import com.bbn.kbp.events2014.ResponseAssessment;
+import com.bbn.kbp.events2014.ResponseLinking;
+import com.bbn.kbp.events2014.ResponseSet;
+import com.bbn.kbp.events2014.ScoringData;
+import com.bbn.kbp.events2014.TypeRoleFillerRealis;
+import com.bbn.kbp.events2014.scorer.IndexedScoringAligner;
+import com.bbn.kbp.events2014.transformers.ScoringDataTransformation;
+import com.bbn.kbp.linking.EALScorer2015Style;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Ordering;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.util.Arrays;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Saves the per-document results of {@link EALScorer2015Style} to disk so that rescoring a
+ * system output which has changed in only a few documents need only rescore those documents.
+ *
+ * Each document's result is keyed by a hash of everything which determines it: the system
+ * arguments and their confidences, the system linking, the answer key including coreference, the
+ * reference linking, and a description of the scoring configuration. Each result is saved in a
+ * file named by its document and key, so results for several systems or configurations can share
+ * one cache, and an entry is only ever reused for exactly the inputs which produced it. Entries
+ * for inputs which no longer exist are never removed, so the cache may be deleted at any time.
+ *
+ * Only the summaries kept by {@link EALScorer2015Style.Result#withoutDetails()} are stored, so
+ * reused results do not provide full alignments and scoring them again is the only way to get
+ * those or their diagnostics. The key also covers the scoring code: a fingerprint of the scorer
+ * and core libraries on the classpath together with {@link #SCORING_CODE_VERSION}, so results
+ * saved by a different build are never reused.
+ */
+final class ScoringResultCache {
+
+  private static final Logger log = LoggerFactory.getLogger(ScoringResultCache.class);
+
+  private static final int MAGIC = 0x4B425243;
+  // the layout of the cache files
+  private static final int FORMAT_VERSION = 2;
+  /**
+   * Must be incremented whenever a change to scoring or preprocessing can change any document's
+   * result. This is a backstop for the classpath fingerprint, which cannot see changes to
+   * scoring behavior coming from elsewhere, such as a dependency.
+   */
+  static final int SCORING_CODE_VERSION = 1;
+  private static final String SUFFIX = ".result";
+  private static final HashFunction HASH_FUNCTION = Hashing.sha256();
+
+  // markers separating the parts of the hashed content so that, e.g., moving a response from the
+  // system output to the answer key changes the hash
+  private static final int ARGUMENTS_CODE = 1;
+  private static final int SYSTEM_LINKING_CODE = 2;
+  private static final int ANSWER_KEY_CODE = 3;
+  private static final int REFERENCE_LINKING_CODE = 4;
+  private static final int PREDICATE_JUSTIFICATIONS_CODE = 5;
+  private static final int ADDITIONAL_JUSTIFICATIONS_CODE = 6;
+  private static final int ABSENT_CODE = 7;
+
+  private final File directory;
+  private final String configurationDescription;
+  private final String scoringCodeVersion;
+  private int hits = 0;
+  private int misses = 0;
+
+  private ScoringResultCache(final File directory, final String configurationDescription,
+      final String scoringCodeVersion) {
+    this.directory = checkNotNull(directory);
+    this.configurationDescription = checkNotNull(configurationDescription);
+    this.scoringCodeVersion = checkNotNull(scoringCodeVersion);
+    checkArgument(directory.isDirectory(), "Result cache %s is not a directory", directory);
+  }
+
+  /**
+   * @param configurationDescription describes all scoring settings which can change a
+   *                                 document's result. Results cached under a different
+   *                                 description are never reused.
+   */
+  static ScoringResultCache open(final File directory, final String configurationDescription)
+      throws IOException {
+    return open(directory, configurationDescription, scoringCodeVersion());
+  }
+
+  /**
+   * Like {@link #open(File, String)}, but with an explicit identifier for the scoring code in
+   * place of the one computed from the classpath.
+   */
+  static ScoringResultCache open(final File directory, final String configurationDescription,
+      final String scoringCodeVersion) {
+    return new ScoringResultCache(directory, configurationDescription, scoringCodeVersion);
+  }
+
+  /**
+   * Identifies the code which computes results: {@link #SCORING_CODE_VERSION} and a hash of the
+   * contents of the jars or class directories holding the scorer and the preprocessing.
+   */
+  static String scoringCodeVersion() throws IOException {
+    final Hasher hasher = HASH_FUNCTION.newHasher().putInt(SCORING_CODE_VERSION);
+    // the scorer and bin classes, then the preprocessing and data classes
+    for (final Class<?> clazz : ImmutableList.<Class<?>>of(EALScorer2015Style.class,
+        ScoringDataTransformation.class)) {
+      final CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+      checkState(codeSource != null && codeSource.getLocation() != null,
+          "Cannot locate the code of %s to fingerprint it", clazz);
+      final File location;
+      try {
+        location = new File(codeSource.getLocation().toURI());
+      } catch (URISyntaxException e) {
+        throw new IOException("Cannot fingerprint code at " + codeSource.getLocation(), e);
+      }
+      hashCodeLocation(hasher, location);
+    }
+    return SCORING_CODE_VERSION + "-" + hasher.hash();
+  }
+
+  private static void hashCodeLocation(final Hasher hasher, final File location)
+      throws IOException {
+    if (location.isFile()) {
+      hasher.putBytes(Files.asByteSource(location).hash(HASH_FUNCTION).asBytes());
+    } else {
+      // a class directory, when not running from a jar. The traversal order depends on the file
+      // system, so we sort by path
+      final ImmutableList<File> files = FluentIterable
+          .from(Files.fileTreeTraverser().preOrderTraversal(location))
+          .filter(Files.isFile())
+          .toSortedList(Ordering.<String>natural().onResultOf(new Function<File, String>() {
+            @Override
+            public String apply(final File f) {
+              return f.getPath();
+            }
+          }));
+      final int prefixLength = location.getPath().length();
+      for (final File file : files) {
+        hasher.putString(file.getPath().substring(prefixLength), Charsets.UTF_8)
+            .putBytes(Files.asByteSource(file).hash(HASH_FUNCTION).asBytes());
+      }
+    }
+  }
+
+  /**
+   * Returns the key identifying the result of scoring {@code scoringData}.
+   */
+  HashCode key(final ScoringData scoringData) {
+    final Hasher hasher = HASH_FUNCTION.newHasher()
+        .putInt(FORMAT_VERSION)
+        .putString(scoringCodeVersion, Charsets.UTF_8)
+        .putString(configurationDescription, Charsets.UTF_8);
+    hashArguments(hasher, scoringData.argumentOutput().get());
+    hasher.putInt(SYSTEM_LINKING_CODE);
+    hashLinking(hasher, scoringData.systemLinking().get());
+    hashAnswerKey(hasher, scoringData.answerKey().get());
+    hasher.putInt(REFERENCE_LINKING_CODE);
+    hashLinking(hasher, scoringData.referenceLinking().get());
+    return hasher.hash();
+  }
+
+  /**
+   * Returns the cached result for {@code docID} if one was saved under {@code key}.
+   */
+  Optional<EALScorer2015Style.Result> read(final Symbol docID, final HashCode key,
+      final EALScorer2015Style scorer) {
+    final File file = fileFor(docID, key);
+    if (file.isFile()) {
+      try {
+        final Optional<EALScorer2015Style.Result> ret = read(file, docID, key, scorer);
+        if (ret.isPresent()) {
+          ++hits;
+          return ret;
+        }
+      } catch (IOException | RuntimeException e) {
+        log.warn("Ignoring unreadable cached result {}: {}", file, e.toString());
+      }
+    }
+    ++misses;
+    return Optional.absent();
+  }
+
+  void write(final EALScorer2015Style.Result result, final HashCode key) throws IOException {
+    final File file = fileFor(result.docID(), key);
+    // write to a temporary file and move it into place so an interrupted run never leaves a
+    // truncated entry
+    final File tmpFile = new File(directory, file.getName() + ".tmp");
+    final IndexedScoringAligner.Alignment<TypeRoleFillerRealis> alignment =
+        result.argResult().indexedAlignment();
+    final ImmutableList<TypeRoleFillerRealis> equivalenceClasses =
+        alignment.equivalenceClasses();
+    final byte[] outcomeFlags = alignment.outcomeFlags();
+
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      final byte[] keyBytes = key.asBytes();
+      out.writeInt(keyBytes.length);
+      out.write(keyBytes);
+      out.writeUTF(result.docID().asString());
+
+      out.writeInt(equivalenceClasses.size());
+      for (int i = 0; i < equivalenceClasses.size(); ++i) {
+        final TypeRoleFillerRealis trfr = equivalenceClasses.get(i);
+        out.writeUTF(trfr.type().asString());
+        out.writeUTF(trfr.role().asString());
+        out.writeUTF(trfr.realis().name());
+        out.writeUTF(trfr.argumentCanonicalString().string());
+        out.writeInt(trfr.argumentCanonicalString().charOffsetSpan().startInclusive());
+        out.writeInt(trfr.argumentCanonicalString().charOffsetSpan().endInclusive());
+        out.writeByte(outcomeFlags[i]);
+      }
+
+      final EALScorer2015Style.LinkResult linkResult = result.linkResult();
+      out.writeInt((int) linkResult.linkingNormalizer());
+      out.writeDouble(linkResult.scaledLinkingPrecision());
+      out.writeDouble(linkResult.scaledLinkingRecall());
+      out.writeDouble(linkResult.scaledLinkingScore());
+    }
+    java.nio.file.Files.move(tmpFile.toPath(), file.toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  void logStats() {
+    log.info("Reused {} cached document results and rescored {} documents from {}", hits, misses,
+        directory);
+  }
+
+  private Optional<EALScorer2015Style.Result> read(final File file, final Symbol docID,
+      final HashCode key, final EALScorer2015Style scorer) throws IOException {
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+        return Optional.absent();
+      }
+      final byte[] cachedKey = new byte[in.readInt()];
+      in.readFully(cachedKey);
+      if (!Arrays.equals(cachedKey, key.asBytes())) {
+        return Optional.absent();
+      }
+      checkArgument(docID.asString().equals(in.readUTF()), "Cached result is for another document");
+
+      final int numEquivalenceClasses = in.readInt();
+      final ImmutableList.Builder<TypeRoleFillerRealis> equivalenceClasses =
+          ImmutableList.builder();
+      final byte[] outcomeFlags = new byte[numEquivalenceClasses];
+      for (int i = 0; i < numEquivalenceClasses; ++i) {
+        final Symbol type = Symbol.from(in.readUTF());
+        final Symbol role = Symbol.from(in.readUTF());
+        final KBPRealis realis = KBPRealis.valueOf(in.readUTF());
+        final String casString = in.readUTF();
+        final int casStart = in.readInt();
+        final int casEnd = in.readInt();
+        equivalenceClasses.add(TypeRoleFillerRealis.of(docID, type, role, realis,
+            KBPString.from(casString, casStart, casEnd)));
+        outcomeFlags[i] = in.readByte();
+      }
+
+      final int linkingNormalizer = in.readInt();
+      final double linkingPrecision = in.readDouble();
+      final double linkingRecall = in.readDouble();
+      final double linkingF1 = in.readDouble();
+
+      return Optional.of(scorer.resultWithoutDetails(
+          IndexedScoringAligner.Alignment.fromOutcomeFlags(docID, equivalenceClasses.build(),
+              outcomeFlags), linkingNormalizer, linkingPrecision, linkingRecall, linkingF1));
+    }
+  }
+
+  private File fileFor(final Symbol docID, final HashCode key) {
+    return new File(directory, docID.asString() + "." + key + SUFFIX);
+  }
+
+  private static void hashArguments(final Hasher hasher, final ArgumentOutput argumentOutput) {
+    hasher.putInt(ARGUMENTS_CODE).putInt(argumentOutput.size());
+    for (final Response response : argumentOutput.responses()) {
+      hashResponse(hasher, response);
+      hasher.putDouble(argumentOutput.confidence(response));
+    }
+  }
+
+  private static void hashLinking(final Hasher hasher, final ResponseLinking linking) {
+    hasher.putInt(linking.responseSets().size());
+    for (final ResponseSet responseSet : linking.responseSets()) {
+      hasher.putInt(responseSet.responses().size());
+      for (final Response response : responseSet) {
+        hashResponse(hasher, response);
+      }
+    }
+    hasher.putInt(linking.incompleteResponses().size());
+    for (final Response response : linking.incompleteResponses()) {
+      hashResponse(hasher, response);
+    }
+  }
+
+  private static void hashAnswerKey(final Hasher hasher, final AnswerKey answerKey) {
+    hasher.putInt(ANSWER_KEY_CODE).putInt(answerKey.annotatedResponses().size());
+    for (final AssessedResponse assessedResponse : answerKey.annotatedResponses()) {
+      hashResponse(hasher, assessedResponse.response());
+      hashAssessment(hasher, assessedResponse.assessment());
+    }
+    hasher.putInt(answerKey.unannotatedResponses().size());
+    for (final Response response : answerKey.unannotatedResponses()) {
+      hashResponse(hasher, response);
+    }
+    hasher.putInt(answerKey.corefAnnotation().CASesToIDs().size());
+    for (final Map.Entry<KBPString, Integer> entry : answerKey.corefAnnotation().CASesToIDs()
+        .entrySet()) {
+      hashKBPString(hasher, entry.getKey());
+      hasher.putInt(entry.getValue());
+    }
+    hasher.putInt(answerKey.corefAnnotation().unannotatedCASes().size());
+    for (final KBPString cas : answerKey.corefAnnotation().unannotatedCASes()) {
+      hashKBPString(hasher, cas);
+    }
+  }
+
+  private static void hashResponse(final Hasher hasher, final Response response) {
+    hasher.putString(response.docID().asString(), Charsets.UTF_8)
+        .putString(response.type().asString(), Charsets.UTF_8)
+        .putString(response.role().asString(), Charsets.UTF_8);
+    hashKBPString(hasher, response.canonicalArgument());
+    hashSpan(hasher, response.baseFiller());
+    // justifications are sets, so their order cannot change the result
+    hasher.putInt(PREDICATE_JUSTIFICATIONS_CODE)
+        .putInt(response.predicateJustifications().size());
+    for (final CharOffsetSpan span : Ordering.<CharOffsetSpan>natural()
+        .sortedCopy(response.predicateJustifications())) {
+      hashSpan(hasher, span);
+    }
+    hasher.putInt(ADDITIONAL_JUSTIFICATIONS_CODE)
+        .putInt(response.additionalArgumentJustifications().size());
+    for (final CharOffsetSpan span : Ordering.<CharOffsetSpan>natural()
+        .sortedCopy(response.additionalArgumentJustifications())) {
+      hashSpan(hasher, span);
+    }
+    hasher.putString(response.realis().name(), Charsets.UTF_8);
+  }
+
+  private static void hashAssessment(final Hasher hasher, final ResponseAssessment assessment) {
+    hashOptionalEnum(hasher, assessment.justificationSupportsEventType());
+    hashOptionalEnum(hasher, assessment.justificationSupportsRole());
+    hashOptionalEnum(hasher, assessment.entityCorrectFiller());
+    hashOptionalEnum(hasher, assessment.realis());
+    hashOptionalEnum(hasher, assessment.baseFillerCorrect());
+    hashOptionalEnum(hasher, assessment.mentionTypeOfCAS());
+  }
+
+  // enums are hashed by name so that reordering their constants does not change keys
+  private static void hashOptionalEnum(final Hasher hasher,
+      final Optional<? extends Enum<?>> value) {
+    if (value.isPresent()) {
+      hasher.putString(value.get().name(), Charsets.UTF_8);
+    } else {
+      hasher.putInt(ABSENT_CODE);
+    }
+  }
+
+  private static void hashSpan(final Hasher hasher, final CharOffsetSpan span) {
+    hasher.putInt(span.startInclusive()).putInt(span.endInclusive());
+  }
+
+  private static void hashKBPString(final Hasher hasher, final KBPString kbpString) {
+    hasher.putString(kbpString.string(), Charsets.UTF_8)
+        .putInt(kbpString.charOffsetSpan().startInclusive())
+        .putInt(kbpString.charOffsetSpan().endInclusive());
+  }
+}
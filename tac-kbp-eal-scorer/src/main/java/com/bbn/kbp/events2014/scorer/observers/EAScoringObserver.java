@@ -62,7 +62,6 @@ import java.util.Set;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.collect.Iterables.transform;
 
 public final class EAScoringObserver extends KBPScoringObserver<TypeRoleFillerRealis> {
 
@@ -145,6 +144,7 @@ public final class EAScoringObserver extends KBPScoringObserver<TypeRoleFillerRe
       final File perDocLogDir) throws IOException {
     final ProvenancedConfusionMatrix.Builder<TypeRoleFillerRealis> confusionMatrixBuilder =
         ProvenancedConfusionMatrix.builder();
+    final BreakdownComputer.BreakdownCounts breakdownCounts = breakdownComputer.newCounts();
     final StringBuilder htmlOut = new StringBuilder();
 
     htmlOut.append(renderer.preamble());
@@ -152,7 +152,7 @@ public final class EAScoringObserver extends KBPScoringObserver<TypeRoleFillerRe
     for (final TypeRoleFillerRealis truePositive : scoringAlignment
         .truePositiveEquivalenceClasses()) {
       //textOut.append("True Positive\n");
-      confusionMatrixBuilder.record(PRESENT, PRESENT, truePositive);
+      record(confusionMatrixBuilder, breakdownCounts, PRESENT, PRESENT, truePositive);
       htmlOut.append(renderer.correct(scoringAlignment.systemOutput().score(
           scoringAlignment.systemEquivClassToAssessedRepresentativeResponses().get(truePositive)
               .response())));
@@ -160,7 +160,7 @@ public final class EAScoringObserver extends KBPScoringObserver<TypeRoleFillerRe
 
     for (final TypeRoleFillerRealis falsePositive : scoringAlignment
         .falsePositiveEquivalenceClasses()) {
-      confusionMatrixBuilder.record(PRESENT, ABSENT, falsePositive);
+      record(confusionMatrixBuilder, breakdownCounts, PRESENT, ABSENT, falsePositive);
       /*textOut.append("False positive. Response annotated in pool as ")
           .append(annotationForSelected.assessment()).append("\n");
       confusionMatrixBuilder.record(PRESENT, ABSENT, answerable);*/
@@ -176,7 +176,7 @@ public final class EAScoringObserver extends KBPScoringObserver<TypeRoleFillerRe
 
     for (final TypeRoleFillerRealis falseNegative : scoringAlignment
         .falseNegativeEquivalenceClasses()) {
-      confusionMatrixBuilder.record(ABSENT, PRESENT, falseNegative);
+      record(confusionMatrixBuilder, breakdownCounts, ABSENT, PRESENT, falseNegative);
       /*textOut.append(
           "FN: No correct system response present, but the following correct response is in the pool: ")
           .append(Iterables.find(assessedResponses, ResponseCorrect)).append("\n");*/
@@ -193,7 +193,7 @@ public final class EAScoringObserver extends KBPScoringObserver<TypeRoleFillerRe
 
     for (final TypeRoleFillerRealis unassessed : scoringAlignment.unassessed()) {
       // we count unassessed as false positives, if we can count them at all
-      confusionMatrixBuilder.record(PRESENT, ABSENT, unassessed);
+      record(confusionMatrixBuilder, breakdownCounts, PRESENT, ABSENT, unassessed);
 
       /*textOut.append("No assessment for ").append(unannotated).append(", counting as wrong\n");
       htmlOut.append(renderer
@@ -207,7 +207,7 @@ public final class EAScoringObserver extends KBPScoringObserver<TypeRoleFillerRe
 
     final ProvenancedConfusionMatrix<TypeRoleFillerRealis> confusionMatrix =
         confusionMatrixBuilder.build();
-    observeDocumentConfusionMatrix(confusionMatrix);
+    documentResults.add(new DocumentResult(confusionMatrix, breakdownComputer, breakdownCounts));
 
     final StringBuilder sb = new StringBuilder();
     sb.append("===== Confusion matrix for ").append(name()).append(" =====\n");
@@ -239,10 +239,12 @@ public final class EAScoringObserver extends KBPScoringObserver<TypeRoleFillerRe
     this.outputters = ImmutableList.copyOf(outputters);
   }
 
-  private void observeDocumentConfusionMatrix(
-      final ProvenancedConfusionMatrix<TypeRoleFillerRealis> matrix) {
-    documentResults
-        .add(new DocumentResult(matrix, breakdownComputer.computeBreakdownSummaries(matrix)));
+  private void record(
+      final ProvenancedConfusionMatrix.Builder<TypeRoleFillerRealis> confusionMatrixBuilder,
+      final BreakdownComputer.BreakdownCounts breakdownCounts, final Symbol predicted,
+      final Symbol gold, final TypeRoleFillerRealis equivalenceClass) {
+    confusionMatrixBuilder.record(predicted, gold, equivalenceClass);
+    breakdownComputer.record(breakdownCounts, predicted, gold, equivalenceClass);
   }
 
 
@@ -252,22 +254,17 @@ public final class EAScoringObserver extends KBPScoringObserver<TypeRoleFillerRe
   private static final class DocumentResult {
 
     public final ProvenancedConfusionMatrix<TypeRoleFillerRealis> confusionMatrix;
-    public final Map<String, BrokenDownSummaryConfusionMatrix<Symbol>> breakdownMatrices;
+    // the counts can only be interpreted by the computer which recorded them
+    public final BreakdownComputer<TypeRoleFillerRealis> breakdownComputer;
+    public final BreakdownComputer.BreakdownCounts breakdownCounts;
 
     public DocumentResult(ProvenancedConfusionMatrix<TypeRoleFillerRealis> confusionMatrix,
-        Map<String, BrokenDownSummaryConfusionMatrix<Symbol>> breakdownMatrices) {
+        BreakdownComputer<TypeRoleFillerRealis> breakdownComputer,
+        BreakdownComputer.BreakdownCounts breakdownCounts) {
       this.confusionMatrix = checkNotNull(confusionMatrix);
-      this.breakdownMatrices = ImmutableMap.copyOf(breakdownMatrices);
+      this.breakdownComputer = checkNotNull(breakdownComputer);
+      this.breakdownCounts = checkNotNull(breakdownCounts);
     }
-
-    public static Function<DocumentResult, Map<String, BrokenDownSummaryConfusionMatrix<Symbol>>>
-        GetBreakdownMatricesFunction =
-        new Function<DocumentResult, Map<String, BrokenDownSummaryConfusionMatrix<Symbol>>>() {
-          @Override
-          public Map<String, BrokenDownSummaryConfusionMatrix<Symbol>> apply(DocumentResult input) {
-            return input.breakdownMatrices;
-          }
-        };
   }
 
 
@@ -294,6 +291,27 @@ public final class EAScoringObserver extends KBPScoringObserver<TypeRoleFillerRe
     };
   }
 
+  /**
+   * Sums the breakdown counts of {@code documentResults} and converts them to confusion matrices,
+   * giving the same result as {@link #combineBreakdowns(Iterator)} on each document's breakdowns.
+   */
+  private static ImmutableMap<String, BrokenDownSummaryConfusionMatrix<Symbol>>
+  combineDocumentBreakdowns(Iterable<DocumentResult> documentResults) {
+    BreakdownComputer<TypeRoleFillerRealis> breakdownComputer = null;
+    BreakdownComputer.BreakdownCounts totals = null;
+    for (final DocumentResult documentResult : documentResults) {
+      if (totals == null) {
+        breakdownComputer = documentResult.breakdownComputer;
+        totals = breakdownComputer.newCounts();
+      }
+      totals.add(documentResult.breakdownCounts);
+    }
+    if (totals == null) {
+      return ImmutableMap.of();
+    }
+    return breakdownComputer.toSummaries(totals);
+  }
+
   public static ImmutableMap<String, BrokenDownSummaryConfusionMatrix<Symbol>> combineBreakdowns(
       Iterator<Map<String, BrokenDownSummaryConfusionMatrix<Symbol>>> breakdowns) {
 
@@ -331,8 +349,7 @@ public final class EAScoringObserver extends KBPScoringObserver<TypeRoleFillerRe
     public void writeOutput(Iterable<DocumentResult> documentResults, File outputDirectory)
         throws IOException {
       final Map<String, BrokenDownSummaryConfusionMatrix<Symbol>> straightResults =
-          combineBreakdowns(
-              transform(documentResults, DocumentResult.GetBreakdownMatricesFunction).iterator());
+          combineDocumentBreakdowns(documentResults);
       writeBreakdownsToFiles(straightResults, outputDirectory);
     }
 
@@ -415,9 +432,7 @@ public final class EAScoringObserver extends KBPScoringObserver<TypeRoleFillerRe
       final List<Map<String, BrokenDownSummaryConfusionMatrix<Symbol>>> resultsForSamples =
           Lists.newArrayList();
       while (bootstrappedResults.hasNext()) {
-        resultsForSamples.add(combineBreakdowns(
-            transform(bootstrappedResults.next(), DocumentResult.GetBreakdownMatricesFunction)
-                .iterator()));
+        resultsForSamples.add(combineDocumentBreakdowns(bootstrappedResults.next()));
       }
 
       final ImmutableMultimap<String, BrokenDownSummaryConfusionMatrix<Symbol>>
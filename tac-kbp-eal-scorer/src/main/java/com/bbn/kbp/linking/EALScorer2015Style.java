@@ -4,7 +4,6 @@ import com.bbn.bue.common.parameters.Parameters;
 import com.bbn.bue.common.symbols.Symbol;
 import com.bbn.kbp.events2014.AnswerKey;
 import com.bbn.kbp.events2014.ArgumentOutput;
-import com.bbn.kbp.events2014.DocumentSystemOutput2015;
 import com.bbn.kbp.events2014.EventArgScoringAlignment;
 import com.bbn.kbp.events2014.EventArgumentLinking;
 import com.bbn.kbp.events2014.KBPRealis;
@@ -12,21 +11,23 @@ import com.bbn.kbp.events2014.Response;
 import com.bbn.kbp.events2014.ResponseLinking;
 import com.bbn.kbp.events2014.ScoringData;
 import com.bbn.kbp.events2014.TypeRoleFillerRealis;
+import com.bbn.kbp.events2014.diagnostics.Diagnostics;
 import com.bbn.kbp.events2014.linking.EventArgumentLinkingAligner;
 import com.bbn.kbp.events2014.linking.ExactMatchEventArgumentLinkingAligner;
+import com.bbn.kbp.events2014.metrics.StageMetrics;
+import com.bbn.kbp.events2014.scorer.IndexedScoringAligner;
 import com.bbn.kbp.events2014.scorer.LinkingScore;
-import com.bbn.kbp.events2014.scorer.StandardScoringAligner;
 import com.bbn.kbp.events2014.scorer.bin.Preprocessors;
+import com.bbn.kbp.events2014.transformers.FusedScoringDataTransformation;
 import com.bbn.kbp.events2014.transformers.KeepBestJustificationOnly;
 import com.bbn.kbp.events2014.transformers.ResponseMapping;
 import com.bbn.kbp.events2014.transformers.ScoringDataTransformation;
 
 import com.google.common.annotations.Beta;
 import com.google.common.base.Function;
-import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Sets;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,6 +35,7 @@ import org.slf4j.LoggerFactory;
 import static com.bbn.kbp.events2014.TypeRoleFillerRealisFunctions.realis;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Predicates.compose;
 import static com.google.common.base.Predicates.equalTo;
 import static com.google.common.base.Predicates.in;
@@ -43,7 +45,9 @@ import static com.google.common.base.Predicates.not;
 public final class EALScorer2015Style {
   private static final Logger log = LoggerFactory.getLogger(EALScorer2015Style.class);
 
-  private final Optional<ScoringDataTransformation> preprocessor;
+  // the preprocessor, if any, followed by keeping only the best justifications, fused so the
+  // system output and linkings are rebuilt as few times as possible
+  private final FusedScoringDataTransformation preprocessAndKeepBest;
   private final EventArgumentLinkingAligner aligner =
       ExactMatchEventArgumentLinkingAligner.create();
   private final LinkF1 linkF1 = LinkF1.create();
@@ -54,7 +58,16 @@ public final class EALScorer2015Style {
     checkArgument(beta >= 0.0);
     checkArgument(lambda >= 0.0);
 
-    this.preprocessor = Optional.fromNullable(preprocessor);
+    final ImmutableList.Builder<ScoringDataTransformation> transformations =
+        ImmutableList.builder();
+    if (preprocessor != null) {
+      transformations.add(preprocessor);
+    }
+    // regardless of the preprocessing, we always filter down to having the smallest possible set
+    // of highest scoring responses which keeps at least one response in each event frame of the
+    // system linking.
+    transformations.add(KeepBestJustificationOnly.asTransformationUsingAnswerKeyCoref());
+    this.preprocessAndKeepBest = FusedScoringDataTransformation.fuse(transformations.build());
     this.beta = beta;
     this.lambda = lambda;
   }
@@ -67,6 +80,10 @@ public final class EALScorer2015Style {
     return new EALScorer2015Style(null, 0.25, 0.5);
   }
 
+  public double beta() {
+    return beta;
+  }
+
   public double lambda() {
     return lambda;
   }
@@ -98,49 +115,78 @@ public final class EALScorer2015Style {
     public Symbol docID() {
       return argResult.docID();
     }
+
+    /**
+     * Returns a copy of this result which keeps only the counts and scores needed for aggregation
+     * and bootstrapping. The argument alignment's responses and the linking score's reference
+     * linking are released, so {@link ArgResult#argumentScoringAlignment()} and {@link
+     * LinkResult#linkingScore()} may not be called on the copy.
+     */
+    public Result withoutDetails() {
+      return new Result(argResult.withoutAlignmentDetails(), linkResult.withoutLinkingScore());
+    }
   }
 
   public final class ArgResult {
 
-    private final EventArgScoringAlignment<TypeRoleFillerRealis> argScoringAlignment;
+    private final IndexedScoringAligner.Alignment<TypeRoleFillerRealis> argScoringAlignment;
 
     private ArgResult(
-        final EventArgScoringAlignment<TypeRoleFillerRealis> argScoringAlignment) {
+        final IndexedScoringAligner.Alignment<TypeRoleFillerRealis> argScoringAlignment) {
       this.argScoringAlignment = checkNotNull(argScoringAlignment);
     }
 
     public double argumentNormalizer() {
-      return Sets.union(
-          argScoringAlignment.truePositiveEquivalenceClasses(),
-          argScoringAlignment.falseNegativeEquivalenceClasses()).size();
+      // true positive and false negative equivalence classes never overlap
+      return argScoringAlignment.numTruePositives() + argScoringAlignment.numFalseNegatives();
     }
 
     public Symbol docID() {
       return argScoringAlignment.docID();
     }
 
+    /**
+     * The full alignment of system and reference responses. This is built on first request, so
+     * prefer the count-based methods where they suffice.
+     */
     public EventArgScoringAlignment<TypeRoleFillerRealis> argumentScoringAlignment() {
+      return argScoringAlignment.fullAlignment();
+    }
+
+    /**
+     * The alignment behind this result, which provides the outcome of each equivalence class
+     * even for results without details.
+     */
+    public IndexedScoringAligner.Alignment<TypeRoleFillerRealis> indexedAlignment() {
       return argScoringAlignment;
     }
 
+    /**
+     * The equivalence classes counted by {@link #argumentNormalizer()}. Unlike {@link
+     * #argumentScoringAlignment()}, this is available on results without details.
+     */
+    public ImmutableList<TypeRoleFillerRealis> truePositiveAndFalseNegativeEquivalenceClasses() {
+      return argScoringAlignment.truePositiveAndFalseNegativeEquivalenceClasses();
+    }
+
+    private ArgResult withoutAlignmentDetails() {
+      return new ArgResult(argScoringAlignment.withoutResponses());
+    }
+
     public double scaledArgumentScore() {
       return unscaledArgumentScore() / argumentNormalizer();
     }
 
     public double unscaledArgumentScore() {
-      final int truePositiveArgumentECs =
-          argScoringAlignment.truePositiveEquivalenceClasses().size();
-      final int falsePositiveArgumentECs =
-          argScoringAlignment.falsePositiveEquivalenceClasses().size();
-      return truePositiveArgumentECs - beta * falsePositiveArgumentECs;
+      return unscaledTruePositiveArguments() - beta * unscaledFalsePositiveArguments();
     }
 
     public double unscaledTruePositiveArguments() {
-      return argScoringAlignment.truePositiveEquivalenceClasses().size();
+      return argScoringAlignment.numTruePositives();
     }
 
     public double unscaledFalsePositiveArguments() {
-      return argScoringAlignment.falsePositiveEquivalenceClasses().size();
+      return argScoringAlignment.numFalsePositives();
     }
 
     public double precision() {
@@ -153,8 +199,7 @@ public final class EALScorer2015Style {
     public double recall() {
       return (unscaledTruePositiveArguments() > 0.0) ?
              unscaledTruePositiveArguments() / (unscaledTruePositiveArguments()
-                                                    + argScoringAlignment
-                 .falseNegativeEquivalenceClasses().size())
+                                                    + unscaledFalseNegativeArguments())
                                                      : 0.0;
     }
 
@@ -163,97 +208,173 @@ public final class EALScorer2015Style {
     }
 
     public double unscaledFalseNegativeArguments() {
-      return argScoringAlignment.falseNegativeEquivalenceClasses().size();
+      return argScoringAlignment.numFalseNegatives();
     }
   }
 
   public static final class LinkResult {
 
+    private final Symbol docID;
+    // null if released by withoutLinkingScore()
     private final LinkingScore linkingScore;
+    // cached so aggregation and bootstrapping need not consult the linking score
+    private final int linkingNormalizer;
+    private final double precision;
+    private final double recall;
+    private final double f1;
 
     private LinkResult(final LinkingScore linkingScore) {
-      this.linkingScore = checkNotNull(linkingScore);
+      this(linkingScore.docID(), checkNotNull(linkingScore), linkingScore.referenceLinkingSize(),
+          linkingScore.precision(), linkingScore.recall(), linkingScore.F1());
+    }
+
+    private LinkResult(final Symbol docID, final LinkingScore linkingScore,
+        final int linkingNormalizer, final double precision, final double recall,
+        final double f1) {
+      this.docID = checkNotNull(docID);
+      this.linkingScore = linkingScore;
+      this.linkingNormalizer = linkingNormalizer;
+      this.precision = precision;
+      this.recall = recall;
+      this.f1 = f1;
     }
 
     public Symbol docID() {
-      return linkingScore.docID();
+      return docID;
     }
 
     public double linkingNormalizer() {
-      return linkingScore.referenceLinkingSize();
+      return linkingNormalizer;
     }
 
+    /**
+     * @throws IllegalStateException if this result was created by {@link
+     *                               Result#withoutDetails()}
+     */
     public LinkingScore linkingScore() {
+      checkState(linkingScore != null, "Linking score for %s has been released", docID);
       return linkingScore;
     }
 
     public double unscaledLinkingScore() {
-      return linkingScore.F1() * linkingNormalizer();
+      return f1 * linkingNormalizer;
     }
 
     public double unscaledLinkingPrecision() {
-      return linkingScore.precision() * linkingNormalizer();
+      return precision * linkingNormalizer;
     }
 
     public double unscaledLinkingRecall() {
-      return linkingScore.recall() * linkingNormalizer();
+      return recall * linkingNormalizer;
     }
 
     public double scaledLinkingScore() {
-      return linkingScore.F1();
+      return f1;
     }
 
     public double scaledLinkingPrecision() {
-      return linkingScore.precision();
+      return precision;
     }
 
     public double scaledLinkingRecall() {
-      return linkingScore.recall();
+      return recall;
+    }
+
+    private LinkResult withoutLinkingScore() {
+      return new LinkResult(docID, null, linkingNormalizer, precision, recall, f1);
     }
   }
 
+  // the names under which score(ScoringData, StageMetrics) records its stages
+  public static final String PREPROCESSING_STAGE = "preprocessing";
+  public static final String ARGUMENT_ALIGNMENT_STAGE = "aligning arguments";
+  public static final String LINKING_ALIGNMENT_STAGE = "aligning linkings";
+  public static final String LINK_F1_STAGE = "computing LinkF1";
+  // the diagnostics channels score(ScoringData, StageMetrics, Diagnostics) records to
+  public static final String LINKING_CHANNEL = "linking";
+  public static final String LINK_F1_ITEMS_CHANNEL = "linkF1Items";
+
   private static final Predicate<TypeRoleFillerRealis> REALIS_IS_NOT_GENERIC =
       compose(not(equalTo(KBPRealis.Generic)), realis());
 
   public Result score(ScoringData unpreprocessedScoringData) {
+    return score(unpreprocessedScoringData, StageMetrics.disabled());
+  }
+
+  /**
+   * Like {@link #score(ScoringData)}, but records the time spent preprocessing, aligning and
+   * scoring the document in {@code metrics}.
+   */
+  public Result score(ScoringData unpreprocessedScoringData, StageMetrics metrics) {
+    return score(unpreprocessedScoringData, metrics, Diagnostics.disabled());
+  }
+
+  /**
+   * Like {@link #score(ScoringData, StageMetrics)}, but also records the linking score of each
+   * document and of each of its reference arguments in {@code diagnostics}.
+   */
+  public Result score(ScoringData unpreprocessedScoringData, StageMetrics metrics,
+      Diagnostics diagnostics) {
     checkArgument(unpreprocessedScoringData.answerKey().isPresent() && unpreprocessedScoringData
         .argumentOutput().isPresent()
         && unpreprocessedScoringData.referenceLinking().isPresent() && unpreprocessedScoringData
         .systemLinking().isPresent());
 
-    final ScoringData scoringData = preprocessor.isPresent()?
-                                    preprocessor.get().transform(unpreprocessedScoringData)
-                                                            :unpreprocessedScoringData;
+    final ScoringData bestOnlyScoringData;
+    try (StageMetrics.Timer.Context ignored = metrics.time(PREPROCESSING_STAGE)) {
+      bestOnlyScoringData = preprocessAndKeepBest.transform(unpreprocessedScoringData);
+    }
 
-    // regardless of the preprocessing, we always filter down to having the smallest possible set
-    // of highest scoring responses which keeps at least one response in each event frame of the
-    // system linking.
-    final ResponseMapping keepBestResponseMapping =
-        KeepBestJustificationOnly.computeResponseMappingUsingProvidedCoref(
-            DocumentSystemOutput2015
-                .from(scoringData.argumentOutput().get(), scoringData.systemLinking().get()),
-            scoringData.answerKey().get().corefAnnotation());
-    final ScoringData bestOnlyScoringData = ScoringData.builder().from(scoringData)
-        .argumentOutput(keepBestResponseMapping.apply(scoringData.argumentOutput().get()))
-        .systemLinking(keepBestResponseMapping.apply(scoringData.systemLinking().get()))
-        .build();
-
-    return new Result(new ArgResult(scoreEventArguments(bestOnlyScoringData)),
-        new LinkResult(scoreLinking(bestOnlyScoringData)));
+    final IndexedScoringAligner.Alignment<TypeRoleFillerRealis> argumentAlignment;
+    try (StageMetrics.Timer.Context ignored = metrics.time(ARGUMENT_ALIGNMENT_STAGE)) {
+      argumentAlignment = scoreEventArguments(bestOnlyScoringData);
+    }
+    return new Result(new ArgResult(argumentAlignment),
+        new LinkResult(scoreLinking(bestOnlyScoringData, metrics, diagnostics)));
+  }
+
+  /**
+   * Recreates a result without details (see {@link Result#withoutDetails()}) from its argument
+   * alignment and linking scores, for example when reading previously computed results.
+   */
+  public Result resultWithoutDetails(
+      final IndexedScoringAligner.Alignment<TypeRoleFillerRealis> argumentAlignment,
+      final int linkingNormalizer, final double linkingPrecision, final double linkingRecall,
+      final double linkingF1) {
+    return new Result(new ArgResult(argumentAlignment.withoutResponses()),
+        new LinkResult(argumentAlignment.docID(), null, linkingNormalizer, linkingPrecision,
+            linkingRecall, linkingF1));
+  }
+
+  /**
+   * Logs timing and counts for each preprocessing step applied so far.
+   */
+  public void logStats() {
+    preprocessAndKeepBest.logStats();
   }
 
-  private EventArgScoringAlignment<TypeRoleFillerRealis> scoreEventArguments(ScoringData scoringData) {
+  private IndexedScoringAligner.Alignment<TypeRoleFillerRealis> scoreEventArguments(
+      ScoringData scoringData) {
     final Function<Response, TypeRoleFillerRealis> equivalenceClassFunction =
         TypeRoleFillerRealis.extractFromSystemResponse(
             scoringData.answerKey().get().corefAnnotation().strictCASNormalizerFunction());
 
-    final StandardScoringAligner<TypeRoleFillerRealis> scoringAligner =
-        StandardScoringAligner.forEquivalenceClassFunction(equivalenceClassFunction);
-    return scoringAligner.align(scoringData.answerKey().get(), scoringData.argumentOutput().get());
+    final IndexedScoringAligner<TypeRoleFillerRealis> scoringAligner =
+        IndexedScoringAligner.forEquivalenceClassFunction(equivalenceClassFunction);
+    return scoringAligner.alignIndexed(scoringData.answerKey().get(),
+        scoringData.argumentOutput().get());
   }
 
   public LinkingScore scoreLinking(ScoringData scoringData) {
-    log.info("Scoring linking for {}", scoringData.answerKey().get().docId());
+    return scoreLinking(scoringData, StageMetrics.disabled());
+  }
+
+  public LinkingScore scoreLinking(ScoringData scoringData, StageMetrics metrics) {
+    return scoreLinking(scoringData, metrics, Diagnostics.disabled());
+  }
+
+  public LinkingScore scoreLinking(ScoringData scoringData, StageMetrics metrics,
+      Diagnostics diagnostics) {
     checkArgument(scoringData.systemLinking().isPresent());
     checkArgument(scoringData.referenceLinking().isPresent());
     checkArgument(scoringData.answerKey().isPresent());
@@ -272,10 +393,12 @@ public final class EALScorer2015Style {
     checkArgument(systemLinking.incompleteResponses().isEmpty(),
         "System linking for %s has incomplete responses", systemLinking.docID());
 
-    final EventArgumentLinking referenceArgumentLinking =
-        aligner.align(referenceLinking, answerKey);
-    final EventArgumentLinking systemArgumentLinking =
-        aligner.align(systemLinking, answerKey);
+    final EventArgumentLinking referenceArgumentLinking;
+    final EventArgumentLinking systemArgumentLinking;
+    try (StageMetrics.Timer.Context ignored = metrics.time(LINKING_ALIGNMENT_STAGE)) {
+      referenceArgumentLinking = aligner.align(referenceLinking, answerKey);
+      systemArgumentLinking = aligner.align(systemLinking, answerKey);
+    }
 
     final EventArgumentLinking filteredReferenceArgumentLinking = referenceArgumentLinking
         .filteredCopy(REALIS_IS_NOT_GENERIC);
@@ -297,9 +420,51 @@ public final class EALScorer2015Style {
     final EventArgumentLinking filteredSystemArgumentLinking = systemArgumentLinking
         .filteredCopy(REALIS_IS_NOT_GENERIC).filteredCopy(inReferenceArgumentLinking);
 
-    return LinkingScore.from(filteredReferenceArgumentLinking,
-        linkF1.score(filteredSystemArgumentLinking.linkedAsSetOfSets(),
-            filteredReferenceArgumentLinking.linkedAsSetOfSets()));
+    final Diagnostics.Channel linkingDiagnostics = diagnostics.channel(LINKING_CHANNEL);
+    // the default scorer never looks at individual items, so we only build one which does when
+    // someone will read the results
+    final LinkF1 linkF1ForDocument = linkingDiagnostics.isEnabled()
+        ? LinkF1.createWithItemObserver(
+        new DiagnosticsItemObserver(diagnostics.channel(LINK_F1_ITEMS_CHANNEL)))
+        : linkF1;
+    final LinkingScore ret;
+    try (StageMetrics.Timer.Context ignored = metrics.time(LINK_F1_STAGE)) {
+      ret = LinkingScore.from(filteredReferenceArgumentLinking,
+          linkF1ForDocument.score(filteredSystemArgumentLinking.linkedAsSetOfSets(),
+              filteredReferenceArgumentLinking.linkedAsSetOfSets()));
+    }
+    if (linkingDiagnostics.isEnabled()) {
+      linkingDiagnostics.record(answerKey.docId(),
+          "{} reference and {} system event frames after filtering; {} system arguments "
+              + "removed as generic or absent from the reference linking; {}",
+          filteredReferenceArgumentLinking.eventFrames().size(),
+          filteredSystemArgumentLinking.eventFrames().size(),
+          systemArgumentLinking.allLinkedEquivalenceClasses().size()
+              - filteredSystemArgumentLinking.allLinkedEquivalenceClasses().size(),
+          ret);
+    }
+    return ret;
+  }
+
+  /**
+   * Records the link counts and score of each reference argument.
+   */
+  private static final class DiagnosticsItemObserver implements LinkF1.ItemObserver {
+
+    private final Diagnostics.Channel channel;
+
+    private DiagnosticsItemObserver(final Diagnostics.Channel channel) {
+      this.channel = checkNotNull(channel);
+    }
+
+    @Override
+    public void observeItem(final Object item, final boolean inPredicted,
+        final int truePositiveLinks, final int falsePositiveLinks, final int falseNegativeLinks,
+        final double itemF1) {
+      channel.record(item, "inSystem={}\ttruePositiveLinks={}\tfalsePositiveLinks={}\t"
+              + "falseNegativeLinks={}\tF1={}", inPredicted, truePositiveLinks,
+          falsePositiveLinks, falseNegativeLinks, itemF1);
+    }
   }
 
   private ResponseMapping deleteIncorrectResponses(final ArgumentOutput argumentOutput,
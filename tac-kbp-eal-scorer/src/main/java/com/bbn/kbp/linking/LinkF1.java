@@ -1,135 +1,333 @@
 package com.bbn.kbp.linking;
 
-import com.bbn.bue.common.annotations.MoveToBUECommon;
-import com.bbn.bue.common.collections.CollectionUtils;
 import com.bbn.bue.common.evaluation.FMeasureCounts;
 
-import com.google.common.base.Predicates;
-import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Multimap;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static com.google.common.base.Preconditions.checkArgument;
-import static com.google.common.base.Predicates.in;
-import static com.google.common.base.Predicates.not;
-import static com.google.common.collect.Iterables.filter;
+import static com.google.common.base.Preconditions.checkNotNull;
 
+/**
+ * Scores a predicted clustering against a gold clustering by averaging, over items, the
+ * F-measure of each item's predicted neighbors against its gold neighbors.
+ *
+ * Items are mapped to dense integer IDs and clusters to arrays of those IDs. When every item is in
+ * at most one predicted and one gold cluster, as is the case for event argument linkings, each
+ * item's neighbor counts follow from cluster sizes and the size of the overlap of its predicted
+ * and gold clusters, so scoring is linear in the number of items. Otherwise each item's neighbors
+ * are marked off in reusable arrays. In neither case are per-item sets built.
+ */
 public class LinkF1 {
 
   private static final Logger log = LoggerFactory.getLogger(LinkF1.class);
 
-  private LinkF1() {
+  private final Optional<ItemObserver> itemObserver;
+
+  private LinkF1(final Optional<ItemObserver> itemObserver) {
+    this.itemObserver = checkNotNull(itemObserver);
   }
 
   public static LinkF1 create() {
-    return new LinkF1();
+    return new LinkF1(Optional.<ItemObserver>absent());
+  }
+
+  /**
+   * Creates a scorer which reports the score of every gold item to {@code itemObserver}. This is
+   * intended for diagnostics only.
+   */
+  public static LinkF1 createWithItemObserver(final ItemObserver itemObserver) {
+    return new LinkF1(Optional.of(itemObserver));
+  }
+
+  /**
+   * Receives the counts behind the score of each gold item.
+   */
+  public interface ItemObserver {
+
+    /**
+     * @param inPredicted whether {@code item} appears in the predicted clustering at all. If not,
+     *                    the link counts are all zero and the item's score is 0.
+     * @param itemF1      the item's contribution to the F-measure sum. Items which are
+     *                    singletons in both clusterings score 1.0.
+     */
+    void observeItem(Object item, boolean inPredicted, int truePositiveLinks,
+        int falsePositiveLinks, int falseNegativeLinks, double itemF1);
+  }
+
+  /**
+   * An {@link ItemObserver} which logs each item's counts at debug level.
+   */
+  public static ItemObserver loggingItemObserver() {
+    return LoggingItemObserver.INSTANCE;
+  }
+
+  private enum LoggingItemObserver implements ItemObserver {
+    INSTANCE;
+
+    @Override
+    public void observeItem(final Object item, final boolean inPredicted,
+        final int truePositiveLinks, final int falsePositiveLinks, final int falseNegativeLinks,
+        final double itemF1) {
+      if (!inPredicted) {
+        log.debug("{} is present only in the gold linking. Item F-measure is 0.0", item);
+      } else if (truePositiveLinks + falsePositiveLinks + falseNegativeLinks == 0) {
+        log.debug("{} is a singleton in both key and predicted. Score of 1.0", item);
+      } else {
+        log.debug("For {}, {} gold neighbors and {} predicted neighbors, {} in common. "
+                + "Item f-measure is {}", item, truePositiveLinks + falseNegativeLinks,
+            truePositiveLinks + falsePositiveLinks, truePositiveLinks, itemF1);
+      }
+    }
   }
 
   public <T> ExplicitFMeasureInfo score(final Iterable<? extends Set<T>> predicted,
       final Iterable<? extends Set<T>> gold) {
-    double linkF1Sum = 0.0;
-    double linkPrecisionSum = 0.0;
-    double linkRecallSum = 0.0;
+    final Map<T, Integer> itemIDs = Maps.newHashMap();
+    final ImmutableList.Builder<T> itemsB = ImmutableList.builder();
+    final int[][] goldClusters = encode(gold, itemIDs, itemsB, true);
+    final ImmutableList<T> keyItems = itemsB.build();
+    final int[][] predictedClusters = encode(predicted, itemIDs, null, false);
+
+    final int numItems = keyItems.size();
+    final int[][] goldMembership = membership(goldClusters, numItems);
+    final int[][] predictedMembership = membership(predictedClusters, numItems);
+    int numPredictedItems = 0;
+    for (final int[] clustersOfItem : predictedMembership) {
+      if (clustersOfItem.length > 0) {
+        ++numPredictedItems;
+      }
+    }
 
-    final Multimap<T, ? extends Set<T>> predictedItemToGroup =
-        CollectionUtils.makeSetElementsToContainersMultimap(predicted);
-    final Multimap<T, ? extends Set<T>> goldItemToGroup =
-        CollectionUtils.makeSetElementsToContainersMultimap(gold);
-
-    final ImmutableSet<T> keyItems = ImmutableSet.copyOf(Iterables.<T>concat(gold));
-    final ImmutableSet<T> predictedItems = ImmutableSet.copyOf(Iterables.<T>concat(predicted));
-    checkArgument(keyItems.containsAll(predictedItems),
-        "Predicted linking has items the gold linking lacks: %s", Sets
-            .difference(predictedItems, keyItems));
-    if (keyItems.isEmpty()) {
-      if (predictedItemToGroup.isEmpty()) {
-        log.info("Key and predicted are empty; returning score of 1");
+    if (numItems == 0) {
+      if (numPredictedItems == 0) {
+        log.debug("Key and predicted are empty; returning score of 1");
         return ExplicitFMeasureInfo.of(1.0, 1.0, 1.0);
       } else {
-        log.info("Key is empty but predicted is not; returning score of 0");
+        log.debug("Key is empty but predicted is not; returning score of 0");
         return ExplicitFMeasureInfo.of(0.0, 0.0, 0.0);
       }
-    } else if (predictedItems.isEmpty()) {
-      log.info("Predicted is empty but key is not; returning score of 0");
+    } else if (numPredictedItems == 0) {
+      log.debug("Predicted is empty but key is not; returning score of 0");
       return ExplicitFMeasureInfo.of(0.0, 0.0, 0.0);
     }
 
-    for (final T keyItem : keyItems) {
-      // withouts are to ensure an element is not counted as its own neighbor
-      final Set<T> predictedNeighbors = ImmutableSet.copyOf(
-          without(Iterables.<T>concat(predictedItemToGroup.get(keyItem)),
-              keyItem));
-      final Set<T> goldNeighbors = ImmutableSet.copyOf(without(
-          Iterables.<T>concat(goldItemToGroup.get(keyItem)),
-          keyItem));
-
-      if (predictedItems.contains(keyItem)) {
-        final boolean predictedIsSingleton = predictedNeighbors.isEmpty();
-        final boolean goldIsSingleton = goldNeighbors.isEmpty();
-
-        if (!(predictedIsSingleton && goldIsSingleton)) {
-          int truePositiveLinks = Sets.intersection(predictedNeighbors, goldNeighbors).size();
-          int falsePositiveLinks = Sets.difference(predictedNeighbors, goldNeighbors).size();
-          int falseNegativeLinks = Sets.difference(goldNeighbors, predictedNeighbors).size();
-
-          final FMeasureCounts fMeasureCounts =
-              FMeasureCounts.from(truePositiveLinks, falsePositiveLinks, falseNegativeLinks);
-          linkF1Sum += fMeasureCounts.F1();
-          linkPrecisionSum += fMeasureCounts.precision();
-          linkRecallSum += fMeasureCounts.recall();
-
-          if (predictedIsSingleton) {
-            log.info(
-                "For {}, gold neighbors are {} but predicted is singleton. Item f-measure is {}",
-                keyItem, goldNeighbors, fMeasureCounts.F1());
-          } else {
-            log.info(
-                "For {}, gold neighbors are {} and predicted neighbors are {}. Item f-measure is {}",
-                keyItem, goldNeighbors, predictedNeighbors, fMeasureCounts.F1());
-          }
-        } else {
-          final boolean appearsInPredicted = predictedItems.contains(keyItem);
-          if (appearsInPredicted) {
-            // arguments which are correctly linked to nothing (singletons)
-            // count as having perfect links
-            linkF1Sum += 1.0;
-            linkPrecisionSum += 1.0;
-            linkRecallSum += 1.0;
-            log.info("{} is a singleton in both key and predicted. Score of 1.0", keyItem);
-          } else {
-            log.info("{} is a singleton in key but does not appear in predicted. Score of 0.0",
-                keyItem);
-          }
-        }
-      } else {
-        log.info("{} is present only in the gold linking. Item F-measure is 0.0", keyItem);
-      }
+    final Sums sums = new Sums();
+    if (isPartition(goldMembership) && isPartition(predictedMembership)) {
+      scoreByClusterOverlaps(keyItems, goldClusters, predictedClusters, predictedMembership, sums);
+    } else {
+      scoreByMarkingNeighbors(keyItems, goldClusters, predictedClusters, goldMembership,
+          predictedMembership, sums);
     }
+
     // note we divide linkPrecisionSum by the number of predicted items,
     // but the others by the number of gold items. This is because missing items
     // hurt recall but not precision
     final ExplicitFMeasureInfo explicitFMeasureInfo =
-        ExplicitFMeasureInfo.of(linkPrecisionSum / predictedItems.size(),
-            linkRecallSum / keyItems.size(), linkF1Sum / keyItems.size());
-    log.info("Final document linking score: {}", explicitFMeasureInfo);
+        ExplicitFMeasureInfo.of(sums.linkPrecisionSum / numPredictedItems,
+            sums.linkRecallSum / numItems, sums.linkF1Sum / numItems);
+    log.debug("Final document linking score: {}", explicitFMeasureInfo);
     return explicitFMeasureInfo;
   }
 
-  @MoveToBUECommon
-  private static <T, S extends T> Iterable<T> without(Iterable<T> input, S itemToExclude) {
-    return filter(input, not(Predicates.<T>equalTo(itemToExclude)));
+  /**
+   * Scores when each item is in at most one cluster of each clustering. An item's neighbors are
+   * then the rest of its cluster, and its true positive links are the rest of the overlap of its
+   * gold and predicted clusters.
+   */
+  private <T> void scoreByClusterOverlaps(final List<T> keyItems, final int[][] goldClusters,
+      final int[][] predictedClusters, final int[][] predictedMembership, final Sums sums) {
+    // overlap of the current gold cluster with each predicted cluster
+    final int[] overlaps = new int[predictedClusters.length];
+    for (final int[] goldCluster : goldClusters) {
+      for (final int item : goldCluster) {
+        if (predictedMembership[item].length > 0) {
+          ++overlaps[predictedMembership[item][0]];
+        }
+      }
+      final int goldNeighbors = goldCluster.length - 1;
+      for (final int item : goldCluster) {
+        if (predictedMembership[item].length > 0) {
+          final int predictedCluster = predictedMembership[item][0];
+          final int predictedNeighbors = predictedClusters[predictedCluster].length - 1;
+          final int truePositiveLinks = overlaps[predictedCluster] - 1;
+          scoreItem(keyItems.get(item), truePositiveLinks, predictedNeighbors - truePositiveLinks,
+              goldNeighbors - truePositiveLinks, sums);
+        } else {
+          observeMissingItem(keyItems.get(item));
+        }
+      }
+      for (final int item : goldCluster) {
+        if (predictedMembership[item].length > 0) {
+          overlaps[predictedMembership[item][0]] = 0;
+        }
+      }
+    }
   }
 
-  @MoveToBUECommon
-  private static <T> Iterable<T> withoutAnyOf(Iterable<T> input,
-      Collection<? extends T> itemsToExclude) {
-    return filter(input, not(in(itemsToExclude)));
+  /**
+   * Scores when items may be in several clusters of a clustering, in which case their neighbors
+   * are the union of the other members of all those clusters.
+   */
+  private <T> void scoreByMarkingNeighbors(final List<T> keyItems, final int[][] goldClusters,
+      final int[][] predictedClusters, final int[][] goldMembership,
+      final int[][] predictedMembership, final Sums sums) {
+    // goldMark[j] == i + 1 iff j is a gold neighbor of item i; likewise for predictedMark. Marking
+    // with the item rather than a boolean avoids clearing the arrays between items.
+    final int[] goldMark = new int[keyItems.size()];
+    final int[] predictedMark = new int[keyItems.size()];
+    for (int item = 0; item < keyItems.size(); ++item) {
+      if (predictedMembership[item].length == 0) {
+        observeMissingItem(keyItems.get(item));
+        continue;
+      }
+      final int mark = item + 1;
+      // ensure an item is not counted as its own neighbor
+      goldMark[item] = mark;
+      predictedMark[item] = mark;
+
+      int goldNeighbors = 0;
+      for (final int goldCluster : goldMembership[item]) {
+        for (final int neighbor : goldClusters[goldCluster]) {
+          if (goldMark[neighbor] != mark) {
+            goldMark[neighbor] = mark;
+            ++goldNeighbors;
+          }
+        }
+      }
+      int truePositiveLinks = 0;
+      int falsePositiveLinks = 0;
+      for (final int predictedCluster : predictedMembership[item]) {
+        for (final int neighbor : predictedClusters[predictedCluster]) {
+          if (predictedMark[neighbor] != mark) {
+            predictedMark[neighbor] = mark;
+            if (goldMark[neighbor] == mark) {
+              ++truePositiveLinks;
+            } else {
+              ++falsePositiveLinks;
+            }
+          }
+        }
+      }
+      scoreItem(keyItems.get(item), truePositiveLinks, falsePositiveLinks,
+          goldNeighbors - truePositiveLinks, sums);
+    }
+  }
+
+  private void scoreItem(final Object item, final int truePositiveLinks,
+      final int falsePositiveLinks, final int falseNegativeLinks, final Sums sums) {
+    final double itemF1;
+    if (truePositiveLinks + falsePositiveLinks + falseNegativeLinks > 0) {
+      final FMeasureCounts fMeasureCounts =
+          FMeasureCounts.from(truePositiveLinks, falsePositiveLinks, falseNegativeLinks);
+      itemF1 = fMeasureCounts.F1();
+      sums.linkF1Sum += itemF1;
+      sums.linkPrecisionSum += fMeasureCounts.precision();
+      sums.linkRecallSum += fMeasureCounts.recall();
+    } else {
+      // arguments which are correctly linked to nothing (singletons)
+      // count as having perfect links
+      itemF1 = 1.0;
+      sums.linkF1Sum += 1.0;
+      sums.linkPrecisionSum += 1.0;
+      sums.linkRecallSum += 1.0;
+    }
+    if (itemObserver.isPresent()) {
+      itemObserver.get().observeItem(item, true, truePositiveLinks, falsePositiveLinks,
+          falseNegativeLinks, itemF1);
+    }
+  }
+
+  private void observeMissingItem(final Object item) {
+    if (itemObserver.isPresent()) {
+      itemObserver.get().observeItem(item, false, 0, 0, 0, 0.0);
+    }
+  }
+
+  /**
+   * Converts each cluster to an array of item IDs. If {@code addNewItems} is true, unseen items
+   * are assigned the next free ID and added to {@code itemsB}; otherwise unseen items are an
+   * error.
+   */
+  private static <T> int[][] encode(final Iterable<? extends Set<T>> clusters,
+      final Map<T, Integer> itemIDs, final ImmutableList.Builder<T> itemsB,
+      final boolean addNewItems) {
+    final ImmutableList.Builder<int[]> ret = ImmutableList.builder();
+    Set<T> unknownItems = null;
+    for (final Set<T> cluster : clusters) {
+      final int[] encoded = new int[cluster.size()];
+      int i = 0;
+      for (final T item : cluster) {
+        Integer id = itemIDs.get(item);
+        if (id == null) {
+          if (addNewItems) {
+            id = itemIDs.size();
+            itemIDs.put(item, id);
+            itemsB.add(item);
+          } else {
+            if (unknownItems == null) {
+              unknownItems = Sets.newLinkedHashSet();
+            }
+            unknownItems.add(item);
+            continue;
+          }
+        }
+        encoded[i++] = id;
+      }
+      ret.add(encoded);
+    }
+    checkArgument(unknownItems == null,
+        "Predicted linking has items the gold linking lacks: %s", unknownItems);
+    final List<int[]> asList = ret.build();
+    return asList.toArray(new int[asList.size()][]);
+  }
+
+  /**
+   * Returns, for each item, the indices of the clusters containing it.
+   */
+  private static int[][] membership(final int[][] clusters, final int numItems) {
+    final int[] counts = new int[numItems];
+    for (final int[] cluster : clusters) {
+      for (final int item : cluster) {
+        ++counts[item];
+      }
+    }
+    final int[][] ret = new int[numItems][];
+    for (int item = 0; item < numItems; ++item) {
+      ret[item] = new int[counts[item]];
+    }
+    Arrays.fill(counts, 0);
+    for (int cluster = 0; cluster < clusters.length; ++cluster) {
+      for (final int item : clusters[cluster]) {
+        ret[item][counts[item]++] = cluster;
+      }
+    }
+    return ret;
+  }
+
+  private static boolean isPartition(final int[][] membership) {
+    for (final int[] clustersOfItem : membership) {
+      if (clustersOfItem.length > 1) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static final class Sums {
+
+    double linkF1Sum = 0.0;
+    double linkPrecisionSum = 0.0;
+    double linkRecallSum = 0.0;
   }
 }
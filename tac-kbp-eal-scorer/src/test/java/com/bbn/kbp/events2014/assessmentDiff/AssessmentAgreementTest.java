@@ -0,0 +1,197 @@
+package com.bbn.kbp.events2014.assessmentDiff;
+
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.kbp.events2014.AnswerKey;
+import com.bbn.kbp.events2014.AssessedResponse;
+import com.bbn.kbp.events2014.CharOffsetSpan;
+import com.bbn.kbp.events2014.CorefAnnotation;
+import com.bbn.kbp.events2014.FieldAssessment;
+import com.bbn.kbp.events2014.FillerMentionType;
+import com.bbn.kbp.events2014.KBPRealis;
+import com.bbn.kbp.events2014.KBPString;
+import com.bbn.kbp.events2014.Response;
+import com.bbn.kbp.events2014.ResponseAssessment;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.bbn.kbp.events2014.FieldAssessment.CORRECT;
+import static com.bbn.kbp.events2014.FieldAssessment.INCORRECT;
+import static com.bbn.kbp.events2014.assessmentDiff.AssessmentAgreement.Dimension.AER;
+import static com.bbn.kbp.events2014.assessmentDiff.AssessmentAgreement.Dimension.AET;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks agreement statistics against values computed by hand. Each test gives the event type
+ * assessment ({@code C} for correct, {@code I} for incorrect, {@code -} for not assessed) of
+ * each response by each annotator.
+ */
+public final class AssessmentAgreementTest {
+
+  private static final double TOLERANCE = 1e-12;
+  private static final Symbol DOC = Symbol.from("DOC");
+  private static final Symbol ATTACK = Symbol.from("Conflict.Attack");
+  private static final Symbol TARGET = Symbol.from("Target");
+
+  @Test
+  public void testPerfectAgreement() {
+    final AssessmentAgreement agreement = observe("CCII", "CCII");
+    assertEquals(1.0, agreement.observedAgreement(AET), TOLERANCE);
+    // both labels are used half the time, so chance agreement is 0.5
+    assertEquals(1.0, agreement.fleissKappa(AET), TOLERANCE);
+    assertEquals(1.0, agreement.observedAgreement(AET, 0, 1), TOLERANCE);
+    assertEquals(1.0, agreement.cohensKappa(AET, 0, 1), TOLERANCE);
+  }
+
+  @Test
+  public void testChanceAgreement() {
+    // the annotators agree on half the responses, which is what chance predicts from their
+    // label distributions
+    final AssessmentAgreement agreement = observe("CCII", "CICI");
+    assertEquals(0.5, agreement.observedAgreement(AET), TOLERANCE);
+    assertEquals(0.0, agreement.fleissKappa(AET), TOLERANCE);
+    assertEquals(0.5, agreement.observedAgreement(AET, 0, 1), TOLERANCE);
+    assertEquals(0.0, agreement.cohensKappa(AET, 0, 1), TOLERANCE);
+  }
+
+  @Test
+  public void testSystematicDisagreement() {
+    final AssessmentAgreement agreement = observe("CCII", "IICC");
+    assertEquals(0.0, agreement.observedAgreement(AET), TOLERANCE);
+    // Fleiss: P = 0, Pe = 0.5; Cohen: Po = 0, Pe = 0.5
+    assertEquals(-1.0, agreement.fleissKappa(AET), TOLERANCE);
+    assertEquals(-1.0, agreement.cohensKappa(AET, 0, 1), TOLERANCE);
+  }
+
+  @Test
+  public void testVaryingNumberOfAnnotators() {
+    final AssessmentAgreement agreement = observe("CCICC", "CI-C-", "C-II-");
+    // the last response has only one assessment, so it is ignored. Per-response agreement is
+    // 1, 0, 1, 1/3; the six C and four I ratings give chance agreement 0.6^2 + 0.4^2 = 0.52
+    assertEquals(7.0 / 12, agreement.observedAgreement(AET), TOLERANCE);
+    assertEquals((7.0 / 12 - 0.52) / (1 - 0.52), agreement.fleissKappa(AET), TOLERANCE);
+    assertEquals(19.0 / 144, agreement.fleissKappa(AET), TOLERANCE);
+
+    // annotators 0 and 1 share responses 0, 1, and 3 and disagree only on 1. Annotator 0 said C
+    // every time, so chance agreement is 2/3
+    assertEquals(2.0 / 3, agreement.observedAgreement(AET, 0, 1), TOLERANCE);
+    assertEquals(0.0, agreement.cohensKappa(AET, 0, 1), TOLERANCE);
+    // annotators 0 and 2 share responses 0, 2, and 3: Po = 2/3, Pe = 2/3 * 1/3 + 1/3 * 2/3
+    assertEquals(2.0 / 3, agreement.observedAgreement(AET, 0, 2), TOLERANCE);
+    assertEquals(0.4, agreement.cohensKappa(AET, 0, 2), TOLERANCE);
+    // annotators 1 and 2 share responses 0 and 3: Po = 1/2, Pe = 1 * 1/2
+    assertEquals(0.5, agreement.observedAgreement(AET, 1, 2), TOLERANCE);
+    assertEquals(0.0, agreement.cohensKappa(AET, 1, 2), TOLERANCE);
+
+    assertTrue(agreement.report().contains("Responses assessed by 1 annotator(s): 1\n"));
+    assertTrue(agreement.report().contains("Responses assessed by 2 annotator(s): 2\n"));
+    assertTrue(agreement.report().contains("Responses assessed by 3 annotator(s): 2\n"));
+  }
+
+  @Test
+  public void testNothingInCommonIsUndefined() {
+    final AssessmentAgreement agreement = observe("CI--", "--CI");
+    assertTrue(Double.isNaN(agreement.observedAgreement(AET)));
+    assertTrue(Double.isNaN(agreement.fleissKappa(AET)));
+    assertTrue(Double.isNaN(agreement.observedAgreement(AET, 0, 1)));
+    assertTrue(Double.isNaN(agreement.cohensKappa(AET, 0, 1)));
+    assertTrue(agreement.report().contains("Fleiss' kappa N/A"));
+  }
+
+  @Test
+  public void testOneLabelOnlyIsUndefined() {
+    // with only one label in use chance agreement is perfect, so kappa is undefined even though
+    // the annotators agree completely
+    final AssessmentAgreement agreement = observe("CCC", "CCC");
+    assertEquals(1.0, agreement.observedAgreement(AET), TOLERANCE);
+    assertTrue(Double.isNaN(agreement.fleissKappa(AET)));
+    assertTrue(Double.isNaN(agreement.cohensKappa(AET, 0, 1)));
+  }
+
+  @Test
+  public void testUnassessedDimensionIsUndefined() {
+    // responses with incorrect event types are not assessed for their roles
+    final AssessmentAgreement agreement = observe("II", "II");
+    assertTrue(Double.isNaN(agreement.observedAgreement(AER)));
+    assertTrue(Double.isNaN(agreement.fleissKappa(AER)));
+    assertTrue(Double.isNaN(agreement.cohensKappa(AER, 0, 1)));
+  }
+
+  @Test
+  public void testUndefinedPairAmongOthers() {
+    // annotators 1 and 2 never assess the same response
+    final AssessmentAgreement agreement = observe("CICI", "CI--", "--CI");
+    assertEquals(1.0, agreement.fleissKappa(AET), TOLERANCE);
+    assertEquals(1.0, agreement.cohensKappa(AET, 0, 1), TOLERANCE);
+    assertEquals(1.0, agreement.cohensKappa(AET, 0, 2), TOLERANCE);
+    assertTrue(Double.isNaN(agreement.cohensKappa(AET, 1, 2)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPairsMustBeOrdered() {
+    observe("CI", "CI").cohensKappa(AET, 1, 0);
+  }
+
+  /**
+   * Creates an agreement over one document with one annotator for each of {@code
+   * assessmentsByAnnotator}, whose characters give that annotator's event type assessment of each
+   * response.
+   */
+  private static AssessmentAgreement observe(final String... assessmentsByAnnotator) {
+    final int numResponses = assessmentsByAnnotator[0].length();
+    final List<Response> responses = Lists.newArrayList();
+    for (int i = 0; i < numResponses; ++i) {
+      responses.add(response(i));
+    }
+    final Random rng = new Random(0);
+    final CorefAnnotation.Builder coref = CorefAnnotation.strictBuilder(DOC);
+    for (final Response response : responses) {
+      coref.putInNewRandomCluster(response.canonicalArgument(), rng);
+    }
+    final CorefAnnotation corefAnnotation = coref.build();
+
+    final ImmutableList.Builder<String> annotators = ImmutableList.builder();
+    final ImmutableList.Builder<AnswerKey> answerKeys = ImmutableList.builder();
+    for (int annotator = 0; annotator < assessmentsByAnnotator.length; ++annotator) {
+      final String assessments = assessmentsByAnnotator[annotator];
+      final ImmutableSet.Builder<AssessedResponse> assessed = ImmutableSet.builder();
+      for (int i = 0; i < numResponses; ++i) {
+        if (assessments.charAt(i) != '-') {
+          assessed.add(AssessedResponse.of(responses.get(i),
+              assessment(assessments.charAt(i) == 'C' ? CORRECT : INCORRECT)));
+        }
+      }
+      annotators.add("annotator" + annotator);
+      answerKeys.add(AnswerKey.from(DOC, assessed.build(), ImmutableSet.<Response>of(),
+          corefAnnotation));
+    }
+    final AssessmentAgreement ret = AssessmentAgreement.create(annotators.build());
+    ret.observe(answerKeys.build());
+    return ret;
+  }
+
+  private static ResponseAssessment assessment(final FieldAssessment eventType) {
+    if (eventType == INCORRECT) {
+      return ResponseAssessment.of(Optional.of(eventType), Optional.<FieldAssessment>absent(),
+          Optional.<FieldAssessment>absent(), Optional.<KBPRealis>absent(),
+          Optional.<FieldAssessment>absent(), Optional.<FillerMentionType>absent());
+    }
+    return ResponseAssessment.of(Optional.of(eventType), Optional.of(CORRECT),
+        Optional.of(CORRECT), Optional.of(KBPRealis.Actual), Optional.of(CORRECT),
+        Optional.of(FillerMentionType.NAME));
+  }
+
+  private static Response response(final int i) {
+    final CharOffsetSpan span = CharOffsetSpan.fromOffsetsOnly(10 * i, 10 * i + 4);
+    return Response.of(DOC, ATTACK, TARGET, KBPString.from("arg" + i, 10 * i, 10 * i + 4), span,
+        ImmutableSet.<CharOffsetSpan>of(), ImmutableSet.of(span), KBPRealis.Actual);
+  }
+}
@@ -0,0 +1,112 @@
+package com.bbn.kbp.events2014.assessmentDiff.diffLoggers;
+
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.kbp.events2014.io.SourceCorpusIndex;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public final class PlainDocCacheTest {
+
+  private static final Symbol DOC1 = Symbol.from("DOC1");
+  private static final Symbol DOC2 = Symbol.from("DOC2");
+
+  @Test
+  public void testReadsOriginalText() throws IOException {
+    final File dir = Files.createTempDir();
+    final File doc1 = write(dir, DOC1, "The police évacuated the square.\n");
+    final PlainDocCache cache =
+        PlainDocCache.createFromDocIDToFileMap(ImmutableMap.of(DOC1, doc1));
+    assertEquals("The police évacuated the square.\n", cache.getPlainDoc(DOC1));
+  }
+
+  @Test
+  public void testMalformedInputReplacedLikeFilesToString() throws IOException {
+    final File dir = Files.createTempDir();
+    final File doc1 = new File(dir, "DOC1");
+    Files.write(new byte[]{'a', (byte) 0xC3, 'b', (byte) 0xFF}, doc1);
+    final PlainDocCache cache =
+        PlainDocCache.createFromDocIDToFileMap(ImmutableMap.of(DOC1, doc1));
+    assertEquals(Files.toString(doc1, Charsets.UTF_8), cache.getPlainDoc(DOC1));
+  }
+
+  @Test
+  public void testRepeatedReadsUseCachedText() throws IOException {
+    final File dir = Files.createTempDir();
+    final File doc1 = write(dir, DOC1, "original");
+    final PlainDocCache cache =
+        PlainDocCache.createFromDocIDToFileMap(ImmutableMap.of(DOC1, doc1));
+    assertEquals("original", cache.getPlainDoc(DOC1));
+    // if the file were read again we would see the change
+    write(dir, DOC1, "changed");
+    assertEquals("original", cache.getPlainDoc(DOC1));
+  }
+
+  @Test
+  public void testTextBeyondBoundIsNotRetained() throws IOException {
+    final File dir = Files.createTempDir();
+    final File doc1 = write(dir, DOC1, "0123456789");
+    final File doc2 = write(dir, DOC2, "abcdefghij");
+    // room for only one of the two documents
+    final PlainDocCache cache = PlainDocCache.createFromDocIDToFileMap(
+        ImmutableMap.of(DOC1, doc1, DOC2, doc2), 15);
+    assertEquals("0123456789", cache.getPlainDoc(DOC1));
+    assertEquals("abcdefghij", cache.getPlainDoc(DOC2));
+    write(dir, DOC1, "9876543210");
+    assertEquals("9876543210", cache.getPlainDoc(DOC1));
+  }
+
+  @Test
+  public void testReadsThroughIndex() throws IOException {
+    final File dir = Files.createTempDir();
+    final ImmutableMap<Symbol, File> files = ImmutableMap.of(
+        DOC1, write(dir, DOC1, "The police évacuated the square.\n"),
+        DOC2, write(dir, DOC2, "Protesters gathered."));
+    final SourceCorpusIndex index = SourceCorpusIndex.build(files);
+    try {
+      final PlainDocCache cache = PlainDocCache.createFromIndex(index);
+      assertEquals("The police évacuated the square.\n", cache.getPlainDoc(DOC1));
+      assertEquals("Protesters gathered.", cache.getPlainDoc(DOC2));
+      assertEquals(index.text(DOC1), cache.getPlainDoc(DOC1));
+    } finally {
+      index.close();
+    }
+  }
+
+  @Test
+  public void testMissingFileThrowsIOException() {
+    final File dir = Files.createTempDir();
+    final PlainDocCache cache = PlainDocCache.createFromDocIDToFileMap(
+        ImmutableMap.of(DOC1, new File(dir, "missing")));
+    try {
+      cache.getPlainDoc(DOC1);
+      fail("Expected reading a missing file to fail");
+    } catch (IOException expected) {
+      // expected
+    }
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testUnknownDocument() throws IOException {
+    final File dir = Files.createTempDir();
+    final PlainDocCache cache = PlainDocCache.createFromDocIDToFileMap(
+        ImmutableMap.of(DOC1, write(dir, DOC1, "text")));
+    cache.getPlainDoc(DOC2);
+  }
+
+  private static File write(final File dir, final Symbol docID, final String text)
+      throws IOException {
+    final File ret = new File(dir, docID.asString());
+    Files.write(text, ret, Charsets.UTF_8);
+    return ret;
+  }
+}
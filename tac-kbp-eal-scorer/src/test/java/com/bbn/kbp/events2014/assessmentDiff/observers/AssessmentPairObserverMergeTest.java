@@ -0,0 +1,298 @@
+package com.bbn.kbp.events2014.assessmentDiff.observers;
+
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.kbp.events2014.AnswerKey;
+import com.bbn.kbp.events2014.AssessedResponse;
+import com.bbn.kbp.events2014.AssessedResponseFunctions;
+import com.bbn.kbp.events2014.CharOffsetSpan;
+import com.bbn.kbp.events2014.CorefAnnotation;
+import com.bbn.kbp.events2014.FieldAssessment;
+import com.bbn.kbp.events2014.FillerMentionType;
+import com.bbn.kbp.events2014.KBPRealis;
+import com.bbn.kbp.events2014.KBPString;
+import com.bbn.kbp.events2014.Response;
+import com.bbn.kbp.events2014.ResponseAssessment;
+import com.bbn.kbp.events2014.assessmentDiff.diffLoggers.BasicDiffLogger;
+import com.bbn.kbp.events2014.assessmentDiff.diffLoggers.DiffLogger;
+import com.bbn.kbp.events2014.io.AnnotationStore;
+import com.bbn.kbp.events2014.io.AssessmentSpecFormats;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that diffing each document into its own observers on several threads, reading from
+ * shared annotation stores, and then merging the observers in document order gives the same
+ * reports as observing every document in turn with a single set of observers.
+ */
+public final class AssessmentPairObserverMergeTest {
+
+  private static final int NUM_DOCS = 12;
+  private static final ImmutableList<String> TYPE_ROLES = ImmutableList.of(
+      "Conflict.Attack/Attacker", "Conflict.Attack/Target", "Life.Die/Victim",
+      "Life.Die/Place", "Movement.Transport/Artifact");
+
+  @Test
+  public void testMergedPerDocumentObserversMatchSequential() throws Exception {
+    final File dir = Files.createTempDir();
+    final File leftDir = new File(dir, "left");
+    final File rightDir = new File(dir, "right");
+    final ImmutableList<Symbol> docIDs = writeStores(leftDir, rightDir, new Random(0));
+
+    final AnnotationStore left =
+        AssessmentSpecFormats.openAnnotationStore(leftDir, AssessmentSpecFormats.Format.KBP2015);
+    final AnnotationStore right =
+        AssessmentSpecFormats.openAnnotationStore(rightDir, AssessmentSpecFormats.Format.KBP2015);
+    try {
+      final Map<String, AssessmentPairObserver> sequential = createObservers();
+      startReports(sequential, new BasicDiffLogger(), new File(dir, "sequential"));
+      final AssessmentOverlapObserver sequentialOverlap = new AssessmentOverlapObserver();
+      int sequentialObservations = 0;
+      for (final Symbol docID : docIDs) {
+        sequentialObservations += diff(docID, left, right, sequential, sequentialOverlap);
+      }
+      // make sure most responses are compared
+      assertTrue(sequentialObservations > 5 * NUM_DOCS);
+
+      final Map<String, AssessmentPairObserver> merged = createObservers();
+      startReports(merged, new BasicDiffLogger(), new File(dir, "merged"));
+      final AssessmentOverlapObserver mergedOverlap = new AssessmentOverlapObserver();
+      final ExecutorService executor = Executors.newFixedThreadPool(4);
+      try {
+        final List<Future<DocumentObservers>> perDocument = Lists.newArrayList();
+        for (final Symbol docID : docIDs) {
+          perDocument.add(executor.submit(new Callable<DocumentObservers>() {
+            @Override
+            public DocumentObservers call() throws IOException {
+              final DocumentObservers ret = new DocumentObservers();
+              diff(docID, left, right, ret.observers, ret.overlap);
+              return ret;
+            }
+          }));
+        }
+        for (final Future<DocumentObservers> future : perDocument) {
+          final DocumentObservers documentObservers = future.get();
+          mergedOverlap.merge(documentObservers.overlap);
+          for (final Map.Entry<String, AssessmentPairObserver> entry : merged.entrySet()) {
+            entry.getValue().merge(documentObservers.observers.get(entry.getKey()));
+          }
+        }
+      } finally {
+        executor.shutdownNow();
+      }
+
+      assertEquals(sequentialOverlap.report(), mergedOverlap.report());
+      for (final String name : sequential.keySet()) {
+        final File sequentialOut = new File(new File(dir, "sequential"), name);
+        final File mergedOut = new File(new File(dir, "merged"), name);
+        sequential.get(name).finish();
+        merged.get(name).finish();
+        for (final String report : new String[]{"examples.html", "summary.html"}) {
+          assertArrayEquals(name + "/" + report,
+              Files.toByteArray(new File(sequentialOut, report)),
+              Files.toByteArray(new File(mergedOut, report)));
+        }
+      }
+    } finally {
+      left.close();
+      right.close();
+    }
+  }
+
+  @Test
+  public void testDifferencesAreWrittenAsDocumentsAreMerged() throws Exception {
+    final File dir = Files.createTempDir();
+    final File leftDir = new File(dir, "left");
+    final File rightDir = new File(dir, "right");
+    final ImmutableList<Symbol> docIDs = writeStores(leftDir, rightDir, new Random(1));
+
+    final AnnotationStore left =
+        AssessmentSpecFormats.openAnnotationStore(leftDir, AssessmentSpecFormats.Format.KBP2015);
+    final AnnotationStore right =
+        AssessmentSpecFormats.openAnnotationStore(rightDir, AssessmentSpecFormats.Format.KBP2015);
+    try {
+      final CountingDiffLogger diffLogger = new CountingDiffLogger();
+      final AssessmentPairObserver merged = new AETObserver(false);
+      merged.startReport(diffLogger, dir);
+      int previousDifferences = 0;
+      for (final Symbol docID : docIDs) {
+        final AssessmentPairObserver documentObserver = new AETObserver(false);
+        diff(docID, left, right, ImmutableMap.of("aet", documentObserver),
+            new AssessmentOverlapObserver());
+        // nothing is rendered until the document is merged into an observer with a report
+        assertEquals(previousDifferences, diffLogger.numDifferences);
+        merged.merge(documentObserver);
+        previousDifferences = diffLogger.numDifferences;
+      }
+      assertTrue(diffLogger.numDifferences > 0);
+      merged.finish();
+      // and nothing was left to render at the end
+      assertEquals(previousDifferences, diffLogger.numDifferences);
+    } finally {
+      left.close();
+      right.close();
+    }
+  }
+
+  private static void startReports(final Map<String, AssessmentPairObserver> observers,
+      final DiffLogger diffLogger, final File outputDir) throws IOException {
+    for (final Map.Entry<String, AssessmentPairObserver> entry : observers.entrySet()) {
+      final File observerOutputDir = new File(outputDir, entry.getKey());
+      observerOutputDir.mkdirs();
+      entry.getValue().startReport(diffLogger, observerOutputDir);
+    }
+  }
+
+  /**
+   * Observes the assessments of one document the way {@code KBPAssessmentDiff} does, returning
+   * how many responses were compared.
+   */
+  private static int diff(final Symbol docID, final AnnotationStore leftStore,
+      final AnnotationStore rightStore, final Map<String, AssessmentPairObserver> observers,
+      final AssessmentOverlapObserver overlap) throws IOException {
+    final AnswerKey left = leftStore.readOrEmpty(docID);
+    final AnswerKey right = rightStore.read(docID);
+    overlap.observe(left, right);
+    final Set<Response> common = Sets.intersection(
+        FluentIterable.from(left.annotatedResponses())
+            .transform(AssessedResponseFunctions.response()).toSet(),
+        FluentIterable.from(right.annotatedResponses())
+            .transform(AssessedResponseFunctions.response()).toSet());
+    for (final Response response : common) {
+      for (final AssessmentPairObserver observer : observers.values()) {
+        observer.observe(response, left.assessment(response).get(),
+            right.assessment(response).get());
+      }
+    }
+    return common.size();
+  }
+
+  private static Map<String, AssessmentPairObserver> createObservers() {
+    return ImmutableMap.<String, AssessmentPairObserver>builder()
+        .put("aet", new AETObserver(false))
+        .put("aer", new AERObserver(true))
+        .put("baseFiller", new BaseFillerObserver(false))
+        .put("CAS", new CASObserver(false))
+        .put("realis", new RealisObserver())
+        .put("mentionType", new MentionTypeObserver()).build();
+  }
+
+  private static final class CountingDiffLogger implements DiffLogger {
+
+    private int numDifferences = 0;
+
+    @Override
+    public void logDifference(final Response response, final Symbol leftKey,
+        final Symbol rightKey, final StringBuilder out) {
+      ++numDifferences;
+      out.append(response.uniqueIdentifier()).append("\n");
+    }
+  }
+
+  private static final class DocumentObservers {
+
+    private final Map<String, AssessmentPairObserver> observers = createObservers();
+    private final AssessmentOverlapObserver overlap = new AssessmentOverlapObserver();
+  }
+
+  /**
+   * Writes two stores assessing mostly the same responses, each assessed independently at random.
+   * The left store is missing one document and some responses.
+   */
+  private static ImmutableList<Symbol> writeStores(final File leftDir, final File rightDir,
+      final Random rng) throws IOException {
+    final AnnotationStore left =
+        AssessmentSpecFormats.createAnnotationStore(leftDir, AssessmentSpecFormats.Format.KBP2015);
+    final AnnotationStore right =
+        AssessmentSpecFormats.createAnnotationStore(rightDir, AssessmentSpecFormats.Format.KBP2015);
+    final ImmutableList.Builder<Symbol> docIDs = ImmutableList.builder();
+    for (int doc = 0; doc < NUM_DOCS; ++doc) {
+      final Symbol docID = Symbol.from(String.format("DOC%02d", doc));
+      docIDs.add(docID);
+      final List<Response> responses = Lists.newArrayList();
+      final int numResponses = 10 + rng.nextInt(10);
+      for (int i = 0; i < numResponses; ++i) {
+        responses.add(response(docID, i, rng));
+      }
+      final CorefAnnotation.Builder coref = CorefAnnotation.strictBuilder(docID);
+      for (final Response response : responses) {
+        coref.putInNewRandomCluster(response.canonicalArgument(), rng);
+      }
+      final ImmutableSet.Builder<AssessedResponse> leftAssessed = ImmutableSet.builder();
+      final ImmutableSet.Builder<AssessedResponse> rightAssessed = ImmutableSet.builder();
+      for (final Response response : responses) {
+        if (rng.nextInt(8) > 0) {
+          leftAssessed.add(AssessedResponse.of(response, randomAssessment(rng)));
+        }
+        rightAssessed.add(AssessedResponse.of(response, randomAssessment(rng)));
+      }
+      final CorefAnnotation corefAnnotation = coref.build();
+      if (doc != 3) {
+        left.write(AnswerKey.from(docID, leftAssessed.build(), ImmutableSet.<Response>of(),
+            corefAnnotation));
+      }
+      right.write(AnswerKey.from(docID, rightAssessed.build(), ImmutableSet.<Response>of(),
+          corefAnnotation));
+    }
+    left.close();
+    right.close();
+    return docIDs.build();
+  }
+
+  private static Response response(final Symbol docID, final int i, final Random rng) {
+    final String[] typeRole = TYPE_ROLES.get(rng.nextInt(TYPE_ROLES.size())).split("/");
+    final int offset = 10 * i;
+    final CharOffsetSpan span = CharOffsetSpan.fromOffsetsOnly(offset, offset + 4);
+    return Response.of(docID, Symbol.from(typeRole[0]), Symbol.from(typeRole[1]),
+        KBPString.from("arg" + i, offset, offset + 4), span, ImmutableSet.<CharOffsetSpan>of(),
+        ImmutableSet.of(CharOffsetSpan.fromOffsetsOnly(offset + 5, offset + 8)),
+        randomValue(KBPRealis.values(), rng));
+  }
+
+  private static ResponseAssessment randomAssessment(final Random rng) {
+    final FieldAssessment eventType = randomValue(FieldAssessment.values(), rng);
+    if (eventType == FieldAssessment.INCORRECT) {
+      return ResponseAssessment.of(Optional.of(eventType), Optional.<FieldAssessment>absent(),
+          Optional.<FieldAssessment>absent(), Optional.<KBPRealis>absent(),
+          Optional.<FieldAssessment>absent(), Optional.<FillerMentionType>absent());
+    }
+    final FieldAssessment role = randomValue(FieldAssessment.values(), rng);
+    if (role == FieldAssessment.INCORRECT) {
+      return ResponseAssessment.of(Optional.of(eventType), Optional.of(role),
+          Optional.<FieldAssessment>absent(), Optional.<KBPRealis>absent(),
+          Optional.<FieldAssessment>absent(), Optional.<FillerMentionType>absent());
+    }
+    return ResponseAssessment.of(Optional.of(eventType), Optional.of(role),
+        Optional.of(randomValue(FieldAssessment.values(), rng)),
+        Optional.of(randomValue(KBPRealis.values(), rng)),
+        Optional.of(randomValue(FieldAssessment.values(), rng)),
+        Optional.of(randomValue(FillerMentionType.values(), rng)));
+  }
+
+  private static <T> T randomValue(final T[] values, final Random rng) {
+    return values[rng.nextInt(values.length)];
+  }
+}
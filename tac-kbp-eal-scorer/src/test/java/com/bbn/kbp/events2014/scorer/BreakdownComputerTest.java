@@ -0,0 +1,174 @@
+package com.bbn.kbp.events2014.scorer;
+
+import com.bbn.bue.common.evaluation.BrokenDownSummaryConfusionMatrix;
+import com.bbn.bue.common.evaluation.ProvenancedConfusionMatrix;
+import com.bbn.bue.common.evaluation.SummaryConfusionMatrix;
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.kbp.events2014.scorer.observers.EAScoringObserver;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that summing {@link BreakdownComputer.BreakdownCounts} gives the same breakdowns as
+ * computing each document's breakdowns and combining them. Items are words, broken down by their
+ * first letter and by their length.
+ */
+public final class BreakdownComputerTest {
+
+  private static final Symbol PRESENT = Symbol.from("PRESENT");
+  private static final Symbol ABSENT = Symbol.from("ABSENT");
+
+  private static final Map<String, Function<String, Symbol>> BREAKDOWNS =
+      ImmutableMap.<String, Function<String, Symbol>>of(
+          "Length", new Function<String, Symbol>() {
+            @Override
+            public Symbol apply(final String input) {
+              return Symbol.from(Integer.toString(input.length()));
+            }
+          },
+          "FirstLetter", new Function<String, Symbol>() {
+            @Override
+            public Symbol apply(final String input) {
+              return Symbol.from(input.substring(0, 1));
+            }
+          });
+
+  // keys and cells are first seen in a different order from the one they are output in, and each
+  // document lacks some of the keys and cells of the others
+  private static final ImmutableList<ImmutableList<Observation>> DOCUMENTS = ImmutableList.of(
+      ImmutableList.of(
+          new Observation(PRESENT, ABSENT, "zebra"),
+          new Observation(PRESENT, PRESENT, "apple"),
+          new Observation(PRESENT, PRESENT, "kiwi"),
+          new Observation(ABSENT, PRESENT, "zucchini")),
+      ImmutableList.of(
+          new Observation(ABSENT, PRESENT, "banana"),
+          new Observation(PRESENT, PRESENT, "apricot"),
+          new Observation(ABSENT, PRESENT, "banana")),
+      ImmutableList.<Observation>of(),
+      ImmutableList.of(
+          new Observation(PRESENT, ABSENT, "kale"),
+          new Observation(PRESENT, ABSENT, "zebra"),
+          new Observation(PRESENT, PRESENT, "fig"),
+          new Observation(ABSENT, PRESENT, "apple")));
+
+  @Test
+  public void testSummedCountsMatchCombinedBreakdowns() {
+    final BreakdownComputer<String> computer = BreakdownComputer.create(BREAKDOWNS);
+
+    final List<Map<String, BrokenDownSummaryConfusionMatrix<Symbol>>> perDocument =
+        Lists.newArrayList();
+    final BreakdownComputer.BreakdownCounts totals = computer.newCounts();
+    for (final ImmutableList<Observation> document : DOCUMENTS) {
+      final ProvenancedConfusionMatrix.Builder<String> matrix = ProvenancedConfusionMatrix.builder();
+      final BreakdownComputer.BreakdownCounts counts = computer.newCounts();
+      for (final Observation observation : document) {
+        matrix.record(observation.predicted, observation.gold, observation.item);
+        computer.record(counts, observation.predicted, observation.gold, observation.item);
+      }
+      perDocument.add(computer.computeBreakdownSummaries(matrix.build()));
+      totals.add(counts);
+    }
+
+    final ImmutableMap<String, BrokenDownSummaryConfusionMatrix<Symbol>> expected =
+        EAScoringObserver.combineBreakdowns(perDocument.iterator());
+    final ImmutableMap<String, BrokenDownSummaryConfusionMatrix<Symbol>> actual =
+        computer.toSummaries(totals);
+
+    assertEquals(ImmutableList.of("Aggregate", "FirstLetter", "Length"),
+        ImmutableList.copyOf(actual.keySet()));
+    assertSameBreakdowns(expected, actual);
+
+    // spot-check against hand counts: two of the words starting with "a" were correctly found
+    // and one was missed
+    final SummaryConfusionMatrix a =
+        actual.get("FirstLetter").asMap().get(Symbol.from("a"));
+    assertEquals(2.0, a.cell(PRESENT, PRESENT), 0.0);
+    assertEquals(1.0, a.cell(ABSENT, PRESENT), 0.0);
+    assertEquals(ImmutableList.of(Symbol.from("a"), Symbol.from("b"), Symbol.from("f"),
+        Symbol.from("k"), Symbol.from("z")),
+        ImmutableList.copyOf(actual.get("FirstLetter").asMap().keySet()));
+  }
+
+  @Test
+  public void testSummedCountsMatchComputedBreakdownsForOneDocument() {
+    final BreakdownComputer<String> computer = BreakdownComputer.create(BREAKDOWNS);
+    final ProvenancedConfusionMatrix.Builder<String> matrix = ProvenancedConfusionMatrix.builder();
+    final BreakdownComputer.BreakdownCounts counts = computer.newCounts();
+    for (final Observation observation : DOCUMENTS.get(0)) {
+      matrix.record(observation.predicted, observation.gold, observation.item);
+      computer.record(counts, observation.predicted, observation.gold, observation.item);
+    }
+    assertSameBreakdowns(computer.computeBreakdownSummaries(matrix.build()),
+        computer.toSummaries(counts));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCannotAddCountsFromAnotherComputer() {
+    final BreakdownComputer<String> computer = BreakdownComputer.create(BREAKDOWNS);
+    final BreakdownComputer<String> other = BreakdownComputer.create(BREAKDOWNS);
+    computer.newCounts().add(other.newCounts());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCannotRecordIntoCountsFromAnotherComputer() {
+    final BreakdownComputer<String> computer = BreakdownComputer.create(BREAKDOWNS);
+    final BreakdownComputer<String> other = BreakdownComputer.create(BREAKDOWNS);
+    computer.record(other.newCounts(), PRESENT, PRESENT, "apple");
+  }
+
+  private static void assertSameBreakdowns(
+      final Map<String, BrokenDownSummaryConfusionMatrix<Symbol>> expected,
+      final Map<String, BrokenDownSummaryConfusionMatrix<Symbol>> actual) {
+    assertEquals(ImmutableList.copyOf(expected.keySet()), ImmutableList.copyOf(actual.keySet()));
+    for (final String breakdown : expected.keySet()) {
+      final Map<Symbol, SummaryConfusionMatrix> expectedMatrices =
+          expected.get(breakdown).asMap();
+      final Map<Symbol, SummaryConfusionMatrix> actualMatrices = actual.get(breakdown).asMap();
+      // key order determines output order, so it must match too
+      assertEquals(breakdown, ImmutableList.copyOf(expectedMatrices.keySet()),
+          ImmutableList.copyOf(actualMatrices.keySet()));
+      for (final Symbol key : expectedMatrices.keySet()) {
+        assertSameMatrix(breakdown + "/" + key, expectedMatrices.get(key),
+            actualMatrices.get(key));
+      }
+    }
+  }
+
+  private static void assertSameMatrix(final String message, final SummaryConfusionMatrix expected,
+      final SummaryConfusionMatrix actual) {
+    assertEquals(message, ImmutableSet.copyOf(expected.leftLabels()),
+        ImmutableSet.copyOf(actual.leftLabels()));
+    assertEquals(message, ImmutableSet.copyOf(expected.rightLabels()),
+        ImmutableSet.copyOf(actual.rightLabels()));
+    for (final Symbol left : expected.leftLabels()) {
+      for (final Symbol right : expected.rightLabels()) {
+        assertEquals(message, expected.cell(left, right), actual.cell(left, right), 0.0);
+      }
+    }
+  }
+
+  private static final class Observation {
+
+    private final Symbol predicted;
+    private final Symbol gold;
+    private final String item;
+
+    private Observation(final Symbol predicted, final Symbol gold, final String item) {
+      this.predicted = predicted;
+      this.gold = gold;
+      this.item = item;
+    }
+  }
+}
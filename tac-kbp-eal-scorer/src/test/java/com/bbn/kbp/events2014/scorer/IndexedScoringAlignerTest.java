@@ -0,0 +1,291 @@
+package com.bbn.kbp.events2014.scorer;
+
+import com.bbn.bue.common.scoring.Scored;
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.kbp.events2014.AnswerKey;
+import com.bbn.kbp.events2014.ArgumentOutput;
+import com.bbn.kbp.events2014.AssessedResponse;
+import com.bbn.kbp.events2014.CharOffsetSpan;
+import com.bbn.kbp.events2014.CorefAnnotation;
+import com.bbn.kbp.events2014.EventArgScoringAlignment;
+import com.bbn.kbp.events2014.FieldAssessment;
+import com.bbn.kbp.events2014.FillerMentionType;
+import com.bbn.kbp.events2014.KBPRealis;
+import com.bbn.kbp.events2014.KBPString;
+import com.bbn.kbp.events2014.Response;
+import com.bbn.kbp.events2014.ResponseAssessment;
+import com.bbn.kbp.events2014.TypeRoleFillerRealis;
+
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that {@link IndexedScoringAligner} makes exactly the decisions {@link
+ * StandardScoringAligner} does, with the same iteration orders.
+ */
+public class IndexedScoringAlignerTest {
+
+  private static final Symbol DOC = Symbol.from("DOC");
+  private static final Symbol CONFLICT = Symbol.from("Conflict.Attack");
+  private static final Symbol LIFE = Symbol.from("Life.Die");
+  private static final Symbol VICTIM = Symbol.from("Victim");
+  private static final Symbol PLACE = Symbol.from("Place");
+
+  private static final Function<Response, TypeRoleFillerRealis> EQUIV_CLASS_FUNCTION =
+      TypeRoleFillerRealis.extractFromSystemResponse(Functions.<KBPString>identity());
+
+  private final StandardScoringAligner<TypeRoleFillerRealis> standardAligner =
+      StandardScoringAligner.forEquivalenceClassFunction(EQUIV_CLASS_FUNCTION);
+  private final IndexedScoringAligner<TypeRoleFillerRealis> indexedAligner =
+      IndexedScoringAligner.forEquivalenceClassFunction(EQUIV_CLASS_FUNCTION);
+
+  @Test
+  public void testHandBuiltCases() {
+    // aligned: correct in the key and found by the system
+    final Response found = response(CONFLICT, VICTIM, "found", KBPRealis.Actual, 0);
+    // unaligned: correct but missed, wrong and returned, wrong and not returned
+    final Response missed = response(CONFLICT, VICTIM, "missed", KBPRealis.Actual, 0);
+    final Response wrongReturned = response(CONFLICT, PLACE, "wrong", KBPRealis.Actual, 0);
+    final Response wrongNotReturned = response(LIFE, PLACE, "wrong", KBPRealis.Actual, 0);
+    // the top-scoring response has an unsupported justification, although a lower-scoring one in
+    // the same equivalence class is correct
+    final Response badJustification = response(LIFE, VICTIM, "justified", KBPRealis.Actual, 0);
+    final Response goodJustification = response(LIFE, VICTIM, "justified", KBPRealis.Actual, 5);
+    // inexact justifications still count as correct
+    final Response inexact = response(CONFLICT, PLACE, "inexact", KBPRealis.Actual, 0);
+    // realis assessed differently than the response claims
+    final Response wrongRealis = response(LIFE, VICTIM, "realis", KBPRealis.Actual, 0);
+    // same type, role, and filler but a different realis, so a different equivalence class
+    final Response rightRealis = response(LIFE, VICTIM, "realis", KBPRealis.Other, 0);
+    // the top-scoring response of a correct equivalence class was never assessed
+    final Response assessedLowScore = response(CONFLICT, VICTIM, "unassessed", KBPRealis.Actual, 0);
+    final Response unassessedHighScore =
+        response(CONFLICT, VICTIM, "unassessed", KBPRealis.Actual, 5);
+    // an equivalence class only the system found
+    final Response systemOnly = response(LIFE, PLACE, "systemOnly", KBPRealis.Actual, 0);
+
+    final AnswerKey answerKey = answerKey(
+        ImmutableList.of(
+            AssessedResponse.assessCorrectly(found, FillerMentionType.NAME),
+            AssessedResponse.assessCorrectly(missed, FillerMentionType.NAME),
+            AssessedResponse.assessWithIncorrectEventType(wrongReturned),
+            AssessedResponse.assessWithIncorrectEventType(wrongNotReturned),
+            assess(badJustification, FieldAssessment.INCORRECT, FieldAssessment.CORRECT,
+                KBPRealis.Actual),
+            AssessedResponse.assessCorrectly(goodJustification, FillerMentionType.NAME),
+            assess(inexact, FieldAssessment.INEXACT, FieldAssessment.INEXACT, KBPRealis.Actual),
+            assess(wrongRealis, FieldAssessment.CORRECT, FieldAssessment.CORRECT,
+                KBPRealis.Other),
+            AssessedResponse.assessCorrectly(rightRealis, FillerMentionType.NOMINAL),
+            AssessedResponse.assessCorrectly(assessedLowScore, FillerMentionType.NAME)),
+        ImmutableList.of(unassessedHighScore, systemOnly));
+
+    final ArgumentOutput systemOutput = ArgumentOutput.createWithoutMetadata(DOC, ImmutableList.of(
+        Scored.from(found, 0.5),
+        Scored.from(wrongReturned, 0.5),
+        Scored.from(badJustification, 0.9),
+        Scored.from(goodJustification, 0.1),
+        Scored.from(inexact, 0.5),
+        Scored.from(wrongRealis, 0.5),
+        Scored.from(rightRealis, 0.5),
+        Scored.from(assessedLowScore, 0.2),
+        Scored.from(unassessedHighScore, 0.8),
+        Scored.from(systemOnly, 0.5)));
+
+    final EventArgScoringAlignment<TypeRoleFillerRealis> expected =
+        standardAligner.align(answerKey, systemOutput);
+    assertSameAlignment(expected, indexedAligner.align(answerKey, systemOutput));
+
+    // make sure the case above really covers every outcome
+    assertEquals(ImmutableSet.of(EQUIV_CLASS_FUNCTION.apply(found),
+        EQUIV_CLASS_FUNCTION.apply(inexact), EQUIV_CLASS_FUNCTION.apply(rightRealis)),
+        expected.truePositiveEquivalenceClasses());
+    assertEquals(ImmutableSet.of(EQUIV_CLASS_FUNCTION.apply(wrongReturned),
+        EQUIV_CLASS_FUNCTION.apply(badJustification), EQUIV_CLASS_FUNCTION.apply(wrongRealis),
+        EQUIV_CLASS_FUNCTION.apply(systemOnly)), expected.falsePositiveEquivalenceClasses());
+    assertEquals(ImmutableSet.of(EQUIV_CLASS_FUNCTION.apply(missed),
+        EQUIV_CLASS_FUNCTION.apply(badJustification)), expected.falseNegativeEquivalenceClasses());
+    assertEquals(ImmutableSet.of(EQUIV_CLASS_FUNCTION.apply(assessedLowScore)),
+        expected.unassessed());
+
+    final IndexedScoringAligner.Alignment<TypeRoleFillerRealis> indexed =
+        indexedAligner.alignIndexed(answerKey, systemOutput);
+    assertCountsMatch(expected, indexed);
+    assertCountsMatch(expected, indexed.withoutResponses());
+    assertFilteredCopiesMatch(expected, indexed);
+  }
+
+  @Test
+  public void testEmptySystemOutput() {
+    final Response a = response(CONFLICT, VICTIM, "a", KBPRealis.Actual, 0);
+    final AnswerKey answerKey = answerKey(
+        ImmutableList.of(AssessedResponse.assessCorrectly(a, FillerMentionType.NAME)),
+        ImmutableList.<Response>of());
+    final ArgumentOutput systemOutput =
+        ArgumentOutput.createWithoutMetadata(DOC, ImmutableList.<Scored<Response>>of());
+    assertSameAlignment(standardAligner.align(answerKey, systemOutput),
+        indexedAligner.align(answerKey, systemOutput));
+  }
+
+  @Test
+  public void testRandomDocuments() {
+    final Random rng = new Random(0);
+    final ImmutableList<Symbol> types = ImmutableList.of(CONFLICT, LIFE);
+    final ImmutableList<Symbol> roles = ImmutableList.of(VICTIM, PLACE);
+    final ImmutableList<String> fillers = ImmutableList.of("a", "b", "c", "d");
+    final ImmutableList<FieldAssessment> fieldAssessments = ImmutableList.copyOf(
+        FieldAssessment.values());
+
+    for (int doc = 0; doc < 200; ++doc) {
+      // a pool of candidate responses, with several justifications per equivalence class
+      final List<Response> pool = Lists.newArrayList();
+      final int poolSize = 1 + rng.nextInt(30);
+      for (int i = 0; i < poolSize; ++i) {
+        pool.add(response(types.get(rng.nextInt(types.size())),
+            roles.get(rng.nextInt(roles.size())), fillers.get(rng.nextInt(fillers.size())),
+            KBPRealis.values()[rng.nextInt(KBPRealis.values().length)], rng.nextInt(3)));
+      }
+
+      final Map<Response, AssessedResponse> assessed = Maps.newLinkedHashMap();
+      final Set<Response> unassessed = Sets.newLinkedHashSet();
+      final List<Scored<Response>> systemResponses = Lists.newArrayList();
+      for (final Response response : ImmutableSet.copyOf(pool)) {
+        if (rng.nextInt(4) > 0) {
+          assessed.put(response, assess(response,
+              fieldAssessments.get(rng.nextInt(fieldAssessments.size())),
+              fieldAssessments.get(rng.nextInt(fieldAssessments.size())),
+              KBPRealis.values()[rng.nextInt(KBPRealis.values().length)]));
+        } else {
+          unassessed.add(response);
+        }
+        if (rng.nextBoolean()) {
+          // few distinct scores, so selection often falls through to the tie-breaker
+          systemResponses.add(Scored.from(response, rng.nextInt(3) / 2.0));
+        }
+      }
+
+      final AnswerKey answerKey = answerKey(assessed.values(), unassessed);
+      final ArgumentOutput systemOutput =
+          ArgumentOutput.createWithoutMetadata(DOC, systemResponses);
+      final EventArgScoringAlignment<TypeRoleFillerRealis> expected =
+          standardAligner.align(answerKey, systemOutput);
+      final IndexedScoringAligner.Alignment<TypeRoleFillerRealis> indexed =
+          indexedAligner.alignIndexed(answerKey, systemOutput);
+      assertSameAlignment(expected, indexed.fullAlignment());
+      assertCountsMatch(expected, indexed);
+      assertFilteredCopiesMatch(expected, indexed);
+    }
+  }
+
+  private static void assertFilteredCopiesMatch(
+      final EventArgScoringAlignment<TypeRoleFillerRealis> expected,
+      final IndexedScoringAligner.Alignment<TypeRoleFillerRealis> indexed) {
+    for (final KBPRealis realis : KBPRealis.values()) {
+      final Predicate<TypeRoleFillerRealis> hasRealis = new Predicate<TypeRoleFillerRealis>() {
+        @Override
+        public boolean apply(final TypeRoleFillerRealis input) {
+          return input.realis() == realis;
+        }
+      };
+      final EventArgScoringAlignment<TypeRoleFillerRealis> expectedFiltered =
+          expected.copyFiltered(hasRealis);
+      final IndexedScoringAligner.Alignment<TypeRoleFillerRealis> indexedFiltered =
+          indexed.copyFiltered(hasRealis);
+      assertSameAlignment(expectedFiltered, indexedFiltered.fullAlignment());
+      assertCountsMatch(expectedFiltered, indexedFiltered.withoutResponses());
+    }
+  }
+
+  private static void assertCountsMatch(
+      final EventArgScoringAlignment<TypeRoleFillerRealis> expected,
+      final IndexedScoringAligner.Alignment<TypeRoleFillerRealis> indexed) {
+    assertEquals(expected.truePositiveEquivalenceClasses().size(), indexed.numTruePositives());
+    assertEquals(expected.falsePositiveEquivalenceClasses().size(), indexed.numFalsePositives());
+    assertEquals(expected.falseNegativeEquivalenceClasses().size(), indexed.numFalseNegatives());
+    assertEquals(expected.unassessed().size(), indexed.numUnassessed());
+    assertEquals(ImmutableList.copyOf(expected.allEquivalenceClassess()),
+        indexed.truePositiveAndFalseNegativeEquivalenceClasses());
+  }
+
+  private static void assertSameAlignment(
+      final EventArgScoringAlignment<TypeRoleFillerRealis> expected,
+      final EventArgScoringAlignment<TypeRoleFillerRealis> actual) {
+    assertEquals(expected.docID(), actual.docID());
+    assertEquals(expected.systemOutput(), actual.systemOutput());
+    assertEquals(expected.answerKey(), actual.answerKey());
+    // compare as lists so iteration order must match too
+    assertEquals(ImmutableList.copyOf(expected.truePositiveEquivalenceClasses()),
+        ImmutableList.copyOf(actual.truePositiveEquivalenceClasses()));
+    assertEquals(ImmutableList.copyOf(expected.falsePositiveEquivalenceClasses()),
+        ImmutableList.copyOf(actual.falsePositiveEquivalenceClasses()));
+    assertEquals(ImmutableList.copyOf(expected.falseNegativeEquivalenceClasses()),
+        ImmutableList.copyOf(actual.falseNegativeEquivalenceClasses()));
+    assertEquals(ImmutableList.copyOf(expected.unassessed()),
+        ImmutableList.copyOf(actual.unassessed()));
+    assertEquals(ImmutableList.copyOf(expected.allEquivalenceClassess()),
+        ImmutableList.copyOf(actual.allEquivalenceClassess()));
+    assertEquals(ImmutableList.copyOf(expected.equivalenceClassesToSystemResponses().entries()),
+        ImmutableList.copyOf(actual.equivalenceClassesToSystemResponses().entries()));
+    assertEquals(
+        ImmutableList.copyOf(expected.equivalenceClassesToAnswerKeyResponses().entries()),
+        ImmutableList.copyOf(actual.equivalenceClassesToAnswerKeyResponses().entries()));
+    assertEquals(expected.systemEquivClassToAssessedRepresentativeResponses(),
+        actual.systemEquivClassToAssessedRepresentativeResponses());
+  }
+
+  private static Response response(Symbol type, Symbol role, String cas, KBPRealis realis,
+      int justificationOffset) {
+    return Response.of(DOC, type, role, KBPString.from(cas, 0, 1),
+        CharOffsetSpan.fromOffsetsOnly(0, 1), ImmutableSet.<CharOffsetSpan>of(),
+        ImmutableSet.of(CharOffsetSpan.fromOffsetsOnly(justificationOffset,
+            justificationOffset + 1)), realis);
+  }
+
+  private static AssessedResponse assess(Response response, FieldAssessment justification,
+      FieldAssessment filler, KBPRealis realis) {
+    if (justification == FieldAssessment.INCORRECT) {
+      // nothing else is assessed when the justification is wrong
+      return AssessedResponse.of(response, ResponseAssessment.of(Optional.of(justification),
+          Optional.<FieldAssessment>absent(), Optional.<FieldAssessment>absent(),
+          Optional.<KBPRealis>absent(), Optional.<FieldAssessment>absent(),
+          Optional.<FillerMentionType>absent()));
+    }
+    return AssessedResponse.of(response, ResponseAssessment.of(Optional.of(justification),
+        Optional.of(justification), Optional.of(filler), Optional.of(realis),
+        Optional.of(filler), Optional.of(FillerMentionType.NAME)));
+  }
+
+  private static AnswerKey answerKey(Iterable<AssessedResponse> assessed,
+      Iterable<Response> unassessed) {
+    final Random rng = new Random(0);
+    final CorefAnnotation.Builder coref = CorefAnnotation.strictBuilder(DOC);
+    final Set<KBPString> seen = Sets.newHashSet();
+    for (final AssessedResponse assessedResponse : assessed) {
+      if (seen.add(assessedResponse.response().canonicalArgument())) {
+        coref.putInNewRandomCluster(assessedResponse.response().canonicalArgument(), rng);
+      }
+    }
+    for (final Response response : unassessed) {
+      if (seen.add(response.canonicalArgument())) {
+        coref.putInNewRandomCluster(response.canonicalArgument(), rng);
+      }
+    }
+    return AnswerKey.from(DOC, assessed, unassessed, coref.build());
+  }
+}
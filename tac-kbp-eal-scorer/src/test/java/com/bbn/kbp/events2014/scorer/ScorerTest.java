@@ -14,8 +14,10 @@ import com.bbn.kbp.events2014.Response;
 import com.bbn.kbp.events2014.ResponseLinking;
 import com.bbn.kbp.events2014.ResponseSet;
 import com.bbn.kbp.events2014.ScoringData;
+import com.bbn.kbp.events2014.TypeRoleFillerRealis;
 import com.bbn.kbp.linking.EALScorer2015Style;
 
+import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 
@@ -175,6 +177,77 @@ public class ScorerTest {
     assertEquals(37.0/72.0, score.scaledScore(), .001);
   }
 
+  @Test
+  public void resultWithoutDetailsKeepsScores() {
+    final Response x = dummyResponseOfType(CONFLICT, VICTIM, "x", KBPRealis.Actual);
+    final Response y = dummyResponseOfType(CONFLICT, VICTIM, "y", KBPRealis.Actual);
+    final Response z = dummyResponseOfType(CONFLICT, VICTIM, "z", KBPRealis.Actual);
+    final Response a = dummyResponseOfType(CONFLICT, VICTIM, "a", KBPRealis.Actual);
+    final Response zGeneric = dummyResponseOfType(CONFLICT, VICTIM, "z", KBPRealis.Generic);
+
+    final ArgumentOutput argumentOutput =
+        systemOutputFromResponses(ImmutableSet.of(x, y, z, zGeneric));
+    final CorefAnnotation coref = allSingletonsCoref(ImmutableSet.of(x, y, z, a));
+    final AnswerKey answerKey = makeAnswerKeyFromCorrectAndIncorrect(
+        ImmutableSet.of(x, y, a, zGeneric), ImmutableSet.of(z), coref);
+
+    final EALScorer2015Style.Result full =
+        scorer.score(ScoringData.builder().answerKey(answerKey)
+            .referenceLinking(ResponseLinking.builder().docID(answerKey.docId())
+                .responseSets(ImmutableSet.of(ResponseSet.from(x, y, a))).build())
+            .argumentOutput(argumentOutput)
+            .systemLinking(ResponseLinking.builder().docID(argumentOutput.docId())
+                .responseSets(ImmutableSet.of(ResponseSet.from(x, y, z))).build()).build());
+    final EALScorer2015Style.Result summary = full.withoutDetails();
+
+    assertEquals(full.scaledScore(), summary.scaledScore(), 0.0);
+    assertEquals(full.argResult().argumentNormalizer(), summary.argResult().argumentNormalizer(),
+        0.0);
+    assertEquals(full.argResult().unscaledArgumentScore(),
+        summary.argResult().unscaledArgumentScore(), 0.0);
+    assertEquals(full.argResult().precision(), summary.argResult().precision(), 0.0);
+    assertEquals(full.argResult().recall(), summary.argResult().recall(), 0.0);
+    assertEquals(full.argResult().truePositiveAndFalseNegativeEquivalenceClasses(),
+        summary.argResult().truePositiveAndFalseNegativeEquivalenceClasses());
+    assertEquals(full.linkResult().linkingNormalizer(), summary.linkResult().linkingNormalizer(),
+        0.0);
+    assertEquals(full.linkResult().unscaledLinkingScore(),
+        summary.linkResult().unscaledLinkingScore(), 0.0);
+    assertEquals(full.linkResult().scaledLinkingPrecision(),
+        summary.linkResult().scaledLinkingPrecision(), 0.0);
+    assertEquals(full.linkResult().scaledLinkingRecall(),
+        summary.linkResult().scaledLinkingRecall(), 0.0);
+
+    // filtered copies are what the bootstrapped and by-type writers use
+    final Predicate<TypeRoleFillerRealis> isGeneric = new Predicate<TypeRoleFillerRealis>() {
+      @Override
+      public boolean apply(final TypeRoleFillerRealis input) {
+        return input.realis() == KBPRealis.Generic;
+      }
+    };
+    final EALScorer2015Style.ArgResult fullFiltered = full.argResult().copyFiltered(isGeneric);
+    final EALScorer2015Style.ArgResult summaryFiltered =
+        summary.argResult().copyFiltered(isGeneric);
+    assertEquals(fullFiltered.unscaledTruePositiveArguments(),
+        summaryFiltered.unscaledTruePositiveArguments(), 0.0);
+    assertEquals(fullFiltered.unscaledFalsePositiveArguments(),
+        summaryFiltered.unscaledFalsePositiveArguments(), 0.0);
+    assertEquals(fullFiltered.unscaledFalseNegativeArguments(),
+        summaryFiltered.unscaledFalseNegativeArguments(), 0.0);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void resultWithoutDetailsReleasesAlignment() {
+    final ArgumentOutput argumentOutput = systemOutputFromResponses(ImmutableSet.of(a));
+    final AnswerKey answerKey = makeAnswerKeyFromCorrectAndIncorrect(ImmutableSet.of(a),
+        ImmutableSet.<Response>of(), allSingletonsCoref(ImmutableSet.of(a)));
+    final ResponseLinking linking = ResponseLinking.builder().docID(DOC)
+        .responseSets(ImmutableSet.of(ResponseSet.from(a))).build();
+    scorer.score(ScoringData.builder().answerKey(answerKey).referenceLinking(linking)
+        .argumentOutput(argumentOutput).systemLinking(linking).build())
+        .withoutDetails().argResult().argumentScoringAlignment();
+  }
+
 
   /*
       key = { {a} {b} {c} {d} }
@@ -0,0 +1,412 @@
+package com.bbn.kbp.events2014.scorer.bin;
+
+import com.bbn.bue.common.io.GZIPByteSink;
+import com.bbn.bue.common.scoring.Scored;
+import com.bbn.bue.common.serialization.jackson.JacksonSerializer;
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.kbp.events2014.AnswerKey;
+import com.bbn.kbp.events2014.ArgumentOutput;
+import com.bbn.kbp.events2014.AssessedResponse;
+import com.bbn.kbp.events2014.CharOffsetSpan;
+import com.bbn.kbp.events2014.CorefAnnotation;
+import com.bbn.kbp.events2014.FillerMentionType;
+import com.bbn.kbp.events2014.KBPRealis;
+import com.bbn.kbp.events2014.KBPString;
+import com.bbn.kbp.events2014.Response;
+import com.bbn.kbp.events2014.ResponseLinking;
+import com.bbn.kbp.events2014.ResponseSet;
+import com.bbn.kbp.events2014.ScoringData;
+import com.bbn.kbp.events2014.TypeRoleFillerRealis;
+import com.bbn.kbp.events2014.TypeRoleFillerRealisFunctions;
+import com.bbn.kbp.events2014.scorer.ImmutableAggregate2015ArgScoringResult;
+import com.bbn.kbp.events2014.scorer.ImmutableAggregate2015LinkScoringResult;
+import com.bbn.kbp.events2014.scorer.ImmutableAggregate2015ScoringResult;
+import com.bbn.kbp.linking.EALScorer2015Style;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.base.Joiner;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import static com.google.common.base.Predicates.compose;
+import static com.google.common.base.Predicates.equalTo;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the result writers produce exactly what they did when they computed their scores
+ * from the per-document results rather than from a {@link DocumentScoreTable}. The expected
+ * outputs come from copies of the previous writers' code.
+ */
+public class DocumentScoreTableTest {
+
+  private static final Symbol ATTACK = Symbol.from("Conflict.Attack");
+  private static final Symbol DIE = Symbol.from("Life.Die");
+  private static final Symbol TRANSPORT = Symbol.from("Movement.Transport");
+  private static final Symbol VICTIM = Symbol.from("Victim");
+
+  private final EALScorer2015Style scorer = EALScorer2015Style.createWithoutPreprocessing();
+
+  @Test
+  public void testWritersMatchPreviousOutput() throws IOException {
+    final ImmutableList<EALScorer2015Style.Result> results = scoreFixtures();
+    final DocumentScoreTable table = DocumentScoreTable.fromResults(results, scorer.beta());
+
+    final File expectedDir = Files.createTempDir();
+    writePreviousOutput(results, expectedDir);
+    final File actualDir = Files.createTempDir();
+    writeCurrentOutput(results, table, actualDir);
+    assertSameFiles(expectedDir, actualDir);
+  }
+
+  @Test
+  public void testLoadedTableMatchesPreviousOutput() throws IOException {
+    final ImmutableList<EALScorer2015Style.Result> results = scoreFixtures();
+    final DocumentScoreTable table = DocumentScoreTable.fromResults(results, scorer.beta());
+    final File tableDir = Files.createTempDir();
+    final File saved = new File(tableDir, KBP2015Scorer.DOCUMENT_SCORES_FILE);
+    table.writeTo(Files.asCharSink(saved, Charsets.UTF_8));
+    final DocumentScoreTable loaded =
+        DocumentScoreTable.loadFrom(Files.asCharSource(saved, Charsets.UTF_8));
+
+    // saving the loaded table gives back the same bytes
+    final File resaved = new File(tableDir, "resaved.csv");
+    loaded.writeTo(Files.asCharSink(resaved, Charsets.UTF_8));
+    assertArrayEquals(Files.toByteArray(saved), Files.toByteArray(resaved));
+
+    final File expectedDir = Files.createTempDir();
+    writePreviousOutput(results, expectedDir);
+    final File actualDir = Files.createTempDir();
+    writeCurrentOutput(results, loaded, actualDir);
+    assertSameFiles(expectedDir, actualDir);
+  }
+
+  @Test
+  public void testBootstrapSamplesMatchPreviousAggregates() {
+    final ImmutableList<EALScorer2015Style.Result> results = scoreFixtures();
+    final DocumentScoreTable table = DocumentScoreTable.fromResults(results, scorer.beta());
+    final Random rng = new Random(0);
+    for (int trial = 0; trial < 100; ++trial) {
+      final int[] sample = new int[results.size()];
+      final List<EALScorer2015Style.Result> sampledResults = Lists.newArrayList();
+      for (int i = 0; i < sample.length; ++i) {
+        sample[i] = rng.nextInt(results.size());
+        sampledResults.add(results.get(sample[i]));
+      }
+      assertEquals(previousArgScores(Lists.transform(sampledResults, GET_ARG_RESULT)),
+          table.argumentCounts().aggregate(sample));
+      assertEquals(previousLinkScores(sampledResults), table.aggregateLinkScores(sample));
+      for (int typeIndex = 0; typeIndex < table.eventTypes().size(); ++typeIndex) {
+        assertEquals(
+            previousArgScores(filterToType(sampledResults, table.eventTypes().get(typeIndex))),
+            table.argumentCountsForEventType(typeIndex).aggregate(sample));
+      }
+    }
+  }
+
+  private void writeCurrentOutput(final List<EALScorer2015Style.Result> results,
+      final DocumentScoreTable table, final File outputDir) throws IOException {
+    final File aggregateDir = new File(outputDir, "aggregate");
+    aggregateDir.mkdirs();
+    new AggregateResultWriter(scorer.lambda()).writeResult(results, table, aggregateDir);
+    final File perDocDir = new File(outputDir, "perDoc");
+    perDocDir.mkdirs();
+    new PerDocResultWriter(scorer.lambda()).writeResult(results, table, perDocDir);
+    final File byEventTypesDir = new File(outputDir, "byEventTypes");
+    byEventTypesDir.mkdirs();
+    new ByEventTypeResultWriter().writeResult(results, table, byEventTypesDir);
+  }
+
+  /**
+   * The three fixture documents. Between them they have true positives, false positives, false
+   * negatives, a document with nothing to find, and an event type with only false positives.
+   */
+  private ImmutableList<EALScorer2015Style.Result> scoreFixtures() {
+    final Symbol doc1 = Symbol.from("DOC1");
+    final Response x = response(doc1, ATTACK, "x", 0);
+    final Response y = response(doc1, ATTACK, "y", 2);
+    final Response z = response(doc1, ATTACK, "z", 4);
+    final Response w = response(doc1, DIE, "w", 6);
+    final ScoringData doc1Data = scoringData(doc1,
+        ImmutableSet.of(x, y, w), ImmutableSet.of(z), ImmutableSet.of(x, z, w),
+        ImmutableSet.of(ResponseSet.from(x, y), ResponseSet.from(w)),
+        ImmutableSet.of(ResponseSet.from(x, z), ResponseSet.from(w)));
+
+    final Symbol doc2 = Symbol.from("DOC2");
+    final Response v = response(doc2, DIE, "v", 0);
+    final Response u = response(doc2, TRANSPORT, "u", 2);
+    final ScoringData doc2Data = scoringData(doc2, ImmutableSet.of(v), ImmutableSet.of(u),
+        ImmutableSet.of(v, u), ImmutableSet.of(ResponseSet.from(v)),
+        ImmutableSet.of(ResponseSet.from(v, u)));
+
+    final Symbol doc3 = Symbol.from("DOC3");
+    final Response t = response(doc3, ATTACK, "t", 0);
+    final ScoringData doc3Data = scoringData(doc3, ImmutableSet.<Response>of(),
+        ImmutableSet.of(t), ImmutableSet.of(t), ImmutableSet.<ResponseSet>of(),
+        ImmutableSet.of(ResponseSet.from(t)));
+
+    return ImmutableList.of(scorer.score(doc1Data), scorer.score(doc2Data),
+        scorer.score(doc3Data));
+  }
+
+  private static ScoringData scoringData(final Symbol docID, final Set<Response> correct,
+      final Set<Response> incorrect, final Set<Response> systemResponses,
+      final Set<ResponseSet> referenceLinking, final Set<ResponseSet> systemLinking) {
+    final ImmutableSet.Builder<AssessedResponse> assessed = ImmutableSet.builder();
+    for (final Response response : correct) {
+      assessed.add(AssessedResponse.assessCorrectly(response, FillerMentionType.NAME));
+    }
+    for (final Response response : incorrect) {
+      assessed.add(AssessedResponse.assessWithIncorrectEventType(response));
+    }
+    final Random rng = new Random(0);
+    final CorefAnnotation.Builder coref = CorefAnnotation.strictBuilder(docID);
+    for (final Response response : Sets.union(correct, incorrect)) {
+      coref.putInNewRandomCluster(response.canonicalArgument(), rng);
+    }
+    final ImmutableSet.Builder<Scored<Response>> scored = ImmutableSet.builder();
+    for (final Response response : systemResponses) {
+      scored.add(Scored.from(response, 1.0));
+    }
+    return ScoringData.builder()
+        .answerKey(AnswerKey.from(docID, assessed.build(), ImmutableSet.<Response>of(),
+            coref.build()))
+        .referenceLinking(ResponseLinking.builder().docID(docID)
+            .responseSets(referenceLinking).build())
+        .argumentOutput(ArgumentOutput.from(docID, scored.build()))
+        .systemLinking(ResponseLinking.builder().docID(docID).responseSets(systemLinking).build())
+        .build();
+  }
+
+  private static Response response(final Symbol docID, final Symbol type, final String cas,
+      final int offset) {
+    final CharOffsetSpan span = CharOffsetSpan.fromOffsetsOnly(offset, offset + 1);
+    return Response.of(docID, type, VICTIM, KBPString.from(cas, offset, offset + 1), span,
+        ImmutableSet.<CharOffsetSpan>of(), ImmutableSet.of(span), KBPRealis.Actual);
+  }
+
+  private static void assertSameFiles(final File expectedDir, final File actualDir)
+      throws IOException {
+    final ImmutableList<String> expectedFiles = relativeFilePaths(expectedDir);
+    assertEquals(expectedFiles, relativeFilePaths(actualDir));
+    for (final String path : expectedFiles) {
+      assertArrayEquals(path, contents(new File(expectedDir, path)),
+          contents(new File(actualDir, path)));
+    }
+  }
+
+  private static ImmutableList<String> relativeFilePaths(final File dir) {
+    final int prefixLength = dir.getPath().length() + 1;
+    return FluentIterable.from(Files.fileTreeTraverser().preOrderTraversal(dir))
+        .filter(Files.isFile())
+        .transform(new Function<File, String>() {
+          @Override
+          public String apply(final File f) {
+            return f.getPath().substring(prefixLength);
+          }
+        }).toSortedList(Ordering.<String>natural());
+  }
+
+  // compressed files are compared by their contents, since the compressed bytes are not ours
+  private static byte[] contents(final File file) throws IOException {
+    if (file.getName().endsWith(".json")) {
+      try (InputStream in = new GZIPInputStream(new FileInputStream(file))) {
+        return ByteStreams.toByteArray(in);
+      }
+    }
+    return Files.toByteArray(file);
+  }
+
+  // the writers as they were before they read from DocumentScoreTable
+
+  private void writePreviousOutput(final List<EALScorer2015Style.Result> perDocResults,
+      final File outputDir) throws IOException {
+    final File aggregateDir = new File(outputDir, "aggregate");
+    aggregateDir.mkdirs();
+    writePreviousAggregate(perDocResults, aggregateDir);
+
+    final File perDocDir = new File(outputDir, "perDoc");
+    perDocDir.mkdirs();
+    writePreviousPerDoc(perDocResults, new File(perDocDir, "scoresByDocument.txt"));
+
+    final File eventTypesDir = new File(outputDir, "byEventTypes");
+    eventTypesDir.mkdirs();
+    final Multiset<Symbol> eventTypesSeen = HashMultiset.create();
+    for (final EALScorer2015Style.Result perDocResult : perDocResults) {
+      for (final TypeRoleFillerRealis trfr : perDocResult.argResult()
+          .truePositiveAndFalseNegativeEquivalenceClasses()) {
+        eventTypesSeen.add(trfr.type());
+      }
+    }
+    for (final Symbol type : eventTypesSeen.elementSet()) {
+      final File eventTypeDir = new File(eventTypesDir, type.asString());
+      eventTypeDir.mkdirs();
+      final List<EALScorer2015Style.ArgResult> relevantArgumentScores =
+          filterToType(perDocResults, type);
+      writePreviousArgPerDoc(relevantArgumentScores,
+          new File(eventTypeDir, "scoresByDocument.txt"));
+      final ImmutableAggregate2015ArgScoringResult argScores =
+          previousArgScores(relevantArgumentScores);
+      Files.asCharSink(new File(eventTypeDir, "aggregateScore.txt"), Charsets.UTF_8).write(
+          String.format("%30s:%8.2f\n", "Aggregate argument precision", argScores.precision())
+              + String.format("%30s:%8.2f\n", "Aggregate argument recall", argScores.recall())
+              + String.format("%30s:%8.2f\n\n", "Aggregate argument score",
+              argScores.overall()));
+      writeJSON(argScores, new File(eventTypeDir, "aggregateScore.json"));
+    }
+  }
+
+  private void writePreviousAggregate(final List<EALScorer2015Style.Result> perDocResults,
+      final File outputDir) throws IOException {
+    final ImmutableAggregate2015ArgScoringResult argScores =
+        previousArgScores(Lists.transform(perDocResults, GET_ARG_RESULT));
+    final ImmutableAggregate2015LinkScoringResult linkScores = previousLinkScores(perDocResults);
+    final ImmutableAggregate2015ScoringResult result =
+        ImmutableAggregate2015ScoringResult.builder()
+            .argument(argScores)
+            .linking(linkScores)
+            .overall((1.0 - scorer.lambda()) * argScores.overall()
+                + scorer.lambda() * linkScores.overall())
+            .build();
+
+    Files.asCharSink(new File(outputDir, "aggregateScore.txt"), Charsets.UTF_8).write(
+        String.format("%30s:%8.2f\n", "Aggregate argument precision",
+            result.argument().precision())
+            + String.format("%30s:%8.2f\n", "Aggregate argument recall",
+            result.argument().recall())
+            + String.format("%30s:%8.2f\n\n", "Aggregate argument score",
+            result.argument().overall())
+            + String.format("%30s:%8.2f\n", "Aggregate linking precision",
+            result.linking().precision())
+            + String.format("%30s:%8.2f\n", "Aggregate linking recall",
+            result.linking().recall())
+            + String.format("%30s:%8.2f\n\n", "Aggregate linking score",
+            result.linking().overall())
+            + String.format("%30s:%8.2f\n", "Overall score", result.overall()));
+    writeJSON(result, new File(outputDir, "aggregateScore.json"));
+  }
+
+  private static void writePreviousPerDoc(final List<EALScorer2015Style.Result> perDocResults,
+      final File outFile) throws IOException {
+    final List<String> lines = Lists.newArrayList();
+    for (final EALScorer2015Style.Result input : perDocResults) {
+      lines.add(String.format("%40s\t%10.2f\t%7s%7s%7s\t%10.2f\t%10.2f",
+          input.docID(),
+          100.0 * input.argResult().scaledArgumentScore(),
+          String.format("%.1f", 100.0 * input.linkResult().scaledLinkingPrecision()),
+          String.format("%.1f", 100.0 * input.linkResult().scaledLinkingRecall()),
+          String.format("%.1f", 100.0 * input.linkResult().scaledLinkingScore()),
+          100.0 * input.linkResult().scaledLinkingScore(),
+          100.0 * input.scaledScore()));
+    }
+    Files.asCharSink(outFile, Charsets.UTF_8).write(
+        String.format("%40s\t%10s\t%10s\t%10s\t%10s\n", "Document", "Arg", "Link-P,R,F", "Link",
+            "Combined") + Joiner.on("\n").join(lines));
+  }
+
+  private static void writePreviousArgPerDoc(
+      final List<EALScorer2015Style.ArgResult> perDocResults, final File outFile)
+      throws IOException {
+    final List<String> lines = Lists.newArrayList();
+    for (final EALScorer2015Style.ArgResult input : perDocResults) {
+      lines.add(String.format("%40s\t%10.2f", input.docID(),
+          100.0 * input.scaledArgumentScore()));
+    }
+    Files.asCharSink(outFile, Charsets.UTF_8).write(
+        String.format("%40s\t%10s\n", "Document", "Arg") + Joiner.on("\n").join(lines));
+  }
+
+  private static ImmutableAggregate2015LinkScoringResult previousLinkScores(
+      final List<EALScorer2015Style.Result> perDocResults) {
+    double rawLinkScoreSum = 0.0;
+    double linkNormalizerSum = 0.0;
+    double rawLinkPrecisionSum = 0.0;
+    double rawLinkRecallSum = 0.0;
+    for (final EALScorer2015Style.Result perDocResult : perDocResults) {
+      rawLinkScoreSum += perDocResult.linkResult().unscaledLinkingScore();
+      linkNormalizerSum += perDocResult.linkResult().linkingNormalizer();
+      rawLinkPrecisionSum += perDocResult.linkResult().unscaledLinkingPrecision();
+      rawLinkRecallSum += perDocResult.linkResult().unscaledLinkingRecall();
+    }
+    final double aggregateLinkScore =
+        (linkNormalizerSum > 0.0) ? rawLinkScoreSum / linkNormalizerSum : 0.0;
+    final double aggregateLinkPrecision =
+        (linkNormalizerSum > 0.0) ? rawLinkPrecisionSum / linkNormalizerSum : 0.0;
+    final double aggregateLinkRecall =
+        (linkNormalizerSum > 0.0) ? rawLinkRecallSum / linkNormalizerSum : 0.0;
+    return ImmutableAggregate2015LinkScoringResult.builder()
+        .precision(100.0 * aggregateLinkPrecision)
+        .recall(100.0 * aggregateLinkRecall)
+        .overall(100.0 * aggregateLinkScore).build();
+  }
+
+  private static ImmutableAggregate2015ArgScoringResult previousArgScores(
+      final List<EALScorer2015Style.ArgResult> perDocResults) {
+    double rawArgScoreSum = 0.0;
+    double argNormalizerSum = 0.0;
+    double argTP = 0.0;
+    double argFP = 0.0;
+    double argFN = 0.0;
+    for (final EALScorer2015Style.ArgResult perDocResult : perDocResults) {
+      rawArgScoreSum += Math.max(0.0, perDocResult.unscaledArgumentScore());
+      argNormalizerSum += perDocResult.argumentNormalizer();
+      argTP += perDocResult.unscaledTruePositiveArguments();
+      argFP += perDocResult.unscaledFalsePositiveArguments();
+      argFN += perDocResult.unscaledFalseNegativeArguments();
+    }
+    final double aggregateArgPrecision = (argTP > 0.0) ? argTP / (argFP + argTP) : 0.0;
+    final double aggregateArgRecall = (argTP > 0.0) ? (argTP / argNormalizerSum) : 0.0;
+    final double aggregateArgScore =
+        (argNormalizerSum > 0.0) ? rawArgScoreSum / argNormalizerSum : 0.0;
+    return ImmutableAggregate2015ArgScoringResult.builder()
+        .precision(100.0 * aggregateArgPrecision)
+        .recall(100.0 * aggregateArgRecall)
+        .overall(100.0 * aggregateArgScore)
+        .truePositives(argTP)
+        .falsePositives(argFP)
+        .falseNegatives(argFN).build();
+  }
+
+  private static List<EALScorer2015Style.ArgResult> filterToType(
+      final List<EALScorer2015Style.Result> perDocResults, final Symbol type) {
+    final List<EALScorer2015Style.ArgResult> ret = Lists.newArrayList();
+    for (final EALScorer2015Style.Result perDocResult : perDocResults) {
+      ret.add(perDocResult.argResult().copyFiltered(
+          compose(equalTo(type), TypeRoleFillerRealisFunctions.type())));
+    }
+    return ret;
+  }
+
+  private static void writeJSON(final Object o, final File jsonFile) throws IOException {
+    JacksonSerializer.builder().forJson().prettyOutput().build()
+        .serializeTo(o, GZIPByteSink.gzipCompress(Files.asByteSink(jsonFile)));
+  }
+
+  private static final Function<EALScorer2015Style.Result, EALScorer2015Style.ArgResult>
+      GET_ARG_RESULT = new Function<EALScorer2015Style.Result, EALScorer2015Style.ArgResult>() {
+    @Override
+    public EALScorer2015Style.ArgResult apply(final EALScorer2015Style.Result input) {
+      return input.argResult();
+    }
+  };
+}
@@ -0,0 +1,264 @@
+package com.bbn.kbp.events2014.scorer.bin;
+
+import com.bbn.bue.common.scoring.Scored;
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.kbp.events2014.AnswerKey;
+import com.bbn.kbp.events2014.ArgumentOutput;
+import com.bbn.kbp.events2014.AssessedResponse;
+import com.bbn.kbp.events2014.CharOffsetSpan;
+import com.bbn.kbp.events2014.CorefAnnotation;
+import com.bbn.kbp.events2014.FillerMentionType;
+import com.bbn.kbp.events2014.KBPRealis;
+import com.bbn.kbp.events2014.KBPString;
+import com.bbn.kbp.events2014.Response;
+import com.bbn.kbp.events2014.ResponseLinking;
+import com.bbn.kbp.events2014.ResponseSet;
+import com.bbn.kbp.events2014.ScoringData;
+import com.bbn.kbp.linking.EALScorer2015Style;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.io.Files;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ScoringResultCacheTest {
+
+  private static final Symbol DOC = Symbol.from("DOC");
+  private static final Symbol CONFLICT = Symbol.from("Conflict.Attack");
+  private static final Symbol VICTIM = Symbol.from("Victim");
+  private static final String CONFIGURATION = "2015;neutralizeRealis=true";
+  private static final String CODE_VERSION = "1-test";
+
+  private final EALScorer2015Style scorer = EALScorer2015Style.createWithoutPreprocessing();
+
+  private final Response x = response("x", KBPRealis.Actual, 0);
+  private final Response y = response("y", KBPRealis.Actual, 2);
+  private final Response z = response("z", KBPRealis.Actual, 4);
+  private final Response a = response("a", KBPRealis.Actual, 6);
+  private final Response zGeneric = response("z", KBPRealis.Generic, 4);
+
+  @Test
+  public void testMissThenHit() throws IOException {
+    final ScoringResultCache cache = ScoringResultCache.open(Files.createTempDir(),
+        CONFIGURATION, CODE_VERSION);
+    final ScoringData scoringData = scoringData(0.5, FillerMentionType.NAME, systemLinking());
+    final HashCode key = cache.key(scoringData);
+
+    assertFalse(cache.read(DOC, key, scorer).isPresent());
+    cache.write(scorer.score(scoringData), key);
+    assertTrue(cache.read(DOC, key, scorer).isPresent());
+    // the entry belongs to this document only
+    assertFalse(cache.read(Symbol.from("OTHER_DOC"), key, scorer).isPresent());
+  }
+
+  @Test
+  public void testCachedResultMatchesFresh() throws IOException {
+    final File cacheDir = Files.createTempDir();
+    final ScoringData scoringData = scoringData(0.5, FillerMentionType.NAME, systemLinking());
+    final EALScorer2015Style.Result fresh = scorer.score(scoringData);
+    final ScoringResultCache writingCache =
+        ScoringResultCache.open(cacheDir, CONFIGURATION, CODE_VERSION);
+    writingCache.write(fresh, writingCache.key(scoringData));
+
+    // a separate instance, as in a later run, over separately built but identical inputs
+    final ScoringResultCache readingCache =
+        ScoringResultCache.open(cacheDir, CONFIGURATION, CODE_VERSION);
+    final ScoringData sameScoringData = scoringData(0.5, FillerMentionType.NAME, systemLinking());
+    final Optional<EALScorer2015Style.Result> cached =
+        readingCache.read(DOC, readingCache.key(sameScoringData), scorer);
+    assertTrue(cached.isPresent());
+
+    assertEquals(fresh.docID(), cached.get().docID());
+    assertEquals(fresh.scaledScore(), cached.get().scaledScore(), 0.0);
+    assertEquals(fresh.argResult().unscaledTruePositiveArguments(),
+        cached.get().argResult().unscaledTruePositiveArguments(), 0.0);
+    assertEquals(fresh.argResult().unscaledFalsePositiveArguments(),
+        cached.get().argResult().unscaledFalsePositiveArguments(), 0.0);
+    assertEquals(fresh.argResult().unscaledFalseNegativeArguments(),
+        cached.get().argResult().unscaledFalseNegativeArguments(), 0.0);
+    assertEquals(fresh.argResult().truePositiveAndFalseNegativeEquivalenceClasses(),
+        cached.get().argResult().truePositiveAndFalseNegativeEquivalenceClasses());
+    assertEquals(fresh.argResult().indexedAlignment().equivalenceClasses(),
+        cached.get().argResult().indexedAlignment().equivalenceClasses());
+    assertArrayEquals(fresh.argResult().indexedAlignment().outcomeFlags(),
+        cached.get().argResult().indexedAlignment().outcomeFlags());
+    assertEquals(fresh.linkResult().linkingNormalizer(),
+        cached.get().linkResult().linkingNormalizer(), 0.0);
+    assertEquals(fresh.linkResult().scaledLinkingPrecision(),
+        cached.get().linkResult().scaledLinkingPrecision(), 0.0);
+    assertEquals(fresh.linkResult().scaledLinkingRecall(),
+        cached.get().linkResult().scaledLinkingRecall(), 0.0);
+    assertEquals(fresh.linkResult().scaledLinkingScore(),
+        cached.get().linkResult().scaledLinkingScore(), 0.0);
+
+    // everything reported is computed from the score table, so it must come out the same
+    final File outputDir = Files.createTempDir();
+    final File freshScores = new File(outputDir, "fresh.csv");
+    final File cachedScores = new File(outputDir, "cached.csv");
+    DocumentScoreTable.fromResults(ImmutableList.of(fresh), scorer.beta())
+        .writeTo(Files.asCharSink(freshScores, Charsets.UTF_8));
+    DocumentScoreTable.fromResults(ImmutableList.of(cached.get()), scorer.beta())
+        .writeTo(Files.asCharSink(cachedScores, Charsets.UTF_8));
+    assertEquals(Files.toString(freshScores, Charsets.UTF_8),
+        Files.toString(cachedScores, Charsets.UTF_8));
+  }
+
+  @Test
+  public void testKeyIgnoresJustificationOrder() {
+    final ScoringResultCache cache = ScoringResultCache.open(Files.createTempDir(),
+        CONFIGURATION, CODE_VERSION);
+    final CharOffsetSpan first = CharOffsetSpan.fromOffsetsOnly(10, 12);
+    final CharOffsetSpan second = CharOffsetSpan.fromOffsetsOnly(20, 22);
+    final Response inOrder = Response.of(DOC, CONFLICT, VICTIM, KBPString.from("w", 10, 12),
+        first, ImmutableSet.<CharOffsetSpan>of(), ImmutableSet.of(first, second),
+        KBPRealis.Actual);
+    final Response reversed = Response.of(DOC, CONFLICT, VICTIM, KBPString.from("w", 10, 12),
+        first, ImmutableSet.<CharOffsetSpan>of(), ImmutableSet.of(second, first),
+        KBPRealis.Actual);
+    assertEquals(inOrder, reversed);
+
+    assertEquals(cache.key(withExtraSystemResponse(inOrder)),
+        cache.key(withExtraSystemResponse(reversed)));
+  }
+
+  @Test
+  public void testChangedInputsInvalidate() throws IOException {
+    final File cacheDir = Files.createTempDir();
+    final ScoringResultCache cache = ScoringResultCache.open(cacheDir, CONFIGURATION,
+        CODE_VERSION);
+    final ScoringData original = scoringData(0.5, FillerMentionType.NAME, systemLinking());
+    final HashCode key = cache.key(original);
+    cache.write(scorer.score(original), key);
+
+    final ImmutableList<ScoringData> changedInputs = ImmutableList.of(
+        // a confidence
+        scoringData(0.75, FillerMentionType.NAME, systemLinking()),
+        // one field of the assessments
+        scoringData(0.5, FillerMentionType.NOMINAL, systemLinking()),
+        // the system linking
+        scoringData(0.5, FillerMentionType.NAME, ResponseLinking.builder().docID(DOC)
+            .responseSets(ImmutableSet.of(ResponseSet.from(x, y), ResponseSet.from(z)))
+            .build()),
+        // the system arguments
+        withExtraSystemResponse(a));
+    for (final ScoringData changed : changedInputs) {
+      final HashCode changedKey = cache.key(changed);
+      assertNotEquals(key, changedKey);
+      assertFalse(cache.read(DOC, changedKey, scorer).isPresent());
+    }
+
+    // the scoring configuration
+    final ScoringResultCache otherConfiguration = ScoringResultCache.open(cacheDir,
+        "2015;neutralizeRealis=false", CODE_VERSION);
+    assertNotEquals(key, otherConfiguration.key(original));
+    assertFalse(
+        otherConfiguration.read(DOC, otherConfiguration.key(original), scorer).isPresent());
+
+    // the scoring code
+    final ScoringResultCache otherCode = ScoringResultCache.open(cacheDir, CONFIGURATION,
+        "2-test");
+    assertNotEquals(key, otherCode.key(original));
+    assertFalse(otherCode.read(DOC, otherCode.key(original), scorer).isPresent());
+
+    // and the original entry is still there
+    assertTrue(cache.read(DOC, key, scorer).isPresent());
+  }
+
+  @Test
+  public void testCorruptEntryIsMiss() throws IOException {
+    final File cacheDir = Files.createTempDir();
+    final ScoringResultCache cache = ScoringResultCache.open(cacheDir, CONFIGURATION,
+        CODE_VERSION);
+    final ScoringData scoringData = scoringData(0.5, FillerMentionType.NAME, systemLinking());
+    final HashCode key = cache.key(scoringData);
+    cache.write(scorer.score(scoringData), key);
+
+    final File[] entries = cacheDir.listFiles();
+    assertEquals(1, entries.length);
+    final byte[] truncated = new byte[(int) entries[0].length() / 2];
+    System.arraycopy(Files.toByteArray(entries[0]), 0, truncated, 0, truncated.length);
+    Files.write(truncated, entries[0]);
+
+    assertFalse(cache.read(DOC, key, scorer).isPresent());
+  }
+
+  @Test
+  public void testScoringCodeVersionIsStable() throws IOException {
+    final String codeVersion = ScoringResultCache.scoringCodeVersion();
+    assertTrue(codeVersion.startsWith(ScoringResultCache.SCORING_CODE_VERSION + "-"));
+    assertEquals(codeVersion, ScoringResultCache.scoringCodeVersion());
+  }
+
+  /**
+   * Key {x, y, a} with z wrong; system {x, y, z, zGeneric} linked as {x, y, z}.
+   */
+  private ScoringData scoringData(final double confidenceOfZ,
+      final FillerMentionType mentionType, final ResponseLinking systemLinking) {
+    final AnswerKey answerKey = AnswerKey.from(DOC,
+        ImmutableSet.of(AssessedResponse.assessCorrectly(x, mentionType),
+            AssessedResponse.assessCorrectly(y, mentionType),
+            AssessedResponse.assessCorrectly(a, mentionType),
+            AssessedResponse.assessCorrectly(zGeneric, mentionType),
+            AssessedResponse.assessWithIncorrectEventType(z)),
+        ImmutableSet.<Response>of(), coref(x, y, z, a));
+    final ArgumentOutput argumentOutput = ArgumentOutput.from(DOC, ImmutableSet.of(
+        Scored.from(x, 1.0), Scored.from(y, 0.25), Scored.from(z, confidenceOfZ),
+        Scored.from(zGeneric, 1.0)));
+    return ScoringData.builder()
+        .answerKey(answerKey)
+        .referenceLinking(ResponseLinking.builder().docID(DOC)
+            .responseSets(ImmutableSet.of(ResponseSet.from(x, y, a))).build())
+        .argumentOutput(argumentOutput)
+        .systemLinking(systemLinking)
+        .build();
+  }
+
+  private ResponseLinking systemLinking() {
+    return ResponseLinking.builder().docID(DOC)
+        .responseSets(ImmutableSet.of(ResponseSet.from(x, y, z))).build();
+  }
+
+  private ScoringData withExtraSystemResponse(final Response extra) {
+    final ScoringData base = scoringData(0.5, FillerMentionType.NAME, systemLinking());
+    final ImmutableSet.Builder<Scored<Response>> scored = ImmutableSet.builder();
+    for (final Response response : base.argumentOutput().get().responses()) {
+      scored.add(Scored.from(response, base.argumentOutput().get().confidence(response)));
+    }
+    scored.add(Scored.from(extra, 0.5));
+    return ScoringData.builder().from(base)
+        .argumentOutput(ArgumentOutput.from(DOC, scored.build()))
+        .systemLinking(ResponseLinking.builder().docID(DOC)
+            .responseSets(ImmutableSet.of(ResponseSet.from(x, y, z), ResponseSet.from(extra)))
+            .build())
+        .build();
+  }
+
+  private static CorefAnnotation coref(final Response... responses) {
+    final Random rng = new Random(0);
+    final CorefAnnotation.Builder ret = CorefAnnotation.strictBuilder(DOC);
+    for (final Response response : responses) {
+      ret.putInNewRandomCluster(response.canonicalArgument(), rng);
+    }
+    return ret.build();
+  }
+
+  private static Response response(final String cas, final KBPRealis realis, final int offset) {
+    final CharOffsetSpan span = CharOffsetSpan.fromOffsetsOnly(offset, offset + 1);
+    return Response.of(DOC, CONFLICT, VICTIM, KBPString.from(cas, offset, offset + 1), span,
+        ImmutableSet.<CharOffsetSpan>of(), ImmutableSet.of(span), realis);
+  }
+}
@@ -0,0 +1,213 @@
+package com.bbn.kbp.linking;
+
+import com.bbn.bue.common.evaluation.FMeasureCounts;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks {@link LinkF1} against a straightforward set-based implementation of the same metric, which
+ * is how it was computed before items were encoded as ints.
+ */
+public class LinkF1Test {
+
+  private static final double TOLERANCE = 1e-12;
+
+  @Test
+  public void testHandComputed() {
+    // gold {a, b, c} {d}; predicted {a, b} {c, d}
+    // a: tp=1 fp=0 fn=1; b: same; c: tp=0 fp=1 fn=2; d: tp=0 fp=1 fn=0
+    final ExplicitFMeasureInfo score = LinkF1.create().score(
+        ImmutableList.of(ImmutableSet.of("a", "b"), ImmutableSet.of("c", "d")),
+        ImmutableList.of(ImmutableSet.of("a", "b", "c"), ImmutableSet.of("d")));
+    assertEquals((1.0 + 1.0 + 0.0 + 0.0) / 4, score.precision(), TOLERANCE);
+    assertEquals((0.5 + 0.5 + 0.0 + 0.0) / 4, score.recall(), TOLERANCE);
+    assertEquals((2.0 / 3 + 2.0 / 3 + 0.0 + 0.0) / 4, score.f1(), TOLERANCE);
+  }
+
+  @Test
+  public void testEmpty() {
+    final List<Set<String>> empty = ImmutableList.of();
+    assertScore(1.0, 1.0, 1.0, LinkF1.create().score(empty, empty));
+    assertScore(0.0, 0.0, 0.0,
+        LinkF1.create().score(empty, ImmutableList.of(ImmutableSet.of("a"))));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPredictedItemsMustBeInGold() {
+    LinkF1.create().score(ImmutableList.of(ImmutableSet.of("a", "z")),
+        ImmutableList.of(ImmutableSet.of("a")));
+  }
+
+  @Test
+  public void testRandomPartitions() {
+    // event argument linkings: every item in at most one cluster on each side
+    final Random rng = new Random(0);
+    for (int trial = 0; trial < 2000; ++trial) {
+      final int numItems = rng.nextInt(20);
+      final List<Set<Integer>> gold = randomPartition(allItems(numItems), rng);
+      final List<Set<Integer>> predicted =
+          randomPartition(randomSubset(allItems(numItems), rng), rng);
+      assertMatchesReference(predicted, gold);
+    }
+  }
+
+  @Test
+  public void testRandomOverlappingClusterings() {
+    final Random rng = new Random(0);
+    for (int trial = 0; trial < 2000; ++trial) {
+      final int numItems = 1 + rng.nextInt(15);
+      final List<Set<Integer>> gold = randomOverlapping(allItems(numItems), rng);
+      // predicted clusterings may overlap, repeat clusters, or be partitions
+      final List<Set<Integer>> predicted;
+      switch (rng.nextInt(3)) {
+        case 0:
+          predicted = randomPartition(randomSubset(allItems(numItems), rng), rng);
+          break;
+        case 1:
+          predicted = randomOverlapping(randomSubset(allItems(numItems), rng), rng);
+          break;
+        default:
+          predicted = Lists.newArrayList(randomPartition(allItems(numItems), rng));
+          if (!predicted.isEmpty()) {
+            predicted.add(predicted.get(rng.nextInt(predicted.size())));
+          }
+      }
+      assertMatchesReference(predicted, gold);
+      assertMatchesReference(gold, gold);
+    }
+  }
+
+  private static void assertMatchesReference(final List<Set<Integer>> predicted,
+      final List<Set<Integer>> gold) {
+    final ExplicitFMeasureInfo expected = referenceScore(predicted, gold);
+    assertScore(expected.precision(), expected.recall(), expected.f1(),
+        LinkF1.create().score(predicted, gold));
+  }
+
+  private static void assertScore(final double precision, final double recall, final double f1,
+      final ExplicitFMeasureInfo score) {
+    assertEquals(precision, score.precision(), TOLERANCE);
+    assertEquals(recall, score.recall(), TOLERANCE);
+    assertEquals(f1, score.f1(), TOLERANCE);
+  }
+
+  /**
+   * Link F1 computed directly from each item's sets of neighbors.
+   */
+  private static <T> ExplicitFMeasureInfo referenceScore(final List<? extends Set<T>> predicted,
+      final List<? extends Set<T>> gold) {
+    final Multimap<T, Set<T>> predictedItemToGroup = HashMultimap.create();
+    for (final Set<T> cluster : predicted) {
+      for (final T item : cluster) {
+        predictedItemToGroup.put(item, cluster);
+      }
+    }
+    final Multimap<T, Set<T>> goldItemToGroup = HashMultimap.create();
+    for (final Set<T> cluster : gold) {
+      for (final T item : cluster) {
+        goldItemToGroup.put(item, cluster);
+      }
+    }
+    final ImmutableSet<T> keyItems = ImmutableSet.copyOf(Iterables.concat(gold));
+    final ImmutableSet<T> predictedItems = ImmutableSet.copyOf(Iterables.concat(predicted));
+    if (keyItems.isEmpty()) {
+      return predictedItems.isEmpty() ? ExplicitFMeasureInfo.of(1.0, 1.0, 1.0)
+                                      : ExplicitFMeasureInfo.of(0.0, 0.0, 0.0);
+    } else if (predictedItems.isEmpty()) {
+      return ExplicitFMeasureInfo.of(0.0, 0.0, 0.0);
+    }
+
+    double f1Sum = 0.0;
+    double precisionSum = 0.0;
+    double recallSum = 0.0;
+    for (final T keyItem : keyItems) {
+      if (!predictedItems.contains(keyItem)) {
+        continue;
+      }
+      final Set<T> predictedNeighbors =
+          Sets.newHashSet(Iterables.concat(predictedItemToGroup.get(keyItem)));
+      predictedNeighbors.remove(keyItem);
+      final Set<T> goldNeighbors = Sets.newHashSet(Iterables.concat(goldItemToGroup.get(keyItem)));
+      goldNeighbors.remove(keyItem);
+      if (predictedNeighbors.isEmpty() && goldNeighbors.isEmpty()) {
+        f1Sum += 1.0;
+        precisionSum += 1.0;
+        recallSum += 1.0;
+      } else {
+        final FMeasureCounts counts = FMeasureCounts.from(
+            Sets.intersection(predictedNeighbors, goldNeighbors).size(),
+            Sets.difference(predictedNeighbors, goldNeighbors).size(),
+            Sets.difference(goldNeighbors, predictedNeighbors).size());
+        f1Sum += counts.F1();
+        precisionSum += counts.precision();
+        recallSum += counts.recall();
+      }
+    }
+    return ExplicitFMeasureInfo.of(precisionSum / predictedItems.size(),
+        recallSum / keyItems.size(), f1Sum / keyItems.size());
+  }
+
+  private static List<Integer> allItems(final int numItems) {
+    final List<Integer> ret = Lists.newArrayList();
+    for (int i = 0; i < numItems; ++i) {
+      ret.add(i);
+    }
+    return ret;
+  }
+
+  private static List<Integer> randomSubset(final List<Integer> items, final Random rng) {
+    final List<Integer> ret = Lists.newArrayList();
+    for (final Integer item : items) {
+      if (rng.nextInt(4) > 0) {
+        ret.add(item);
+      }
+    }
+    return ret;
+  }
+
+  private static List<Set<Integer>> randomPartition(final List<Integer> items, final Random rng) {
+    final List<Integer> shuffled = Lists.newArrayList(items);
+    Collections.shuffle(shuffled, rng);
+    final List<Set<Integer>> ret = Lists.newArrayList();
+    int i = 0;
+    while (i < shuffled.size()) {
+      final int size = 1 + rng.nextInt(Math.min(4, shuffled.size() - i));
+      ret.add(ImmutableSet.copyOf(shuffled.subList(i, i + size)));
+      i += size;
+    }
+    return ret;
+  }
+
+  // clusters which may share items; every item is in at least one
+  private static List<Set<Integer>> randomOverlapping(final List<Integer> items,
+      final Random rng) {
+    final List<Set<Integer>> ret = Lists.newArrayList(randomPartition(items, rng));
+    if (!items.isEmpty()) {
+      final int extraClusters = rng.nextInt(4);
+      for (int i = 0; i < extraClusters; ++i) {
+        final Set<Integer> cluster = Sets.newHashSet();
+        final int size = 1 + rng.nextInt(4);
+        for (int j = 0; j < size; ++j) {
+          cluster.add(items.get(rng.nextInt(items.size())));
+        }
+        ret.add(ImmutableSet.copyOf(cluster));
+      }
+    }
+    return ret;
+  }
+}
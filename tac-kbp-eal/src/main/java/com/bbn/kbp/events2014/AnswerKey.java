@@ -252,10 +252,14 @@ public final class AnswerKey {
   }
 
   public void checkCompletelyAssesses(final ArgumentOutput argumentOutput) {
-    if (!completelyAssesses(argumentOutput)) {
+    checkCompletelyAssesses(argumentOutput.responses());
+  }
+
+  public void checkCompletelyAssesses(final Set<Response> systemResponses) {
+    final Set<Response> unassessed = Sets.difference(systemResponses, annotatedArgs.keySet());
+    if (!unassessed.isEmpty()) {
       throw new RuntimeException("The following responses from the system output are not assessed: "
-          + StringUtils.unixNewlineJoiner().join(
-          Sets.difference(argumentOutput.responses(), annotatedArgs.keySet())));
+          + StringUtils.unixNewlineJoiner().join(unassessed));
     }
   }
 
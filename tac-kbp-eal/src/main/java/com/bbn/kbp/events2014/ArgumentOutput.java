@@ -26,11 +26,11 @@ import com.google.common.collect.Sets;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
-import static com.bbn.bue.common.collections.IterableUtils.allEqual;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.collect.Iterables.all;
@@ -224,25 +224,56 @@ public final class ArgumentOutput {
    */
   public static ArgumentOutput unionKeepingMaximumScore(Iterable<ArgumentOutput> systemOutputs) {
     checkArgument(!isEmpty(systemOutputs), "Cannot take union of zero system outputs");
-    checkArgument(allEqual(transform(systemOutputs, DocID)),
-        "Cannot take the union of system outputs with different docids");
-    final Map<Response, Double> responseToScore = new HashMap<Response, Double>();
-    final Map<Response, Scored<Response>> scoredResponses =
-        new HashMap<Response, Scored<Response>>();
-    final Map<Response, String> responseToMetadata = new HashMap<Response, String>();
+    final MaximumScoreUnionBuilder ret =
+        maximumScoreUnionBuilder(getFirst(systemOutputs, null).docId());
     for (final ArgumentOutput output : systemOutputs) {
-      for (final Scored<Response> scoredResponse : output.scoredResponses()) {
-        final Double score = responseToScore.get(scoredResponse.item());
-        if (score == null || score < scoredResponse.score()) {
-          responseToScore.put(scoredResponse.item(), scoredResponse.score());
-          responseToMetadata.put(scoredResponse.item(), output.metadata(scoredResponse.item()));
-          scoredResponses.put(scoredResponse.item(), scoredResponse);
+      ret.add(output);
+    }
+    return ret.build();
+  }
+
+  /**
+   * Gets a builder which computes the same union as {@link #unionKeepingMaximumScore(Iterable)},
+   * but one system output at a time, so callers need not hold all the outputs being combined in
+   * memory at once.
+   */
+  public static MaximumScoreUnionBuilder maximumScoreUnionBuilder(final Symbol docId) {
+    return new MaximumScoreUnionBuilder(docId);
+  }
+
+  public static final class MaximumScoreUnionBuilder {
+
+    private final Symbol docId;
+    private final Map<Response, Double> responseToScore = new LinkedHashMap<Response, Double>();
+    private final Map<Response, String> responseToMetadata = new HashMap<Response, String>();
+
+    private MaximumScoreUnionBuilder(final Symbol docId) {
+      this.docId = checkNotNull(docId);
+    }
+
+    /**
+     * Merges in the responses of {@code output}. A response already present is replaced only if
+     * {@code output} gives it a strictly higher score, in which case its metadata is replaced
+     * as well.
+     */
+    public MaximumScoreUnionBuilder add(final ArgumentOutput output) {
+      checkArgument(docId == output.docId(),
+          "Cannot take the union of system outputs with different docids");
+      for (final Response response : output.responses()) {
+        final double newScore = output.confidence(response);
+        final Double score = responseToScore.get(response);
+        if (score == null || score < newScore) {
+          responseToScore.put(response, newScore);
+          responseToMetadata.put(response, output.metadata(response));
         }
       }
+      return this;
     }
 
-    return ArgumentOutput
-        .from(getFirst(systemOutputs, null).docId(), scoredResponses.values(), responseToMetadata);
+    public ArgumentOutput build() {
+      return new ArgumentOutput(docId, responseToScore.keySet(), responseToScore,
+          responseToMetadata);
+    }
   }
 
   public ArgumentOutput copyWithFilteredResponses(Predicate<Scored<Response>> predicate) {
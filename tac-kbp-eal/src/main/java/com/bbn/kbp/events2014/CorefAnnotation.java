@@ -8,12 +8,14 @@ import com.google.common.base.MoreObjects;
 import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
-import com.google.common.collect.ImmutableMultiset;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
@@ -22,8 +24,9 @@ import com.google.common.collect.Sets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Random;
@@ -34,8 +37,6 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Predicates.in;
 import static com.google.common.base.Predicates.not;
-import static com.google.common.collect.Iterables.getFirst;
-import static com.google.common.collect.Multisets.copyHighestCountFirst;
 
 /**
  * Annotation of CAS coreference decisions. This is obsolete for the 2016 evaluation where
@@ -49,6 +50,23 @@ public final class CorefAnnotation {
   private final ImmutableMultimap<Integer, KBPString> idToCASes;
   private final ImmutableMap<KBPString, Integer> CASesToIDs;
   private final ImmutableSet<KBPString> unannotated;
+  // each annotated CAS mapped to the first CAS of its cluster, so normalization is one lookup.
+  // Built on first use since many annotations are never normalized.
+  private final Supplier<ImmutableMap<KBPString, KBPString>> CASesToCanonicalCASes =
+      Suppliers.memoize(new Supplier<ImmutableMap<KBPString, KBPString>>() {
+        @Override
+        public ImmutableMap<KBPString, KBPString> get() {
+          final ImmutableMap.Builder<KBPString, KBPString> ret = ImmutableMap.builder();
+          for (final Map.Entry<Integer, Collection<KBPString>> cluster : idToCASes.asMap()
+              .entrySet()) {
+            final KBPString canonical = Iterables.getFirst(cluster.getValue(), null);
+            for (final KBPString CAS : cluster.getValue()) {
+              ret.put(CAS, canonical);
+            }
+          }
+          return ret.build();
+        }
+      });
 
   private CorefAnnotation(final Symbol docId, final Multimap<Integer, KBPString> idToCASes,
       final Map<KBPString, Integer> CASesToIDs, final Set<KBPString> unannotated) {
@@ -180,84 +198,24 @@ public final class CorefAnnotation {
         Sets.filter(unannotatedCASes(), keep));
   }
 
+  /**
+   * Merges the coreference decisions of {@code toMerge} into this annotation. This annotation's
+   * clusters are kept as they are. Each CAS coreffed only in {@code toMerge} joins the existing
+   * cluster holding most of its {@code toMerge} clustermates, or a new cluster if none of them
+   * are known yet. When merging many annotations, prefer {@link #mergingBuilder(CorefAnnotation)},
+   * which avoids building an intermediate annotation after each merge.
+   */
   public CorefAnnotation copyMerging(CorefAnnotation toMerge) {
-    checkArgument(docId == toMerge.docId());
-    // (1) initialize our mapping of CASes to coref indices with the
-    // mappings seen in *baseline*. This is used to track the mappings during
-    // construction, but ret (below) is used to construct the result
-    final Map<KBPString, Integer> newCASToCoref = Maps.newHashMap(CASesToIDs);
-    final Builder ret = strictCopyBuilder();
-
-    // the next empty index for adding a new coref cluster
-    // this potentially could fail due to overflow, but the chances are tiny and
-    // the stakes are low, so we won't worry about it
-    int nextIndex = newCASToCoref.isEmpty() ? 1 : (1 + Collections.max(newCASToCoref.values()));
-
-    // (2) gather a map of coref IDs to the CASes in the corresponding cluster
-    // from *additional*
-    final Multimap<Integer, KBPString> additionalCorefToCAS = toMerge.idToCASes;
-
-    for (final Map.Entry<KBPString, Integer> newCorefRelation : toMerge.CASesToIDs.entrySet()) {
-      final int corefId = newCorefRelation.getValue();
-      final KBPString CAS = newCorefRelation.getKey();
-
-      if (!newCASToCoref.containsKey(CAS)) {
-        // this CAS was not previously coreffed
-        final StringBuilder msg = new StringBuilder();
-
-        // use the baseline cluster which contains most  clustermates of CAS
-        // in "additional"
-        final Collection<KBPString> clusterMates = additionalCorefToCAS.get(
-            corefId);
-        msg.append("\t\tFor CAS ").append(CAS).append(" no coref ID was found in baseline. It has ")
-            .append(clusterMates.size()).append(" clustermates\n");
-
-        // We use an ImmutableMultiset to have deterministic iteration order
-        // and therefore deterministic tie-breaking if two clusters tie
-        // on clustermate count
-        final ImmutableMultiset.Builder<Integer> bCorefIDsOfClusterMatesInBaseline =
-            ImmutableMultiset.builder();
-        for (final KBPString clusterMate : clusterMates) {
-          final Integer corefForClusterMate = newCASToCoref.get(clusterMate);
-          if (corefForClusterMate != null) {
-            // we don't have to worry about iterating over the target CAS itself
-            // because we know it will never pass this check
-            bCorefIDsOfClusterMatesInBaseline.add(corefForClusterMate);
-            msg.append("\t\t\t").append(clusterMate).append(" ---> ")
-                .append(corefForClusterMate).append("\n");
-          } else {
-            msg.append("\t\t\t").append(clusterMate).append(" ---> unknown\n");
-          }
-        }
-
-        final ImmutableMultiset<Integer> corefIDsOfClusterMatesInBaseline =
-            bCorefIDsOfClusterMatesInBaseline.build();
-
-        final int newCorefIdx;
-        if (!corefIDsOfClusterMatesInBaseline.isEmpty()) {
-          // we know this will be non-null due to the above check
-          newCorefIdx = getFirst(copyHighestCountFirst(corefIDsOfClusterMatesInBaseline), null);
-          msg.append("\t\tMapping to dominant cluster mate cluster ").append(newCorefIdx)
-              .append("\n");
-        } else {
-          // if we had no clustermates with known coref indices, start a new cluster.
-          // When it comes time to assign coref to our clustermates, if any,
-          // then we know they will have at least one clustermate with a known coref ID
-          newCorefIdx = nextIndex;
-          nextIndex = nextFreeIndex(nextIndex, newCASToCoref);
-          msg.append("\t\tMapping to new cluster ").append(newCorefIdx).append("\n");
-        }
-        log.info(msg.toString());
-        newCASToCoref.put(CAS, newCorefIdx);
-        ret.corefCAS(CAS, newCorefIdx);
-      }
-    }
-
-    for (final KBPString unannotatedCAS : toMerge.unannotated) {
-      ret.addUnannotatedCAS(unannotatedCAS);
-    }
+    return mergingBuilder(this).merge(toMerge).build();
+  }
 
-    return ret.build();
+  /**
+   * Returns a builder for merging any number of annotations into {@code baseline}. Calling {@link
+   * MergingBuilder#merge(CorefAnnotation)} repeatedly gives the same result as repeated calls to
+   * {@link #copyMerging(CorefAnnotation)}.
+   */
+  public static MergingBuilder mergingBuilder(CorefAnnotation baseline) {
+    return new MergingBuilder(baseline);
   }
 
   public int nextFreeIndex(int nextIndex, Map<KBPString, Integer> curMapping) {
@@ -283,10 +241,9 @@ public final class CorefAnnotation {
    * java.util.NoSuchElementException} is thrown.
    */
   public KBPString normalizeStrictly(KBPString s) {
-    final Integer id = CASesToIDs.get(s);
-    if (id != null) {
-      // will never be null by construction of CASestoIDs & idToCASes
-      return Iterables.getFirst(idToCASes.get(id), null);
+    final KBPString canonical = CASesToCanonicalCASes.get().get(s);
+    if (canonical != null) {
+      return canonical;
     } else {
       throw new NoSuchElementException("Cannot normalize " + s);
     }
@@ -300,10 +257,18 @@ public final class CorefAnnotation {
    * java.util.NoSuchElementException} is thrown.
    */
   public Function<KBPString, KBPString> strictCASNormalizerFunction() {
+    // fetch the table once so each application is a single lookup
+    final ImmutableMap<KBPString, KBPString> CASesToCanonicalCASes =
+        this.CASesToCanonicalCASes.get();
     return new Function<KBPString, KBPString>() {
       @Override
       public KBPString apply(KBPString input) {
-        return normalizeStrictly(input);
+        final KBPString canonical = CASesToCanonicalCASes.get(input);
+        if (canonical != null) {
+          return canonical;
+        } else {
+          throw new NoSuchElementException("Cannot normalize " + input);
+        }
       }
     };
   }
@@ -319,10 +284,9 @@ public final class CorefAnnotation {
     return new Function<KBPString, KBPString>() {
       @Override
       public KBPString apply(KBPString input) {
-        final Integer id = CASesToIDs.get(input);
-        if (id != null) {
-          // will never be null by construction of CASestoIDs & idToCASes
-          return Iterables.getFirst(idToCASes.get(id), null);
+        final KBPString canonical = CASesToCanonicalCASes.get().get(input);
+        if (canonical != null) {
+          return canonical;
         } else {
           return input;
         }
@@ -341,17 +305,154 @@ public final class CorefAnnotation {
     return new Function<KBPString, Optional<KBPString>>() {
       @Override
       public Optional<KBPString> apply(KBPString input) {
-        final Integer id = CASesToIDs.get(input);
-        if (id != null) {
-          // will never be null by construction of CASestoIDs & idToCASes
-          return Optional.of(Iterables.getFirst(idToCASes.get(id), null));
-        } else {
-          return Optional.absent();
-        }
+        return Optional.fromNullable(CASesToCanonicalCASes.get().get(input));
       }
     };
   }
 
+  /**
+   * Merges a sequence of {@link CorefAnnotation}s into a baseline, as if by repeated calls to
+   * {@link #copyMerging(CorefAnnotation)}, but building the immutable annotation only at the end.
+   *
+   * CASes are interned to dense indices on arrival and clustermate votes are tallied in a
+   * reusable array, so each CAS of a merged annotation costs time proportional to its number of
+   * clustermates in that annotation.
+   */
+  public static final class MergingBuilder {
+
+    private final Symbol docId;
+    // coreffed CASes in the order they were added, with their coref IDs in corefIDs
+    private final Map<KBPString, Integer> CASIndices = Maps.newHashMap();
+    private final List<KBPString> CASes = Lists.newArrayList();
+    private int[] corefIDs = new int[16];
+    private final ImmutableSet.Builder<KBPString> unannotated = ImmutableSet.builder();
+    // one more than the largest coref ID so far. This could overflow, but the chances are tiny and
+    // the stakes are low, so we won't worry about it
+    private int nextCorefID = 1;
+
+    // scratch space for tallying votes for the coref IDs of a CAS's clustermates
+    private final Map<Integer, Integer> corefIDToVoteSlot = Maps.newHashMap();
+    private int[] votes = new int[16];
+    private int[] votedCorefIDs = new int[16];
+
+    private MergingBuilder(final CorefAnnotation baseline) {
+      this.docId = baseline.docId();
+      for (final Map.Entry<KBPString, Integer> entry : baseline.CASesToIDs.entrySet()) {
+        addCoreffed(entry.getKey(), entry.getValue());
+      }
+      unannotated.addAll(baseline.unannotated);
+    }
+
+    public MergingBuilder merge(final CorefAnnotation toMerge) {
+      checkArgument(docId == toMerge.docId());
+      for (final Map.Entry<KBPString, Integer> newCorefRelation : toMerge.CASesToIDs.entrySet()) {
+        final KBPString CAS = newCorefRelation.getKey();
+        if (!CASIndices.containsKey(CAS)) {
+          // this CAS was not previously coreffed, so use the cluster which contains most of its
+          // clustermates in toMerge
+          final Collection<KBPString> clusterMates =
+              toMerge.idToCASes.get(newCorefRelation.getValue());
+          final int newCorefID;
+          final Optional<Integer> dominantCorefID = dominantCorefID(clusterMates);
+          if (dominantCorefID.isPresent()) {
+            newCorefID = dominantCorefID.get();
+          } else {
+            // if we had no clustermates with known coref indices, start a new cluster.
+            // When it comes time to assign coref to our clustermates, if any,
+            // then we know they will have at least one clustermate with a known coref ID
+            newCorefID = nextCorefID;
+          }
+          if (log.isInfoEnabled()) {
+            logAssignment(CAS, clusterMates, newCorefID, dominantCorefID.isPresent());
+          }
+          addCoreffed(CAS, newCorefID);
+        }
+      }
+      unannotated.addAll(toMerge.unannotated);
+      return this;
+    }
+
+    public CorefAnnotation build() {
+      final ImmutableMap.Builder<KBPString, Integer> CASesToIDs = ImmutableMap.builder();
+      for (int i = 0; i < CASes.size(); ++i) {
+        CASesToIDs.put(CASes.get(i), corefIDs[i]);
+      }
+      return CorefAnnotation.create(docId, CASesToIDs.build(),
+          Sets.filter(unannotated.build(), not(in(CASIndices.keySet()))));
+    }
+
+    private void addCoreffed(final KBPString CAS, final int corefID) {
+      final int index = CASes.size();
+      CASIndices.put(CAS, index);
+      CASes.add(CAS);
+      if (index == corefIDs.length) {
+        corefIDs = Arrays.copyOf(corefIDs, 2 * index);
+      }
+      corefIDs[index] = corefID;
+      if (index == 0 || corefID >= nextCorefID) {
+        nextCorefID = corefID + 1;
+      }
+    }
+
+    /**
+     * The coref ID held by the most clustermates, with ties going to the ID seen first, or absent
+     * if no clustermate has been coreffed yet.
+     */
+    private Optional<Integer> dominantCorefID(final Collection<KBPString> clusterMates) {
+      int numVoted = 0;
+      for (final KBPString clusterMate : clusterMates) {
+        final Integer clusterMateIndex = CASIndices.get(clusterMate);
+        if (clusterMateIndex != null) {
+          final int corefID = corefIDs[clusterMateIndex];
+          Integer slot = corefIDToVoteSlot.get(corefID);
+          if (slot == null) {
+            slot = numVoted++;
+            corefIDToVoteSlot.put(corefID, slot);
+            if (slot == votes.length) {
+              votes = Arrays.copyOf(votes, 2 * slot);
+              votedCorefIDs = Arrays.copyOf(votedCorefIDs, 2 * slot);
+            }
+            votes[slot] = 0;
+            votedCorefIDs[slot] = corefID;
+          }
+          ++votes[slot];
+        }
+      }
+      corefIDToVoteSlot.clear();
+
+      if (numVoted == 0) {
+        return Optional.absent();
+      }
+      int best = 0;
+      for (int slot = 1; slot < numVoted; ++slot) {
+        if (votes[slot] > votes[best]) {
+          best = slot;
+        }
+      }
+      return Optional.of(votedCorefIDs[best]);
+    }
+
+    private void logAssignment(final KBPString CAS, final Collection<KBPString> clusterMates,
+        final int newCorefID, final boolean joinedExistingCluster) {
+      final StringBuilder msg = new StringBuilder();
+      msg.append("\t\tFor CAS ").append(CAS).append(" no coref ID was found in baseline. It has ")
+          .append(clusterMates.size()).append(" clustermates\n");
+      for (final KBPString clusterMate : clusterMates) {
+        final Integer clusterMateIndex = CASIndices.get(clusterMate);
+        msg.append("\t\t\t").append(clusterMate).append(" ---> ")
+            .append(clusterMateIndex != null ? corefIDs[clusterMateIndex] : "unknown")
+            .append("\n");
+      }
+      if (joinedExistingCluster) {
+        msg.append("\t\tMapping to dominant cluster mate cluster ").append(newCorefID)
+            .append("\n");
+      } else {
+        msg.append("\t\tMapping to new cluster ").append(newCorefID).append("\n");
+      }
+      log.info(msg.toString());
+    }
+  }
+
   public static final class Builder {
 
     private final Symbol docId;
@@ -360,6 +461,7 @@ public final class CorefAnnotation {
     // to do lookups during building, but we need the immutable version for determinism
     private final ImmutableMap.Builder<KBPString, Integer> CASesToIDs = ImmutableMap.builder();
     private final Map<KBPString, Integer> CASesToIDsMutable = Maps.newHashMap();
+    private final Set<Integer> usedIDs = Sets.newHashSet();
 
     private final ImmutableSet.Builder<KBPString> unannotated = ImmutableSet.builder();
     private final boolean suppressExceptionOnDupes;
@@ -390,6 +492,7 @@ public final class CorefAnnotation {
       if (!CASesToIDsMutable.containsKey(cas)) {
         CASesToIDs.put(cas, corefId);
         CASesToIDsMutable.put(cas, corefId);
+        usedIDs.add(corefId);
       } else {
         if (CASesToIDsMutable.get(cas) != corefId && !suppressExceptionOnDupes) {
           throw new RuntimeException(cas.toString() + " has multiple coref IDs: "
@@ -402,7 +505,7 @@ public final class CorefAnnotation {
     public Builder putInNewRandomCluster(KBPString cas, Random rng) {
       checkNotNull(cas);
       int id = rng.nextInt();
-      while (CASesToIDsMutable.values().contains(id)) {
+      while (usedIDs.contains(id)) {
         id = rng.nextInt();
       }
       corefCAS(cas, id);
@@ -5,6 +5,7 @@ import com.bbn.bue.common.strings.offsets.CharOffset;
 import com.bbn.bue.common.strings.offsets.OffsetRange;
 import com.bbn.bue.common.symbols.Symbol;
 import com.bbn.kbp.events.ontology.EREToKBPEventOntologyMapper;
+import com.bbn.kbp.events2014.diagnostics.Diagnostics;
 import com.bbn.kbp.events2014.io.CrossDocSystemOutputStore;
 import com.bbn.nlp.corpora.ere.EREDocument;
 import com.bbn.nlp.corpora.ere.EREEntity;
@@ -109,24 +110,31 @@ interface PJMatchCriterion {
  * no matches.</li> <li>Collect all document-level events containing the matching response.</li>
  * <li>Collect all document-level events which occur in the same corpus-level event as one of these
  * responses</li> </ul>
+ *
+ * The details of each step of matching are recorded to the {@value #QUERY_MATCHING_CHANNEL}
+ * diagnostics channel, with the query ID as the subject.
  */
 class EREBasedCorpusQueryExecutor implements CorpusQueryExecutor2016 {
 
   private static final Logger log = LoggerFactory.getLogger(EREBasedCorpusQueryExecutor.class);
 
+  static final String QUERY_MATCHING_CHANNEL = "queryMatching";
+
   private final ImmutableList<AlignmentConfiguration> alignmentConfigurations;
   private final LoadingCache<Symbol, EREDocument> ereDocCache;
   private final EREToKBPEventOntologyMapper ontologyMapper;
   private final boolean requireBestCASType;
+  private final Diagnostics.Channel diagnostics;
 
   EREBasedCorpusQueryExecutor(final Iterable<AlignmentConfiguration> alignmentConfigurations,
       final LoadingCache<Symbol, EREDocument> ereDocCache,
       final EREToKBPEventOntologyMapper ontologyMapper,
-      final boolean requireBestCASType) {
+      final boolean requireBestCASType, final Diagnostics diagnostics) {
     this.ereDocCache = checkNotNull(ereDocCache);
     this.ontologyMapper = checkNotNull(ontologyMapper);
     this.alignmentConfigurations = ImmutableList.copyOf(alignmentConfigurations);
     this.requireBestCASType = requireBestCASType;
+    this.diagnostics = diagnostics.channel(QUERY_MATCHING_CHANNEL);
   }
 
   /**
@@ -137,6 +145,19 @@ class EREBasedCorpusQueryExecutor implements CorpusQueryExecutor2016 {
       final ERELoader ereLoader, final EREToKBPEventOntologyMapper ontologyMapper,
       int slack, double minNominalCASOverlap,
       boolean requireBestCASType) {
+    return createDefaultFor2016(docIdToEREMap, ereLoader, ontologyMapper, slack,
+        minNominalCASOverlap, requireBestCASType, Diagnostics.disabled());
+  }
+
+  /**
+   * The default query matching strategy for the 2016 evaluation, recording the details of
+   * matching to {@code diagnostics}.
+   */
+  public static EREBasedCorpusQueryExecutor createDefaultFor2016(
+      final Map<Symbol, File> docIdToEREMap,
+      final ERELoader ereLoader, final EREToKBPEventOntologyMapper ontologyMapper,
+      int slack, double minNominalCASOverlap,
+      boolean requireBestCASType, final Diagnostics diagnostics) {
     final LoadingCache<Symbol, EREDocument> ereDocCache = CacheBuilder.newBuilder()
         .maximumSize(50)
         .build(new CacheLoader<Symbol, EREDocument>() {
@@ -162,7 +183,7 @@ class EREBasedCorpusQueryExecutor implements CorpusQueryExecutor2016 {
             commonPJMatchStrategy));
 
     return new EREBasedCorpusQueryExecutor(alignmentConfigs, ereDocCache, ontologyMapper,
-        requireBestCASType);
+        requireBestCASType, diagnostics);
   }
 
   @Value.Immutable
@@ -181,33 +202,30 @@ class EREBasedCorpusQueryExecutor implements CorpusQueryExecutor2016 {
   public ImmutableSet<DocEventFrameReference> queryEventFrames(
       CrossDocSystemOutputStore systemOutput,
       final CorpusQuery2016 query) throws IOException {
-    final StringBuilder msg = new StringBuilder();
     final CorpusEventLinking corpusEventLinking = systemOutput.readCorpusEventFrames();
 
-    msg.append("Applying query ").append(query).append(" to ").append(systemOutput.systemID())
-        .append("\n");
+    diagnostics.record(query.id(), "Applying query {} to {}", query, systemOutput.systemID());
 
     // first we find which document-level event frames match one or more of the query entry points
     final ImmutableSet<DocEventFrameReference> docEventsMatchingEntryPoints =
-        documentEventsMatchingAnyQueryEntryPoint(query, systemOutput, msg);
+        documentEventsMatchingAnyQueryEntryPoint(query, systemOutput);
 
     // next we find which corpus-level events contain those document-level event frames
     final ImmutableSet<CorpusEventFrame> corpusEventsMatchingQuery =
-        corpusEventsMatchingQuery(docEventsMatchingEntryPoints, corpusEventLinking, msg);
+        corpusEventsMatchingQuery(query, docEventsMatchingEntryPoints, corpusEventLinking);
 
     // then we return to the document level by taking all document-level events
     // in the corpus-level events we just found. These document-level events are those
     // which are "coreferent" across the corpus with the ones matched by query entry points
     final ImmutableSet<DocEventFrameReference> docEventsInMatchedCorpusEvents =
-        documentEventsInCorpusEvents(corpusEventsMatchingQuery, msg);
+        documentEventsInCorpusEvents(query, corpusEventsMatchingQuery);
 
-    log.info(msg.toString());
     return docEventsInMatchedCorpusEvents;
   }
 
-  private ImmutableSet<CorpusEventFrame> corpusEventsMatchingQuery(
+  private ImmutableSet<CorpusEventFrame> corpusEventsMatchingQuery(final CorpusQuery2016 query,
       final ImmutableSet<DocEventFrameReference> docEventsMatchingEntryPoints,
-      final CorpusEventLinking corpusEventLinking, final StringBuilder msg) {
+      final CorpusEventLinking corpusEventLinking) {
     final ImmutableSet.Builder<CorpusEventFrame> corpusEventsMatchingQueryB =
         ImmutableSet.builder();
     for (final DocEventFrameReference docEventMatchingEntryPoint : docEventsMatchingEntryPoints) {
@@ -216,14 +234,14 @@ class EREBasedCorpusQueryExecutor implements CorpusQueryExecutor2016 {
     }
     final ImmutableSet<CorpusEventFrame> corpusEventsMatchingQuery =
         corpusEventsMatchingQueryB.build();
-    msg.append(corpusEventsMatchingQuery.size())
-        .append(" corpus events found matching query\n");
+    diagnostics.record(query.id(), "{} corpus events found matching query",
+        corpusEventsMatchingQuery.size());
     return corpusEventsMatchingQuery;
   }
 
   private ImmutableSet<DocEventFrameReference> documentEventsMatchingAnyQueryEntryPoint(
-      final CorpusQuery2016 query, final CrossDocSystemOutputStore systemOutput,
-      final StringBuilder msg) throws IOException {
+      final CorpusQuery2016 query, final CrossDocSystemOutputStore systemOutput)
+      throws IOException {
     final List<Response> matchingResponses = new ArrayList<>();
 
     final ImmutableSet.Builder<DocEventFrameReference> docEventsMatchingEntryPointsB =
@@ -231,8 +249,8 @@ class EREBasedCorpusQueryExecutor implements CorpusQueryExecutor2016 {
     for (final CorpusQueryEntryPoint queryEntryPoint : query.entryPoints()) {
       if (systemOutput.docIDs().contains(queryEntryPoint.docID())) {
         final DocumentSystemOutput2015 docSystemOutput = systemOutput.read(queryEntryPoint.docID());
-        gatherResponsesMatchingEntryPoints(queryEntryPoint, docSystemOutput, matchingResponses,
-            msg);
+        gatherResponsesMatchingEntryPoints(query, queryEntryPoint, docSystemOutput,
+            matchingResponses);
         gatherDocumentEventsForResponses(matchingResponses, docSystemOutput,
             docEventsMatchingEntryPointsB);
       } else {
@@ -243,13 +261,14 @@ class EREBasedCorpusQueryExecutor implements CorpusQueryExecutor2016 {
 
     final ImmutableSet<DocEventFrameReference> docEventsMatchingEntryPoints =
         docEventsMatchingEntryPointsB.build();
-    msg.append(matchingResponses.size()).append(" responses match entry points\n");
-    msg.append(docEventsMatchingEntryPoints.size()).append(" document events match entry points\n");
+    diagnostics.record(query.id(), "{} responses match entry points", matchingResponses.size());
+    diagnostics.record(query.id(), "{} document events match entry points",
+        docEventsMatchingEntryPoints.size());
     return docEventsMatchingEntryPoints;
   }
 
   private ImmutableSet<DocEventFrameReference> documentEventsInCorpusEvents(
-      final ImmutableSet<CorpusEventFrame> corpusEventsMatchingQuery, final StringBuilder msg) {
+      final CorpusQuery2016 query, final ImmutableSet<CorpusEventFrame> corpusEventsMatchingQuery) {
     final ImmutableSet.Builder<DocEventFrameReference> docEventsInMatchedCorpusEventsB =
         ImmutableSet.builder();
     for (final CorpusEventFrame corpusEventFrame : corpusEventsMatchingQuery) {
@@ -258,8 +277,8 @@ class EREBasedCorpusQueryExecutor implements CorpusQueryExecutor2016 {
     final ImmutableSet<DocEventFrameReference> docEventsInMatchedCorpusEvents =
         docEventsInMatchedCorpusEventsB.build();
 
-    msg.append(docEventsInMatchedCorpusEvents.size())
-        .append(" document events found matching query\n");
+    diagnostics.record(query.id(), "{} document events found matching query",
+        docEventsInMatchedCorpusEvents.size());
     return docEventsInMatchedCorpusEvents;
   }
 
@@ -267,9 +286,9 @@ class EREBasedCorpusQueryExecutor implements CorpusQueryExecutor2016 {
    * Only tries lower ranked alignment strategies if no matches have been found yet, hence the array
    * of matchingResponses.
    */
-  private void gatherResponsesMatchingEntryPoints(final CorpusQueryEntryPoint queryEntryPoint,
-      final DocumentSystemOutput2015 docSystemOutput, final List<Response> matchingResponses,
-      final StringBuilder msg) {
+  private void gatherResponsesMatchingEntryPoints(final CorpusQuery2016 query,
+      final CorpusQueryEntryPoint queryEntryPoint,
+      final DocumentSystemOutput2015 docSystemOutput, final List<Response> matchingResponses) {
     final EREEvent ereEventForEntryPoint =
         ereEventForEntryPoint(queryEntryPoint);
     final ImmutableSet<Symbol> entryPointEventTypes = gatherTypes(ereEventForEntryPoint);
@@ -279,8 +298,8 @@ class EREBasedCorpusQueryExecutor implements CorpusQueryExecutor2016 {
         FluentIterable.from(docSystemOutput.arguments().responses())
             .filter(compose(in(entryPointEventTypes), type()))
             .filter(compose(equalTo(mappedRole), role())).toList();
-    msg.append(argumentsMatchingInTypeAndEventType.size())
-        .append(" arguments matched in type and role\n");
+    diagnostics.record(query.id(), "{} arguments matched in type and role",
+        argumentsMatchingInTypeAndEventType.size());
 
     final ImmutableSet<QueryCAS> validCASOffsets = gatherValidCASOffsets(queryEntryPoint);
     checkState(!validCASOffsets.isEmpty());
@@ -288,12 +307,12 @@ class EREBasedCorpusQueryExecutor implements CorpusQueryExecutor2016 {
         gatherEventPJs(ereEventForEntryPoint);
     checkState(!eventPJs.isEmpty());
 
-    msg.append("Query valid CASes are ").append(validCASOffsets).append("\n");
+    diagnostics.record(query.id(), "Query valid CASes are {}", validCASOffsets);
     // apply a series of more aggressive alignment rules until we find something that matches
     for (AlignmentConfiguration alignConfig : alignmentConfigurations) {
       if (matchingResponses.isEmpty()) {
-        addMatchingResponses(validCASOffsets, eventPJs, matchingResponses, alignConfig,
-            argumentsMatchingInTypeAndEventType, msg);
+        addMatchingResponses(query, validCASOffsets, eventPJs, matchingResponses, alignConfig,
+            argumentsMatchingInTypeAndEventType);
         if(!matchingResponses.isEmpty()) {
           break;
         }
@@ -422,32 +441,33 @@ class EREBasedCorpusQueryExecutor implements CorpusQueryExecutor2016 {
     }
   }
 
-  private void addMatchingResponses(final Set<QueryCAS> queryValidCASOffsets,
+  private void addMatchingResponses(final CorpusQuery2016 query,
+      final Set<QueryCAS> queryValidCASOffsets,
       final Set<OffsetRange<CharOffset>> queryPJOffsets,
       final List<Response> matchingResponses,
       final AlignmentConfiguration alignConfig,
-      final ImmutableList<Response> argumentsMatchingInTypeAndEventType, final StringBuilder msg) {
+      final ImmutableList<Response> argumentsMatchingInTypeAndEventType) {
     for (final Response response : filter(argumentsMatchingInTypeAndEventType,
         not(in(matchingResponses)))) {
       final boolean casMatches = alignConfig.casMatchCriterion()
           .matches(response.canonicalArgument(), queryValidCASOffsets);
       if (casMatches) {
-        msg.append("\t").append(alignConfig.casMatchCriterion().humanFriendlyName()).append(" to ")
-            .append(response.canonicalArgument()).append("\n");
+        diagnostics.record(query.id(), "{} to {}",
+            alignConfig.casMatchCriterion().humanFriendlyName(), response.canonicalArgument());
         final boolean pjMatches = alignConfig.pjMatchCriterion().matches(
             response.predicateJustifications(), queryPJOffsets);
         if (pjMatches) {
-          msg.append("\t\tResponse ").append(response).append(" accepted as match\n");
+          diagnostics.record(query.id(), "Response {} accepted as match", response);
           matchingResponses.add(response);
         } else {
-          msg.append("\t\tResponse rejected due to insufficient PJ overlap. Response PJs:")
-              .append(response.predicateJustifications()).append("; query PJs: ")
-              .append(queryPJOffsets).append("\n");
+          diagnostics.record(query.id(),
+              "Response {} rejected due to insufficient PJ overlap. Response PJs: {}; "
+                  + "query PJs: {}",
+              response, response.predicateJustifications(), queryPJOffsets);
         }
       } else {
-        msg.append("\t").append(alignConfig.casMatchCriterion().humanFriendlyName())
-            .append(" failed on ")
-            .append(response.canonicalArgument()).append("\n");
+        diagnostics.record(query.id(), "{} failed on {}",
+            alignConfig.casMatchCriterion().humanFriendlyName(), response.canonicalArgument());
       }
     }
   }
@@ -0,0 +1,164 @@
+package com.bbn.kbp.events2014;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Shares equal {@link CharOffsetSpan}s, {@link KBPString}s, and justification sets among the
+ * {@link Response}s read for a single document.  System outputs and answer keys repeat the same
+ * CAS and justifications across many responses, so interning them while reading keeps only one
+ * copy of each in memory.
+ *
+ * Justification sets are interned by their spans packed into a sorted {@code long[]} (see {@link
+ * #pack(int, int)}) and are always built in their natural (sorted) order, so two sets with the same
+ * spans are the same object no matter what order their spans were listed in.  Since {@link
+ * Response} keeps {@link ImmutableSet}s as they are, this also lets it skip sorting them when
+ * hashing.
+ *
+ * Spans created by the pool have no debug string.  Not thread-safe; use one pool per document
+ * being read.
+ */
+public final class DocumentInternPool {
+
+  private final Map<Long, CharOffsetSpan> spans = Maps.newHashMap();
+  private final Map<KBPString, KBPString> kbpStrings = Maps.newHashMap();
+  private final Map<String, String> strings = Maps.newHashMap();
+  private final Map<PackedSpans, ImmutableSet<CharOffsetSpan>> spanSets = Maps.newHashMap();
+
+  private DocumentInternPool() {
+  }
+
+  public static DocumentInternPool create() {
+    return new DocumentInternPool();
+  }
+
+  /**
+   * Packs a span's inclusive offsets into a single {@code long}.  Since offsets are non-negative,
+   * packed spans sort in the same order as {@link CharOffsetSpan}s.
+   */
+  public static long pack(final int startInclusive, final int endInclusive) {
+    checkArgument(startInclusive >= 0 && endInclusive >= startInclusive,
+        "Invalid character offset span %s-%s", startInclusive, endInclusive);
+    return ((long) startInclusive << 32) | endInclusive;
+  }
+
+  public static int packedStart(final long packedSpan) {
+    return (int) (packedSpan >>> 32);
+  }
+
+  public static int packedEnd(final long packedSpan) {
+    return (int) packedSpan;
+  }
+
+  public CharOffsetSpan span(final int startInclusive, final int endInclusive) {
+    return span(pack(startInclusive, endInclusive));
+  }
+
+  private CharOffsetSpan span(final long packedSpan) {
+    CharOffsetSpan ret = spans.get(packedSpan);
+    if (ret == null) {
+      ret = CharOffsetSpan.fromOffsetsOnly(packedStart(packedSpan), packedEnd(packedSpan));
+      spans.put(packedSpan, ret);
+    }
+    return ret;
+  }
+
+  /**
+   * Equivalent to {@link KBPString#from(String, CharOffsetSpan)} except that the result and its
+   * string are shared with any equal ones previously requested from this pool.
+   */
+  public KBPString kbpString(final String string, final CharOffsetSpan span) {
+    final KBPString candidate = KBPString.from(string, intern(span));
+    final KBPString existing = kbpStrings.get(candidate);
+    if (existing != null) {
+      return existing;
+    }
+    final KBPString ret =
+        KBPString.from(internString(candidate.string()), candidate.charOffsetSpan());
+    kbpStrings.put(ret, ret);
+    return ret;
+  }
+
+  /**
+   * Returns the pool's copy of a span equal to {@code span}.
+   */
+  public CharOffsetSpan intern(final CharOffsetSpan span) {
+    return span(span.startInclusive(), span.endInclusive());
+  }
+
+  /**
+   * Returns the set of the spans packed into the first {@code numSpans} elements of {@code
+   * packedSpans}, in sorted order. Duplicates are ignored. {@code packedSpans} may be reordered.
+   */
+  public ImmutableSet<CharOffsetSpan> spanSet(final long[] packedSpans, final int numSpans) {
+    Arrays.sort(packedSpans, 0, numSpans);
+    int numUnique = 0;
+    for (int i = 0; i < numSpans; ++i) {
+      if (numUnique == 0 || packedSpans[numUnique - 1] != packedSpans[i]) {
+        packedSpans[numUnique++] = packedSpans[i];
+      }
+    }
+    final PackedSpans key = new PackedSpans(Arrays.copyOf(packedSpans, numUnique));
+    ImmutableSet<CharOffsetSpan> ret = spanSets.get(key);
+    if (ret == null) {
+      final ImmutableSet.Builder<CharOffsetSpan> builder = ImmutableSet.builder();
+      for (final long packedSpan : key.packedSpans) {
+        builder.add(span(packedSpan));
+      }
+      ret = builder.build();
+      spanSets.put(key, ret);
+    }
+    return ret;
+  }
+
+  /**
+   * Returns the pool's copy of a set equal to {@code spans}, in sorted order.
+   */
+  public ImmutableSet<CharOffsetSpan> spanSet(final Iterable<CharOffsetSpan> spans) {
+    long[] packed = new long[8];
+    int numSpans = 0;
+    for (final CharOffsetSpan span : spans) {
+      if (numSpans == packed.length) {
+        packed = Arrays.copyOf(packed, 2 * packed.length);
+      }
+      packed[numSpans++] = pack(span.startInclusive(), span.endInclusive());
+    }
+    return spanSet(packed, numSpans);
+  }
+
+  private String internString(final String s) {
+    final String existing = strings.get(s);
+    if (existing != null) {
+      return existing;
+    }
+    strings.put(s, s);
+    return s;
+  }
+
+  private static final class PackedSpans {
+
+    private final long[] packedSpans;
+    private final int hashCode;
+
+    private PackedSpans(final long[] packedSpans) {
+      this.packedSpans = packedSpans;
+      this.hashCode = Arrays.hashCode(packedSpans);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      return obj instanceof PackedSpans
+          && Arrays.equals(packedSpans, ((PackedSpans) obj).packedSpans);
+    }
+  }
+}
@@ -2,6 +2,7 @@ package com.bbn.kbp.events2014;
 
 import com.bbn.bue.common.scoring.Scored;
 import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.kbp.events2014.io.SubmissionArchive;
 import com.bbn.kbp.events2014.io.SystemOutputStore;
 import com.bbn.kbp.events2014.io.SystemOutputStore2015;
 
@@ -20,9 +21,17 @@ public final class KBPEA2015OutputLayout implements SystemOutputLayout {
 
   @Override
   public SystemOutputStore open(final File path) throws IOException {
+    if (SubmissionArchive.isArchive(path)) {
+      return open(SubmissionArchive.open(path));
+    }
     return SystemOutputStore2015.open(path);
   }
 
+  @Override
+  public SystemOutputStore open(final SubmissionArchive archive) throws IOException {
+    return SystemOutputStore2015.open(archive);
+  }
+
   @Override
   public SystemOutputStore openOrCreate(final File path) throws IOException {
     return SystemOutputStore2015.openOrCreate(path);
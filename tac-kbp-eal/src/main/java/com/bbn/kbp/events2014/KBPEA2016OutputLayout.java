@@ -1,6 +1,7 @@
 package com.bbn.kbp.events2014;
 
 import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.kbp.events2014.io.SubmissionArchive;
 import com.bbn.kbp.events2014.io.SystemOutputStore2016;
 
 import java.io.File;
@@ -23,9 +24,17 @@ public final class KBPEA2016OutputLayout implements SystemOutputLayout {
 
   @Override
   public SystemOutputStore2016 open(final File path) throws IOException {
+    if (SubmissionArchive.isArchive(path)) {
+      return open(SubmissionArchive.open(path));
+    }
     return SystemOutputStore2016.open(path);
   }
 
+  @Override
+  public SystemOutputStore2016 open(final SubmissionArchive archive) throws IOException {
+    return SystemOutputStore2016.open(archive);
+  }
+
   @Override
   public SystemOutputStore2016 openOrCreate(final File path) throws IOException {
     return SystemOutputStore2016.openOrCreate(path);
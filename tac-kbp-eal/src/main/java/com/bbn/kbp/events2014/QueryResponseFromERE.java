@@ -6,6 +6,7 @@ import com.bbn.bue.common.files.FileUtils;
 import com.bbn.bue.common.parameters.Parameters;
 import com.bbn.bue.common.symbols.Symbol;
 import com.bbn.kbp.events.ontology.EREToKBPEventOntologyMapper;
+import com.bbn.kbp.events2014.diagnostics.Diagnostics;
 import com.bbn.kbp.events2014.io.CrossDocSystemOutputStore;
 import com.bbn.kbp.events2014.io.DefaultCorpusQueryLoader;
 import com.bbn.kbp.events2014.io.SingleFileQueryStoreWriter;
@@ -90,34 +91,39 @@ public final class QueryResponseFromERE {
     }
     final File outputFile = params.getCreatableFile("com.bbn.tac.eal.outputFile");
 
-    final CorpusQueryExecutor2016 queryExecutor = queryExecutorFromParamsFor2016(params);
-
+    final Diagnostics diagnostics = Diagnostics.fromParameters(params);
     final ImmutableMultimap.Builder<QueryResponse2016, Symbol> queryResponseToFindingSystemB =
         ImmutableMultimap.builder();
-
-    for (final Map.Entry<String, CrossDocSystemOutputStore> storeEntry : outputStores.entrySet()) {
-      final Symbol systemName = Symbol.from(storeEntry.getKey());
-      final CrossDocSystemOutputStore store = storeEntry.getValue();
-
-      for (final CorpusQuery2016 query : queries.queries()) {
-        final ImmutableSet<DocEventFrameReference> systemMatchesForQuery =
-            queryExecutor.queryEventFrames(store, query);
-        // we group matches by doc ID to minimize the number of times
-        // we need to read the system output when generating justifications
-        final ImmutableMultimap<Symbol, DocEventFrameReference> matchesByDocID =
-            FluentIterable.from(systemMatchesForQuery)
-                .index(DocEventFrameReferenceFunctions.docID());
-
-        // we potentially limit the number of responses returned for each system/query combination
-        final Iterable<Map.Entry<Symbol, Collection<DocEventFrameReference>>> matchesByDocument =
-            limit(ShufflingIterable.from(matchesByDocID.asMap().entrySet(), rng),
-                maxResponsesPerQueryPerSystem);
-        final ImmutableMultimap<Symbol, QueryResponse2016> queryResponsesByDoc =
-            response2016CollapsedJustifications(matchesByDocument, store, query);
-        for (final QueryResponse2016 response : ImmutableSet.copyOf(queryResponsesByDoc.values())) {
-          queryResponseToFindingSystemB.put(response, systemName);
+    try {
+      final CorpusQueryExecutor2016 queryExecutor =
+          queryExecutorFromParamsFor2016(params, diagnostics);
+
+      for (final Map.Entry<String, CrossDocSystemOutputStore> storeEntry : outputStores.entrySet()) {
+        final Symbol systemName = Symbol.from(storeEntry.getKey());
+        final CrossDocSystemOutputStore store = storeEntry.getValue();
+
+        for (final CorpusQuery2016 query : queries.queries()) {
+          final ImmutableSet<DocEventFrameReference> systemMatchesForQuery =
+              queryExecutor.queryEventFrames(store, query);
+          // we group matches by doc ID to minimize the number of times
+          // we need to read the system output when generating justifications
+          final ImmutableMultimap<Symbol, DocEventFrameReference> matchesByDocID =
+              FluentIterable.from(systemMatchesForQuery)
+                  .index(DocEventFrameReferenceFunctions.docID());
+
+          // we potentially limit the number of responses returned for each system/query combination
+          final Iterable<Map.Entry<Symbol, Collection<DocEventFrameReference>>> matchesByDocument =
+              limit(ShufflingIterable.from(matchesByDocID.asMap().entrySet(), rng),
+                  maxResponsesPerQueryPerSystem);
+          final ImmutableMultimap<Symbol, QueryResponse2016> queryResponsesByDoc =
+              response2016CollapsedJustifications(matchesByDocument, store, query);
+          for (final QueryResponse2016 response : ImmutableSet.copyOf(queryResponsesByDoc.values())) {
+            queryResponseToFindingSystemB.put(response, systemName);
+          }
         }
       }
+    } finally {
+      diagnostics.close();
     }
 
     final SingleFileQueryStoreWriter queryStoreWriter =
@@ -142,6 +148,15 @@ public final class QueryResponseFromERE {
 
   public static EREBasedCorpusQueryExecutor queryExecutorFromParamsFor2016(final Parameters params)
       throws IOException {
+    return queryExecutorFromParamsFor2016(params, Diagnostics.disabled());
+  }
+
+  /**
+   * As {@link #queryExecutorFromParamsFor2016(Parameters)}, but recording the details of query
+   * matching to {@code diagnostics}.
+   */
+  public static EREBasedCorpusQueryExecutor queryExecutorFromParamsFor2016(final Parameters params,
+      final Diagnostics diagnostics) throws IOException {
     return EREBasedCorpusQueryExecutor.createDefaultFor2016(
         FileUtils.loadSymbolToFileMap(params.getExistingFile("com.bbn.tac.eal.eremap")),
         ERELoader.builder().build(),
@@ -151,7 +166,8 @@ public final class QueryResponseFromERE {
         // the minimum fraction of overlap requires to match nominal CASes against each other
         params.getPositiveDouble("com.bbn.tac.eal.minNominalCASOverlap"),
         // can we match an entry point against a nominal if a name is available?
-        params.getBoolean("com.bbn.tac.eal.matchBestCASTypesOnly"));
+        params.getBoolean("com.bbn.tac.eal.matchBestCASTypesOnly"),
+        diagnostics);
   }
 
   /**
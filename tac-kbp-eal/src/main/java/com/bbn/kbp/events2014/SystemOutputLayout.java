@@ -1,6 +1,7 @@
 package com.bbn.kbp.events2014;
 
 import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.kbp.events2014.io.SubmissionArchive;
 import com.bbn.kbp.events2014.io.SystemOutputStore;
 
 import java.io.File;
@@ -11,8 +12,18 @@ public interface SystemOutputLayout {
 
   DocumentSystemOutput emptyOutput(Symbol docID);
 
+  /**
+   * Opens the store at {@code path}, which may be either a directory or a submission archive (see
+   * {@link SubmissionArchive#isArchive(File)}). Stores opened from archives are read-only.
+   */
   SystemOutputStore open(File path) throws IOException;
 
+  /**
+   * Opens a read-only store from the contents of {@code archive}. Closing the store closes the
+   * archive.
+   */
+  SystemOutputStore open(SubmissionArchive archive) throws IOException;
+
   SystemOutputStore openOrCreate(File path) throws IOException;
 
   // this is necessary because this was orignally an enum and we'd like
@@ -153,13 +153,12 @@ abstract class _Response {
     // observe that shifting a second PJ element to being the first AAJ
     // element results in the same hash
     hasher.putInt(PJ_CODE);
-    for (final CharOffsetSpan pj : Ordering.natural().sortedCopy(predicateJustifications())) {
+    for (final CharOffsetSpan pj : inCanonicalOrder(predicateJustifications())) {
       hasher.putInt(pj.startInclusive()).putInt(pj.endInclusive());
     }
 
     hasher.putInt(AAJ_CODE);
-    for (final CharOffsetSpan aaj : Ordering.natural().sortedCopy(
-        additionalArgumentJustifications())) {
+    for (final CharOffsetSpan aaj : inCanonicalOrder(additionalArgumentJustifications())) {
       hasher.putInt(aaj.startInclusive()).putInt(aaj.endInclusive());
     }
 
@@ -168,6 +167,17 @@ abstract class _Response {
     return hasher;
   }
 
+  /**
+   * Returns the justifications in sorted order.  Sets read through a {@link DocumentInternPool}
+   * are already sorted, so these are returned as they are rather than copied.
+   */
+  private static Iterable<CharOffsetSpan> inCanonicalOrder(final Set<CharOffsetSpan> spans) {
+    if (Ordering.<CharOffsetSpan>natural().isStrictlyOrdered(spans)) {
+      return spans;
+    }
+    return Ordering.<CharOffsetSpan>natural().sortedCopy(spans);
+  }
+
   @Override
   public final int hashCode() {
     return Objects.hashCode(docID().toString(), type().toString(), role().toString(),
@@ -215,8 +225,8 @@ abstract class _Response {
       return ComparisonChain.start()
           .compare(left.docID().toString(), right.docID().toString())
           .compare(
-              Ordering.natural().sortedCopy(left.predicateJustifications()),
-              Ordering.natural().sortedCopy(right.predicateJustifications()),
+              inCanonicalOrder(left.predicateJustifications()),
+              inCanonicalOrder(right.predicateJustifications()),
               Ordering.<CharOffsetSpan>natural().lexicographical())
           .compare(left.baseFiller(), right.baseFiller())
           .compare(left.canonicalArgument().charOffsetSpan(),
@@ -5,9 +5,11 @@ import com.bbn.bue.common.symbols.Symbol;
 import com.bbn.kbp.events2014.DocumentSystemOutput;
 import com.bbn.kbp.events2014.SystemOutputLayout;
 import com.bbn.kbp.events2014.io.CrossDocSystemOutputStore;
+import com.bbn.kbp.events2014.io.StoreTransformRunner;
 import com.bbn.kbp.events2014.io.SystemOutputStore;
 import com.bbn.kbp.events2014.transformers.QuoteFilter;
 
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.common.io.Files;
@@ -34,7 +36,9 @@ public final class ApplyQuoteFilter {
         "\toutputStore: location to write filtered output store. Must be non-existent or an empty directory.\n"
         +
         "\tquoteFilter: file storing serialized quote filter\n"
-        +"\toutputLayout: input and output layout\n");
+        +"\toutputLayout: input and output layout\n"
+        +"\tnumThreads: (optional) number of threads used to filter each store\n"
+        +"\tresume: (optional) skip documents already in the output store. Defaults to false\n");
     System.exit(1);
   }
 
@@ -56,26 +60,37 @@ public final class ApplyQuoteFilter {
     log.info(params.dump());
 
     final QuoteFilter quoteFilter = loadQuoteFilter(params);
+    final int numThreads = params.getOptionalPositiveInteger("numThreads")
+        .or(Runtime.getRuntime().availableProcessors());
+    final boolean resume = params.getOptionalBoolean("resume").or(false);
     final Map<SystemOutputStore, SystemOutputStore> inputStoreToOutputStore = getInputOutput(params);
 
     for (final Map.Entry<SystemOutputStore, SystemOutputStore> inputOutputPair : inputStoreToOutputStore.entrySet()) {
-      filterStore(inputOutputPair.getKey(), inputOutputPair.getValue(), quoteFilter);
+      filterStore(inputOutputPair.getKey(), inputOutputPair.getValue(), quoteFilter, numThreads,
+          resume);
     }
   }
 
   private static void filterStore(SystemOutputStore source,
-      SystemOutputStore dest, QuoteFilter quoteFilter) throws IOException {
+      SystemOutputStore dest, final QuoteFilter quoteFilter, int numThreads, boolean resume)
+      throws IOException {
     log.info("Filtering {} to {}", source, dest);
 
     log.info("Source store has {} documents", source.docIDs().size());
-    for (final Symbol docID : source.docIDs()) {
-      final DocumentSystemOutput original = source.read(docID);
-      final DocumentSystemOutput filtered = quoteFilter.transform(original);
-      log.info("For document {}, filtered out {} responses from quotes",
-          docID, original.arguments().size() - filtered.arguments().size());
-
-      dest.write(filtered);
-    }
+    StoreTransformRunner.builder(StoreTransformRunner.sourceFor(source),
+        new StoreTransformRunner.DocumentTransform<DocumentSystemOutput, DocumentSystemOutput>() {
+          @Override
+          public Optional<DocumentSystemOutput> transform(final Symbol docID,
+              final DocumentSystemOutput original) {
+            final DocumentSystemOutput filtered = quoteFilter.transform(original);
+            log.info("For document {}, filtered out {} responses from quotes",
+                docID, original.arguments().size() - filtered.arguments().size());
+            return Optional.of(filtered);
+          }
+        }, StoreTransformRunner.sinkFor(dest))
+        .numThreads(numThreads)
+        .resume(resume)
+        .build().run();
 
     // pass along unmodified ay corpus event frames.
     if(dest instanceof CrossDocSystemOutputStore && source instanceof CrossDocSystemOutputStore) {
@@ -28,7 +28,9 @@ public final class BuildQuoteFilter {
     log.error("usage: BuildQuoteFilter paramFile\n" +
         "parameters are:\n" +
         "\tdocIdToFileMap: tab-separated map from document IDs to original text files\n" +
-        "\tquoteFilter: file storing serialized quote filter");
+        "\tquoteFilter: file storing serialized quote filter\n" +
+        "\tnumThreads: (optional) number of documents to scan in parallel. Defaults to the number of processors\n" +
+        "\tbinaryQuoteFilter: (optional) if true, write the faster-loading binary format. Defaults to false");
     System.exit(1);
   }
 
@@ -48,8 +50,14 @@ public final class BuildQuoteFilter {
     log.info("Building quote filter from {} documents in {}", docIdToFileMap.size(),
         docIdToFileMapFile);
 
-    final QuoteFilter quoteFilter = QuoteFilter.createFromOriginalText(docIdToFileMap);
+    final int numThreads = params.getOptionalPositiveInteger("numThreads")
+        .or(Runtime.getRuntime().availableProcessors());
+    final QuoteFilter quoteFilter = QuoteFilter.createFromOriginalText(docIdToFileMap, numThreads);
     log.info("Writing quote filter to {}", filterFile);
-    quoteFilter.saveTo(Files.asByteSink(filterFile));
+    if (params.getOptionalBoolean("binaryQuoteFilter").or(false)) {
+      quoteFilter.saveBinaryTo(Files.asByteSink(filterFile));
+    } else {
+      quoteFilter.saveTo(Files.asByteSink(filterFile));
+    }
   }
 }
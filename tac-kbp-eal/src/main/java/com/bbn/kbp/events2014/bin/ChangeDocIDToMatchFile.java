@@ -7,8 +7,10 @@ import com.bbn.kbp.events2014.CorefAnnotation;
 import com.bbn.kbp.events2014.Response;
 import com.bbn.kbp.events2014.io.AnnotationStore;
 import com.bbn.kbp.events2014.io.AssessmentSpecFormats;
+import com.bbn.kbp.events2014.io.StoreTransformRunner;
 
 import com.google.common.base.Function;
+import com.google.common.base.Optional;
 import com.google.common.collect.Iterables;
 
 import org.slf4j.Logger;
@@ -45,10 +47,14 @@ public final class ChangeDocIDToMatchFile {
     final AnnotationStore outStore = AssessmentSpecFormats.createAnnotationStore(new File(argv[1]),
         AssessmentSpecFormats.Format.KBP2015);
 
-    for (final Symbol docID : inStore.docIDs()) {
-      AnswerKey answerKey = convertAnswerKeyDocID(docID, inStore.read(docID));
-      outStore.write(answerKey);
-    }
+    StoreTransformRunner.builder(StoreTransformRunner.sourceFor(inStore),
+        new StoreTransformRunner.DocumentTransform<AnswerKey, AnswerKey>() {
+          @Override
+          public Optional<AnswerKey> transform(final Symbol docID, final AnswerKey answerKey) {
+            return Optional.of(convertAnswerKeyDocID(docID, answerKey));
+          }
+        }, StoreTransformRunner.sinkFor(outStore))
+        .build().run();
 
     log.info("Converted {} documents", inStore.docIDs().size());
   }
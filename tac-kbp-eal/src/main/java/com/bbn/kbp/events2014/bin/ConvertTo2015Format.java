@@ -1,8 +1,9 @@
 package com.bbn.kbp.events2014.bin;
 
-import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.kbp.events2014.AnswerKey;
 import com.bbn.kbp.events2014.io.AnnotationStore;
 import com.bbn.kbp.events2014.io.AssessmentSpecFormats;
+import com.bbn.kbp.events2014.io.StoreTransformRunner;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,9 +39,9 @@ public final class ConvertTo2015Format {
     final AnnotationStore outStore = AssessmentSpecFormats.createAnnotationStore(new File(argv[1]),
         AssessmentSpecFormats.Format.KBP2015);
 
-    for (final Symbol docID : inStore.docIDs()) {
-      outStore.write(inStore.read(docID));
-    }
+    StoreTransformRunner.builder(StoreTransformRunner.sourceFor(inStore),
+        StoreTransformRunner.<AnswerKey>identity(), StoreTransformRunner.sinkFor(outStore))
+        .build().run();
 
     log.info("Converted {} documents", inStore.docIDs().size());
   }
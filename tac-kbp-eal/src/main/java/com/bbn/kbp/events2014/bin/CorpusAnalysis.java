@@ -21,6 +21,7 @@ import com.bbn.kbp.events2014.io.AnnotationStore;
 import com.bbn.kbp.events2014.io.AssessmentSpecFormats;
 import com.bbn.kbp.events2014.io.LinkingStore;
 import com.bbn.kbp.events2014.io.LinkingStoreSource;
+import com.bbn.kbp.events2014.io.PrefetchingDocumentIterator;
 import com.bbn.kbp.events2014.linking.EventArgumentLinkingAligner;
 import com.bbn.kbp.events2014.linking.ExactMatchEventArgumentLinkingAligner;
 
@@ -55,6 +56,7 @@ import java.util.Set;
 
 import static com.bbn.kbp.events2014.TypeRoleFillerRealisFunctions.realis;
 import static com.bbn.kbp.events2014.TypeRoleFillerRealisFunctions.type;
+import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Predicates.compose;
 import static com.google.common.base.Predicates.equalTo;
 import static com.google.common.base.Predicates.not;
@@ -68,6 +70,9 @@ import static com.google.common.collect.Iterables.getFirst;
 public final class CorpusAnalysis {
   private static final Logger log = LoggerFactory.getLogger(CorpusAnalysis.class);
 
+  // how many answer keys to read ahead in the background while processing the current one
+  private static final int DOCUMENTS_TO_PREFETCH = 4;
+
 
   public static void main(String[] argv) {
     try {
@@ -262,40 +267,81 @@ public final class CorpusAnalysis {
     final EventArgumentLinkingAligner aligner = ExactMatchEventArgumentLinkingAligner.create();
     final ImmutableSet.Builder<EventArgumentLinking> ret = ImmutableSet.builder();
 
-    for (final Symbol docID : docsToScore) {
-      try {
-        final AnswerKey argumentKey = goldAnswerStore.read(docID);
-        final Optional<ResponseLinking> referenceLinking = referenceLinkingStore.read(argumentKey);
+    final PrefetchingDocumentIterator<KeyAndLinking> keyIt = PrefetchingDocumentIterator.create(
+        docsToScore, new PrefetchingDocumentIterator.DocumentLoader<KeyAndLinking>() {
+          @Override
+          public KeyAndLinking load(final Symbol docID) throws IOException {
+            final AnswerKey argumentKey = goldAnswerStore.read(docID);
+            final Optional<ResponseLinking> referenceLinking =
+                referenceLinkingStore.read(argumentKey);
+
+            if (!referenceLinking.isPresent()) {
+              throw new RuntimeException("Reference linking missing for " + docID);
+            }
+            return new KeyAndLinking(argumentKey, referenceLinking.get());
+          }
+        }, DOCUMENTS_TO_PREFETCH);
 
-        if (!referenceLinking.isPresent()) {
-          throw new RuntimeException("Reference linking missing for " + docID);
+    try {
+      while (keyIt.hasNext()) {
+        final KeyAndLinking keyAndLinking = keyIt.next();
+        final AnswerKey argumentKey = keyAndLinking.answerKey;
+        try {
+          // transform ResponseLinking to EventArgumentLinking
+          final EventArgumentLinking referenceArgumentLinking =
+              aligner.align(keyAndLinking.referenceLinking, argumentKey);
+          final EventArgumentLinking filteredReferenceArgumentLinking =
+              referenceArgumentLinking.filteredCopy(REALIS_IS_NOT_GENERIC);
+
+          ret.add(filteredReferenceArgumentLinking);
+        } catch (Exception e) {
+          throw new RuntimeException("Exception while processing " + argumentKey.docId(), e);
         }
-
-        // transform ResponseLinking to EventArgumentLinking
-        final EventArgumentLinking referenceArgumentLinking = aligner.align(referenceLinking.get(), argumentKey);
-        final EventArgumentLinking filteredReferenceArgumentLinking = referenceArgumentLinking.filteredCopy(REALIS_IS_NOT_GENERIC);
-
-        ret.add(filteredReferenceArgumentLinking);
-
-      } catch (Exception e) {
-        throw new RuntimeException("Exception while processing " + docID, e);
       }
+    } finally {
+      keyIt.close();
     }
 
     return ret.build();
   }
 
+  /**
+   * A document's answer key together with its reference linking.
+   */
+  private static final class KeyAndLinking {
+
+    private final AnswerKey answerKey;
+    private final ResponseLinking referenceLinking;
+
+    private KeyAndLinking(final AnswerKey answerKey, final ResponseLinking referenceLinking) {
+      this.answerKey = checkNotNull(answerKey);
+      this.referenceLinking = checkNotNull(referenceLinking);
+    }
+  }
+
   // ==== methods dealing with equivalence classes ====
   private static ImmutableMultimap<TypeRoleFillerRealis, AssessedResponse> getEquivClassToAssessedResponse(final AnnotationStore goldAnswerStore, Set<Symbol> docsToScore) {
     final ImmutableMultimap.Builder<TypeRoleFillerRealis, AssessedResponse> ret = ImmutableMultimap.builder();
 
-    for (final Symbol docID : docsToScore) {
-      try {
-        final AnswerKey argumentKey = goldAnswerStore.read(docID);
-        ret.putAll(getEquivClassToAssessedResponse(argumentKey));
-      } catch (Exception e) {
-        throw new RuntimeException("Exception while processing " + docID, e);
+    final PrefetchingDocumentIterator<AnswerKey> keyIt = PrefetchingDocumentIterator.create(
+        docsToScore, new PrefetchingDocumentIterator.DocumentLoader<AnswerKey>() {
+          @Override
+          public AnswerKey load(final Symbol docID) throws IOException {
+            return goldAnswerStore.read(docID);
+          }
+        }, DOCUMENTS_TO_PREFETCH);
+
+    try {
+      while (keyIt.hasNext()) {
+        final AnswerKey argumentKey = keyIt.next();
+        try {
+          ret.putAll(getEquivClassToAssessedResponse(argumentKey));
+        } catch (Exception e) {
+          throw new RuntimeException("Exception while processing " + argumentKey.docId(), e);
+        }
       }
+    } finally {
+      keyIt.close();
     }
 
     return ret.build();
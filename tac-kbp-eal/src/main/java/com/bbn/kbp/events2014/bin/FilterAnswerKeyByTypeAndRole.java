@@ -10,6 +10,7 @@ import com.bbn.kbp.events2014.io.AnnotationStore;
 import com.bbn.kbp.events2014.io.AssessmentSpecFormats;
 import com.bbn.kbp.events2014.io.LinkingStore;
 import com.bbn.kbp.events2014.io.LinkingStoreSource;
+import com.bbn.kbp.events2014.io.StoreTransformRunner;
 import com.bbn.kbp.events2014.transformers.ResponseMapping;
 
 import com.google.common.base.Charsets;
@@ -40,6 +41,7 @@ public class FilterAnswerKeyByTypeAndRole {
       "\tinputLinking: linking answer key to filter\n" +
       "\toutputArguments: directory to write filtered argument answer key to\n" +
       "\toutputLinking: directory to write filtered linking answer key to\n" +
+      "\tnumThreads: (optional) number of threads to use. Defaults to the number of processors\n" +
       "\ttypeAndRoleFile: file listing types and roles which are valid. Format is one "
       + "\t\tline per type, tab-separated, with the event type followed by its roles";
 
@@ -74,6 +76,8 @@ public class FilterAnswerKeyByTypeAndRole {
         "Must specify neither or both of inputLinking and outputLinking");
 
     final Multimap<Symbol, Symbol> typesToValidRoles = loadTypesToValidRolesMap(params);
+    final int numThreads = params.getOptionalPositiveInteger("numThreads")
+        .or(Runtime.getRuntime().availableProcessors());
 
     if (optLinkingAnnotationStore.isPresent() &&
         !argumentAnnotationStore.docIDs().containsAll(optLinkingAnnotationStore.get().docIDs())) {
@@ -84,20 +88,43 @@ public class FilterAnswerKeyByTypeAndRole {
     final AnnotationStore outputArgumentStore = AssessmentSpecFormats.createAnnotationStore(
         params.getCreatableDirectory("outputArguments"), AssessmentSpecFormats.Format.KBP2015);
 
-    int numDeletedTotal = 0;
-    for (final Symbol docID : argumentAnnotationStore.docIDs()) {
-      final AnswerKey original = argumentAnnotationStore.read(docID);
-      final ResponseMapping toDelete = selectWhichToDelete(original, typesToValidRoles);
-
-      outputArgumentStore.write(toDelete.apply(original));
-      if (optLinkingAnnotationStore.isPresent()) {
-        final Optional<ResponseLinking> originalLinking =
-            optLinkingAnnotationStore.get().read(original);
-        if (originalLinking.isPresent()) {
-          optLinkingOut.get().write(toDelete.apply(originalLinking.get()));
-        }
-      }
-    }
+    StoreTransformRunner.builder(StoreTransformRunner.sourceFor(argumentAnnotationStore),
+        new StoreTransformRunner.DocumentTransform<AnswerKey, FilteredDocument>() {
+          @Override
+          public Optional<FilteredDocument> transform(final Symbol docID,
+              final AnswerKey original) throws IOException {
+            final ResponseMapping toDelete = selectWhichToDelete(original, typesToValidRoles);
+            Optional<ResponseLinking> filteredLinking = Optional.absent();
+            if (optLinkingAnnotationStore.isPresent()) {
+              final Optional<ResponseLinking> originalLinking =
+                  optLinkingAnnotationStore.get().read(original);
+              if (originalLinking.isPresent()) {
+                filteredLinking = Optional.of(toDelete.apply(originalLinking.get()));
+              }
+            }
+            return Optional.of(new FilteredDocument(toDelete.apply(original), filteredLinking));
+          }
+        }, new StoreTransformRunner.DocumentSink<FilteredDocument>() {
+          @Override
+          public Set<Symbol> docIDs() throws IOException {
+            return outputArgumentStore.docIDs();
+          }
+
+          @Override
+          public void write(final FilteredDocument document) throws IOException {
+            if (document.linking.isPresent()) {
+              optLinkingOut.get().write(document.linking.get());
+            }
+            outputArgumentStore.write(document.arguments);
+          }
+
+          @Override
+          public String toString() {
+            return outputArgumentStore.toString();
+          }
+        })
+        .numThreads(numThreads)
+        .build().run();
 
     argumentAnnotationStore.close();
     outputArgumentStore.close();
@@ -107,6 +134,17 @@ public class FilterAnswerKeyByTypeAndRole {
     }
   }
 
+  private static final class FilteredDocument {
+
+    private final AnswerKey arguments;
+    private final Optional<ResponseLinking> linking;
+
+    private FilteredDocument(final AnswerKey arguments, final Optional<ResponseLinking> linking) {
+      this.arguments = arguments;
+      this.linking = linking;
+    }
+  }
+
   private static Multimap<Symbol, Symbol> loadTypesToValidRolesMap(final Parameters params)
       throws IOException {
     final Multimap<Symbol, Symbol> typesToValidRolesInitial = FileUtils.loadSymbolMultimap(
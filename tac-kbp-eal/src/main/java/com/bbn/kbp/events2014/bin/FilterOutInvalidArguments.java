@@ -5,9 +5,12 @@ import com.bbn.bue.common.symbols.Symbol;
 import com.bbn.kbp.events2014.DocumentSystemOutput;
 import com.bbn.kbp.events2014.SystemOutputLayout;
 import com.bbn.kbp.events2014.io.CrossDocSystemOutputStore;
+import com.bbn.kbp.events2014.io.StoreTransformRunner;
 import com.bbn.kbp.events2014.io.SystemOutputStore;
 import com.bbn.kbp.events2014.validation.TypeAndRoleValidator;
 
+import com.google.common.base.Optional;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,16 +46,25 @@ public final class FilterOutInvalidArguments {
     final SystemOutputStore input = layout.open(params.getExistingDirectory("input"));
     final SystemOutputStore output = layout.openOrCreate(params.getCreatableDirectory("output"));
     final TypeAndRoleValidator validator = TypeAndRoleValidator.createFromParameters(params);
+    final int numThreads = params.getOptionalPositiveInteger("numThreads")
+        .or(Runtime.getRuntime().availableProcessors());
 
     log.info("Filtering {} to {}, removing invalid type/role combinations", input, output);
-    for (final Symbol docID : input.docIDs()) {
-      final DocumentSystemOutput original = input.read(docID);
-      final DocumentSystemOutput filtered = original.copyTransformedBy(
-          validator.deleteInvalidResponses(original.arguments()));
-      log.info("For document {}, filtered out {} invalid responses",
-          docID, original.arguments().size() - filtered.arguments().size());
-      output.write(filtered);
-    }
+    StoreTransformRunner.builder(StoreTransformRunner.sourceFor(input),
+        new StoreTransformRunner.DocumentTransform<DocumentSystemOutput, DocumentSystemOutput>() {
+          @Override
+          public Optional<DocumentSystemOutput> transform(final Symbol docID,
+              final DocumentSystemOutput original) {
+            final DocumentSystemOutput filtered = original.copyTransformedBy(
+                validator.deleteInvalidResponses(original.arguments()));
+            log.info("For document {}, filtered out {} invalid responses",
+                docID, original.arguments().size() - filtered.arguments().size());
+            return Optional.of(filtered);
+          }
+        }, StoreTransformRunner.sinkFor(output))
+        .numThreads(numThreads)
+        .resume(params.getOptionalBoolean("resume").or(false))
+        .build().run();
     if (output instanceof CrossDocSystemOutputStore) {
       ((CrossDocSystemOutputStore) output)
           .writeCorpusEventFrames(((CrossDocSystemOutputStore) input).readCorpusEventFrames());
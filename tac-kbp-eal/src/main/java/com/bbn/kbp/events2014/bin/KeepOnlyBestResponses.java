@@ -6,10 +6,13 @@ import com.bbn.kbp.events2014.CorpusEventLinking;
 import com.bbn.kbp.events2014.DocumentSystemOutput;
 import com.bbn.kbp.events2014.SystemOutputLayout;
 import com.bbn.kbp.events2014.io.CrossDocSystemOutputStore;
+import com.bbn.kbp.events2014.io.StoreTransformRunner;
 import com.bbn.kbp.events2014.io.SystemOutputStore;
 import com.bbn.kbp.events2014.transformers.KeepBestJustificationOnly;
 import com.bbn.kbp.events2014.transformers.ResponseMapping;
 
+import com.google.common.base.Optional;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,7 +29,9 @@ public final class KeepOnlyBestResponses {
         "\tinputStore: input system output store\n" +
         "\toutputStore: location to write filtered output store. Must be non-existent or an empty directory.\n"
         +
-        "\tkeepInferenceCases: whether to keep cases that look like inference, even if not highest scoring");
+        "\tkeepInferenceCases: whether to keep cases that look like inference, even if not highest scoring\n" +
+        "\tnumThreads: (optional) number of threads used to filter the store\n" +
+        "\tresume: (optional) skip documents already in the output store. Defaults to false");
     System.exit(1);
   }
 
@@ -45,21 +50,30 @@ public final class KeepOnlyBestResponses {
 
     final SystemOutputStore inputStore = layout.open(inputStoreLocation);
     final SystemOutputStore outputStore = layout.openOrCreate(outputStoreLocation);
+    final int numThreads = params.getOptionalPositiveInteger("numThreads")
+        .or(Runtime.getRuntime().availableProcessors());
 
     log.info("Source store has {} documents", inputStore.docIDs().size());
-    for (final Symbol docID : inputStore.docIDs()) {
-      final DocumentSystemOutput original = inputStore.read(docID);
-      final ResponseMapping responseMapping = KeepBestJustificationOnly.computeResponseMapping(
-          original);
-      final DocumentSystemOutput filtered = original.copyTransformedBy(responseMapping);
-
-      int numFiltered = original.arguments().size() - filtered.arguments().size();
-
-      log.info("For document {}, filtered out {} responses as duplicate justifications",
-          docID, numFiltered);
-
-      outputStore.write(filtered);
-    }
+    StoreTransformRunner.builder(StoreTransformRunner.sourceFor(inputStore),
+        new StoreTransformRunner.DocumentTransform<DocumentSystemOutput, DocumentSystemOutput>() {
+          @Override
+          public Optional<DocumentSystemOutput> transform(final Symbol docID,
+              final DocumentSystemOutput original) {
+            final ResponseMapping responseMapping =
+                KeepBestJustificationOnly.computeResponseMapping(original);
+            final DocumentSystemOutput filtered = original.copyTransformedBy(responseMapping);
+
+            int numFiltered = original.arguments().size() - filtered.arguments().size();
+
+            log.info("For document {}, filtered out {} responses as duplicate justifications",
+                docID, numFiltered);
+            return Optional.of(filtered);
+          }
+        }, StoreTransformRunner.sinkFor(outputStore))
+        .numThreads(numThreads)
+        .resume(params.getOptionalBoolean("resume").or(false))
+        .build().run();
+    // the corpus-level linking is mapped using the documents written above
     if (inputStore instanceof CrossDocSystemOutputStore) {
       final CorpusEventLinking filteredLinking =
           ResponseMapping.apply(((CrossDocSystemOutputStore) inputStore).readCorpusEventFrames(),
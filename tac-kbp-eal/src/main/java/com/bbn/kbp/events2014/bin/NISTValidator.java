@@ -6,6 +6,7 @@ import com.bbn.bue.common.symbols.Symbol;
 import com.bbn.bue.common.symbols.SymbolUtils;
 import com.bbn.kbp.events2014.KBPEA2014OutputLayout;
 import com.bbn.kbp.events2014.SystemOutputLayout;
+import com.bbn.kbp.events2014.io.SubmissionArchive;
 import com.bbn.kbp.events2014.validation.LinkingValidators;
 import com.bbn.kbp.events2014.validation.TypeAndRoleValidator;
 
@@ -14,12 +15,6 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.io.Files;
 
-import org.codehaus.plexus.archiver.UnArchiver;
-import org.codehaus.plexus.archiver.tar.TarGZipUnArchiver;
-import org.codehaus.plexus.archiver.tar.TarUnArchiver;
-import org.codehaus.plexus.archiver.zip.AbstractZipUnArchiver;
-import org.codehaus.plexus.archiver.zip.ZipUnArchiver;
-import org.codehaus.plexus.logging.console.ConsoleLogger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,7 +23,6 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Map;
 
-import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
@@ -120,10 +114,14 @@ public final class NISTValidator {
             "Submission file %s does not exist", submitFile));
       }
 
-      File uncompressedDirectory = uncompressToTempDirectory(submitFile);
-      log.info("Uncompressed submission to {}", uncompressedDirectory);
+      if (!SubmissionArchive.isArchive(submitFile)) {
+        throw new IOException(String
+            .format("Compressed file must end in .zip, .tar, .tgz, or .tar.gz, but path is %s",
+                submitFile));
+      }
 
-      logErrorsAndExit(errorFile, validator.validateOnly(uncompressedDirectory, MAX_ERRORS,
+      // the archive is validated in place rather than being extracted to a temporary directory
+      logErrorsAndExit(errorFile, validator.validateOnly(submitFile, MAX_ERRORS,
           docIdMap, layout), verbosity);
     } catch (Exception e) {
       logErrorsAndExit(errorFile, ValidateSystemOutput.Result.forErrors(ImmutableList.of(e)),
@@ -163,35 +161,4 @@ public final class NISTValidator {
       System.exit(ERROR_CODE);
     }
   }
-
-  private static File uncompressToTempDirectory(File compressedFile) throws IOException {
-    checkArgument(compressedFile.exists(), "File to decompress {} does not exist", compressedFile);
-    final UnArchiver unarchiver;
-    final ConsoleLogger consoleLogger =
-        new ConsoleLogger(org.codehaus.plexus.logging.Logger.LEVEL_INFO, "console");
-    if (compressedFile.getAbsolutePath().endsWith(".tgz")
-        || compressedFile.getAbsolutePath().endsWith(".tar.gz")) {
-      unarchiver = new TarGZipUnArchiver();
-      ((TarUnArchiver) unarchiver).enableLogging(consoleLogger);
-    } else if (compressedFile.getAbsolutePath().endsWith(".zip")) {
-      unarchiver = new ZipUnArchiver();
-      ((AbstractZipUnArchiver) unarchiver).enableLogging(consoleLogger);
-    } else {
-      throw new RuntimeException(String
-          .format("Compressed file must end in .zip, .tgz, or .tar.gz, but path is %s",
-              compressedFile));
-    }
-
-    unarchiver.setSourceFile(compressedFile);
-
-    final File destDir = Files.createTempDir();
-    // the contents of the temp directory
-    // will not be deleted on exit, because this
-    // is actually quite tricky in Java.  But the size
-    // of this data should not be so large as to
-    // make this a problem
-    unarchiver.setDestDirectory(destDir);
-    unarchiver.extract();
-    return destDir;
-  }
 }
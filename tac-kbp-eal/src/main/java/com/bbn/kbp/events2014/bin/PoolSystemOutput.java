@@ -8,12 +8,13 @@ import com.bbn.kbp.events2014.DocumentSystemOutput;
 import com.bbn.kbp.events2014.SystemOutputLayout;
 import com.bbn.kbp.events2014.io.ArgumentStore;
 import com.bbn.kbp.events2014.io.AssessmentSpecFormats;
+import com.bbn.kbp.events2014.io.PrefetchingDocumentIterator;
 import com.bbn.kbp.events2014.io.SystemOutputStore;
 import com.bbn.kbp.events2014.transformers.KeepBestJustificationOnly;
 import com.bbn.kbp.events2014.transformers.QuoteFilter;
 
 import com.google.common.base.Optional;
-import com.google.common.collect.Lists;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.io.Files;
@@ -27,6 +28,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 public final class PoolSystemOutput {
 
   private static final Logger log = LoggerFactory.getLogger(PoolSystemOutput.class);
@@ -41,6 +44,8 @@ public final class PoolSystemOutput {
     final File outputStorePath = params.getCreatableDirectory("pooledStore");
     final SystemOutputLayout systemOutputLayout =
         SystemOutputLayout.ParamParser.fromParamVal(params.getString("systemOutputLayout"));
+    final int numThreads = params.getOptionalPositiveInteger("numThreads")
+        .or(Runtime.getRuntime().availableProcessors());
 
 
     final Optional<QuoteFilter> quoteFilter;
@@ -75,27 +80,29 @@ public final class PoolSystemOutput {
       storesToCombine.put(inputStoreFile.getAbsolutePath(), inputStore);
     }
 
-    for (final Symbol docId : allDocIds) {
-      final List<ArgumentOutput> responseSets = Lists.newArrayList();
-
-      final StringBuilder sb = new StringBuilder();
-
-      for (final Map.Entry<String, SystemOutputStore> storeEntry : storesToCombine.entrySet()) {
-        final DocumentSystemOutput quoteFiltered =
-            quoteFilter.get().transform(storeEntry.getValue().read(docId));
-        // if there are multiple responses which we know will end up in the same
-        // equivalence class even without knowing coref, drop the lower scoring ones
-        final DocumentSystemOutput responses = KeepBestJustificationOnly.asFunctionOnSystemOutput()
-            .apply(quoteFiltered);
-        responseSets.add(responses.arguments());
-        sb.append(String
-            .format("\t%5d response from %s\n", responses.arguments().size(), storeEntry.getKey()));
-      }
+    // documents are pooled in parallel, but the iterator hands us the results in the order of
+    // docIdsToPool, so the writes to the output store happen in a deterministic order on this
+    // thread. At most 2 * numThreads + 1 pooled documents are held in memory at once: those
+    // queued or being pooled plus the one being written.
+    final ImmutableList<Symbol> docIdsToPool = ImmutableList.copyOf(allDocIds);
+    final PrefetchingDocumentIterator<PooledDocument> pooledIt =
+        PrefetchingDocumentIterator.create(docIdsToPool,
+            new PrefetchingDocumentIterator.DocumentLoader<PooledDocument>() {
+              @Override
+              public PooledDocument load(final Symbol docId) throws IOException {
+                return poolDocument(docId, storesToCombine, quoteFilter);
+              }
+            }, 2 * numThreads, numThreads);
 
-      final ArgumentOutput combinedOutput = ArgumentOutput.unionKeepingMaximumScore(responseSets);
-      outputStore.write(combinedOutput);
-      log.info("\nFor document {}\n{}\n{} responses total", docId, sb.toString(),
-          combinedOutput.size());
+    try {
+      for (final Symbol docId : docIdsToPool) {
+        final PooledDocument pooled = pooledIt.next();
+        outputStore.write(pooled.combinedOutput);
+        log.info("\nFor document {}\n{}\n{} responses total", docId, pooled.report,
+            pooled.combinedOutput.size());
+      }
+    } finally {
+      pooledIt.close();
     }
 
     // storesToCombine.values() includes the output store
@@ -105,13 +112,57 @@ public final class PoolSystemOutput {
     outputStore.close();
   }
 
+  /* package-private */ static PooledDocument poolDocument(final Symbol docId,
+      final Map<String, SystemOutputStore> storesToCombine,
+      final Optional<QuoteFilter> quoteFilter) throws IOException {
+    // we merge each store's responses into the pool as soon as they are read and filtered
+    // rather than collecting every store's output for the document first
+    final ArgumentOutput.MaximumScoreUnionBuilder combinedOutput =
+        ArgumentOutput.maximumScoreUnionBuilder(docId);
+    final StringBuilder sb = new StringBuilder();
+
+    for (final Map.Entry<String, SystemOutputStore> storeEntry : storesToCombine.entrySet()) {
+      DocumentSystemOutput docOutput = storeEntry.getValue().read(docId);
+      if (quoteFilter.isPresent()) {
+        docOutput = quoteFilter.get().transform(docOutput);
+      }
+      // if there are multiple responses which we know will end up in the same
+      // equivalence class even without knowing coref, drop the lower scoring ones
+      final DocumentSystemOutput responses = KeepBestJustificationOnly.asFunctionOnSystemOutput()
+          .apply(docOutput);
+      combinedOutput.add(responses.arguments());
+      sb.append(String
+          .format("\t%5d response from %s\n", responses.arguments().size(), storeEntry.getKey()));
+    }
+
+    return new PooledDocument(combinedOutput.build(), sb.toString());
+  }
+
+  /* package-private */ static final class PooledDocument {
+
+    private final ArgumentOutput combinedOutput;
+    // a description of how many responses came from each store
+    private final String report;
+
+    private PooledDocument(final ArgumentOutput combinedOutput, final String report) {
+      this.combinedOutput = checkNotNull(combinedOutput);
+      this.report = checkNotNull(report);
+    }
+
+    /* package-private */ ArgumentOutput combinedOutput() {
+      return combinedOutput;
+    }
+  }
+
   private static void usage() {
     log.error("usage: poolSystemOutput param_file\n" +
         "where the parameters are:\n" +
         "\tstoresToPool: file listing paths to stores to pool\n" +
         "\tpooledStore: directory of system output store for pooling results\n" +
         "\tsystemOutputLayout: KBP_EA_2014 or KBP_EA_2015\n" +
-        "\t(optional) quoteFilter: quote filter to apply to all responses");
+        "\t(optional) quoteFilter: quote filter to apply to all responses\n" +
+        "\t(optional) numThreads: number of documents to pool at once. Defaults to the number "
+        + "of processors");
     System.exit(1);
   }
 
@@ -1,9 +1,10 @@
 package com.bbn.kbp.events2014.bin;
 
 import com.bbn.bue.common.parameters.Parameters;
-import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.kbp.events2014.AnswerKey;
 import com.bbn.kbp.events2014.io.AnnotationStore;
 import com.bbn.kbp.events2014.io.AssessmentSpecFormats;
+import com.bbn.kbp.events2014.io.StoreTransformRunner;
 import com.bbn.kbp.events2014.io.assessmentCreators.RecoveryAssessmentCreator;
 
 import org.slf4j.Logger;
@@ -46,12 +47,18 @@ public final class RepairAnnotationStore {
         params.getEnum("fileFormat", AssessmentSpecFormats.Format.class);
     final AnnotationStore annStore = AssessmentSpecFormats.recoverPossiblyBrokenAnnotationStore(
         potentiallyBrokenStore, assessmentCreator, fileFormat);
-    final AnnotationStore outStore =
-        AssessmentSpecFormats.createAnnotationStore(outputStorePath, fileFormat);
+    final boolean resume = params.getOptionalBoolean("resume").or(false);
+    final AnnotationStore outStore = resume
+        ? AssessmentSpecFormats.openOrCreateAnnotationStore(outputStorePath, fileFormat)
+        : AssessmentSpecFormats.createAnnotationStore(outputStorePath, fileFormat);
 
-    for (final Symbol docid : annStore.docIDs()) {
-      outStore.write(annStore.read(docid));
-    }
+    // the repair happens as documents are read. The recovery assessment creator draws from rng as
+    // documents are read, so repairs are only reproducible for a given seed with a single thread
+    StoreTransformRunner.builder(StoreTransformRunner.sourceFor(annStore),
+        StoreTransformRunner.<AnswerKey>identity(), StoreTransformRunner.sinkFor(outStore))
+        .numThreads(params.getOptionalPositiveInteger("numThreads").or(1))
+        .resume(resume)
+        .build().run();
     log.info(assessmentCreator.report());
   }
 
@@ -59,7 +66,10 @@ public final class RepairAnnotationStore {
     System.err.println("usage: RepairAnnotationStore paramFile\n" +
         "Parameters are: \n"
         + "brokenStore: the broken store to fix\n"
-        + "pathToWriteFixedStore: pathToWriteFixedStore");
+        + "pathToWriteFixedStore: pathToWriteFixedStore\n"
+        + "numThreads: (optional) number of threads. Defaults to 1, since with more the repairs "
+        + "made with a given randomSeed are not reproducible\n"
+        + "resume: (optional) skip documents already in the fixed store. Defaults to false");
     System.exit(1);
   }
 
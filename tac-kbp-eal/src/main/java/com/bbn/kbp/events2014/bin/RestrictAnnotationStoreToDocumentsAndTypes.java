@@ -8,7 +8,9 @@ import com.bbn.kbp.events2014.AssessedResponse;
 import com.bbn.kbp.events2014.Response;
 import com.bbn.kbp.events2014.io.AnnotationStore;
 import com.bbn.kbp.events2014.io.AssessmentSpecFormats;
+import com.bbn.kbp.events2014.io.StoreTransformRunner;
 
+import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableSet;
 
@@ -17,6 +19,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by jdeyoung on 10/30/15.
@@ -69,29 +72,37 @@ public final class RestrictAnnotationStoreToDocumentsAndTypes {
       }
     };
 
-    int docsWritten = 0;
-    int responsesWritten = 0;
-    int responsesDiscarded = 0;
-    int docsDiscarded = 0;
-    for(final Symbol docid: docids) {
-      final AnswerKey source = sourceStore.read(docid);
-      // skip documents with any assessment
-      if(source.annotatedResponses().size() > 0) {
-        docsDiscarded++;
-        continue;
-      }
-      final AnswerKey filtered = source.filter(filterByEventTypes);
-      responsesDiscarded += source.allResponses().size() - filtered.allResponses().size();
-      if(filtered.allResponses().size() > 0) {
-        responsesWritten += filtered.allResponses().size();
-        docsWritten++;
-        targetStore.write(filtered);
-      } else {
-        docsDiscarded++;
-      }
-    }
-    log.info("{} docs to start, {} written, {} discarded", sourceStore.docIDs().size(), docsWritten, docsDiscarded);
-    log.info("{} responses to assess, {} responses discarded", responsesWritten, responsesDiscarded);
+    // documents are filtered on several threads at once
+    final AtomicInteger responsesWritten = new AtomicInteger();
+    final AtomicInteger responsesDiscarded = new AtomicInteger();
+    final StoreTransformRunner.Stats stats = StoreTransformRunner.builder(
+        StoreTransformRunner.sourceFor(sourceStore),
+        new StoreTransformRunner.DocumentTransform<AnswerKey, AnswerKey>() {
+          @Override
+          public Optional<AnswerKey> transform(final Symbol docid, final AnswerKey source) {
+            // skip documents with any assessment
+            if(source.annotatedResponses().size() > 0) {
+              return Optional.absent();
+            }
+            final AnswerKey filtered = source.filter(filterByEventTypes);
+            responsesDiscarded.addAndGet(
+                source.allResponses().size() - filtered.allResponses().size());
+            if(filtered.allResponses().size() > 0) {
+              responsesWritten.addAndGet(filtered.allResponses().size());
+              return Optional.of(filtered);
+            } else {
+              return Optional.absent();
+            }
+          }
+        }, StoreTransformRunner.sinkFor(targetStore))
+        .docIDs(docids)
+        .numThreads(params.getOptionalPositiveInteger("numThreads")
+            .or(Runtime.getRuntime().availableProcessors()))
+        .build().run();
+    log.info("{} docs to start, {} written, {} discarded", sourceStore.docIDs().size(),
+        stats.numWritten(), stats.numProcessed() - stats.numWritten());
+    log.info("{} responses to assess, {} responses discarded", responsesWritten.get(),
+        responsesDiscarded.get());
   }
 
 }
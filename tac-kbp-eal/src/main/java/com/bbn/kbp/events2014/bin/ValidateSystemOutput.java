@@ -4,13 +4,14 @@ import com.bbn.bue.common.StringUtils;
 import com.bbn.bue.common.files.FileUtils;
 import com.bbn.bue.common.parameters.Parameters;
 import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.bue.common.symbols.SymbolUtils;
 import com.bbn.kbp.events2014.ArgumentOutput;
 import com.bbn.kbp.events2014.CharOffsetSpan;
 import com.bbn.kbp.events2014.CorpusEventFrame;
 import com.bbn.kbp.events2014.CorpusEventLinking;
 import com.bbn.kbp.events2014.DocEventFrameReference;
-import com.bbn.kbp.events2014.DocEventFrameReferenceFunctions;
 import com.bbn.kbp.events2014.DocumentSystemOutput;
+import com.bbn.kbp.events2014.DocumentSystemOutput2015;
 import com.bbn.kbp.events2014.KBPEA2015OutputLayout;
 import com.bbn.kbp.events2014.KBPEA2016OutputLayout;
 import com.bbn.kbp.events2014.KBPRealis;
@@ -18,11 +19,16 @@ import com.bbn.kbp.events2014.KBPString;
 import com.bbn.kbp.events2014.Response;
 import com.bbn.kbp.events2014.ResponseFunctions;
 import com.bbn.kbp.events2014.ResponseLinking;
+import com.bbn.kbp.events2014.ResponseSet;
 import com.bbn.kbp.events2014.SystemOutputLayout;
 import com.bbn.kbp.events2014.io.CorpusEventFrameIO;
 import com.bbn.kbp.events2014.io.LinkingStore;
 import com.bbn.kbp.events2014.io.LinkingStoreSource;
+import com.bbn.kbp.events2014.io.PrefetchingDocumentIterator;
+import com.bbn.kbp.events2014.io.SourceCorpusIndex;
+import com.bbn.kbp.events2014.io.SubmissionArchive;
 import com.bbn.kbp.events2014.io.SystemOutputStore;
+import com.bbn.kbp.events2014.metrics.StageMetrics;
 import com.bbn.kbp.events2014.validation.LinkingValidator;
 import com.bbn.kbp.events2014.validation.LinkingValidators;
 import com.bbn.kbp.events2014.validation.TypeAndRoleValidator;
@@ -32,20 +38,24 @@ import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.io.CharSource;
 import com.google.common.io.Files;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -53,7 +63,6 @@ import java.util.Set;
 import static com.bbn.bue.common.files.FileUtils.loadSymbolToFileMap;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Predicates.compose;
 import static com.google.common.base.Predicates.equalTo;
 import static com.google.common.base.Predicates.not;
@@ -65,6 +74,7 @@ public final class ValidateSystemOutput {
   private final TypeAndRoleValidator typeAndRoleValidator;
   private final Preprocessor preprocessor;
   private final LinkingValidator linkingValidator;
+  private final int numThreads;
 
   private static final Symbol MOVEMENTTRANSPORT = Symbol.from("Movement.Transport");
   private static final Symbol PLACE = Symbol.from("Place");
@@ -83,15 +93,36 @@ public final class ValidateSystemOutput {
   };
 
   private ValidateSystemOutput(TypeAndRoleValidator typeAndRoleValidator,
-      final LinkingValidator linkingValidator, Preprocessor preprocessor) {
+      final LinkingValidator linkingValidator, Preprocessor preprocessor, int numThreads) {
+    checkArgument(numThreads > 0, "Must use at least one thread");
     this.linkingValidator = checkNotNull(linkingValidator);
     this.typeAndRoleValidator = checkNotNull(typeAndRoleValidator);
     this.preprocessor = checkNotNull(preprocessor);
+    this.numThreads = numThreads;
   }
 
+  /**
+   * Creates a validator which checks one document at a time. See {@link
+   * #create(TypeAndRoleValidator, LinkingValidator, Preprocessor, int)} to check documents in
+   * parallel.
+   */
   public static ValidateSystemOutput create(TypeAndRoleValidator typeAndRoleValidator,
       final LinkingValidator linkingValidator, Preprocessor preprocessor) {
-    return new ValidateSystemOutput(typeAndRoleValidator, linkingValidator, preprocessor);
+    return create(typeAndRoleValidator, linkingValidator, preprocessor, 1);
+  }
+
+  /**
+   * Creates a validator which checks up to {@code numThreads} documents in parallel.
+   *
+   * <p><b>If {@code numThreads} is greater than one, {@code typeAndRoleValidator} and {@code
+   * linkingValidator} will be called from several threads at once and must be thread-safe.</b>
+   * The validators provided by {@link TypeAndRoleValidator} and {@link LinkingValidators} are.
+   * The preprocessor is only ever called from the calling thread.</p>
+   */
+  public static ValidateSystemOutput create(TypeAndRoleValidator typeAndRoleValidator,
+      final LinkingValidator linkingValidator, Preprocessor preprocessor, int numThreads) {
+    return new ValidateSystemOutput(typeAndRoleValidator, linkingValidator, preprocessor,
+        numThreads);
   }
 
   private static void usage() {
@@ -106,7 +137,9 @@ public final class ValidateSystemOutput {
             "\tdocIDMap: (only if dump is true) a list of tab-separated pairs of doc ID and path to original text.\n"
             +
             "\tvalidRoles: is data/2014.types.txt (for KBP 2014)\n" +
-            "\talwaysValidRoles: is 'Time, Place' (for KBP 2014)\n");
+            "\talwaysValidRoles: is 'Time, Place' (for KBP 2014)\n" +
+            "\tnumThreads: (optional) number of documents to check in parallel. Defaults to 1\n" +
+            "\tmetricsOutput: (optional) file to write the time spent in each stage of validation to, as JSON\n");
     System.exit(1);
   }
 
@@ -114,7 +147,8 @@ public final class ValidateSystemOutput {
   /**
    * Returns the first exception encountered in each document when validating the supplied system
    * output store.  If the returned list is empty, the supplied output store is valid. Processing
-   * will stop early if {@code maxErrors} errors are encountered.
+   * will stop early if {@code maxErrors} errors are encountered. Documents are checked in parallel,
+   * but their errors are always reported in order of document ID.
    */
   public Result validateOnly(File systemOutputStoreFile, int maxErrors,
       Map<Symbol, File> docIDMap,
@@ -134,47 +168,85 @@ public final class ValidateSystemOutput {
 
 
   private Result validate(File originalSystemOutputStoreFile, int maxErrors,
-      Map<Symbol, File> docIDMap, SystemOutputLayout outputLayout,
-      boolean dump) throws IOException {
+      final Map<Symbol, File> docIDMap, SystemOutputLayout outputLayout,
+      final boolean dump) throws IOException {
+    // submission archives are read in place rather than being extracted first
+    final Optional<SubmissionArchive> originalArchive;
+    if (SubmissionArchive.isArchive(originalSystemOutputStoreFile)) {
+      try {
+        originalArchive = Optional.of(SubmissionArchive.open(originalSystemOutputStoreFile));
+      } catch (Exception e) {
+        return Result.forErrors(ImmutableList.of(e));
+      }
+    } else {
+      originalArchive = Optional.absent();
+    }
+
     if (KBPEA2015OutputLayout.get().equals(outputLayout)) {
       try {
-        assertExactlyTwoSubdirectories(originalSystemOutputStoreFile);
+        assertExactlyTwoSubdirectories(originalSystemOutputStoreFile, originalArchive);
       } catch (Exception e) {
+        closeArchive(originalArchive);
         return Result.forErrors(ImmutableList.of(e));
       }
     }
     if (KBPEA2016OutputLayout.get().equals(outputLayout)) {
       try {
-        assertExactly2016Subdirectories(originalSystemOutputStoreFile);
+        assertExactly2016Subdirectories(originalSystemOutputStoreFile, originalArchive);
       } catch (Exception e) {
+        closeArchive(originalArchive);
         return Result.forErrors(ImmutableList.of(e));
       }
     }
 
     final File systemOutputStoreFile = preprocessor.preprocess(originalSystemOutputStoreFile);
+    // if the preprocessor wrote a new store, that is what we validate instead of the archive
+    final Optional<SubmissionArchive> archive;
+    if (systemOutputStoreFile.equals(originalSystemOutputStoreFile)) {
+      archive = originalArchive;
+    } else {
+      closeArchive(originalArchive);
+      archive = Optional.absent();
+    }
     final List<String> warnings = Lists.newArrayList();
     final List<Throwable> errors = Lists.newArrayList();
+    final StageMetrics metrics = StageMetrics.create();
 
-    log.info("Validating system output store {} with max errors {}", systemOutputStoreFile,
-        maxErrors);
+    log.info("Validating system output store {} with max errors {} using {} threads",
+        systemOutputStoreFile, maxErrors, numThreads);
 
     final SystemOutputStore outputStore;
     final Optional<LinkingStore> linkingStore;
     final Optional<CorpusEventLinking> corpusEventLinking;
     final Set<Symbol> docIDs;
     try {
-      outputStore = outputLayout.open(systemOutputStoreFile);
+      if (archive.isPresent()) {
+        outputStore = outputLayout.open(archive.get());
+      } else {
+        outputStore = outputLayout.open(systemOutputStoreFile);
+      }
       if (KBPEA2015OutputLayout.get().equals(outputLayout)) {
-        linkingStore = Optional.of(LinkingStoreSource.createFor2015()
-            .openLinkingStore(new File(systemOutputStoreFile, "linking")));
+        linkingStore = Optional.of(openLinkingStore(LinkingStoreSource.createFor2015(),
+            systemOutputStoreFile, archive));
         corpusEventLinking = Optional.absent();
       } else if (KBPEA2016OutputLayout.get().equals(outputLayout)) {
-        linkingStore = Optional.of(LinkingStoreSource.createFor2016()
-            .openLinkingStore(new File(systemOutputStoreFile, "linking")));
-        corpusEventLinking = Optional.of(CorpusEventFrameIO.loaderFor2016().loadCorpusEventFrames(
-            Files.asCharSource(
-                new File(new File(systemOutputStoreFile, "corpusLinking"), "corpusLinking"),
-                Charsets.UTF_8)));
+        linkingStore = Optional.of(openLinkingStore(LinkingStoreSource.createFor2016(),
+            systemOutputStoreFile, archive));
+        final CharSource corpusLinkingSource;
+        if (archive.isPresent()) {
+          final Optional<CharSource> archived = archive.get().file("corpusLinking/corpusLinking");
+          if (!archived.isPresent()) {
+            throw new FileNotFoundException(
+                "Missing corpusLinking/corpusLinking in " + archive.get());
+          }
+          corpusLinkingSource = archived.get();
+        } else {
+          corpusLinkingSource = Files.asCharSource(
+              new File(new File(systemOutputStoreFile, "corpusLinking"), "corpusLinking"),
+              Charsets.UTF_8);
+        }
+        corpusEventLinking = Optional.of(
+            CorpusEventFrameIO.loaderFor2016().loadCorpusEventFrames(corpusLinkingSource));
       } else {
         linkingStore = Optional.absent();
         corpusEventLinking = Optional.absent();
@@ -182,34 +254,167 @@ public final class ValidateSystemOutput {
 
       docIDs = outputStore.docIDs();
     } catch (Exception e) {
+      closeArchive(archive);
       errors.add(e);
       return new Result(errors, warnings);
     }
 
     try {
-      assertAllOffsetsValid(outputStore, docIDMap);
+      assertDocsAreContained(docIDs, docIDMap.keySet(), "argument");
       if (linkingStore.isPresent()) {
         assertDocsAreContained(linkingStore.get().docIDs(), docIDMap.keySet(), "linking");
         // check that no docids are missing
         assertDocsAreContained(linkingStore.get().docIDs(), docIDs, "systemOutput");
       }
     } catch (Exception e) {
-      // we can recover from invalid offsets and find more errors
-      // this can cause some errors to be repeated more than once
+      // we can recover from missing documents and find more errors
       errors.add(e);
     }
 
+    // nothing is read here: each document's text is indexed by the worker which checks it, after
+    // which offset checks need only its length and rendering responses decodes only the spans
+    // involved
+    final SourceCorpusIndex sourceText = SourceCorpusIndex.build(docIDMap, docIDs);
+
+    // for the corpus-level checks we keep only the document event frames which corpus event
+    // frames refer to, rather than every document's linking
+    final ImmutableSetMultimap<Symbol, String> referencedEventFrames;
+    if (corpusEventLinking.isPresent()) {
+      referencedEventFrames = referencedEventFrames(corpusEventLinking.get());
+    } else {
+      referencedEventFrames = ImmutableSetMultimap.of();
+    }
+
+    // each document is read and checked once on a worker thread, but the results are handed
+    // back in document ID order so errors are always reported in the same order
+    final ImmutableList<Symbol> docIDsInOrder =
+        SymbolUtils.byStringOrdering().immutableSortedCopy(docIDs);
+    final PrefetchingDocumentIterator<DocumentCheck> checks =
+        PrefetchingDocumentIterator.create(docIDsInOrder,
+            new PrefetchingDocumentIterator.DocumentLoader<DocumentCheck>() {
+              @Override
+              public DocumentCheck load(final Symbol docID) {
+                return checkDocument(docID, outputStore, linkingStore,
+                    referencedEventFrames.get(docID), sourceText, systemOutputStoreFile, dump,
+                    metrics);
+              }
+            }, 2 * numThreads, numThreads);
+
+    final Map<Symbol, ImmutableMap<String, ResponseSet>> docEventFrames = Maps.newHashMap();
     int numErrors = 0;
-    for (final Symbol docID : docIDs) {
-      try {
-        final ArgumentOutput docOutput = outputStore.read(docID).arguments();
-        log.info("For document {} got {} responses", docID, docOutput.size());
+    try {
+      while (checks.hasNext()) {
+        final DocumentCheck check = checks.next();
+        warnings.addAll(check.warnings);
+        if (check.dump.isPresent()) {
+          log.info(check.dump.get());
+        }
+        docEventFrames.put(check.docID, check.eventFrames);
+        // invalid offsets are not counted towards the maximum, as before
+        errors.addAll(check.offsetError.asSet());
+        if (check.error.isPresent()) {
+          errors.add(check.error.get());
+          ++numErrors;
+          if (numErrors > maxErrors) {
+            return new Result(errors, warnings);
+          }
+        }
+      }
+    } finally {
+      checks.close();
+      sourceText.close();
+      closeArchive(archive);
+    }
+
+    if (corpusEventLinking.isPresent()) {
+      try (StageMetrics.Timer.Context ignored = metrics.timePhase("checking corpus linking")) {
+        validateCorpusEventFrame(docEventFrames, corpusEventLinking.get());
+      } catch (Exception e) {
+        errors.add(e);
+      }
+    }
+
+    // this might not get called, but for read-only use with the default
+    // implementation this is not a problem
+    outputStore.close();
+    metrics.logSummary();
+    return new Result(errors, warnings, metrics);
+  }
+
+  /**
+   * Everything learned from reading and checking a single document.
+   */
+  private static final class DocumentCheck {
+
+    private final Symbol docID;
+    private final Optional<Throwable> offsetError;
+    private final Optional<Throwable> error;
+    private final ImmutableList<String> warnings;
+    private final Optional<String> dump;
+    private final ImmutableMap<String, ResponseSet> eventFrames;
+
+    private DocumentCheck(final Symbol docID, final Optional<Throwable> offsetError,
+        final Optional<Throwable> error, final Iterable<String> warnings,
+        final Optional<String> dump, final Map<String, ResponseSet> eventFrames) {
+      this.docID = checkNotNull(docID);
+      this.offsetError = checkNotNull(offsetError);
+      this.error = checkNotNull(error);
+      this.warnings = ImmutableList.copyOf(warnings);
+      this.dump = checkNotNull(dump);
+      this.eventFrames = ImmutableMap.copyOf(eventFrames);
+    }
+  }
+
+  /**
+   * Reads the arguments and linking for a document exactly once and runs every document-level
+   * check on them, looking up original text in {@code sourceText}.  Failures are recorded in the
+   * result rather than thrown.  May be called from several threads at once.
+   */
+  private DocumentCheck checkDocument(final Symbol docID, final SystemOutputStore outputStore,
+      final Optional<LinkingStore> linkingStore, final Set<String> referencedEventFrameIDs,
+      final SourceCorpusIndex sourceText, final File systemOutputStoreFile, final boolean dump,
+      final StageMetrics metrics) {
+    final List<String> warnings = Lists.newArrayList();
+    final Map<String, ResponseSet> eventFrames = Maps.newHashMap();
+    Optional<Throwable> offsetError = Optional.absent();
+    Optional<String> dumped = Optional.absent();
+
+    try {
+      final DocumentSystemOutput docSystemOutput;
+      try (StageMetrics.Timer.Context ignored = metrics.time("reading system output")) {
+        docSystemOutput = outputStore.read(docID);
+      }
+      final ArgumentOutput docOutput = docSystemOutput.arguments();
+      metrics.histogram("responses per document").record(docOutput.size());
+      log.info("For document {} got {} responses", docID, docOutput.size());
+
+      // the text is only needed to check offsets against, so if it is missing this will already
+      // have been reported for the whole store
+      boolean offsetsValid = sourceText.contains(docID);
+      int textLength = 0;
+      if (offsetsValid) {
+        try (StageMetrics.Timer.Context ignored = metrics.time("indexing source text")) {
+          textLength = sourceText.length(docID);
+        }
+      }
+      try (StageMetrics.Timer.Context ignored = metrics.time("checking arguments")) {
+        if (offsetsValid) {
+          try {
+            assertAllOffsetsValid(docID, docOutput, textLength - 1);
+          } catch (Exception e) {
+            // we can recover from invalid offsets and find more errors
+            offsetError = Optional.<Throwable>of(e);
+            offsetsValid = false;
+          }
+        }
 
         for (final Response response : docOutput.responses()) {
           assertIdenticalDocID(response, docID);
           assertValidTypes(response);
         }
-        warnOnMissingOffsets(systemOutputStoreFile, docID, docOutput.responses(), docIDMap);
+        if (offsetsValid) {
+          warnOnMissingOffsets(systemOutputStoreFile, docID, docOutput.responses(), sourceText);
+        }
 
         for (final Response response : docOutput.responses()) {
           // lets keep all hacks as high level as possible
@@ -219,61 +424,75 @@ public final class ValidateSystemOutput {
                 + " contains a Movement.Transport-Place argument. It will be ignored during scoring");
           }
         }
+      }
 
-        if (docOutput.size() > 0 && dump) {
-          dumpResponses(docIDMap, docOutput);
-        }
+      if (docOutput.size() > 0 && dump && offsetsValid) {
+        dumped = Optional.of(renderResponses(docOutput, sourceText));
+      }
 
-        if (linkingStore.isPresent()) {
-          checkLinkingValidity(docID, docOutput, linkingStore);
+      if (linkingStore.isPresent()) {
+        // 2015 and 2016 stores already read the linking along with the arguments
+        final Optional<ResponseLinking> responseLinking;
+        if (docSystemOutput instanceof DocumentSystemOutput2015) {
+          responseLinking = Optional.of(((DocumentSystemOutput2015) docSystemOutput).linking());
+        } else {
+          try (StageMetrics.Timer.Context ignored = metrics.time("reading linking")) {
+            responseLinking = linkingStore.get().read(docOutput);
+          }
         }
-      } catch (Exception e) {
-        errors.add(e);
-        ++numErrors;
-        if (numErrors > maxErrors) {
-          return new Result(errors, warnings);
+        if (responseLinking.isPresent() && responseLinking.get().responseSetIds().isPresent()) {
+          final ImmutableBiMap<String, ResponseSet> responseSetIds =
+              responseLinking.get().responseSetIds().get();
+          for (final String eventFrameID : referencedEventFrameIDs) {
+            if (responseSetIds.containsKey(eventFrameID)) {
+              eventFrames.put(eventFrameID, responseSetIds.get(eventFrameID));
+            }
+          }
+        }
+        try (StageMetrics.Timer.Context ignored = metrics.time("checking linking")) {
+          checkLinkingValidity(docID, docOutput, responseLinking);
         }
       }
+    } catch (Exception e) {
+      return new DocumentCheck(docID, offsetError, Optional.<Throwable>of(e), warnings, dumped,
+          eventFrames);
     }
+    return new DocumentCheck(docID, offsetError, Optional.<Throwable>absent(), warnings, dumped,
+        eventFrames);
+  }
 
-    if (corpusEventLinking.isPresent()) {
-      try {
-        validateCorpusEventFrame(outputStore, linkingStore, corpusEventLinking.get());
-      } catch (Exception e) {
-        errors.add(e);
+  private static ImmutableSetMultimap<Symbol, String> referencedEventFrames(
+      final CorpusEventLinking corpusEventLinking) {
+    final ImmutableSetMultimap.Builder<Symbol, String> ret = ImmutableSetMultimap.builder();
+    for (final CorpusEventFrame frame : corpusEventLinking.corpusEventFrames()) {
+      for (final DocEventFrameReference docEventFrameReference : frame.docEventFrames()) {
+        ret.put(docEventFrameReference.docID(), docEventFrameReference.eventFrameID());
       }
     }
-
-    // this might not get called, but for read-only use with the default
-    // implementation this is not a problem
-    outputStore.close();
-    return new Result(errors, warnings);
+    return ret.build();
   }
 
-  private void validateCorpusEventFrame(final SystemOutputStore outputStore,
-      final Optional<LinkingStore> linkingStore,
+  private void validateCorpusEventFrame(
+      final Map<Symbol, ImmutableMap<String, ResponseSet>> docEventFrames,
       final CorpusEventLinking corpusEventLinking) throws Exception {
     for (final CorpusEventFrame frame : corpusEventLinking.corpusEventFrames()) {
-      final ImmutableMultimap<Symbol, DocEventFrameReference> idToFrame =
-          FluentIterable.from(frame.docEventFrames()).index(
-              DocEventFrameReferenceFunctions.docID());
       final ImmutableSet.Builder<Response> allLinkedResponsesB = ImmutableSet.builder();
 
-      for (final Symbol docID : idToFrame.keySet()) {
-        final DocumentSystemOutput output = outputStore.read(docID);
-        final Optional<ResponseLinking> linking = linkingStore.get().read(output.arguments());
-        checkState(linking.isPresent());
-        checkNotNull(linking.get().responseSetIds());
-        checkState(linking.get().responseSetIds().isPresent());
-
-        for (final DocEventFrameReference docEventFrameReference : idToFrame.get(docID)) {
-          checkNotNull(docEventFrameReference);
-          checkNotNull(docEventFrameReference.eventFrameID());
-          checkNotNull(
-              linking.get().responseSetIds().get().get(docEventFrameReference.eventFrameID()));
-          allLinkedResponsesB.addAll(
-              linking.get().responseSetIds().get().get(docEventFrameReference.eventFrameID()));
+      for (final DocEventFrameReference docEventFrameReference : frame.docEventFrames()) {
+        final ImmutableMap<String, ResponseSet> eventFrames =
+            docEventFrames.get(docEventFrameReference.docID());
+        if (eventFrames == null) {
+          throw new Exception(String.format(
+              "Corpus event frame %s refers to document %s, which is not in the system output",
+              frame.id(), docEventFrameReference.docID()));
         }
+        final ResponseSet responseSet = eventFrames.get(docEventFrameReference.eventFrameID());
+        if (responseSet == null) {
+          throw new Exception(String.format(
+              "Corpus event frame %s refers to event frame %s, which is not in the linking for %s",
+              frame.id(), docEventFrameReference.eventFrameID(), docEventFrameReference.docID()));
+        }
+        allLinkedResponsesB.addAll(responseSet);
       }
 
       final ImmutableSet<Response> allLinkedResponses = allLinkedResponsesB.build();
@@ -294,25 +513,22 @@ public final class ValidateSystemOutput {
    * roles
    */
   private void warnOnMissingOffsets(final File systemOutputStoreFile, final Symbol docID,
-      final ImmutableSet<Response> responses,
-      final Map<Symbol, File> docIDMap) throws IOException {
-    final String text = Files.asCharSource(docIDMap.get(docID), Charsets.UTF_8).read();
+      final ImmutableSet<Response> responses, final SourceCorpusIndex sourceText) {
     for (final Response r : FluentIterable.from(responses)
         .filter(Predicates.compose(not(equalTo(TIME)), ResponseFunctions.role()))) {
       final KBPString cas = r.canonicalArgument();
       final String casTextInRaw =
-          resolveCharOffsets(cas.charOffsetSpan(), docID, text).replaceAll("\\s+", " ");
+          resolveCharOffsets(cas.charOffsetSpan(), docID, sourceText).replaceAll("\\s+", " ");
       // allow whitespace
       if (!casTextInRaw.contains(cas.string())) {
         log.warn("Warning for {} - response {} CAS does not match text span of {} ",
-            systemOutputStoreFile.getAbsolutePath(), renderResponse(r, text), casTextInRaw);
+            systemOutputStoreFile.getAbsolutePath(), renderResponse(r, sourceText), casTextInRaw);
       }
     }
   }
 
   private void checkLinkingValidity(final Symbol docID, final ArgumentOutput docOutput,
-      final Optional<LinkingStore> linkingStore) throws IOException {
-    final Optional<ResponseLinking> responseLinking = linkingStore.get().read(docOutput);
+      final Optional<ResponseLinking> responseLinking) {
     if (!responseLinking.isPresent()) {
       throw new RuntimeException("Linking missing for " + docID);
     }
@@ -352,19 +568,52 @@ public final class ValidateSystemOutput {
   private static final ImmutableSet<String> ALLOWED_SUBDIRS = ImmutableSet.of("arguments",
       "linking", "corpusLinking");
 
-  private void assertExactlyTwoSubdirectories(final File outputStoreDir) throws IOException {
-    checkArgument(outputStoreDir.isDirectory());
-    if (!new File(outputStoreDir, "arguments").isDirectory()) {
+  private static LinkingStore openLinkingStore(final LinkingStoreSource linkingStoreSource,
+      final File outputStore, final Optional<SubmissionArchive> archive) throws IOException {
+    if (archive.isPresent()) {
+      return linkingStoreSource.openLinkingStore(archive.get(), "linking");
+    } else {
+      return linkingStoreSource.openLinkingStore(new File(outputStore, "linking"));
+    }
+  }
+
+  private static void closeArchive(final Optional<SubmissionArchive> archive) throws IOException {
+    if (archive.isPresent()) {
+      archive.get().close();
+    }
+  }
+
+  private static boolean hasSubdirectory(final File outputStore,
+      final Optional<SubmissionArchive> archive, final String name) {
+    if (archive.isPresent()) {
+      return archive.get().isDirectory(name);
+    } else {
+      return new File(outputStore, name).isDirectory();
+    }
+  }
+
+  private static ImmutableSet<String> topLevelNames(final File outputStore,
+      final Optional<SubmissionArchive> archive) {
+    if (archive.isPresent()) {
+      return archive.get().childNames("");
+    } else {
+      return FluentIterable.from(ImmutableList.copyOf(outputStore.listFiles()))
+          .transform(FileUtils.toNameFunction())
+          .toSet();
+    }
+  }
+
+  private void assertExactlyTwoSubdirectories(final File outputStore,
+      final Optional<SubmissionArchive> archive) throws IOException {
+    checkArgument(archive.isPresent() || outputStore.isDirectory());
+    if (!hasSubdirectory(outputStore, archive, "arguments")) {
       throw new IOException(
           "Expected system output to be contain a subdirectory named 'arguments'");
     }
-    if (!new File(outputStoreDir, "linking").isDirectory()) {
+    if (!hasSubdirectory(outputStore, archive, "linking")) {
       throw new IOException("Expected system output to be contain a subdirectory named 'linking'");
     }
-    final ImmutableSet<String> subdirectoryNames =
-        FluentIterable.from(ImmutableList.copyOf(outputStoreDir.listFiles()))
-            .transform(FileUtils.toNameFunction())
-            .toSet();
+    final ImmutableSet<String> subdirectoryNames = topLevelNames(outputStore, archive);
     final boolean hasValidDirectoryStructure = subdirectoryNames.containsAll(REQUIRED_SUBDIRS)
         && ALLOWED_SUBDIRS.containsAll(subdirectoryNames);
 
@@ -375,23 +624,25 @@ public final class ValidateSystemOutput {
     }
   }
 
-  private void assertExactly2016Subdirectories(final File outputStoreDir) throws IOException {
-    checkArgument(outputStoreDir.isDirectory());
-    if (!new File(outputStoreDir, "arguments").isDirectory()) {
+  private void assertExactly2016Subdirectories(final File outputStore,
+      final Optional<SubmissionArchive> archive) throws IOException {
+    checkArgument(archive.isPresent() || outputStore.isDirectory());
+    if (!hasSubdirectory(outputStore, archive, "arguments")) {
       throw new IOException(
           "Expected system output to be contain a subdirectory named 'arguments'");
     }
-    if (!new File(outputStoreDir, "linking").isDirectory()) {
+    if (!hasSubdirectory(outputStore, archive, "linking")) {
       throw new IOException("Expected system output to be contain a subdirectory named 'linking'");
     }
-    if (!new File(outputStoreDir, "corpusLinking").isDirectory()) {
+    if (!hasSubdirectory(outputStore, archive, "corpusLinking")) {
       throw new IOException(
           "Expected system output to be contain a subdirectory named 'corpusLinking'");
     }
-    if (outputStoreDir.listFiles().length != 3) {
+    final ImmutableSet<String> topLevelNames = topLevelNames(outputStore, archive);
+    if (topLevelNames.size() != 3) {
       throw new IOException(
           "Expected system output to contain exactly three sub-directories, but it contains "
-              + Arrays.toString(outputStoreDir.listFiles()) + " things");
+              + topLevelNames + " things");
     }
   }
 
@@ -407,23 +658,17 @@ public final class ValidateSystemOutput {
     }
   }
 
-  private void assertAllOffsetsValid(SystemOutputStore outputStore, Map<Symbol, File> docIdMap)
-      throws IOException {
-    assertDocsAreContained(outputStore.docIDs(), docIdMap.keySet(), "argument");
-
-    for (final Symbol docId : outputStore.docIDs()) {
-      final String originalText = Files.asCharSource(docIdMap.get(docId), Charsets.UTF_8).read();
-      final int maxOffset = originalText.length() - 1;
-      for (final Response response : outputStore.read(docId).arguments().responses()) {
-        assertValidCharOffsetSpan(response.canonicalArgument().charOffsetSpan(),
-            "canonical argument string", docId, maxOffset);
-        assertValidCharOffsetSpan(response.baseFiller(), "base filler", docId, maxOffset);
-        for (final CharOffsetSpan span : response.additionalArgumentJustifications()) {
-          assertValidCharOffsetSpan(span, "additional argument justification", docId, maxOffset);
-        }
-        for (final CharOffsetSpan span : response.predicateJustifications()) {
-          assertValidCharOffsetSpan(span, "predicate justification", docId, maxOffset);
-        }
+  private void assertAllOffsetsValid(final Symbol docId, final ArgumentOutput docOutput,
+      final int maxOffset) {
+    for (final Response response : docOutput.responses()) {
+      assertValidCharOffsetSpan(response.canonicalArgument().charOffsetSpan(),
+          "canonical argument string", docId, maxOffset);
+      assertValidCharOffsetSpan(response.baseFiller(), "base filler", docId, maxOffset);
+      for (final CharOffsetSpan span : response.additionalArgumentJustifications()) {
+        assertValidCharOffsetSpan(span, "additional argument justification", docId, maxOffset);
+      }
+      for (final CharOffsetSpan span : response.predicateJustifications()) {
+        assertValidCharOffsetSpan(span, "predicate justification", docId, maxOffset);
       }
     }
   }
@@ -463,20 +708,18 @@ public final class ValidateSystemOutput {
     }
   }
 
-  private static void dumpResponses(Map<Symbol, File> docIDMap, ArgumentOutput docOutput)
-      throws IOException {
-    final String originalText = getOriginalText(docOutput.docId(), docIDMap);
+  private static String renderResponses(ArgumentOutput docOutput, SourceCorpusIndex sourceText) {
     final StringBuilder msg = new StringBuilder();
     // more readable if we skip a line after the log stamp
     msg.append("\n");
     for (final Response response : docOutput.responses()) {
-      msg.append(renderResponse(response, originalText));
+      msg.append(renderResponse(response, sourceText));
     }
-    log.info(msg.toString());
+    return msg.toString();
   }
 
 
-  private static String renderResponse(Response response, String originalText) {
+  private static String renderResponse(Response response, SourceCorpusIndex sourceText) {
     final StringBuilder sb = new StringBuilder();
 
     sb.append("\t");
@@ -486,7 +729,7 @@ public final class ValidateSystemOutput {
     sb.append("\n");
     final String CASFromOriginalText =
         resolveCharOffsets(response.canonicalArgument().charOffsetSpan(),
-            response.docID(), originalText);
+            response.docID(), sourceText);
 
     if (CASFromOriginalText.equals(response.canonicalArgument().string())) {
       sb.append("\t\tCAS: ").append(CASFromOriginalText)
@@ -499,14 +742,14 @@ public final class ValidateSystemOutput {
 
     sb.append("\n\t\tPredicate justification(s): ");
     for (final CharOffsetSpan pjSpan : response.predicateJustifications()) {
-      sb.append("\t\t\t").append(resolveCharOffsets(pjSpan, response.docID(), originalText));
+      sb.append("\t\t\t").append(resolveCharOffsets(pjSpan, response.docID(), sourceText));
     }
     sb.append("\n\t\tBase filler: ")
-        .append(resolveCharOffsets(response.baseFiller(), response.docID(), originalText));
+        .append(resolveCharOffsets(response.baseFiller(), response.docID(), sourceText));
     if (!response.additionalArgumentJustifications().isEmpty()) {
       sb.append("\n\t\tAdditional argument justification(s): ");
       for (final CharOffsetSpan ajSpan : response.additionalArgumentJustifications()) {
-        sb.append("\t\t\t").append(resolveCharOffsets(ajSpan, response.docID(), originalText));
+        sb.append("\t\t\t").append(resolveCharOffsets(ajSpan, response.docID(), sourceText));
       }
     }
 
@@ -516,31 +759,17 @@ public final class ValidateSystemOutput {
   }
 
   private static String resolveCharOffsets(final CharOffsetSpan span, Symbol docID,
-      String originalText) {
+      SourceCorpusIndex sourceText) {
     try {
-      return originalText.substring(span.startInclusive(), span.endInclusive() + 1);
+      return sourceText.text(docID, span);
     } catch (IndexOutOfBoundsException iobe) {
       log.error(
           "Offsets {} out of bounds for response in document {}. Document is {} characters long",
-          span, docID, originalText.length());
+          span, docID, sourceText.length(docID));
       throw iobe;
     }
   }
 
-  private static String getOriginalText(Symbol docID, Map<Symbol, File> docIDMap)
-      throws IOException {
-    // can't actually return null
-    String originalText = null;
-    final File originalTextFile = docIDMap.get(docID);
-    if (originalTextFile != null) {
-      originalText = Files.asCharSource(originalTextFile, Charsets.UTF_8).read();
-    } else {
-      log.error("No original text found for document ID {} in supplied mapping", docID);
-      System.exit(1);
-    }
-    return originalText;
-  }
-
   public static void main(String[] argv) throws IOException {
     if (argv.length != 1) {
       usage();
@@ -552,8 +781,10 @@ public final class ValidateSystemOutput {
 
       final TypeAndRoleValidator typeAndRoleValidator =
           TypeAndRoleValidator.createFromParameters(params);
+      final int numThreads = params.getOptionalPositiveInteger("numThreads").or(1);
       final ValidateSystemOutput validator =
-          create(typeAndRoleValidator, LinkingValidators.alwaysValidValidator(), NO_PREPROCESSING);
+          create(typeAndRoleValidator, LinkingValidators.alwaysValidValidator(), NO_PREPROCESSING,
+              numThreads);
 
       final File systemOutputStoreFile = params.getExistingFileOrDirectory("systemOutputStore");
       final SystemOutputLayout layout = SystemOutputLayout.ParamParser.fromParamVal(
@@ -571,6 +802,9 @@ public final class ValidateSystemOutput {
         validationResult =
             validator.validateOnly(systemOutputStoreFile, Integer.MAX_VALUE, docIDMap, layout);
       }
+      if (params.isPresent("metricsOutput")) {
+        validationResult.metrics().writeJSON(params.getCreatableFile("metricsOutput"));
+      }
       if (!validationResult.wasSuccessful()) {
         throw validationResult.errors().get(0);
       }
@@ -584,11 +818,18 @@ public final class ValidateSystemOutput {
 
     private final ImmutableList<Throwable> errors;
     private final ImmutableList<String> warnings;
+    private final StageMetrics metrics;
 
     private Result(final Iterable<? extends Throwable> errors,
         final Iterable<String> warnings) {
+      this(errors, warnings, StageMetrics.disabled());
+    }
+
+    private Result(final Iterable<? extends Throwable> errors,
+        final Iterable<String> warnings, final StageMetrics metrics) {
       this.errors = ImmutableList.copyOf(errors);
       this.warnings = ImmutableList.copyOf(warnings);
+      this.metrics = checkNotNull(metrics);
     }
 
     public static Result forErrors(Iterable<? extends Throwable> errors) {
@@ -606,6 +847,14 @@ public final class ValidateSystemOutput {
     public boolean wasSuccessful() {
       return errors.isEmpty();
     }
+
+    /**
+     * The time spent in each stage of validation. This is disabled if validation stopped before
+     * checking every document.
+     */
+    public StageMetrics metrics() {
+      return metrics;
+    }
   }
 
 
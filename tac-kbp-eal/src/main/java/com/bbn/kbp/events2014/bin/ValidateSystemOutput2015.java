@@ -52,7 +52,8 @@ public final class ValidateSystemOutput2015 {
             "\tdocIDMap: (only if dump is true) a list of tab-separated pairs of doc ID and path to original text.\n"
             +
             "\tvalidRoles: is data/2015.types.txt (for KBP 2015)\n" +
-            "\talwaysValidRoles: is 'Time, Place' (for KBP 2015)\n");
+            "\talwaysValidRoles: is 'Time, Place' (for KBP 2015)\n" +
+            "\tnumThreads: (optional) number of documents to check in parallel. Defaults to 1\n");
     System.exit(1);
   }
 
@@ -69,7 +70,8 @@ public final class ValidateSystemOutput2015 {
           TypeAndRoleValidator.createFromParameters(params);
       final ValidateSystemOutput validator = ValidateSystemOutput.create(typeAndRoleValidator,
           LinkingValidators.alwaysValidValidator(),
-          convertToStandardIds(LinkingStoreSource.createFor2015(), KBPEA2015OutputLayout.get()));
+          convertToStandardIds(LinkingStoreSource.createFor2015(), KBPEA2015OutputLayout.get()),
+          params.getOptionalPositiveInteger("numThreads").or(1));
 
       final File systemOutputStoreFile = params.getExistingFileOrDirectory("systemOutputStore");
 
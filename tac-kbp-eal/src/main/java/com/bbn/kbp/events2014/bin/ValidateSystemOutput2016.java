@@ -79,7 +79,8 @@ public final class ValidateSystemOutput2016 {
       final ValidateSystemOutput validator =
           ValidateSystemOutput.create(typeAndRoleValidator, linkingValidator,
               ValidateSystemOutput2015.convertToStandardIds(LinkingStoreSource.createFor2016(),
-                  KBPEA2016OutputLayout.get()));
+                  KBPEA2016OutputLayout.get()),
+              params.getOptionalPositiveInteger("numThreads").or(1));
 
       final File systemOutputStoreFile = params.getExistingFileOrDirectory("systemOutputStore");
 
@@ -0,0 +1,262 @@
+package com.bbn.kbp.events2014.diagnostics;
+
+import com.bbn.bue.common.parameters.Parameters;
+import com.bbn.kbp.events2014.TACKBPEALException;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.MessageFormatter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A channel for detailed per-item diagnostics from the scorers and query matchers (why an item
+ * was aligned or not, what each item contributed to a score, and so on), kept separate from
+ * normal logging so that ordinary runs pay nothing for it.
+ *
+ * Diagnostics are divided into named {@link Channel}s, each written to {@code <name>.tsv} in the
+ * diagnostics directory as one line per record: the record's subject (usually a document or query
+ * ID), a tab, and the message.  Messages use slf4j-style {@code {}} placeholders and are rendered
+ * on a background thread, so the caller does no string formatting at all; arguments must
+ * therefore not be mutated after being recorded.  When diagnostics are {@link #disabled()},
+ * recording does nothing.  Callers who would have to do work just to compute arguments should
+ * check {@link Channel#isEnabled()} first.
+ *
+ * Records from one thread to one channel appear in the order they were made. Failures while
+ * writing are thrown from {@link #close()}, which must be called to be sure everything has been
+ * written.
+ */
+public final class Diagnostics implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(Diagnostics.class);
+
+  /**
+   * The parameter naming the directory to write diagnostics to.  Diagnostics are disabled if it
+   * is absent.
+   */
+  public static final String DIAGNOSTICS_DIRECTORY_PARAM = "diagnosticsDirectory";
+
+  private static final int MAX_PENDING_RECORDS = 10000;
+  private static final Diagnostics DISABLED = new Diagnostics(null);
+  private static final Record END = new Record(null, null, null, null);
+
+  // null iff disabled
+  private final File directory;
+  private final BlockingQueue<Record> pending;
+  private final Thread writerThread;
+  private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+  // guarded by this
+  private final Map<String, Channel> channels = Maps.newHashMap();
+  private final Channel disabledChannel = new Channel(this, "disabled");
+  private volatile boolean closed = false;
+
+  private Diagnostics(final File directory) {
+    this.directory = directory;
+    if (directory != null) {
+      this.pending = new ArrayBlockingQueue<Record>(MAX_PENDING_RECORDS);
+      this.writerThread = new Thread(new RecordWriter(), "diagnostics-writer");
+      writerThread.setDaemon(true);
+      writerThread.start();
+    } else {
+      this.pending = null;
+      this.writerThread = null;
+    }
+  }
+
+  /**
+   * Diagnostics which record nothing.
+   */
+  public static Diagnostics disabled() {
+    return DISABLED;
+  }
+
+  /**
+   * Diagnostics which write each channel to a file in {@code directory}, which is created if
+   * necessary.
+   */
+  public static Diagnostics writingTo(final File directory) throws IOException {
+    checkNotNull(directory);
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Could not create diagnostics directory " + directory);
+    }
+    log.info("Writing diagnostics to {}", directory);
+    return new Diagnostics(directory);
+  }
+
+  /**
+   * Diagnostics written to the directory given by {@link #DIAGNOSTICS_DIRECTORY_PARAM}, or
+   * disabled diagnostics if it is absent.
+   */
+  public static Diagnostics fromParameters(final Parameters params) throws IOException {
+    if (params.isPresent(DIAGNOSTICS_DIRECTORY_PARAM)) {
+      return writingTo(params.getCreatableDirectory(DIAGNOSTICS_DIRECTORY_PARAM));
+    } else {
+      return disabled();
+    }
+  }
+
+  public boolean isEnabled() {
+    return directory != null;
+  }
+
+  /**
+   * The named channel. {@code name} is used as a file name, so should be a simple identifier.
+   */
+  public synchronized Channel channel(final String name) {
+    checkArgument(!name.isEmpty() && name.indexOf(File.separatorChar) < 0,
+        "Illegal diagnostics channel name %s", name);
+    if (!isEnabled()) {
+      return disabledChannel;
+    }
+    Channel ret = channels.get(name);
+    if (ret == null) {
+      ret = new Channel(this, name);
+      channels.put(name, ret);
+    }
+    return ret;
+  }
+
+  /**
+   * Waits for every record to be written and closes the channel files.  Throws the first failure
+   * encountered while writing, if any.
+   */
+  @Override
+  public void close() throws IOException {
+    if (!isEnabled() || closed) {
+      return;
+    }
+    closed = true;
+    try {
+      pending.put(END);
+      writerThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new TACKBPEALException("Interrupted while waiting for diagnostics to be written", e);
+    }
+    final Throwable t = failure.get();
+    if (t != null) {
+      Throwables.propagateIfPossible(t, IOException.class);
+      throw new TACKBPEALException("Exception while writing diagnostics", t);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return isEnabled() ? "Diagnostics(" + directory + ")" : "Diagnostics(disabled)";
+  }
+
+  private void enqueue(final Record record) {
+    checkState(!closed, "Cannot record diagnostics after they are closed");
+    // if writing has failed there is no point in queueing more, and nothing will take it
+    if (failure.get() == null) {
+      try {
+        pending.put(record);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new TACKBPEALException("Interrupted while recording diagnostics", e);
+      }
+    }
+  }
+
+  /**
+   * A named stream of diagnostic records.
+   */
+  public static final class Channel {
+
+    private final Diagnostics diagnostics;
+    private final String name;
+
+    private Channel(final Diagnostics diagnostics, final String name) {
+      this.diagnostics = diagnostics;
+      this.name = name;
+    }
+
+    public boolean isEnabled() {
+      return diagnostics.isEnabled();
+    }
+
+    /**
+     * Records a message about {@code subject}. The message is {@code format} with each {@code {}}
+     * replaced by the string form of the next argument, computed later on another thread.
+     */
+    public void record(final Object subject, final String format, final Object... args) {
+      if (diagnostics.isEnabled()) {
+        diagnostics.enqueue(new Record(name, checkNotNull(subject), checkNotNull(format), args));
+      }
+    }
+  }
+
+  private static final class Record {
+
+    private final String channel;
+    private final Object subject;
+    private final String format;
+    private final Object[] args;
+
+    private Record(final String channel, final Object subject, final String format,
+        final Object[] args) {
+      this.channel = channel;
+      this.subject = subject;
+      this.format = format;
+      this.args = args;
+    }
+  }
+
+  /**
+   * Renders and writes records until told to stop. Each channel's file is opened the first time
+   * something is recorded to it.
+   */
+  private final class RecordWriter implements Runnable {
+
+    private final Map<String, Writer> writers = Maps.newHashMap();
+
+    @Override
+    public void run() {
+      try {
+        Record record;
+        while ((record = pending.take()) != END) {
+          write(record);
+        }
+      } catch (Throwable t) {
+        failure.compareAndSet(null, t);
+        // keep anyone blocked on a full queue from waiting forever
+        pending.clear();
+      } finally {
+        for (final Writer writer : writers.values()) {
+          try {
+            writer.close();
+          } catch (IOException e) {
+            failure.compareAndSet(null, e);
+          }
+        }
+      }
+    }
+
+    private void write(final Record record) throws IOException {
+      Writer writer = writers.get(record.channel);
+      if (writer == null) {
+        writer = Files.newWriter(new File(directory, record.channel + ".tsv"), Charsets.UTF_8);
+        writers.put(record.channel, writer);
+      }
+      writer.append(String.valueOf(record.subject)).append('\t')
+          .append(MessageFormatter.arrayFormat(record.format, record.args).getMessage())
+          .append('\n');
+    }
+  }
+}
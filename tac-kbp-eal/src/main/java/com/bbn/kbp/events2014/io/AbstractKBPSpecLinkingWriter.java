@@ -1,17 +1,12 @@
 package com.bbn.kbp.events2014.io;
 
-import com.bbn.kbp.events2014.ResponseFunctions;
+import com.bbn.kbp.events2014.Response;
 import com.bbn.kbp.events2014.ResponseLinking;
 import com.bbn.kbp.events2014.ResponseSet;
 
-import com.google.common.base.Joiner;
-import com.google.common.collect.Lists;
 import com.google.common.io.CharSink;
 
 import java.io.IOException;
-import java.util.List;
-
-import static com.google.common.collect.Iterables.transform;
 
 /**
  * Created by rgabbard on 6/26/17.
@@ -20,18 +15,36 @@ abstract class AbstractKBPSpecLinkingWriter implements LinkingFileWriter {
 
   @Override
   public void write(ResponseLinking responseLinking, CharSink sink) throws IOException {
-    final List<String> lines = Lists.newArrayList();
+    final StringBuilder sb = new StringBuilder();
+    render(responseLinking, sb);
+    sink.write(sb);
+  }
+
+  @Override
+  public void render(ResponseLinking responseLinking, StringBuilder sb) throws IOException {
     for (final ResponseSet responseSet : responseLinking.responseSets()) {
-      lines.add(renderLine(responseSet, responseLinking));
+      appendLine(responseSet, responseLinking, sb);
+      sb.append('\n');
     }
 
     // incompletes last
-    lines.add("INCOMPLETE\t" + Joiner.on("\t").join(
-        transform(responseLinking.incompleteResponses(), ResponseFunctions.uniqueIdentifier())));
-
-    sink.writeLines(lines, "\n");
+    sb.append("INCOMPLETE\t");
+    appendResponseIDs(responseLinking.incompleteResponses(), '\t', sb);
+    sb.append('\n');
   }
 
-  abstract String renderLine(ResponseSet responseSet, ResponseLinking responseLinking)
-      throws IOException;
+  abstract void appendLine(ResponseSet responseSet, ResponseLinking responseLinking,
+      StringBuilder sb) throws IOException;
+
+  static void appendResponseIDs(final Iterable<Response> responses, final char separator,
+      final StringBuilder sb) {
+    boolean first = true;
+    for (final Response response : responses) {
+      if (!first) {
+        sb.append(separator);
+      }
+      sb.append(response.uniqueIdentifier());
+      first = false;
+    }
+  }
 }
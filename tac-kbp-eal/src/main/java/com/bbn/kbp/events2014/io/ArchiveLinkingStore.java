@@ -0,0 +1,95 @@
+package com.bbn.kbp.events2014.io;
+
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.kbp.events2014.AnswerKey;
+import com.bbn.kbp.events2014.ArgumentOutput;
+import com.bbn.kbp.events2014.Response;
+import com.bbn.kbp.events2014.ResponseLinking;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.CharSource;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A read-only {@link LinkingStore} for a directory within a {@link SubmissionArchive}, laid out
+ * like a {@link DirectoryLinkingStore}. Closing the store closes the archive.
+ */
+final class ArchiveLinkingStore implements LinkingStore {
+
+  private static final ImmutableSet<String> ACCEPTABLE_SUFFIXES = ImmutableSet.of("linking");
+
+  private final SubmissionArchive archive;
+  private final String directory;
+  private final LinkingFileLoader linkingLoader;
+
+  ArchiveLinkingStore(final SubmissionArchive archive, final String directory,
+      final LinkingFileLoader linkingLoader) {
+    checkArgument(archive.isDirectory(directory), "%s does not contain a linking directory %s",
+        archive, directory);
+    this.archive = checkNotNull(archive);
+    this.directory = checkNotNull(directory);
+    this.linkingLoader = checkNotNull(linkingLoader);
+  }
+
+  @Override
+  public ImmutableSet<Symbol> docIDs() {
+    return FluentIterable.from(archive.fileNames(directory))
+        .transform(Symbol.FromString)
+        .toSet();
+  }
+
+  @Override
+  public Optional<ResponseLinking> read(final ArgumentOutput argumentOutput) throws IOException {
+    return readTransformingIDs(argumentOutput.docId(), argumentOutput.responses(),
+        Optional.<ImmutableMap<String, String>>absent(),
+        Optional.<ImmutableMap.Builder<String, String>>absent());
+  }
+
+  @Override
+  public Optional<ResponseLinking> read(final AnswerKey answerKey) throws IOException {
+    return readTransformingIDs(answerKey.docId(), answerKey.allResponses(),
+        Optional.<ImmutableMap<String, String>>absent(),
+        Optional.<ImmutableMap.Builder<String, String>>absent());
+  }
+
+  @Override
+  public Optional<ResponseLinking> readTransformingIDs(final Symbol docID,
+      final Set<Response> responses,
+      final Optional<ImmutableMap<String, String>> foreignResponseIDToLocal,
+      final Optional<ImmutableMap.Builder<String, String>> foreignLinkingIDToLocal)
+      throws IOException {
+    final CharSource source;
+    try {
+      source = AssessmentSpecFormats.bareOrWithSuffix(archive, directory, docID.asString(),
+          ACCEPTABLE_SUFFIXES);
+    } catch (FileNotFoundException e) {
+      return Optional.absent();
+    }
+    return Optional.of(linkingLoader.read(docID, source, responses, foreignResponseIDToLocal,
+        foreignLinkingIDToLocal));
+  }
+
+  @Override
+  public void write(final ResponseLinking toWrite) {
+    throw new UnsupportedOperationException("Cannot write to a linking store within an archive");
+  }
+
+  @Override
+  public void close() throws IOException {
+    archive.close();
+  }
+
+  @Override
+  public String toString() {
+    return "ArchiveLinkingStore(" + archive + "/" + directory + ")";
+  }
+}
@@ -1,6 +1,5 @@
 package com.bbn.kbp.events2014.io;
 
-import com.bbn.bue.common.StringUtils;
 import com.bbn.bue.common.collections.LaxImmutableMapBuilder;
 import com.bbn.bue.common.collections.MapUtils;
 import com.bbn.bue.common.files.FileUtils;
@@ -11,6 +10,7 @@ import com.bbn.kbp.events2014.ArgumentOutput;
 import com.bbn.kbp.events2014.AssessedResponse;
 import com.bbn.kbp.events2014.CharOffsetSpan;
 import com.bbn.kbp.events2014.CorefAnnotation;
+import com.bbn.kbp.events2014.DocumentInternPool;
 import com.bbn.kbp.events2014.FieldAssessment;
 import com.bbn.kbp.events2014.FillerMentionType;
 import com.bbn.kbp.events2014.KBPRealis;
@@ -21,8 +21,6 @@ import com.bbn.kbp.events2014.io.assessmentCreators.AssessmentCreator;
 import com.bbn.kbp.events2014.io.assessmentCreators.RecoveryAssessmentCreator;
 import com.bbn.kbp.events2014.io.assessmentCreators.StrictAssessmentCreator;
 
-import com.google.common.base.Charsets;
-import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.base.Splitter;
 import com.google.common.cache.CacheBuilder;
@@ -41,13 +39,9 @@ import com.google.common.io.Files;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -274,6 +268,17 @@ public final class AssessmentSpecFormats {
     return new DirectorySystemOutputStore(directory, format);
   }
 
+  /**
+   * Opens a read-only system output store from {@code directory} within {@code archive}. Closing
+   * the store closes the archive.
+   */
+  public static ArgumentStore openSystemOutputStore(final SubmissionArchive archive,
+      final String directory, Format format) {
+    checkArgument(archive.isDirectory(directory), "%s does not contain a directory %s", archive,
+        directory);
+    return new ArchiveSystemOutputStore(archive, directory, format);
+  }
+
   public static ArgumentStore openOrCreateSystemOutputStore(final File directory, Format format)
       throws IOException {
     if (directory.exists()) {
@@ -290,6 +295,9 @@ public final class AssessmentSpecFormats {
     if (directoryArgumentStore instanceof DirectorySystemOutputStore) {
       return ((DirectorySystemOutputStore) directoryArgumentStore).readAndCacheIDs(docID,
           originalIDToSystem);
+    } else if (directoryArgumentStore instanceof ArchiveSystemOutputStore) {
+      return ((ArchiveSystemOutputStore) directoryArgumentStore).readAndCacheIDs(docID,
+          originalIDToSystem);
     } else {
       throw new RuntimeException(
           "Invalid annotation store type, got " + directoryArgumentStore.getClass()
@@ -311,8 +319,6 @@ public final class AssessmentSpecFormats {
       this.format = checkNotNull(format);
     }
 
-    private static final Splitter OnTabs = Splitter.on('\t').trimResults();
-
     @Override
     public ArgumentOutput read(final Symbol docid) throws IOException {
       return readAndCacheIDs(docid, ImmutableMap.<String, String>builder());
@@ -321,92 +327,153 @@ public final class AssessmentSpecFormats {
     /* package-private */ ArgumentOutput readAndCacheIDs(final Symbol docid,
         final ImmutableMap.Builder<String, String> idMap) throws IOException {
       final File f = bareOrWithSuffix(directory, docid.asString(), ACCEPTABLE_SUFFIXES);
-
-      final ImmutableList.Builder<Scored<Response>> ret = ImmutableList.builder();
-
-      final LaxImmutableMapBuilder<Response, String> responseToMetadata =
-          MapUtils.immutableMapBuilderAllowingSameEntryTwice();
-
-      int lineNo = 0;
-      String lastLine = ArgumentOutput.DEFAULT_METADATA;
-      for (final String line : Files.asCharSource(f, UTF_8).readLines()) {
-        ++lineNo;
-        if (line.isEmpty() || line.startsWith("#")) {
-          lastLine = line.trim();
-          continue;
-        }
-        final List<String> parts = ImmutableList.copyOf(OnTabs.split(line));
-        try {
-          // input system IDs are currently not preserved
-          try {
-            final double confidence = Double.parseDouble(parts.get(format.columnSpec().confidence()));
-            final Response response = parseArgumentFields(format, parts);
-            // do not require a # to be put in the metadata beforehand
-            if (lastLine.length() > 0 && lastLine.charAt(0) == METADATA_MARKER
-                && lastLine.length() > 1) {
-              final String metadata = lastLine.substring(1);
-              responseToMetadata.put(response, metadata);
-            } else {
-              responseToMetadata.put(response, ArgumentOutput.DEFAULT_METADATA);
-            }
-
-            idMap.put(parts.get(format.columnSpec().responseID()), response.uniqueIdentifier());
-            ret.add(Scored.from(response, confidence));
-            lastLine = line;
-          } catch (IndexOutOfBoundsException iobe) {
-            throw new RuntimeException(
-                String.format("Expected 11 tab-separated columns, but got %d", parts.size()), iobe);
-          }
-        } catch (final Exception e) {
-          throw new RuntimeException(
-              String.format("For doc ID %s, Invalid line %d: %s", docid, lineNo, line), e);
-        }
-      }
-
-      return ArgumentOutput.from(docid, ret.build(), responseToMetadata.build());
+      return readArguments(docid, Files.asCharSource(f, UTF_8), format, idMap);
     }
 
     @Override
     public ImmutableSet<Symbol> docIDs() throws IOException {
-      return FluentIterable.from(Arrays.asList(directory.listFiles()))
-          .transform(FileUtils.toNameFunction())
+      return FluentIterable.from(TACKBPEALIOUtils.documentFileNames(directory))
           .transform(Symbol.FromString)
           .toSet();
     }
 
 
+    /**
+     * Safe to call from several threads at once for different documents.
+     */
     @Override
     public void write(final ArgumentOutput output) throws IOException {
       final File f = new File(directory, output.docId().toString());
-      final PrintWriter out = new PrintWriter(new BufferedWriter(
-          new OutputStreamWriter(new FileOutputStream(f), Charsets.UTF_8)));
+      final StringBuilder sb = formatBuffer();
+      for (final Response response : format.responseOrdering().sortedCopy(output.responses())) {
+        final String metadata = output.metadata(response);
+        if (!metadata.equals(ArgumentOutput.DEFAULT_METADATA)) {
+          sb.append(METADATA_MARKER).append(metadata).append('\n');
+        }
+        sb.append(format.identifierField(response)).append('\t');
+        appendArgumentFields(format, response, output.confidence(response), sb);
+        sb.append('\n');
+      }
+      TACKBPEALIOUtils.writeAtomically(sb, f);
+    }
+
+    @Override
+    public void close() {
+      // pass
+    }
+
+    @Override
+    public ArgumentOutput readOrEmpty(final Symbol docid) throws IOException {
+      if (docIDs().contains(docid)) {
+        return read(docid);
+      } else {
+        return ArgumentOutput.from(docid, ImmutableList.<Scored<Response>>of(),
+            ImmutableMap.<Response, String>of());
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "ArgumentStore <-- " + directory;
+    }
+  }
 
+  private static final Splitter ON_TABS = Splitter.on('\t').trimResults();
+
+  /**
+   * Reads the system output for {@code docid} from {@code source}, recording the mapping from the
+   * response IDs in the file to our own response IDs in {@code idMap}.
+   */
+  private static ArgumentOutput readArguments(final Symbol docid, final CharSource source,
+      final Format format, final ImmutableMap.Builder<String, String> idMap) throws IOException {
+    final ImmutableList.Builder<Scored<Response>> ret = ImmutableList.builder();
+    final DocumentInternPool pool = DocumentInternPool.create();
+
+    final LaxImmutableMapBuilder<Response, String> responseToMetadata =
+        MapUtils.immutableMapBuilderAllowingSameEntryTwice();
+
+    int lineNo = 0;
+    String lastLine = ArgumentOutput.DEFAULT_METADATA;
+    for (final String line : source.readLines()) {
+      ++lineNo;
+      if (line.isEmpty() || line.startsWith("#")) {
+        lastLine = line.trim();
+        continue;
+      }
+      final List<String> parts = ImmutableList.copyOf(ON_TABS.split(line));
       try {
-        for (final Response response : format.responseOrdering().sortedCopy(output.responses())) {
-          final String metadata = output.metadata(response);
-          if (!metadata.equals(ArgumentOutput.DEFAULT_METADATA)) {
-            out.print(METADATA_MARKER + metadata + "\n");
+        // input system IDs are currently not preserved
+        try {
+          final double confidence = Double.parseDouble(parts.get(format.columnSpec().confidence()));
+          final Response response = parseArgumentFields(format, parts, pool);
+          // do not require a # to be put in the metadata beforehand
+          if (lastLine.length() > 0 && lastLine.charAt(0) == METADATA_MARKER
+              && lastLine.length() > 1) {
+            final String metadata = lastLine.substring(1);
+            responseToMetadata.put(response, metadata);
+          } else {
+            responseToMetadata.put(response, ArgumentOutput.DEFAULT_METADATA);
           }
-          //out.print(response.responseID());
-          out.print(format.identifierField(response));
-          out.print("\t");
-          final double confidence = output.confidence(response);
-          out.print(argToString(response, confidence) + "\n");
+
+          idMap.put(parts.get(format.columnSpec().responseID()), response.uniqueIdentifier());
+          ret.add(Scored.from(response, confidence));
+          lastLine = line;
+        } catch (IndexOutOfBoundsException iobe) {
+          throw new RuntimeException(
+              String.format("Expected 11 tab-separated columns, but got %d", parts.size()), iobe);
         }
-      } finally {
-        out.close();
+      } catch (final Exception e) {
+        throw new RuntimeException(
+            String.format("For doc ID %s, Invalid line %d: %s", docid, lineNo, line), e);
       }
     }
 
+    return ArgumentOutput.from(docid, ret.build(), responseToMetadata.build());
+  }
+
+  /**
+   * A read-only system output store within a {@link SubmissionArchive}.
+   */
+  private static final class ArchiveSystemOutputStore implements ArgumentStore {
+
+    private final SubmissionArchive archive;
+    private final String directory;
+    private final Format format;
+
+    private ArchiveSystemOutputStore(final SubmissionArchive archive, final String directory,
+        final Format format) {
+      this.archive = checkNotNull(archive);
+      this.directory = checkNotNull(directory);
+      this.format = checkNotNull(format);
+    }
+
     @Override
-    public void close() {
-      // pass
+    public ArgumentOutput read(final Symbol docid) throws IOException {
+      return readAndCacheIDs(docid, ImmutableMap.<String, String>builder());
     }
 
-    private String argToString(final Response arg, final double confidence) {
-      final List<String> parts = Lists.newArrayList();
-      addArgumentParts(format, arg, parts, confidence);
-      return Joiner.on('\t').join(parts);
+    /* package-private */ ArgumentOutput readAndCacheIDs(final Symbol docid,
+        final ImmutableMap.Builder<String, String> idMap) throws IOException {
+      return readArguments(docid,
+          bareOrWithSuffix(archive, directory, docid.asString(), ACCEPTABLE_SUFFIXES), format,
+          idMap);
+    }
+
+    @Override
+    public ImmutableSet<Symbol> docIDs() {
+      return FluentIterable.from(archive.fileNames(directory))
+          .transform(Symbol.FromString)
+          .toSet();
+    }
+
+    @Override
+    public void write(final ArgumentOutput output) {
+      throw new UnsupportedOperationException("Cannot write to a store within an archive");
+    }
+
+    @Override
+    public void close() throws IOException {
+      archive.close();
     }
 
     @Override
@@ -421,29 +488,57 @@ public final class AssessmentSpecFormats {
 
     @Override
     public String toString() {
-      return "ArgumentStore <-- " + directory;
+      return "ArgumentStore <-- " + archive + "/" + directory;
+    }
+  }
+
+  // documents are formatted into a per-thread buffer which is reused for the next document,
+  // unless it has grown unusually large
+  private static final int MAX_RETAINED_FORMAT_BUFFER = 1 << 22;
+  private static final ThreadLocal<StringBuilder> FORMAT_BUFFER = new ThreadLocal<StringBuilder>() {
+    @Override
+    protected StringBuilder initialValue() {
+      return new StringBuilder(1 << 16);
+    }
+  };
+
+  private static StringBuilder formatBuffer() {
+    StringBuilder ret = FORMAT_BUFFER.get();
+    if (ret.capacity() > MAX_RETAINED_FORMAT_BUFFER) {
+      ret = new StringBuilder(1 << 16);
+      FORMAT_BUFFER.set(ret);
     }
+    ret.setLength(0);
+    return ret;
   }
 
-  private static void addArgumentParts(final Format format,
-      final Response arg, final List<String> parts,
-      final double confidence) {
+  /**
+   * Appends the tab-separated fields for {@code arg} which follow the response ID.
+   */
+  private static void appendArgumentFields(final Format format,
+      final Response arg, final double confidence, final StringBuilder sb) {
     // TODO generalize this for the {@link ColumnSpec}
-    parts.add(arg.docID().toString());
-    parts.add(arg.type().toString());
-    parts.add(arg.role().toString());
-    parts.add(cleanString(arg.canonicalArgument().string()));
-    parts.add(offsetString(arg.canonicalArgument().charOffsetSpan()));
-    parts.add(offsetString(arg.predicateJustifications()));
-    parts.add(offsetString(arg.baseFiller()));
-    parts.add(offsetString(arg.additionalArgumentJustifications()));
-    parts.add(arg.realis().toString());
-    parts.add(Double.toString(confidence));
+    sb.append(arg.docID()).append('\t');
+    sb.append(arg.type()).append('\t');
+    sb.append(arg.role()).append('\t');
+    appendCleaned(arg.canonicalArgument().string(), sb);
+    sb.append('\t');
+    appendOffsets(arg.canonicalArgument().charOffsetSpan(), sb);
+    sb.append('\t');
+    appendOffsets(arg.predicateJustifications(), sb);
+    sb.append('\t');
+    appendOffsets(arg.baseFiller(), sb);
+    sb.append('\t');
+    appendOffsets(arg.additionalArgumentJustifications(), sb);
+    sb.append('\t');
+    sb.append(arg.realis()).append('\t');
+    sb.append(confidence);
   }
 
   /**
-   * This naively just synchronizes everything to deal with concurrency issues. If it becomes a
-   * performance issue we can do something more fine-grained. ~ rgabbard
+   * An annotation store with one file per document.  Documents may be read and written from
+   * several threads at once: only updates to the cache and the set of known document IDs, and
+   * calls into the assessment creator (which may keep statistics), are synchronized.
    */
   private static final class DirectoryAnnotationStore implements AnnotationStore {
 
@@ -451,7 +546,8 @@ public final class AssessmentSpecFormats {
     private final File lockFile;
     private final LoadingCache<Symbol, AnswerKey> cache;
     private final boolean doCaching;
-    private boolean closed = false;
+    // read without locking by every operation
+    private volatile boolean closed = false;
     private final Set<Symbol> docIDs;
     // object which actually creates ResponseAssessments
     // can be used to control how strict we are about
@@ -488,8 +584,10 @@ public final class AssessmentSpecFormats {
       this.format = checkNotNull(format);
     }
 
+    // reads are not synchronized so that several documents can be read and parsed at once. Only
+    // the assessment creator, which may keep statistics, is shared between them
     @Override
-    public synchronized AnswerKey read(final Symbol docid) throws IOException {
+    public AnswerKey read(final Symbol docid) throws IOException {
       assertNotClosed();
       try {
         if (doCaching) {
@@ -514,46 +612,45 @@ public final class AssessmentSpecFormats {
     }
 
     private Set<Symbol> loadInitialDocIds() throws IOException {
-      return Sets.newHashSet(FluentIterable.from(Arrays.asList(directory.listFiles()))
-          .transform(FileUtils.toNameFunction())
+      return Sets.newHashSet(FluentIterable.from(TACKBPEALIOUtils.documentFileNames(directory))
           .transform(Symbol.FromString)
           .toSet());
     }
 
+    // only updating the cache and document list is synchronized, so several documents may be
+    // formatted and written at once
     @Override
-    public synchronized void write(final AnswerKey answerKey) throws IOException {
+    public void write(final AnswerKey answerKey) throws IOException {
       assertNotClosed();
-      cache.invalidate(answerKey.docId());
-      docIDs.add(answerKey.docId());
 
       final File f = new File(directory, answerKey.docId().toString());
       log.info("Writing assessment for doc ID {}", answerKey.docId());
-      final PrintWriter out = new PrintWriter(new BufferedWriter(
-          new OutputStreamWriter(new FileOutputStream(f), Charsets.UTF_8)));
-
-      try {
-        // first annotated responses, sorted by response ID
-        final Ordering<AssessedResponse> assessedResponseOrdering =
-            format.responseOrdering().onResultOf(response());
-        for (final AssessedResponse arg : assessedResponseOrdering
-            .sortedCopy(answerKey.annotatedResponses())) {
-          final List<String> parts = Lists.newArrayList();
-          parts.add(format.identifierField(arg.response()));
-          addArgumentParts(format, arg.response(), parts, 1.0);
-          addAnnotationParts(arg, answerKey.corefAnnotation(), parts);
-          out.print(Joiner.on("\t").join(parts) + "\n");
-        }
-        // then unannotated responses, sorted by reponseID
-        for (final Response unannotated : format.responseOrdering()
-            .sortedCopy(answerKey.unannotatedResponses())) {
-          final List<String> parts = Lists.newArrayList();
-          parts.add(format.identifierField(unannotated));
-          addArgumentParts(format, unannotated, parts, 1.0);
-          addUnannotatedAnnotationParts(unannotated, answerKey.corefAnnotation(), parts);
-          out.print(Joiner.on("\t").join(parts) + "\n");
-        }
-      } finally {
-        out.close();
+      final StringBuilder sb = formatBuffer();
+      // first annotated responses, sorted by response ID
+      final Ordering<AssessedResponse> assessedResponseOrdering =
+          format.responseOrdering().onResultOf(response());
+      for (final AssessedResponse arg : assessedResponseOrdering
+          .sortedCopy(answerKey.annotatedResponses())) {
+        sb.append(format.identifierField(arg.response())).append('\t');
+        appendArgumentFields(format, arg.response(), 1.0, sb);
+        sb.append('\t');
+        appendAnnotationFields(arg, answerKey.corefAnnotation(), sb);
+        sb.append('\n');
+      }
+      // then unannotated responses, sorted by reponseID
+      for (final Response unannotated : format.responseOrdering()
+          .sortedCopy(answerKey.unannotatedResponses())) {
+        sb.append(format.identifierField(unannotated)).append('\t');
+        appendArgumentFields(format, unannotated, 1.0, sb);
+        sb.append('\t');
+        appendUnannotatedAnnotationFields(unannotated, answerKey.corefAnnotation(), sb);
+        sb.append('\n');
+      }
+      TACKBPEALIOUtils.writeAtomically(sb, f);
+
+      synchronized (this) {
+        cache.invalidate(answerKey.docId());
+        docIDs.add(answerKey.docId());
       }
     }
 
@@ -564,23 +661,31 @@ public final class AssessmentSpecFormats {
     }
 
     @Override
-    public synchronized AnswerKey readOrEmpty(final Symbol docid) throws IOException {
+    public AnswerKey readOrEmpty(final Symbol docid) throws IOException {
       assertNotClosed();
-      if (docIDs().contains(docid)) {
+      final boolean known;
+      synchronized (this) {
+        known = docIDs.contains(docid);
+      }
+      if (known) {
         return read(docid);
       } else {
         return AnswerKey.createEmpty(docid);
       }
     }
 
-    private synchronized AnswerKey uncachedRead(final Symbol docid) throws IOException {
+    private AnswerKey uncachedRead(final Symbol docid) throws IOException {
       final ImmutableList.Builder<AssessedResponse> annotated = ImmutableList.builder();
       final ImmutableList.Builder<Response> unannotated = ImmutableList.builder();
-      final CorefAnnotation.Builder corefBuilder = assessmentCreator.corefBuilder(docid);
+      final CorefAnnotation.Builder corefBuilder;
+      synchronized (assessmentCreator) {
+        corefBuilder = assessmentCreator.corefBuilder(docid);
+      }
 
       final File f = bareOrWithSuffix(directory, docid.asString(), ACCEPTABLE_SUFFIXES);
 
       final CharSource source = Files.asCharSource(f, UTF_8);
+      final DocumentInternPool pool = DocumentInternPool.create();
       for (final String line : source.readLines()) {
         try {
           if (line.isEmpty() || line.startsWith("#")) {
@@ -595,7 +700,8 @@ public final class AssessmentSpecFormats {
                     "output file with no assessment columns.", docid));
           }
 
-          final Response response = parseArgumentFields(format, ImmutableList.copyOf(parts));
+          final Response response =
+              parseArgumentFields(format, ImmutableList.copyOf(parts), pool);
           final AssessmentCreator.AssessmentParseResult annotation =
               parseAnnotation(annotationParts);
 
@@ -616,8 +722,10 @@ public final class AssessmentSpecFormats {
         }
       }
 
-      return assessmentCreator.createAnswerKey(docid, annotated.build(), unannotated.build(),
-          corefBuilder.build());
+      synchronized (assessmentCreator) {
+        return assessmentCreator.createAnswerKey(docid, annotated.build(), unannotated.build(),
+            corefBuilder.build());
+      }
     }
 
     private static final Set<String> emptyCorefEncodings =
@@ -644,45 +752,50 @@ public final class AssessmentSpecFormats {
       final Optional<FillerMentionType> mentionTypeOfCAS = FillerMentionType
           .parseOptional(parts.get(6));
 
-      return assessmentCreator.createAssessmentFromFields(AET, AER, casAssessment,
-          realis, baseFillerAssessment, coreference, mentionTypeOfCAS);
+      synchronized (assessmentCreator) {
+        return assessmentCreator.createAssessmentFromFields(AET, AER, casAssessment,
+            realis, baseFillerAssessment, coreference, mentionTypeOfCAS);
+      }
     }
 
-    private static void addAnnotationParts(final AssessedResponse assessedResponse,
-        final CorefAnnotation corefAnnotation, final List<String> parts) {
+    private static void appendAnnotationFields(final AssessedResponse assessedResponse,
+        final CorefAnnotation corefAnnotation, final StringBuilder sb) {
       final ResponseAssessment ann = assessedResponse.assessment();
-      parts.add(FieldAssessment.asCharacterOrNil(ann.justificationSupportsEventType()));
-      parts.add(FieldAssessment.asCharacterOrNil(ann.justificationSupportsRole()));
-      parts.add(FieldAssessment.asCharacterOrNil(ann.entityCorrectFiller()));
-      parts.add(FieldAssessment.asCharacterOrNil(ann.baseFillerCorrect()));
+      sb.append(FieldAssessment.asCharacterOrNil(ann.justificationSupportsEventType()))
+          .append('\t');
+      sb.append(FieldAssessment.asCharacterOrNil(ann.justificationSupportsRole())).append('\t');
+      sb.append(FieldAssessment.asCharacterOrNil(ann.entityCorrectFiller())).append('\t');
+      sb.append(FieldAssessment.asCharacterOrNil(ann.baseFillerCorrect())).append('\t');
 
       final Optional<Integer> corefId = corefAnnotation.corefId(
           assessedResponse.response().canonicalArgument());
       if (corefId.isPresent()) {
-        parts.add(Integer.toString(corefId.get()));
+        sb.append(corefId.get().intValue());
       } else {
-        parts.add("NIL");
+        sb.append("NIL");
       }
-      parts.add(KBPRealis.asString(ann.realis()));
-      parts.add(FillerMentionType.stringOrNil(ann.mentionTypeOfCAS()));
+      sb.append('\t');
+      sb.append(KBPRealis.asString(ann.realis())).append('\t');
+      sb.append(FillerMentionType.stringOrNil(ann.mentionTypeOfCAS()));
     }
 
     private static final String UNANNOTATED = "UNANNOTATED";
 
-    private static void addUnannotatedAnnotationParts(Response unannotated,
-        CorefAnnotation corefAnnotation,
-        final List<String> parts) {
-      parts.addAll(Collections.nCopies(4, UNANNOTATED));
+    private static void appendUnannotatedAnnotationFields(Response unannotated,
+        CorefAnnotation corefAnnotation, final StringBuilder sb) {
+      for (int i = 0; i < 4; ++i) {
+        sb.append(UNANNOTATED).append('\t');
+      }
       final Optional<Integer> corefId = corefAnnotation.corefId(unannotated.canonicalArgument());
       if (corefId.isPresent()) {
-        parts.add(corefId.get().toString());
+        sb.append(corefId.get().intValue());
       } else {
-        parts.add(UNANNOTATED);
+        sb.append(UNANNOTATED);
       }
-      parts.addAll(Collections.nCopies(2, UNANNOTATED));
+      sb.append('\t').append(UNANNOTATED).append('\t').append(UNANNOTATED);
     }
 
-    private synchronized void assertNotClosed() {
+    private void assertNotClosed() {
       if (closed) {
         throw new RuntimeException("Illegal attempt to use a closed assessment store.");
       }
@@ -694,79 +807,129 @@ public final class AssessmentSpecFormats {
     }
   }
 
-  private static String offsetString(final Set<CharOffsetSpan> spans) {
+  private static void appendOffsets(final Set<CharOffsetSpan> spans, final StringBuilder sb) {
     if (spans.isEmpty()) {
-      return "NIL";
+      sb.append("NIL");
+      return;
     }
 
-    final List<String> ret = Lists.newArrayList();
-
+    boolean first = true;
     for (final CharOffsetSpan span : spans) {
-      ret.add(offsetString(span));
+      if (!first) {
+        sb.append(',');
+      }
+      appendOffsets(span, sb);
+      first = false;
     }
-    return StringUtils.commaJoiner().join(ret);
   }
 
-  private static String offsetString(final CharOffsetSpan span) {
-    return String.format("%d-%d", span.startInclusive(), span.endInclusive());
+  private static void appendOffsets(final CharOffsetSpan span, final StringBuilder sb) {
+    sb.append(span.startInclusive()).append('-').append(span.endInclusive());
   }
 
-  private static String cleanString(String s) {
-    return s.replace('\t', ' ')
-        .replace("\r\n", " ")
-        .replace('\n', ' ');
+  /**
+   * Appends {@code s} with tabs and line breaks replaced by spaces.
+   */
+  private static void appendCleaned(final String s, final StringBuilder sb) {
+    for (int i = 0; i < s.length(); ++i) {
+      final char c = s.charAt(i);
+      if (c == '\t' || c == '\n') {
+        sb.append(' ');
+      } else if (c == '\r' && i + 1 < s.length() && s.charAt(i + 1) == '\n') {
+        // a Windows line break becomes a single space
+        sb.append(' ');
+        ++i;
+      } else {
+        sb.append(c);
+      }
+    }
   }
 
+  /**
+   * Parses a response without sharing anything with other responses.
+   *
+   * @deprecated this creates a new {@link DocumentInternPool} for every response. When parsing
+   * many responses, use {@link #parseArgumentFields(Format, List, DocumentInternPool)} with one
+   * pool per document instead.
+   */
+  @Deprecated
   public static Response parseArgumentFields(final Format format, final List<String> parts) {
+    return parseArgumentFields(format, parts, DocumentInternPool.create());
+  }
+
+  /**
+   * Parses a response, sharing its CAS and justifications with equal ones previously parsed
+   * using {@code pool}. Justifications are always in sorted order.
+   */
+  public static Response parseArgumentFields(final Format format, final List<String> parts,
+      final DocumentInternPool pool) {
     final ColumnSpec columnSpec = format.columnSpec();
     return Response.of(Symbol.from(parts.get(columnSpec.docID())),
         Symbol.from(parts.get(columnSpec.eventType())),
         Symbol.from(parts.get(columnSpec.role())),
-        KBPString.from(parts.get(columnSpec.CAS()),
-            TACKBPEALIOUtils.parseCharOffsetSpan(parts.get(columnSpec.casOffsets()))),
-        TACKBPEALIOUtils.parseCharOffsetSpan(parts.get(columnSpec.baseFiller())),
-        parseCharOffsetSpans(parts.get(columnSpec.additionalArgumentJustifications())),
-        parseCharOffsetSpans(parts.get(columnSpec.predicateJustifications())),
+        pool.kbpString(parts.get(columnSpec.CAS()),
+            TACKBPEALIOUtils.parseCharOffsetSpan(parts.get(columnSpec.casOffsets()), pool)),
+        TACKBPEALIOUtils.parseCharOffsetSpan(parts.get(columnSpec.baseFiller()), pool),
+        parseCharOffsetSpans(parts.get(columnSpec.additionalArgumentJustifications()), pool),
+        parseCharOffsetSpans(parts.get(columnSpec.predicateJustifications()), pool),
         KBPRealis.parse(parts.get(columnSpec.realis())));
   }
 
   /**
    * Parses Responses from the 2014, 2015, and 2016 evaluations. Prefer {@link
-   * AssessmentSpecFormats#parseArgumentFields(Format, List<String>)}
+   * AssessmentSpecFormats#parseArgumentFields(Format, List, DocumentInternPool)}
    */
   @Deprecated
   public static Response parseArgumentFields(final List<String> parts) {
+    final DocumentInternPool pool = DocumentInternPool.create();
     return Response.of(Symbol.from(parts.get(0)),
         Symbol.from(parts.get(1)), Symbol.from(parts.get(2)),
-        KBPString.from(parts.get(3), TACKBPEALIOUtils.parseCharOffsetSpan(parts.get(4))),
-        TACKBPEALIOUtils.parseCharOffsetSpan(parts.get(6)),
-        parseCharOffsetSpans(parts.get(7)),
-        parseCharOffsetSpans(parts.get(5)),
+        pool.kbpString(parts.get(3), TACKBPEALIOUtils.parseCharOffsetSpan(parts.get(4), pool)),
+        TACKBPEALIOUtils.parseCharOffsetSpan(parts.get(6), pool),
+        parseCharOffsetSpans(parts.get(7), pool),
+        parseCharOffsetSpans(parts.get(5), pool),
         KBPRealis.parse(parts.get(8)));
   }
 
-
-  private static final Splitter onCommas =
-      Splitter.on(",").trimResults().omitEmptyStrings();
-
-  private static ImmutableSet<CharOffsetSpan> parseCharOffsetSpans(final String s) {
+  private static ImmutableSet<CharOffsetSpan> parseCharOffsetSpans(final String s,
+      final DocumentInternPool pool) {
     if ("NIL".equals(s)) {
       return ImmutableSet.of();
     }
 
-    final ImmutableSet.Builder<CharOffsetSpan> ret = ImmutableSet.builder();
-
-    for (final String span : onCommas.split(s)) {
-      ret.add(TACKBPEALIOUtils.parseCharOffsetSpan(span));
+    // spans are comma-separated; blank entries are ignored
+    long[] packedSpans = new long[4];
+    int numSpans = 0;
+    int spanStart = 0;
+    while (spanStart <= s.length()) {
+      int spanEnd = s.indexOf(',', spanStart);
+      if (spanEnd < 0) {
+        spanEnd = s.length();
+      }
+      if (!isBlank(s, spanStart, spanEnd)) {
+        if (numSpans == packedSpans.length) {
+          packedSpans = Arrays.copyOf(packedSpans, 2 * packedSpans.length);
+        }
+        packedSpans[numSpans++] =
+            TACKBPEALIOUtils.parsePackedCharOffsetSpan(s, spanStart, spanEnd);
+      }
+      spanStart = spanEnd + 1;
     }
 
-    final ImmutableSet<CharOffsetSpan> spans = ret.build();
-
-    if (spans.isEmpty()) {
+    if (numSpans == 0) {
       throw new RuntimeException(String.format("Empty spans sets must be indicated by NIL"));
     }
 
-    return spans;
+    return pool.spanSet(packedSpans, numSpans);
+  }
+
+  private static boolean isBlank(final String s, final int from, final int to) {
+    for (int i = from; i < to; ++i) {
+      if (!Character.isWhitespace(s.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
   }
 
   private static final ImmutableSet<String> ACCEPTABLE_SUFFIXES = ImmutableSet.of("tab", "tsv");
@@ -802,4 +965,35 @@ public final class AssessmentSpecFormats {
       throw new FileNotFoundException("None of " + attempts + " exist");
     }
   }
+
+  /**
+   * Like {@link #bareOrWithSuffix(File, String, ImmutableSet)} but for a file within {@code
+   * directory} in {@code archive}.
+   */
+  static CharSource bareOrWithSuffix(final SubmissionArchive archive, final String directory,
+      final String filename, ImmutableSet<String> suffixes) throws FileNotFoundException {
+    final List<String> attempts = Lists.newArrayList();
+    final List<CharSource> successfulAttempts = Lists.newArrayList();
+
+    attempts.add(directory + "/" + filename);
+    for (final String suffix : suffixes) {
+      attempts.add(directory + "/" + filename + "." + suffix);
+    }
+    final List<String> successfulPaths = Lists.newArrayList();
+    for (final String attempt : attempts) {
+      final Optional<CharSource> source = archive.file(attempt);
+      if (source.isPresent()) {
+        successfulPaths.add(attempt);
+        successfulAttempts.add(source.get());
+      }
+    }
+
+    if (successfulAttempts.size() == 1) {
+      return successfulAttempts.get(0);
+    } else if (successfulAttempts.isEmpty()) {
+      throw new FileNotFoundException("None of " + attempts + " exist in " + archive);
+    } else {
+      throw new FileNotFoundException("Multiple alternative files exist: " + successfulPaths);
+    }
+  }
 }
@@ -0,0 +1,159 @@
+package com.bbn.kbp.events2014.io;
+
+import com.bbn.kbp.events2014.AnswerKey;
+import com.bbn.kbp.events2014.DocumentSystemOutput;
+import com.bbn.kbp.events2014.TACKBPEALException;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Writes documents to a store on background threads, so that tools which rewrite whole stores
+ * can go on reading and transforming the next document while earlier ones are formatted and
+ * written.  This is the write-side counterpart of {@link PrefetchingDocumentIterator}.
+ *
+ * At most {@code maxPending} documents are queued or being written at once; {@link #write(Object)}
+ * blocks until there is room, so memory use is bounded.  The store's write method is called from
+ * several threads at once, so it must be safe to write different documents concurrently. The
+ * directory-backed stores in this package are, and write each document atomically, so a crash
+ * cannot leave a partially-written document behind.
+ *
+ * If writing any document fails, the failure is thrown from the next call to {@link
+ * #write(Object)} or {@link #finish()}: {@link IOException}s and {@link RuntimeException}s are
+ * rethrown as is and anything else is wrapped in a {@link TACKBPEALException}.  Callers must call
+ * {@link #finish()} to be sure everything was written; callers who abandon writing early should
+ * call {@link #close()}.
+ */
+public final class AsyncStoreWriter<T> implements Closeable {
+
+  /**
+   * Writes a single document.
+   */
+  public interface DocumentWriter<T> {
+
+    void write(T document) throws IOException;
+  }
+
+  private final DocumentWriter<? super T> writer;
+  private final int maxPending;
+  private final Semaphore pendingPermits;
+  private final ExecutorService executor;
+  private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+  private AsyncStoreWriter(final DocumentWriter<? super T> writer, final int maxPending,
+      final int numIOThreads) {
+    checkArgument(maxPending > 0, "Must allow at least one pending document");
+    checkArgument(numIOThreads > 0, "Must have at least one I/O thread");
+    this.writer = checkNotNull(writer);
+    this.maxPending = maxPending;
+    this.pendingPermits = new Semaphore(maxPending);
+    this.executor = Executors.newFixedThreadPool(numIOThreads,
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("document-write-%d").build());
+  }
+
+  public static <T> AsyncStoreWriter<T> create(final DocumentWriter<? super T> writer,
+      final int maxPending, final int numIOThreads) {
+    return new AsyncStoreWriter<T>(writer, maxPending, numIOThreads);
+  }
+
+  public static AsyncStoreWriter<DocumentSystemOutput> writingTo(final SystemOutputStore store,
+      final int maxPending, final int numIOThreads) {
+    checkNotNull(store);
+    return create(new DocumentWriter<DocumentSystemOutput>() {
+      @Override
+      public void write(final DocumentSystemOutput document) throws IOException {
+        store.write(document);
+      }
+    }, maxPending, numIOThreads);
+  }
+
+  public static AsyncStoreWriter<AnswerKey> writingTo(final AnnotationStore store,
+      final int maxPending, final int numIOThreads) {
+    checkNotNull(store);
+    return create(new DocumentWriter<AnswerKey>() {
+      @Override
+      public void write(final AnswerKey document) throws IOException {
+        store.write(document);
+      }
+    }, maxPending, numIOThreads);
+  }
+
+  /**
+   * Queues {@code document} to be written, blocking while {@code maxPending} documents are
+   * already queued.
+   */
+  public void write(final T document) throws IOException {
+    checkNotNull(document);
+    checkState(!executor.isShutdown(), "Cannot write to a finished or closed writer");
+    rethrowFailure();
+    try {
+      pendingPermits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      close();
+      throw new TACKBPEALException("Interrupted while waiting to write a document", e);
+    }
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          if (failure.get() == null) {
+            writer.write(document);
+          }
+        } catch (Throwable t) {
+          failure.compareAndSet(null, t);
+        } finally {
+          pendingPermits.release();
+        }
+      }
+    });
+  }
+
+  /**
+   * Waits for all queued documents to be written.  No more documents may be written afterwards.
+   */
+  public void finish() throws IOException {
+    executor.shutdown();
+    try {
+      // every permit is back once every queued document is done
+      pendingPermits.acquire(maxPending);
+      pendingPermits.release(maxPending);
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      close();
+      throw new TACKBPEALException("Interrupted while finishing writes", e);
+    }
+    rethrowFailure();
+  }
+
+  /**
+   * Abandons any documents which have not yet been written.
+   */
+  @Override
+  public void close() {
+    // documents which never started will never release their permits
+    pendingPermits.release(executor.shutdownNow().size());
+  }
+
+  private void rethrowFailure() throws IOException {
+    final Throwable t = failure.get();
+    if (t != null) {
+      close();
+      Throwables.propagateIfPossible(t, IOException.class);
+      throw new TACKBPEALException("Exception while writing documents", t);
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package com.bbn.kbp.events2014.io;
+
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.kbp.events2014.DocumentSystemOutput;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multiset;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Wraps another {@link SystemOutputStore}, keeping the most recently read documents in memory so
+ * that callers which need several views of the same document (e.g. its arguments and its linking)
+ * pay for parsing it only once.
+ *
+ * This also keeps track of how many times each document was actually parsed from the wrapped store,
+ * so callers can confirm they are not re-reading documents over the course of a run.
+ */
+public final class CachingSystemOutputStore implements SystemOutputStore {
+
+  private final SystemOutputStore wrapped;
+  private final LoadingCache<Symbol, DocumentSystemOutput> cache;
+  private final AtomicLong numReads = new AtomicLong(0);
+  private final Multiset<Symbol> underlyingReads = ConcurrentHashMultiset.create();
+
+  private CachingSystemOutputStore(final SystemOutputStore wrapped, final int maxCachedDocs) {
+    checkArgument(maxCachedDocs > 0, "Must cache at least one document");
+    this.wrapped = checkNotNull(wrapped);
+    this.cache = CacheBuilder.newBuilder().maximumSize(maxCachedDocs)
+        .build(new CacheLoader<Symbol, DocumentSystemOutput>() {
+          @Override
+          public DocumentSystemOutput load(final Symbol docID) throws Exception {
+            underlyingReads.add(docID);
+            return CachingSystemOutputStore.this.wrapped.read(docID);
+          }
+        });
+  }
+
+  public static CachingSystemOutputStore wrap(final SystemOutputStore wrapped,
+      final int maxCachedDocs) {
+    return new CachingSystemOutputStore(wrapped, maxCachedDocs);
+  }
+
+  @Override
+  public Symbol systemID() {
+    return wrapped.systemID();
+  }
+
+  @Override
+  public Set<Symbol> docIDs() throws IOException {
+    return wrapped.docIDs();
+  }
+
+  @Override
+  public DocumentSystemOutput read(final Symbol docID) throws IOException {
+    numReads.incrementAndGet();
+    try {
+      return cache.get(docID);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      } else {
+        throw new RuntimeException(e.getCause());
+      }
+    }
+  }
+
+  @Override
+  public void write(final DocumentSystemOutput output) throws IOException {
+    cache.invalidate(output.docID());
+    wrapped.write(output);
+  }
+
+  @Override
+  public void close() throws IOException {
+    cache.invalidateAll();
+    wrapped.close();
+  }
+
+  /**
+   * The number of times {@link #read(Symbol)} has been called on this store.
+   */
+  public long numReads() {
+    return numReads.get();
+  }
+
+  /**
+   * The number of times a document was actually parsed from the wrapped store.
+   */
+  public long numUnderlyingReads() {
+    return underlyingReads.size();
+  }
+
+  /**
+   * Documents which had to be parsed from the wrapped store more than once, typically because
+   * they fell out of the cache between reads.
+   */
+  public ImmutableSet<Symbol> docIDsReadMoreThanOnce() {
+    final ImmutableSet.Builder<Symbol> ret = ImmutableSet.builder();
+    for (final Multiset.Entry<Symbol> entry : underlyingReads.entrySet()) {
+      if (entry.getCount() > 1) {
+        ret.add(entry.getElement());
+      }
+    }
+    return ret.build();
+  }
+
+  @Override
+  public String toString() {
+    return "CachingSystemOutputStore(" + wrapped + ")";
+  }
+}
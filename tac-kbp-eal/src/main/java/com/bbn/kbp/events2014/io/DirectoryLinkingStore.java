@@ -1,13 +1,11 @@
 package com.bbn.kbp.events2014.io;
 
-import com.bbn.bue.common.files.FileUtils;
 import com.bbn.bue.common.symbols.Symbol;
 import com.bbn.kbp.events2014.AnswerKey;
 import com.bbn.kbp.events2014.ArgumentOutput;
 import com.bbn.kbp.events2014.Response;
 import com.bbn.kbp.events2014.ResponseLinking;
 
-import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableMap;
@@ -17,7 +15,6 @@ import com.google.common.io.Files;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.Arrays;
 import java.util.Set;
 
 import static com.google.common.base.Charsets.UTF_8;
@@ -57,8 +54,7 @@ final class DirectoryLinkingStore implements LinkingStore {
   public ImmutableSet<Symbol> docIDs() throws IOException {
     checkNotClosed();
 
-    return FluentIterable.from(Arrays.asList(directory.listFiles()))
-        .transform(FileUtils.toNameFunction())
+    return FluentIterable.from(TACKBPEALIOUtils.documentFileNames(directory))
         .transform(Symbol.FromString)
         .toSet();
   }
@@ -111,7 +107,9 @@ final class DirectoryLinkingStore implements LinkingStore {
   public void write(ResponseLinking responseLinking) throws IOException {
     checkNotClosed();
     final File f = new File(directory, responseLinking.docID().toString());
-    linkingWriter.write(responseLinking, Files.asCharSink(f, Charsets.UTF_8));
+    final StringBuilder sb = new StringBuilder();
+    linkingWriter.render(responseLinking, sb);
+    TACKBPEALIOUtils.writeAtomically(sb, f);
   }
 
   @Override
@@ -16,12 +16,14 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableTable;
 import com.google.common.collect.Sets;
+import com.google.common.io.CharSource;
 import com.google.common.io.Files;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Map;
 import java.util.Set;
@@ -92,16 +94,48 @@ public final class ImportForeignIDs {
     }
   }
 
+  /**
+   * Converts the system output at {@code source} to use standard IDs, writing the result to {@code
+   * outputDirectory}. {@code source} may be either a directory or a submission archive (see {@link
+   * SubmissionArchive#isArchive(File)}), which is read without being extracted.
+   */
   public static void importForeignIDs(final File source, final File outputDirectory,
       final LinkingStoreSource linkingStoreSource, final SystemOutputLayout outputLayout)
       throws IOException {
-    final ArgumentStore originalArgumentStore =
-        AssessmentSpecFormats.openSystemOutputStore(new File(source, "arguments"),
-            AssessmentSpecFormats.Format.KBP2015);
-
-    final LinkingStore originalLinkingStore =
-        linkingStoreSource.openLinkingStore(new File(source, "linking"));
+    if (SubmissionArchive.isArchive(source)) {
+      final SubmissionArchive archive = SubmissionArchive.open(source);
+      try {
+        final Optional<CharSource> corpusLinking = archive.file("corpusLinking/corpusLinking");
+        if (archive.isDirectory("corpusLinking") && !corpusLinking.isPresent()) {
+          throw new FileNotFoundException("Missing corpusLinking/corpusLinking in " + archive);
+        }
+        importForeignIDs(
+            AssessmentSpecFormats.openSystemOutputStore(archive, "arguments",
+                AssessmentSpecFormats.Format.KBP2015),
+            linkingStoreSource.openLinkingStore(archive, "linking"),
+            corpusLinking, outputDirectory, outputLayout);
+      } finally {
+        archive.close();
+      }
+    } else {
+      final File corpusLinkingFile = new File(new File(source, "corpusLinking"), "corpusLinking");
+      final Optional<CharSource> corpusLinking;
+      if (corpusLinkingFile.getParentFile().exists()) {
+        corpusLinking = Optional.of(Files.asCharSource(corpusLinkingFile, Charsets.UTF_8));
+      } else {
+        corpusLinking = Optional.absent();
+      }
+      importForeignIDs(
+          AssessmentSpecFormats.openSystemOutputStore(new File(source, "arguments"),
+              AssessmentSpecFormats.Format.KBP2015),
+          linkingStoreSource.openLinkingStore(new File(source, "linking")),
+          corpusLinking, outputDirectory, outputLayout);
+    }
+  }
 
+  private static void importForeignIDs(final ArgumentStore originalArgumentStore,
+      final LinkingStore originalLinkingStore, final Optional<CharSource> corpusLinking,
+      final File outputDirectory, final SystemOutputLayout outputLayout) throws IOException {
     final SystemOutputStore newOutput = outputLayout.openOrCreate(outputDirectory);
 
     // aggregate any changes in response sets ids
@@ -133,13 +167,11 @@ public final class ImportForeignIDs {
         throw new IOException("No linking found for " + docid);
       }
     }
-    final File corpusLinkingdir = new File(source, "corpusLinking");
-    if (corpusLinkingdir.exists()) {
+    if (corpusLinking.isPresent()) {
       final ImmutableTable<Symbol, String, String> oldLinkingIDToNew =
           docIdOldLinkingToNewB.build();
       final CorpusEventLinking corpusEventLinking = new CorpusEventFrameLoader2016()
-          .loadCorpusEventFrames(
-              Files.asCharSource(new File(corpusLinkingdir, "corpusLinking"), Charsets.UTF_8));
+          .loadCorpusEventFrames(corpusLinking.get());
       final CorpusEventLinking.Builder nuLinking = CorpusEventLinking.builder();
       for (final CorpusEventFrame cef : corpusEventLinking.corpusEventFrames()) {
         final CorpusEventFrame.Builder cefb = CorpusEventFrame.builder();
@@ -12,4 +12,9 @@ import java.io.IOException;
 interface LinkingFileWriter {
 
   void write(ResponseLinking linking, CharSink sink) throws IOException;
+
+  /**
+   * Appends the file contents for {@code linking} to {@code sb}.
+   */
+  void render(ResponseLinking linking, StringBuilder sb) throws IOException;
 }
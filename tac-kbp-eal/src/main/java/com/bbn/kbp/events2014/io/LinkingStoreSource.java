@@ -35,5 +35,16 @@ public final class LinkingStoreSource {
     }
     return new DirectoryLinkingStore(directory, linkingFileLoader, linkingFileWriter);
   }
-}
 
+  /**
+   * Opens a read-only linking store from {@code directory} within {@code archive}. Closing the
+   * store closes the archive.
+   */
+  public LinkingStore openLinkingStore(final SubmissionArchive archive, final String directory)
+      throws FileNotFoundException {
+    if (!archive.isDirectory(directory)) {
+      throw new FileNotFoundException("Not a directory: " + archive + "/" + directory);
+    }
+    return new ArchiveLinkingStore(archive, directory, linkingFileLoader);
+  }
+}
@@ -1,7 +1,5 @@
 package com.bbn.kbp.events2014.io;
 
-import com.bbn.bue.common.StringUtils;
-import com.bbn.kbp.events2014.ResponseFunctions;
 import com.bbn.kbp.events2014.ResponseLinking;
 import com.bbn.kbp.events2014.ResponseSet;
 
@@ -10,7 +8,6 @@ import com.google.common.collect.ImmutableSet;
 import java.io.IOException;
 
 import static com.google.common.base.Preconditions.checkArgument;
-import static com.google.common.collect.Iterables.transform;
 
 /**
  * Created by rgabbard on 6/26/17.
@@ -18,10 +15,10 @@ import static com.google.common.collect.Iterables.transform;
 class LinkingWriter2016 extends AbstractKBPSpecLinkingWriter {
 
   @Override
-  String renderLine(final ResponseSet responseSet, final ResponseLinking responseLinking)
-      throws IOException {
-    return getEventFrameID(responseSet, responseLinking) + "\t" + StringUtils.spaceJoiner().join(
-        transform(responseSet.asSet(), ResponseFunctions.uniqueIdentifier()));
+  void appendLine(final ResponseSet responseSet, final ResponseLinking responseLinking,
+      final StringBuilder sb) throws IOException {
+    sb.append(getEventFrameID(responseSet, responseLinking)).append('\t');
+    appendResponseIDs(responseSet.asSet(), ' ', sb);
   }
 
   // inefficient, but the number of frames in each document should be small
@@ -0,0 +1,153 @@
+package com.bbn.kbp.events2014.io;
+
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.kbp.events2014.TACKBPEALException;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.UnmodifiableIterator;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Iterates over the data for a sequence of documents, loading the data for the next few documents
+ * on background threads while the caller works on the current one.  This lets scoring loops
+ * overlap reading stores from (possibly networked) disk with scoring.
+ *
+ * Documents are returned in the order of the document IDs provided. Each call to {@link #next()}
+ * starts loading the next document before waiting on the one it returns, so at most {@code
+ * prefetchDepth + 1} documents are queued or being loaded at once, at most {@code
+ * min(numIOThreads, prefetchDepth + 1)} of them concurrently.  Memory use is therefore bounded by
+ * {@code prefetchDepth} loaded documents plus whichever one the caller is holding. If loading
+ * a document fails, the failure is thrown from the call to {@link #next()} which would have
+ * returned that document: {@link RuntimeException}s are rethrown as is and checked exceptions are
+ * wrapped in a {@link TACKBPEALException}.  After such a failure no further documents are returned.
+ *
+ * The {@link DocumentLoader} may be called from several threads at once, so anything it reads
+ * from must be safe for concurrent reads. The background threads are shut down when iteration
+ * completes or fails. Callers who abandon iteration early should call {@link #close()}.
+ */
+public final class PrefetchingDocumentIterator<T> extends UnmodifiableIterator<T>
+    implements Closeable {
+
+  /**
+   * Loads all the data needed to process a single document.
+   */
+  public interface DocumentLoader<T> {
+
+    T load(Symbol docID) throws IOException;
+  }
+
+  private final Iterator<Symbol> docIDs;
+  private final DocumentLoader<? extends T> loader;
+  private final int prefetchDepth;
+  private final ExecutorService executor;
+  private final Deque<PendingDocument<T>> pending = new ArrayDeque<PendingDocument<T>>();
+
+  private PrefetchingDocumentIterator(final Iterable<Symbol> docIDs,
+      final DocumentLoader<? extends T> loader, final int prefetchDepth,
+      final int numIOThreads) {
+    checkArgument(prefetchDepth > 0, "Must prefetch at least one document");
+    checkArgument(numIOThreads > 0, "Must have at least one I/O thread");
+    // copy so later changes to the caller's collection can't affect us
+    this.docIDs = ImmutableList.copyOf(docIDs).iterator();
+    this.loader = checkNotNull(loader);
+    this.prefetchDepth = prefetchDepth;
+    this.executor = Executors.newFixedThreadPool(numIOThreads,
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("document-prefetch-%d").build());
+    fill();
+  }
+
+  public static <T> PrefetchingDocumentIterator<T> create(final Iterable<Symbol> docIDs,
+      final DocumentLoader<? extends T> loader, final int prefetchDepth,
+      final int numIOThreads) {
+    return new PrefetchingDocumentIterator<T>(docIDs, loader, prefetchDepth, numIOThreads);
+  }
+
+  /**
+   * Creates an iterator which uses one I/O thread per prefetched document.
+   */
+  public static <T> PrefetchingDocumentIterator<T> create(final Iterable<Symbol> docIDs,
+      final DocumentLoader<? extends T> loader, final int prefetchDepth) {
+    return create(docIDs, loader, prefetchDepth, prefetchDepth);
+  }
+
+  @Override
+  public boolean hasNext() {
+    return !pending.isEmpty();
+  }
+
+  @Override
+  public T next() {
+    if (pending.isEmpty()) {
+      throw new NoSuchElementException();
+    }
+    final PendingDocument<T> head = pending.removeFirst();
+    // start loading the next document before we block on this one
+    fill();
+    try {
+      return head.data.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      close();
+      throw new TACKBPEALException("Interrupted while loading " + head.docID, e);
+    } catch (ExecutionException e) {
+      close();
+      Throwables.propagateIfPossible(e.getCause());
+      throw new TACKBPEALException("Exception while loading " + head.docID, e.getCause());
+    } finally {
+      if (pending.isEmpty()) {
+        executor.shutdown();
+      }
+    }
+  }
+
+  /**
+   * Stops any outstanding loads. No further documents will be returned.
+   */
+  @Override
+  public void close() {
+    for (final PendingDocument<T> doc : pending) {
+      doc.data.cancel(true);
+    }
+    pending.clear();
+    executor.shutdownNow();
+  }
+
+  private void fill() {
+    while (pending.size() < prefetchDepth && docIDs.hasNext()) {
+      final Symbol docID = docIDs.next();
+      pending.addLast(new PendingDocument<T>(docID, executor.submit(new Callable<T>() {
+        @Override
+        public T call() throws Exception {
+          return loader.load(docID);
+        }
+      })));
+    }
+  }
+
+  private static final class PendingDocument<T> {
+
+    private final Symbol docID;
+    private final Future<T> data;
+
+    private PendingDocument(final Symbol docID, final Future<T> data) {
+      this.docID = checkNotNull(docID);
+      this.data = checkNotNull(data);
+    }
+  }
+}
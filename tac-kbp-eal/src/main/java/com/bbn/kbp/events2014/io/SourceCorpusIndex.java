@@ -0,0 +1,325 @@
+package com.bbn.kbp.events2014.io;
+
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.kbp.events2014.CharOffsetSpan;
+import com.bbn.kbp.events2014.TACKBPEALException;
+
+import com.google.common.base.Charsets;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.io.CharSource;
+import com.google.common.io.Files;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Predicates.in;
+
+/**
+ * An index over the original text of a corpus of source documents.  Nothing is read when the index
+ * is built: each document is indexed the first time it is asked about, on whichever thread asks,
+ * and different documents may be indexed concurrently.  Each document is indexed at most once.
+ *
+ * For each indexed document we keep its length in characters, so offsets can be checked without
+ * touching the text again, and a table of checkpoints pairing character offsets with the byte
+ * offsets where those characters start in the document's UTF-8 encoding, roughly every {@link
+ * #CHECKPOINT_CHARS} characters, so extracting a span only requires decoding forward from the
+ * nearest checkpoint.  The encoded text of recently used documents is kept in memory up to a bound
+ * on its total size and is read again from the original file if it is needed after being dropped.
+ * Because the text is decoded the same way every time (replacing malformed input just as
+ * {@link Files#asCharSource(File, java.nio.charset.Charset)} does), character offsets always agree
+ * with those in the {@link String} read from the original file.
+ *
+ * Safe to use from multiple threads.  Closing the index discards everything read so far.
+ */
+public final class SourceCorpusIndex implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(SourceCorpusIndex.class);
+
+  static final int CHECKPOINT_CHARS = 512;
+  public static final long DEFAULT_MAX_CACHED_BYTES = 64L * 1024 * 1024;
+
+  private final ImmutableMap<Symbol, File> docIDToOriginalText;
+  // the length and checkpoints of every document indexed so far, which are small
+  private final LoadingCache<Symbol, IndexedDoc> docs;
+  // the UTF-8 encoded text of recently used documents
+  private final LoadingCache<Symbol, byte[]> texts;
+
+  private SourceCorpusIndex(final Map<Symbol, File> docIDToOriginalText,
+      final long maxCachedBytes) {
+    checkArgument(maxCachedBytes > 0, "Must be able to cache some text");
+    this.docIDToOriginalText = ImmutableMap.copyOf(docIDToOriginalText);
+    this.texts = CacheBuilder.newBuilder()
+        .maximumWeight(maxCachedBytes)
+        .weigher(new Weigher<Symbol, byte[]>() {
+          @Override
+          public int weigh(final Symbol docID, final byte[] utf8) {
+            return utf8.length;
+          }
+        })
+        .build(new CacheLoader<Symbol, byte[]>() {
+          @Override
+          public byte[] load(final Symbol docID) throws IOException {
+            return readText(docID);
+          }
+        });
+    this.docs = CacheBuilder.newBuilder()
+        .build(new CacheLoader<Symbol, IndexedDoc>() {
+          @Override
+          public IndexedDoc load(final Symbol docID) throws IOException {
+            // a document is usually indexed just before its text is needed
+            final byte[] utf8 = readText(docID);
+            texts.put(docID, utf8);
+            return IndexedDoc.of(docID, utf8);
+          }
+        });
+  }
+
+  /**
+   * Indexes every document in {@code docIDToOriginalText} as it is needed.
+   */
+  public static SourceCorpusIndex build(final Map<Symbol, File> docIDToOriginalText) {
+    return build(docIDToOriginalText, docIDToOriginalText.keySet());
+  }
+
+  /**
+   * Indexes only those documents in {@code docIDToOriginalText} whose IDs are in {@code docIDs},
+   * as they are needed. Document IDs which are not in {@code docIDToOriginalText} are ignored.
+   */
+  public static SourceCorpusIndex build(final Map<Symbol, File> docIDToOriginalText,
+      final Set<Symbol> docIDs) {
+    return build(docIDToOriginalText, docIDs, DEFAULT_MAX_CACHED_BYTES);
+  }
+
+  /**
+   * @param maxCachedBytes the most bytes of encoded document text to keep in memory at once. A
+   *                       single document longer than this is still indexed but not retained.
+   */
+  public static SourceCorpusIndex build(final Map<Symbol, File> docIDToOriginalText,
+      final Set<Symbol> docIDs, final long maxCachedBytes) {
+    final Map<Symbol, File> requested = Maps.filterKeys(docIDToOriginalText, in(docIDs));
+    log.info("Will index up to {} source documents as they are needed", requested.size());
+    return new SourceCorpusIndex(requested, maxCachedBytes);
+  }
+
+  public ImmutableSet<Symbol> docIDs() {
+    return docIDToOriginalText.keySet();
+  }
+
+  public boolean contains(final Symbol docID) {
+    return docIDToOriginalText.containsKey(docID);
+  }
+
+  /**
+   * The length of the document's text in characters.
+   */
+  public int length(final Symbol docID) {
+    return doc(docID).numChars;
+  }
+
+  /**
+   * The full text of a document.
+   */
+  public String text(final Symbol docID) {
+    final IndexedDoc doc = doc(docID);
+    return substring(doc, 0, doc.numChars);
+  }
+
+  /**
+   * The text of a document covered by {@code span}.
+   *
+   * @throws IndexOutOfBoundsException if the span does not lie within the document.
+   */
+  public String text(final Symbol docID, final CharOffsetSpan span) {
+    return substring(docID, span.startInclusive(), span.endInclusive() + 1);
+  }
+
+  /**
+   * Equivalent to {@code text(docID).substring(startInclusive, endExclusive)}.
+   */
+  public String substring(final Symbol docID, final int startInclusive, final int endExclusive) {
+    return substring(doc(docID), startInclusive, endExclusive);
+  }
+
+  public CharSource textSource(final Symbol docID) {
+    final IndexedDoc doc = doc(docID);
+    return new CharSource() {
+      @Override
+      public Reader openStream() {
+        return new StringReader(substring(doc, 0, doc.numChars));
+      }
+    };
+  }
+
+  @Override
+  public void close() {
+    docs.invalidateAll();
+    texts.invalidateAll();
+  }
+
+  private IndexedDoc doc(final Symbol docID) {
+    if (!contains(docID)) {
+      throw new TACKBPEALException("Don't know original text for " + docID);
+    }
+    return load(docs, docID);
+  }
+
+  private byte[] readText(final Symbol docID) throws IOException {
+    return Files.asCharSource(docIDToOriginalText.get(docID), Charsets.UTF_8).read()
+        .getBytes(Charsets.UTF_8);
+  }
+
+  private static <T> T load(final LoadingCache<Symbol, T> cache, final Symbol docID) {
+    try {
+      return cache.get(docID);
+    } catch (ExecutionException e) {
+      throw new TACKBPEALException("Could not read original text for " + docID, e.getCause());
+    }
+  }
+
+  private String substring(final IndexedDoc doc, final int startInclusive,
+      final int endExclusive) {
+    checkPositionIndexes(startInclusive, endExclusive, doc.numChars);
+    final byte[] utf8 = load(texts, doc.docID);
+    if (utf8.length != doc.numBytes) {
+      throw new TACKBPEALException("Original text for " + doc.docID + " changed while in use");
+    }
+    final ByteBuffer bytes = ByteBuffer.wrap(utf8);
+
+    // find the last character boundary at or before the start of the span. This is only
+    // before it if the span starts in the middle of a surrogate pair
+    int checkpoint = doc.checkpointAtOrBefore(startInclusive);
+    int charOffset = doc.checkpointChars[checkpoint];
+    int byteOffset = doc.checkpointBytes[checkpoint];
+    while (charOffset < startInclusive) {
+      final int width = utf8Width(bytes.get(byteOffset));
+      final int chars = charsEncoded(width);
+      if (charOffset + chars > startInclusive) {
+        break;
+      }
+      charOffset += chars;
+      byteOffset += width;
+    }
+    final int sliceStartChar = charOffset;
+    final int sliceStartByte = byteOffset;
+
+    // and then the first character boundary at or after its end
+    checkpoint = doc.checkpointAtOrBefore(endExclusive);
+    if (doc.checkpointChars[checkpoint] > charOffset) {
+      charOffset = doc.checkpointChars[checkpoint];
+      byteOffset = doc.checkpointBytes[checkpoint];
+    }
+    while (charOffset < endExclusive) {
+      final int width = utf8Width(bytes.get(byteOffset));
+      charOffset += charsEncoded(width);
+      byteOffset += width;
+    }
+
+    bytes.limit(byteOffset);
+    bytes.position(sliceStartByte);
+    final String slice = Charsets.UTF_8.decode(bytes).toString();
+    return slice.substring(startInclusive - sliceStartChar, endExclusive - sliceStartChar);
+  }
+
+  /**
+   * The number of bytes in the UTF-8 encoding of a character beginning with {@code leadByte}.
+   */
+  private static int utf8Width(final byte leadByte) {
+    final int b = leadByte & 0xFF;
+    if (b < 0x80) {
+      return 1;
+    } else if (b < 0xE0) {
+      return 2;
+    } else if (b < 0xF0) {
+      return 3;
+    } else {
+      return 4;
+    }
+  }
+
+  /**
+   * The number of Java {@code char}s a UTF-8 sequence of {@code width} bytes decodes to. Only
+   * supplementary characters need four bytes, and they decode to surrogate pairs.
+   */
+  private static int charsEncoded(final int width) {
+    return width == 4 ? 2 : 1;
+  }
+
+  /**
+   * The length of a document and its checkpoints.
+   */
+  private static final class IndexedDoc {
+
+    private final Symbol docID;
+    private final int numBytes;
+    private final int numChars;
+    // checkpointChars[i] is the character offset of a character starting checkpointBytes[i]
+    // bytes into the document. Both are increasing and start at 0.
+    private final int[] checkpointChars;
+    private final int[] checkpointBytes;
+
+    private IndexedDoc(final Symbol docID, final int numBytes, final int numChars,
+        final int[] checkpointChars, final int[] checkpointBytes) {
+      this.docID = checkNotNull(docID);
+      this.numBytes = numBytes;
+      this.numChars = numChars;
+      this.checkpointChars = checkpointChars;
+      this.checkpointBytes = checkpointBytes;
+    }
+
+    /**
+     * Builds the checkpoint table for the UTF-8 encoded text {@code utf8}, which must be valid.
+     */
+    private static IndexedDoc of(final Symbol docID, final byte[] utf8) {
+      int[] chars = new int[1 + utf8.length / CHECKPOINT_CHARS];
+      int[] bytes = new int[chars.length];
+      int numCheckpoints = 1;
+      int nextCheckpoint = CHECKPOINT_CHARS;
+      int charOffset = 0;
+      int byteOffset = 0;
+      while (byteOffset < utf8.length) {
+        if (charOffset >= nextCheckpoint) {
+          if (numCheckpoints == chars.length) {
+            chars = Arrays.copyOf(chars, 2 * chars.length);
+            bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+          }
+          chars[numCheckpoints] = charOffset;
+          bytes[numCheckpoints] = byteOffset;
+          ++numCheckpoints;
+          nextCheckpoint = charOffset + CHECKPOINT_CHARS;
+        }
+        final int width = utf8Width(utf8[byteOffset]);
+        charOffset += charsEncoded(width);
+        byteOffset += width;
+      }
+      checkState(byteOffset == utf8.length, "Invalid UTF-8 while indexing source text");
+      return new IndexedDoc(docID, utf8.length, charOffset,
+          Arrays.copyOf(chars, numCheckpoints), Arrays.copyOf(bytes, numCheckpoints));
+    }
+
+    private int checkpointAtOrBefore(final int charOffset) {
+      final int idx = Arrays.binarySearch(checkpointChars, charOffset);
+      return idx >= 0 ? idx : -idx - 2;
+    }
+  }
+}
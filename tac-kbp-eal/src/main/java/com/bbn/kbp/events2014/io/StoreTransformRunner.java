@@ -0,0 +1,362 @@
+package com.bbn.kbp.events2014.io;
+
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.bue.common.symbols.SymbolUtils;
+import com.bbn.kbp.events2014.AnswerKey;
+import com.bbn.kbp.events2014.DocumentSystemOutput;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Rewrites a store document-by-document: each document is read from a source, passed through a
+ * {@link DocumentTransform}, and written to a sink.  Documents are read and transformed on a
+ * pool of threads via {@link PrefetchingDocumentIterator} and written on another via {@link
+ * AsyncStoreWriter}, so the whole pipeline scales with the number of cores while keeping memory
+ * bounded.  Documents are handed to the sink in sorted order of document ID.
+ *
+ * The transform is called from several threads at once, so it must be safe for concurrent use.
+ * Progress and throughput are logged periodically and summarized in the returned {@link Stats}.
+ *
+ * If {@link Builder#resume(boolean)} is set, documents which are already present in the sink are
+ * skipped. Because the directory-backed stores write each document atomically, a document in the
+ * sink was written completely, so a crashed or interrupted run can be restarted from where it
+ * left off.
+ */
+public final class StoreTransformRunner<I, O> {
+
+  private static final Logger log = LoggerFactory.getLogger(StoreTransformRunner.class);
+
+  private static final long PROGRESS_INTERVAL_SECONDS = 30;
+
+  /**
+   * Somewhere documents may be read from.
+   */
+  public interface DocumentSource<T> {
+
+    Set<Symbol> docIDs() throws IOException;
+
+    T read(Symbol docID) throws IOException;
+  }
+
+  /**
+   * Somewhere documents may be written to.  {@link #write(Object)} will be called from several
+   * threads at once for different documents.
+   */
+  public interface DocumentSink<T> {
+
+    /**
+     * The documents which have already been written.
+     */
+    Set<Symbol> docIDs() throws IOException;
+
+    void write(T document) throws IOException;
+  }
+
+  /**
+   * Transforms a single document.  If the result is absent, nothing is written for the document.
+   */
+  public interface DocumentTransform<I, O> {
+
+    Optional<O> transform(Symbol docID, I input) throws IOException;
+  }
+
+  private final DocumentSource<? extends I> source;
+  private final DocumentTransform<? super I, ? extends O> transform;
+  private final DocumentSink<? super O> sink;
+  private final Optional<ImmutableSet<Symbol>> docIDs;
+  private final int numThreads;
+  private final boolean resume;
+
+  private StoreTransformRunner(final Builder<I, O> builder) {
+    this.source = builder.source;
+    this.transform = builder.transform;
+    this.sink = builder.sink;
+    this.docIDs = builder.docIDs;
+    this.numThreads = builder.numThreads;
+    this.resume = builder.resume;
+  }
+
+  public static <I, O> Builder<I, O> builder(final DocumentSource<? extends I> source,
+      final DocumentTransform<? super I, ? extends O> transform,
+      final DocumentSink<? super O> sink) {
+    return new Builder<I, O>(source, transform, sink);
+  }
+
+  /**
+   * Transforms every document in the source (or only those given to {@link
+   * Builder#docIDs(Iterable)}), waiting until all have been written.
+   */
+  public Stats run() throws IOException {
+    final Stopwatch stopwatch = Stopwatch.createStarted();
+    final Set<Symbol> toConsider = docIDs.isPresent() ? docIDs.get() : source.docIDs();
+    final ImmutableSet<Symbol> alreadyDone =
+        resume ? ImmutableSet.copyOf(sink.docIDs()) : ImmutableSet.<Symbol>of();
+
+    final ImmutableList.Builder<Symbol> toDoB = ImmutableList.builder();
+    int numSkipped = 0;
+    for (final Symbol docID : SymbolUtils.byStringOrdering().immutableSortedCopy(toConsider)) {
+      if (alreadyDone.contains(docID)) {
+        ++numSkipped;
+      } else {
+        toDoB.add(docID);
+      }
+    }
+    final ImmutableList<Symbol> toDo = toDoB.build();
+    if (numSkipped > 0) {
+      log.info("Skipping {} documents already present in {}", numSkipped, sink);
+    }
+    log.info("Transforming {} documents from {} to {} using {} threads", toDo.size(), source,
+        sink, numThreads);
+
+    final PrefetchingDocumentIterator<Optional<? extends O>> transformed =
+        PrefetchingDocumentIterator.create(toDo,
+            new PrefetchingDocumentIterator.DocumentLoader<Optional<? extends O>>() {
+              @Override
+              public Optional<? extends O> load(final Symbol docID) throws IOException {
+                return transform.transform(docID, source.read(docID));
+              }
+            }, 2 * numThreads, numThreads);
+    final AsyncStoreWriter<O> writer =
+        AsyncStoreWriter.create(new AsyncStoreWriter.DocumentWriter<O>() {
+          @Override
+          public void write(final O document) throws IOException {
+            sink.write(document);
+          }
+        }, 2 * numThreads, numThreads);
+
+    int numProcessed = 0;
+    int numWritten = 0;
+    long lastProgressSeconds = 0;
+    try {
+      while (transformed.hasNext()) {
+        final Optional<? extends O> result = transformed.next();
+        if (result.isPresent()) {
+          writer.write(result.get());
+          ++numWritten;
+        }
+        ++numProcessed;
+
+        final long elapsedSeconds = stopwatch.elapsed(TimeUnit.SECONDS);
+        if (elapsedSeconds - lastProgressSeconds >= PROGRESS_INTERVAL_SECONDS) {
+          log.info("Transformed {} of {} documents ({} documents/second)", numProcessed,
+              toDo.size(), String.format("%.1f", numProcessed / (double) elapsedSeconds));
+          lastProgressSeconds = elapsedSeconds;
+        }
+      }
+      writer.finish();
+    } finally {
+      transformed.close();
+      writer.close();
+    }
+
+    final Stats stats = new Stats(numProcessed, numWritten, numSkipped,
+        stopwatch.elapsed(TimeUnit.MILLISECONDS));
+    log.info("{}", stats);
+    return stats;
+  }
+
+  /**
+   * A transform which passes every document through unchanged, for when the work of a rewrite is
+   * all in reading or writing (for example, changing formats).
+   */
+  public static <T> DocumentTransform<T, T> identity() {
+    return new DocumentTransform<T, T>() {
+      @Override
+      public Optional<T> transform(final Symbol docID, final T input) {
+        return Optional.of(input);
+      }
+    };
+  }
+
+  public static DocumentSource<DocumentSystemOutput> sourceFor(final SystemOutputStore store) {
+    checkNotNull(store);
+    return new DocumentSource<DocumentSystemOutput>() {
+      @Override
+      public Set<Symbol> docIDs() throws IOException {
+        return store.docIDs();
+      }
+
+      @Override
+      public DocumentSystemOutput read(final Symbol docID) throws IOException {
+        return store.read(docID);
+      }
+
+      @Override
+      public String toString() {
+        return store.toString();
+      }
+    };
+  }
+
+  public static DocumentSource<AnswerKey> sourceFor(final AnnotationStore store) {
+    checkNotNull(store);
+    return new DocumentSource<AnswerKey>() {
+      @Override
+      public Set<Symbol> docIDs() throws IOException {
+        return store.docIDs();
+      }
+
+      @Override
+      public AnswerKey read(final Symbol docID) throws IOException {
+        return store.read(docID);
+      }
+
+      @Override
+      public String toString() {
+        return store.toString();
+      }
+    };
+  }
+
+  public static DocumentSink<DocumentSystemOutput> sinkFor(final SystemOutputStore store) {
+    checkNotNull(store);
+    return new DocumentSink<DocumentSystemOutput>() {
+      @Override
+      public Set<Symbol> docIDs() throws IOException {
+        return store.docIDs();
+      }
+
+      @Override
+      public void write(final DocumentSystemOutput document) throws IOException {
+        store.write(document);
+      }
+
+      @Override
+      public String toString() {
+        return store.toString();
+      }
+    };
+  }
+
+  public static DocumentSink<AnswerKey> sinkFor(final AnnotationStore store) {
+    checkNotNull(store);
+    return new DocumentSink<AnswerKey>() {
+      @Override
+      public Set<Symbol> docIDs() throws IOException {
+        return store.docIDs();
+      }
+
+      @Override
+      public void write(final AnswerKey document) throws IOException {
+        store.write(document);
+      }
+
+      @Override
+      public String toString() {
+        return store.toString();
+      }
+    };
+  }
+
+  /**
+   * What happened during a {@link #run()}.
+   */
+  public static final class Stats {
+
+    private final int numProcessed;
+    private final int numWritten;
+    private final int numSkipped;
+    private final long millis;
+
+    private Stats(final int numProcessed, final int numWritten, final int numSkipped,
+        final long millis) {
+      this.numProcessed = numProcessed;
+      this.numWritten = numWritten;
+      this.numSkipped = numSkipped;
+      this.millis = millis;
+    }
+
+    /**
+     * The number of documents read and transformed.
+     */
+    public int numProcessed() {
+      return numProcessed;
+    }
+
+    /**
+     * The number of documents written to the sink.  Less than {@link #numProcessed()} if the
+     * transform dropped some documents.
+     */
+    public int numWritten() {
+      return numWritten;
+    }
+
+    /**
+     * The number of documents not processed because a previous run had already written them.
+     */
+    public int numSkipped() {
+      return numSkipped;
+    }
+
+    public long millis() {
+      return millis;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Transformed %d documents and wrote %d (skipped %d already written) "
+              + "in %d ms (%.1f documents/second)", numProcessed, numWritten, numSkipped, millis,
+          millis == 0 ? 0.0 : 1000.0 * numProcessed / millis);
+    }
+  }
+
+  public static final class Builder<I, O> {
+
+    private final DocumentSource<? extends I> source;
+    private final DocumentTransform<? super I, ? extends O> transform;
+    private final DocumentSink<? super O> sink;
+    private Optional<ImmutableSet<Symbol>> docIDs = Optional.absent();
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+    private boolean resume = false;
+
+    private Builder(final DocumentSource<? extends I> source,
+        final DocumentTransform<? super I, ? extends O> transform,
+        final DocumentSink<? super O> sink) {
+      this.source = checkNotNull(source);
+      this.transform = checkNotNull(transform);
+      this.sink = checkNotNull(sink);
+    }
+
+    /**
+     * Transform only these documents rather than all those in the source.
+     */
+    public Builder<I, O> docIDs(final Iterable<Symbol> docIDs) {
+      this.docIDs = Optional.of(ImmutableSet.copyOf(docIDs));
+      return this;
+    }
+
+    /**
+     * Defaults to the number of processors.
+     */
+    public Builder<I, O> numThreads(final int numThreads) {
+      checkArgument(numThreads > 0, "Must have at least one thread");
+      this.numThreads = numThreads;
+      return this;
+    }
+
+    /**
+     * Whether to skip documents already present in the sink. Defaults to false.
+     */
+    public Builder<I, O> resume(final boolean resume) {
+      this.resume = resume;
+      return this;
+    }
+
+    public StoreTransformRunner<I, O> build() {
+      return new StoreTransformRunner<I, O>(this);
+    }
+  }
+}
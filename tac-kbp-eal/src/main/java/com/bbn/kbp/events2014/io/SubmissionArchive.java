@@ -0,0 +1,526 @@
+package com.bbn.kbp.events2014.io;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CharSource;
+import com.google.common.io.Files;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A system output submitted as a {@code .zip}, {@code .tar}, {@code .tgz}, or {@code .tar.gz}
+ * archive, read in place rather than extracted to a directory tree.  Paths within the archive are
+ * {@code /}-separated and relative to the archive's root, e.g. {@code
+ * arguments/AFP_ENG_20030304.0250}.
+ *
+ * Zip archives and uncompressed tarballs are read on demand. Gzipped tarballs can only be read
+ * sequentially, so when opened they are streamed once and the contents of their regular files are
+ * copied to a single temporary file, which is deleted when the archive is closed; nothing but the
+ * index of entries is kept in memory. In all cases files may be read from several threads at
+ * once.
+ *
+ * Stores opened on an archive close it when they are closed; closing an archive more than once is
+ * harmless.
+ */
+public final class SubmissionArchive implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(SubmissionArchive.class);
+
+  private static final String ROOT = "";
+
+  private final File source;
+  // from path to contents
+  private final ImmutableSortedMap<String, ByteSource> files;
+  private final ImmutableSet<String> directories;
+  private final Optional<ZipFile> zipFile;
+  // holds the contents of a gzipped tarball's files
+  private final Optional<File> spoolFile;
+
+  private SubmissionArchive(final File source, final Map<String, ByteSource> files,
+      final Set<String> directoryEntries, final Optional<ZipFile> zipFile,
+      final Optional<File> spoolFile) {
+    this.source = checkNotNull(source);
+    this.files = ImmutableSortedMap.copyOf(files);
+    this.zipFile = checkNotNull(zipFile);
+    this.spoolFile = checkNotNull(spoolFile);
+    // archives need not include entries for directories, so we infer them from the files
+    final Set<String> directories = Sets.newHashSet(directoryEntries);
+    directories.add(ROOT);
+    for (final String path : Sets.union(this.files.keySet(), directoryEntries)) {
+      for (String dir = parent(path); !dir.equals(ROOT); dir = parent(dir)) {
+        directories.add(dir);
+      }
+    }
+    this.directories = ImmutableSet.copyOf(directories);
+  }
+
+  /**
+   * Whether {@code file} has one of the extensions of an archive we know how to read.
+   */
+  public static boolean isArchive(final File file) {
+    return isZip(file) || isTar(file) || isTarGz(file);
+  }
+
+  public static SubmissionArchive open(final File archive) throws IOException {
+    if (!archive.isFile()) {
+      throw new IOException("Submission archive " + archive + " does not exist");
+    }
+    if (isZip(archive)) {
+      return openZip(archive);
+    } else if (isTar(archive)) {
+      return openTar(archive);
+    } else if (isTarGz(archive)) {
+      return openTarGz(archive);
+    } else {
+      throw new IOException(String.format(
+          "Compressed file must end in .zip, .tar, .tgz, or .tar.gz, but path is %s", archive));
+    }
+  }
+
+  public File file() {
+    return source;
+  }
+
+  /**
+   * The archive's name without its extension.
+   */
+  public String name() {
+    final String name = source.getName();
+    for (final String extension : new String[]{".zip", ".tar", ".tgz", ".tar.gz"}) {
+      if (name.endsWith(extension)) {
+        return name.substring(0, name.length() - extension.length());
+      }
+    }
+    return name;
+  }
+
+  public boolean isDirectory(final String path) {
+    return directories.contains(normalize(path));
+  }
+
+  /**
+   * The names of the files and directories immediately within {@code directory}. Use {@code ""}
+   * for the top level of the archive.
+   */
+  public ImmutableSet<String> childNames(final String directory) {
+    final String dir = normalize(directory);
+    final ImmutableSet.Builder<String> ret = ImmutableSet.builder();
+    for (final String path : directories) {
+      if (!path.equals(ROOT) && parent(path).equals(dir)) {
+        ret.add(baseName(path));
+      }
+    }
+    ret.addAll(fileNames(dir));
+    return ret.build();
+  }
+
+  /**
+   * The names of the files (but not directories) immediately within {@code directory}.
+   */
+  public ImmutableSet<String> fileNames(final String directory) {
+    final String dir = normalize(directory);
+    final String prefix = dir.isEmpty() ? dir : dir + "/";
+    final ImmutableSet.Builder<String> ret = ImmutableSet.builder();
+    // since the map is sorted, all the paths under the directory are together
+    for (final String path : files.tailMap(prefix).keySet()) {
+      if (!path.startsWith(prefix)) {
+        break;
+      }
+      if (path.indexOf('/', prefix.length()) < 0) {
+        ret.add(path.substring(prefix.length()));
+      }
+    }
+    return ret.build();
+  }
+
+  public Optional<CharSource> file(final String path) {
+    final ByteSource bytes = files.get(normalize(path));
+    if (bytes != null) {
+      return Optional.of(bytes.asCharSource(Charsets.UTF_8));
+    }
+    return Optional.absent();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (zipFile.isPresent()) {
+      zipFile.get().close();
+    }
+    if (spoolFile.isPresent() && spoolFile.get().exists() && !spoolFile.get().delete()) {
+      log.warn("Could not delete temporary file {}", spoolFile.get());
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "SubmissionArchive(" + source + ")";
+  }
+
+  private static boolean isZip(final File file) {
+    return file.getName().endsWith(".zip");
+  }
+
+  private static boolean isTar(final File file) {
+    return file.getName().endsWith(".tar");
+  }
+
+  private static boolean isTarGz(final File file) {
+    return file.getName().endsWith(".tgz") || file.getName().endsWith(".tar.gz");
+  }
+
+  private static SubmissionArchive openZip(final File archive) throws IOException {
+    final ZipFile zip = new ZipFile(archive);
+    final Map<String, ByteSource> files = Maps.newHashMap();
+    final Set<String> directories = Sets.newHashSet();
+    final Enumeration<? extends ZipEntry> entries = zip.entries();
+    while (entries.hasMoreElements()) {
+      final ZipEntry entry = entries.nextElement();
+      if (entry.isDirectory()) {
+        directories.add(normalize(entry.getName()));
+      } else {
+        files.put(normalize(entry.getName()), new ZipEntrySource(zip, entry));
+      }
+    }
+    return new SubmissionArchive(archive, files, directories, Optional.of(zip),
+        Optional.<File>absent());
+  }
+
+  /**
+   * An uncompressed tarball can be read at any offset, so we only index where each file's contents
+   * are.
+   */
+  private static SubmissionArchive openTar(final File archive) throws IOException {
+    final Map<String, ByteSource> files = Maps.newHashMap();
+    final Set<String> directories = Sets.newHashSet();
+    final ByteSource tarBytes = Files.asByteSource(archive);
+    try (InputStream in = new BufferedInputStream(new FileInputStream(archive))) {
+      final TarReader tar = new TarReader(in);
+      for (TarEntry entry = tar.next(); entry != null; entry = tar.next()) {
+        if (entry.type == TarEntry.Type.FILE) {
+          files.put(normalize(entry.path), tarBytes.slice(tar.position(), entry.size));
+        } else if (entry.type == TarEntry.Type.DIRECTORY) {
+          directories.add(normalize(entry.path));
+        }
+      }
+      // skipping past the end of a file doesn't fail, so we check for truncation here
+      if (tar.position() > archive.length()) {
+        throw new EOFException("Truncated tar archive " + archive);
+      }
+    }
+    log.info("Indexed {} files in {}", files.size(), archive);
+    return new SubmissionArchive(archive, files, directories, Optional.<ZipFile>absent(),
+        Optional.<File>absent());
+  }
+
+  private static SubmissionArchive openTarGz(final File archive) throws IOException {
+    final Map<String, ByteSource> files = Maps.newHashMap();
+    final Set<String> directories = Sets.newHashSet();
+    final File spoolFile = File.createTempFile(archive.getName(), ".contents");
+    spoolFile.deleteOnExit();
+    final ByteSource spooled = Files.asByteSource(spoolFile);
+    try (InputStream in = new GZIPInputStream(
+        new BufferedInputStream(new FileInputStream(archive)));
+         OutputStream out = new BufferedOutputStream(new FileOutputStream(spoolFile))) {
+      final TarReader tar = new TarReader(in);
+      long spoolOffset = 0;
+      for (TarEntry entry = tar.next(); entry != null; entry = tar.next()) {
+        if (entry.type == TarEntry.Type.FILE) {
+          tar.copyContents(out);
+          files.put(normalize(entry.path), spooled.slice(spoolOffset, entry.size));
+          spoolOffset += entry.size;
+        } else if (entry.type == TarEntry.Type.DIRECTORY) {
+          directories.add(normalize(entry.path));
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      if (!spoolFile.delete()) {
+        log.warn("Could not delete temporary file {}", spoolFile);
+      }
+      throw e;
+    }
+    log.info("Read {} files from {}", files.size(), archive);
+    return new SubmissionArchive(archive, files, directories, Optional.<ZipFile>absent(),
+        Optional.of(spoolFile));
+  }
+
+  private static String normalize(String path) {
+    path = path.replace('\\', '/');
+    if (path.equals(".")) {
+      return ROOT;
+    }
+    while (path.startsWith("./")) {
+      path = path.substring(2);
+    }
+    while (path.startsWith("/")) {
+      path = path.substring(1);
+    }
+    while (path.endsWith("/")) {
+      path = path.substring(0, path.length() - 1);
+    }
+    return path;
+  }
+
+  private static String parent(final String path) {
+    final int lastSlash = path.lastIndexOf('/');
+    return lastSlash < 0 ? ROOT : path.substring(0, lastSlash);
+  }
+
+  private static String baseName(final String path) {
+    return path.substring(path.lastIndexOf('/') + 1);
+  }
+
+  private static final class ZipEntrySource extends ByteSource {
+
+    private final ZipFile zip;
+    private final ZipEntry entry;
+
+    private ZipEntrySource(final ZipFile zip, final ZipEntry entry) {
+      this.zip = checkNotNull(zip);
+      this.entry = checkNotNull(entry);
+    }
+
+    @Override
+    public InputStream openStream() throws IOException {
+      return zip.getInputStream(entry);
+    }
+  }
+
+  private static final class TarEntry {
+
+    private enum Type {FILE, DIRECTORY, OTHER}
+
+    private final String path;
+    private final Type type;
+    private final long size;
+
+    private TarEntry(final String path, final Type type, final long size) {
+      this.path = checkNotNull(path);
+      this.type = checkNotNull(type);
+      this.size = size;
+    }
+  }
+
+  /**
+   * Reads the entries of a POSIX (ustar) or GNU tar stream, including the GNU and pax extensions
+   * for long paths.  Links and other special entries are skipped.  After {@link #next()} returns an
+   * entry, the stream is positioned at its contents, which may be copied with {@link
+   * #copyContents(OutputStream)}; otherwise the next call to {@link #next()} skips them.
+   */
+  private static final class TarReader {
+
+    private static final int BLOCK_SIZE = 512;
+    // metadata entries (long names and pax headers) are read into memory, so we bound their size
+    private static final int MAX_METADATA_SIZE = 1024 * 1024;
+    private static final int MAGIC_OFFSET = 257;
+    // POSIX ustar headers have "ustar\0" here; GNU headers have "ustar  \0" and use the space
+    // where ustar keeps its path prefix for access and change times
+    private static final byte[] USTAR_MAGIC = {'u', 's', 't', 'a', 'r', 0};
+
+    private final InputStream in;
+    private final byte[] header = new byte[BLOCK_SIZE];
+    private long position = 0;
+    // the size of the current entry's contents which remain to be read or skipped
+    private long remaining = 0;
+    private long padding = 0;
+
+    private TarReader(final InputStream in) {
+      this.in = checkNotNull(in);
+    }
+
+    /**
+     * Returns the next entry, or {@code null} at the end of the archive.
+     */
+    private TarEntry next() throws IOException {
+      skipRestOfEntry();
+      Optional<String> longPath = Optional.absent();
+      while (true) {
+        if (!readHeader()) {
+          return null;
+        }
+        final String name = string(0, 100);
+        final long size = octal(124, 12);
+        final char type = (char) header[156];
+        remaining = size;
+        padding = (BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE;
+
+        if (type == 'L') {
+          // GNU long name for the following entry
+          longPath = Optional.of(nulTerminated(readMetadata(name)));
+        } else if (type == 'x') {
+          // pax extended header for the following entry
+          longPath = paxPath(readMetadata(name)).or(longPath);
+        } else if (type == 'g' || type == 'K') {
+          // global pax headers and GNU long link targets never hold anything we need
+          skipRestOfEntry();
+        } else {
+          final String path;
+          if (longPath.isPresent()) {
+            path = longPath.get();
+          } else if (isUstar()) {
+            final String prefix = string(345, 155);
+            path = prefix.isEmpty() ? name : prefix + "/" + name;
+          } else {
+            path = name;
+          }
+          final TarEntry.Type entryType;
+          // '7' marks a contiguous file, which readers are expected to treat as a regular one
+          if (type == '0' || type == '\0' || type == '7') {
+            entryType = TarEntry.Type.FILE;
+          } else if (type == '5' || type == 'D') {
+            // 'D' is a GNU incremental dump's directory, whose contents list its files
+            entryType = TarEntry.Type.DIRECTORY;
+          } else {
+            entryType = TarEntry.Type.OTHER;
+          }
+          return new TarEntry(path, entryType, size);
+        }
+      }
+    }
+
+    /**
+     * The offset in the tar stream of the current entry's unread contents.
+     */
+    private long position() {
+      return position;
+    }
+
+    /**
+     * Copies the contents of the entry last returned by {@link #next()} to {@code out}.
+     */
+    private void copyContents(final OutputStream out) throws IOException {
+      final long copied = ByteStreams.copy(ByteStreams.limit(in, remaining), out);
+      position += copied;
+      remaining -= copied;
+      if (remaining > 0) {
+        throw new EOFException("Truncated tar archive");
+      }
+    }
+
+    private byte[] readMetadata(final String name) throws IOException {
+      if (remaining > MAX_METADATA_SIZE) {
+        throw new IOException("Tar header for " + name + " is too large");
+      }
+      final byte[] ret = new byte[(int) remaining];
+      ByteStreams.readFully(in, ret);
+      position += remaining;
+      remaining = 0;
+      skipRestOfEntry();
+      return ret;
+    }
+
+    private void skipRestOfEntry() throws IOException {
+      ByteStreams.skipFully(in, remaining + padding);
+      position += remaining + padding;
+      remaining = 0;
+      padding = 0;
+    }
+
+    private boolean isUstar() {
+      for (int i = 0; i < USTAR_MAGIC.length; ++i) {
+        if (header[MAGIC_OFFSET + i] != USTAR_MAGIC[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private boolean readHeader() throws IOException {
+      final int read = ByteStreams.read(in, header, 0, BLOCK_SIZE);
+      position += read;
+      if (read == 0) {
+        return false;
+      }
+      if (read < BLOCK_SIZE) {
+        throw new EOFException("Truncated tar archive");
+      }
+      // the archive ends with blocks of zeros
+      for (final byte b : header) {
+        if (b != 0) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private String string(final int offset, final int length) {
+      int end = offset;
+      while (end < offset + length && header[end] != 0) {
+        ++end;
+      }
+      return new String(header, offset, end - offset, Charsets.UTF_8);
+    }
+
+    private long octal(final int offset, final int length) throws IOException {
+      long ret = 0;
+      for (int i = offset; i < offset + length; ++i) {
+        final byte b = header[i];
+        if (b == 0 || b == ' ') {
+          if (ret > 0) {
+            break;
+          }
+        } else if (b >= '0' && b <= '7') {
+          ret = 8 * ret + (b - '0');
+        } else {
+          throw new IOException("Invalid number in tar header");
+        }
+      }
+      return ret;
+    }
+
+    private static String nulTerminated(final byte[] bytes) {
+      int end = 0;
+      while (end < bytes.length && bytes[end] != 0) {
+        ++end;
+      }
+      return new String(bytes, 0, end, Charsets.UTF_8);
+    }
+
+    /**
+     * Extracts the path from pax extended header records, which have the form {@code "<length>
+     * <key>=<value>\n"}.
+     */
+    private static Optional<String> paxPath(final byte[] records) {
+      final String s = new String(records, Charsets.UTF_8);
+      int pos = 0;
+      while (pos < s.length()) {
+        final int space = s.indexOf(' ', pos);
+        final int newline = s.indexOf('\n', pos);
+        if (space < 0 || newline < 0 || space > newline) {
+          break;
+        }
+        final String record = s.substring(space + 1, newline);
+        if (record.startsWith("path=")) {
+          return Optional.of(record.substring("path=".length()));
+        }
+        pos = newline + 1;
+      }
+      return Optional.absent();
+    }
+  }
+}
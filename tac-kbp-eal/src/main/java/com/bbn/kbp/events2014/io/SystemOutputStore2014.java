@@ -51,6 +51,15 @@ public final class SystemOutputStore2014 implements SystemOutputStore {
     return new SystemOutputStore2014(Symbol.from(dir.getName()), argStore);
   }
 
+  /**
+   * Opens a read-only store from the {@code arguments} directory of {@code archive}.
+   */
+  public static SystemOutputStore2014 open(SubmissionArchive archive) throws IOException {
+    final ArgumentStore argStore = AssessmentSpecFormats.openSystemOutputStore(archive,
+        "arguments", AssessmentSpecFormats.Format.KBP2014);
+    return new SystemOutputStore2014(Symbol.from(archive.name()), argStore);
+  }
+
   public static SystemOutputStore2014 openOrCreate(File dir) throws IOException {
     final File argumentsDir = new File(dir, "arguments");
     final ArgumentStore argStore = AssessmentSpecFormats.openOrCreateSystemOutputStore(argumentsDir,
@@ -41,6 +41,23 @@ public final class SystemOutputStore2015 implements SystemOutputStore {
     }
   }
 
+  /**
+   * Opens a read-only store from the {@code arguments} and {@code linking} directories of {@code
+   * archive}.
+   */
+  public static SystemOutputStore2015 open(SubmissionArchive archive) throws IOException {
+    final ArgumentStore argStore = AssessmentSpecFormats.openSystemOutputStore(archive,
+        "arguments", AssessmentSpecFormats.Format.KBP2015);
+    final LinkingStore linkingStore =
+        LinkingStoreSource.createFor2015().openLinkingStore(archive, "linking");
+    if (argStore.docIDs().equals(linkingStore.docIDs())) {
+      return new SystemOutputStore2015(Symbol.from(archive.name()), archive.file(), argStore,
+          linkingStore);
+    } else {
+      throw new RuntimeException("Argument and linking store docIDs do not match");
+    }
+  }
+
   public static SystemOutputStore2015 openOrCreate(File dir) throws IOException {
     final File argumentsDir = new File(dir, "arguments");
     final File linkingDir = new File(dir, "linking");
@@ -77,8 +94,10 @@ public final class SystemOutputStore2015 implements SystemOutputStore {
   @Override
   public void write(final DocumentSystemOutput output) throws IOException {
     if (output instanceof DocumentSystemOutput2015) {
-      argumentStore.write(output.arguments());
+      // linking first, so a crash in between can't leave a document with arguments but no
+      // linking
       linkingStore.write(((DocumentSystemOutput2015) output).linking());
+      argumentStore.write(output.arguments());
     } else {
       throw new RuntimeException("Can only write 2015-format system outputs");
     }
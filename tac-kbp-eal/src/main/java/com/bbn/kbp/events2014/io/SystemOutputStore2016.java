@@ -12,6 +12,7 @@ import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
+import com.google.common.io.CharSource;
 import com.google.common.io.Files;
 
 import java.io.File;
@@ -27,18 +28,46 @@ public class SystemOutputStore2016 implements SystemOutputStore, CrossDocSystemO
   private final Symbol systemID;
   private final ArgumentStore argumentStore;
   private final LinkingStore linkingStore;
-  private final File corpusLinkingFile;
+  // absent for stores read from a submission archive, which can't be written to
+  private final Optional<File> corpusLinkingFile;
+  private final Optional<CharSource> archivedCorpusLinking;
 
   private final CorpusEventFrameWriter eventFrameWriter = CorpusEventFrameIO.writerFor2016();
   private final CorpusEventFrameLoader eventFrameReader = CorpusEventFrameIO.loaderFor2016();
 
   private SystemOutputStore2016(final Symbol systemID,
       final ArgumentStore argStore, final LinkingStore linkingStore,
-      File corpusLinkingFile) {
+      final Optional<File> corpusLinkingFile, final Optional<CharSource> archivedCorpusLinking) {
     this.systemID = checkNotNull(systemID);
     this.argumentStore = checkNotNull(argStore);
     this.linkingStore = checkNotNull(linkingStore);
     this.corpusLinkingFile = checkNotNull(corpusLinkingFile);
+    this.archivedCorpusLinking = checkNotNull(archivedCorpusLinking);
+  }
+
+  private SystemOutputStore2016(final Symbol systemID,
+      final ArgumentStore argStore, final LinkingStore linkingStore,
+      File corpusLinkingFile) {
+    this(systemID, argStore, linkingStore, Optional.of(corpusLinkingFile),
+        Optional.<CharSource>absent());
+  }
+
+  /**
+   * Opens a read-only store from the {@code arguments}, {@code linking}, and {@code corpusLinking}
+   * directories of {@code archive}.
+   */
+  public static SystemOutputStore2016 open(SubmissionArchive archive) throws IOException {
+    final ArgumentStore argStore = AssessmentSpecFormats.openSystemOutputStore(archive,
+        "arguments", AssessmentSpecFormats.Format.KBP2015);
+    final LinkingStore linkingStore =
+        LinkingStoreSource.createFor2016().openLinkingStore(archive, "linking");
+    if (argStore.docIDs().equals(linkingStore.docIDs())) {
+      return new SystemOutputStore2016(Symbol.from(archive.name()), argStore, linkingStore,
+          Optional.<File>absent(), archive.file("corpusLinking/corpusLinking"));
+    } else {
+      throw new RuntimeException("Argument and linking store docIDs do not match, missing " + Sets
+          .symmetricDifference(argStore.docIDs(), linkingStore.docIDs()));
+    }
   }
 
   public static SystemOutputStore2016 open(File dir) throws IOException {
@@ -91,9 +120,11 @@ public class SystemOutputStore2016 implements SystemOutputStore, CrossDocSystemO
 
   @Override
   public CorpusEventLinking readCorpusEventFrames() throws IOException {
-    if (corpusLinkingFile.isFile()) {
-      return eventFrameReader.loadCorpusEventFrames(Files.asCharSource(corpusLinkingFile,
+    if (corpusLinkingFile.isPresent() && corpusLinkingFile.get().isFile()) {
+      return eventFrameReader.loadCorpusEventFrames(Files.asCharSource(corpusLinkingFile.get(),
           Charsets.UTF_8));
+    } else if (archivedCorpusLinking.isPresent()) {
+      return eventFrameReader.loadCorpusEventFrames(archivedCorpusLinking.get());
     } else {
       return CorpusEventLinking.of(ImmutableSet.<CorpusEventFrame>of());
     }
@@ -101,9 +132,13 @@ public class SystemOutputStore2016 implements SystemOutputStore, CrossDocSystemO
 
   @Override
   public void writeCorpusEventFrames(CorpusEventLinking corpusEventFrames) throws IOException {
-    corpusLinkingFile.getParentFile().mkdirs();
-    eventFrameWriter.writeCorpusEventFrames(corpusEventFrames, Files.asCharSink(corpusLinkingFile,
-        Charsets.UTF_8));
+    if (!corpusLinkingFile.isPresent()) {
+      throw new UnsupportedOperationException("Cannot write to a submission archive");
+    }
+    corpusLinkingFile.get().getParentFile().mkdirs();
+    final StringBuilder sb = new StringBuilder();
+    eventFrameWriter.writeCorpusEventFrames(corpusEventFrames, TACKBPEALIOUtils.appendingTo(sb));
+    TACKBPEALIOUtils.writeAtomically(sb, corpusLinkingFile.get());
   }
 
   @Override
@@ -127,8 +162,9 @@ public class SystemOutputStore2016 implements SystemOutputStore, CrossDocSystemO
   @Override
   public void write(final DocumentSystemOutput output) throws IOException {
     checkArgument(output instanceof DocumentSystemOutput2015);
-    argumentStore.write(output.arguments());
+    // linking first, so a crash in between can't leave a document with arguments but no linking
     linkingStore.write(((DocumentSystemOutput2015) output).linking());
+    argumentStore.write(output.arguments());
   }
 
   @Override
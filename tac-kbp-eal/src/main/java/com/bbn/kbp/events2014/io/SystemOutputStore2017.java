@@ -98,8 +98,9 @@ public final class SystemOutputStore2017 implements SystemOutputStore, CrossDocS
   @Override
   public void writeCorpusEventFrames(CorpusEventLinking corpusEventFrames) throws IOException {
     corpusLinkingFile.getParentFile().mkdirs();
-    eventFrameWriter.writeCorpusEventFrames(corpusEventFrames, Files.asCharSink(corpusLinkingFile,
-        Charsets.UTF_8));
+    final StringBuilder sb = new StringBuilder();
+    eventFrameWriter.writeCorpusEventFrames(corpusEventFrames, TACKBPEALIOUtils.appendingTo(sb));
+    TACKBPEALIOUtils.writeAtomically(sb, corpusLinkingFile);
   }
 
   @Override
@@ -123,8 +124,9 @@ public final class SystemOutputStore2017 implements SystemOutputStore, CrossDocS
   @Override
   public void write(final DocumentSystemOutput output) throws IOException {
     checkArgument(output instanceof DocumentSystemOutput2015);
-    argumentStore.write(output.arguments());
+    // linking first, so a crash in between can't leave a document with arguments but no linking
     linkingStore.write(((DocumentSystemOutput2015) output).linking());
+    argumentStore.write(output.arguments());
   }
 
   @Override
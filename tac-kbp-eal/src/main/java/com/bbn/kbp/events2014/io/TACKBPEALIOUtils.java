@@ -3,8 +3,25 @@ package com.bbn.kbp.events2014.io;
 import com.bbn.bue.common.strings.offsets.CharOffset;
 import com.bbn.bue.common.strings.offsets.OffsetRange;
 import com.bbn.kbp.events2014.CharOffsetSpan;
+import com.bbn.kbp.events2014.DocumentInternPool;
 import com.bbn.kbp.events2014.TACKBPEALException;
 
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.CharSink;
+import com.google.common.io.CharStreams;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.StandardCopyOption;
+import java.util.regex.Pattern;
+
 final class TACKBPEALIOUtils {
 
   private TACKBPEALIOUtils() {
@@ -19,8 +36,125 @@ final class TACKBPEALIOUtils {
     return CharOffsetSpan.fromOffsetsOnly(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
   }
 
+  public static CharOffsetSpan parseCharOffsetSpan(final String s, final DocumentInternPool pool) {
+    final long packed = parsePackedCharOffsetSpan(s, 0, s.length());
+    return pool.span(DocumentInternPool.packedStart(packed), DocumentInternPool.packedEnd(packed));
+  }
+
+  /**
+   * Parses the span {@code start-end} found in {@code s} between {@code from} (inclusive) and
+   * {@code to} (exclusive), ignoring surrounding whitespace, into the form given by {@link
+   * DocumentInternPool#pack(int, int)}. No substrings are created.
+   */
+  static long parsePackedCharOffsetSpan(final String s, int from, int to) {
+    while (from < to && Character.isWhitespace(s.charAt(from))) {
+      ++from;
+    }
+    while (to > from && Character.isWhitespace(s.charAt(to - 1))) {
+      --to;
+    }
+    final int dash = s.indexOf('-', from);
+    if (dash < 0 || dash >= to) {
+      throw new TACKBPEALException(String.format("Invalid span %s", s.substring(from, to)));
+    }
+    return DocumentInternPool.pack(parseOffset(s, from, dash), parseOffset(s, dash + 1, to));
+  }
+
+  // accepts what Integer.parseInt accepts for a non-negative int, including a leading '+'
+  private static int parseOffset(final String s, int from, final int to) {
+    if (from < to && s.charAt(from) == '+') {
+      ++from;
+    }
+    if (from == to) {
+      throw new TACKBPEALException(String.format("Invalid span offset in %s", s));
+    }
+    int ret = 0;
+    for (int i = from; i < to; ++i) {
+      final int digit = s.charAt(i) - '0';
+      if (digit < 0 || digit > 9 || ret > (Integer.MAX_VALUE - digit) / 10) {
+        throw new TACKBPEALException(
+            String.format("Invalid span offset %s in %s", s.substring(from, to), s));
+      }
+      ret = 10 * ret + digit;
+    }
+    return ret;
+  }
+
   public static OffsetRange<CharOffset> parseCharOffsetRange(final String s) {
     return parseCharOffsetSpan(s).asCharOffsetRange();
   }
 
+  // writeAtomically writes f to a temporary file named .<name of f>.inprogress-<random digits>.
+  // Only such names are skipped by documentFileNames; other dot-files are kept.
+  private static final String IN_PROGRESS_MARKER = ".inprogress-";
+  private static final Pattern IN_PROGRESS_NAME =
+      Pattern.compile("\\..+" + Pattern.quote(IN_PROGRESS_MARKER) + "-?\\d+");
+
+  /**
+   * Writes {@code content} to {@code f} as UTF-8 such that readers (and crashes) see either the
+   * previous contents of {@code f} or the new contents, never a partial file.  The content is
+   * written to a temporary file in the same directory which is then renamed over {@code f}.  This
+   * protects against the writing process dying part way through; it does not force the data to
+   * disk.
+   */
+  static void writeAtomically(final CharSequence content, final File f) throws IOException {
+    // an empty suffix so the name ends with createTempFile's random digits
+    final File tmp = File.createTempFile("." + f.getName() + IN_PROGRESS_MARKER, "",
+        f.getAbsoluteFile().getParentFile());
+    boolean moved = false;
+    try {
+      final ByteBuffer bytes = Charsets.UTF_8.encode(CharBuffer.wrap(content));
+      try (FileOutputStream out = new FileOutputStream(tmp)) {
+        final FileChannel channel = out.getChannel();
+        while (bytes.hasRemaining()) {
+          channel.write(bytes);
+        }
+      }
+      try {
+        java.nio.file.Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        java.nio.file.Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+      moved = true;
+    } finally {
+      if (!moved) {
+        tmp.delete();
+      }
+    }
+  }
+
+  /**
+   * Whether {@code f} is a temporary file left by {@link #writeAtomically(CharSequence, File)},
+   * possibly by a writer which crashed.  Such files should not be treated as documents.
+   */
+  static boolean isInProgressWrite(final File f) {
+    return IN_PROGRESS_NAME.matcher(f.getName()).matches();
+  }
+
+  /**
+   * The names of the document files in {@code directory}, skipping any writes in progress.
+   */
+  static ImmutableSet<String> documentFileNames(final File directory) {
+    final ImmutableSet.Builder<String> ret = ImmutableSet.builder();
+    for (final File f : directory.listFiles()) {
+      if (!isInProgressWrite(f)) {
+        ret.add(f.getName());
+      }
+    }
+    return ret.build();
+  }
+
+  /**
+   * A {@link CharSink} which appends to {@code sb}, for writers which produce a {@link CharSink}
+   * but whose output we wish to write with {@link #writeAtomically(CharSequence, File)}.
+   */
+  static CharSink appendingTo(final StringBuilder sb) {
+    return new CharSink() {
+      @Override
+      public Writer openStream() {
+        return CharStreams.asWriter(sb);
+      }
+    };
+  }
 }
@@ -0,0 +1,193 @@
+package com.bbn.kbp.events2014.linking;
+
+import com.bbn.kbp.events2014.Response;
+import com.bbn.kbp.events2014.TypeRoleFillerRealis;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Interns the equivalence classes ({@link TypeRoleFillerRealis}es) of one document's responses to
+ * small ints, so event frames can be handled as sorted {@code int} arrays.  Each response is
+ * canonicalized exactly once, when the index is built, and comparing frames is then a merge over
+ * arrays rather than hashing of equivalence classes.
+ *
+ * IDs are assigned in the order equivalence classes are first seen, so sets built from sorted ID
+ * arrays have a deterministic iteration order.
+ */
+final class EquivalenceClassIndex {
+
+  private static final int[] EMPTY = new int[0];
+
+  private final Map<Response, Integer> responseIds = Maps.newHashMap();
+  private final Map<TypeRoleFillerRealis, Integer> equivalenceClassIds = Maps.newHashMap();
+  private final List<TypeRoleFillerRealis> equivalenceClasses = Lists.newArrayList();
+  private final List<List<Response>> responsesByID = Lists.newArrayList();
+
+  private EquivalenceClassIndex() {
+  }
+
+  /**
+   * Indexes {@code responses} by {@code canonicalizer}, which must be able to canonicalize every
+   * one of them.
+   */
+  static EquivalenceClassIndex create(final Iterable<Response> responses,
+      final Function<? super Response, TypeRoleFillerRealis> canonicalizer) {
+    final EquivalenceClassIndex ret = new EquivalenceClassIndex();
+    for (final Response response : responses) {
+      ret.add(response, checkNotNull(canonicalizer.apply(response)));
+    }
+    return ret;
+  }
+
+  /**
+   * Indexes those of {@code responses} which {@code canonicalizer} can canonicalize. The rest are
+   * ignored.
+   */
+  static EquivalenceClassIndex createIfPossible(final Iterable<Response> responses,
+      final Function<? super Response, Optional<TypeRoleFillerRealis>> canonicalizer) {
+    final EquivalenceClassIndex ret = new EquivalenceClassIndex();
+    for (final Response response : responses) {
+      final Optional<TypeRoleFillerRealis> equivalenceClass = canonicalizer.apply(response);
+      if (equivalenceClass.isPresent()) {
+        ret.add(response, equivalenceClass.get());
+      }
+    }
+    return ret;
+  }
+
+  private void add(final Response response, final TypeRoleFillerRealis equivalenceClass) {
+    if (responseIds.containsKey(response)) {
+      return;
+    }
+    Integer id = equivalenceClassIds.get(equivalenceClass);
+    if (id == null) {
+      id = equivalenceClasses.size();
+      equivalenceClassIds.put(equivalenceClass, id);
+      equivalenceClasses.add(equivalenceClass);
+      responsesByID.add(Lists.<Response>newArrayListWithCapacity(2));
+    }
+    responseIds.put(response, id);
+    responsesByID.get(id).add(response);
+  }
+
+  /**
+   * The sorted, distinct IDs of the equivalence classes of those of {@code responses} which are in
+   * the index.
+   */
+  int[] idsOfResponses(final Iterable<Response> responses) {
+    int[] ret = new int[8];
+    int size = 0;
+    for (final Response response : responses) {
+      final Integer id = responseIds.get(response);
+      if (id != null) {
+        if (size == ret.length) {
+          ret = Arrays.copyOf(ret, 2 * size);
+        }
+        ret[size++] = id;
+      }
+    }
+    return sortedDistinct(ret, size);
+  }
+
+  /**
+   * The sorted, distinct IDs of those of {@code equivalenceClasses} which are in the index.
+   */
+  int[] idsOfEquivalenceClasses(final Iterable<TypeRoleFillerRealis> equivalenceClasses) {
+    int[] ret = new int[8];
+    int size = 0;
+    for (final TypeRoleFillerRealis equivalenceClass : equivalenceClasses) {
+      final Integer id = equivalenceClassIds.get(equivalenceClass);
+      if (id != null) {
+        if (size == ret.length) {
+          ret = Arrays.copyOf(ret, 2 * size);
+        }
+        ret[size++] = id;
+      }
+    }
+    return sortedDistinct(ret, size);
+  }
+
+  ImmutableSet<TypeRoleFillerRealis> equivalenceClasses(final int[] ids) {
+    final ImmutableSet.Builder<TypeRoleFillerRealis> ret = ImmutableSet.builder();
+    for (final int id : ids) {
+      ret.add(equivalenceClasses.get(id));
+    }
+    return ret.build();
+  }
+
+  ImmutableSet<Response> responses(final int[] ids) {
+    final ImmutableSet.Builder<Response> ret = ImmutableSet.builder();
+    for (final int id : ids) {
+      ret.addAll(responsesByID.get(id));
+    }
+    return ret.build();
+  }
+
+  /**
+   * Sorts the first {@code size} elements of {@code ids} and removes duplicates.
+   */
+  static int[] sortedDistinct(final int[] ids, final int size) {
+    if (size == 0) {
+      return EMPTY;
+    }
+    Arrays.sort(ids, 0, size);
+    int numDistinct = 1;
+    for (int i = 1; i < size; ++i) {
+      if (ids[i] != ids[numDistinct - 1]) {
+        ids[numDistinct++] = ids[i];
+      }
+    }
+    return Arrays.copyOf(ids, numDistinct);
+  }
+
+  /**
+   * The elements of sorted array {@code a} which are not in sorted array {@code b}.
+   */
+  static int[] difference(final int[] a, final int[] b) {
+    final int[] ret = new int[a.length];
+    int size = 0;
+    int j = 0;
+    for (final int x : a) {
+      while (j < b.length && b[j] < x) {
+        ++j;
+      }
+      if (j == b.length || b[j] != x) {
+        ret[size++] = x;
+      }
+    }
+    return size == ret.length ? ret : Arrays.copyOf(ret, size);
+  }
+
+  /**
+   * The union of sorted arrays {@code a} and {@code b}.
+   */
+  static int[] union(final int[] a, final int[] b) {
+    final int[] ret = new int[a.length + b.length];
+    int size = 0;
+    int i = 0;
+    int j = 0;
+    while (i < a.length || j < b.length) {
+      final int x;
+      if (j == b.length || (i < a.length && a[i] < b[j])) {
+        x = a[i++];
+      } else if (i == a.length || b[j] < a[i]) {
+        x = b[j++];
+      } else {
+        x = a[i++];
+        ++j;
+      }
+      ret[size++] = x;
+    }
+    return size == ret.length ? ret : Arrays.copyOf(ret, size);
+  }
+}
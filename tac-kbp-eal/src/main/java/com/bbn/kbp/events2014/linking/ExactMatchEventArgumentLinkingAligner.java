@@ -9,10 +9,7 @@ import com.bbn.kbp.events2014.ResponseSet;
 import com.bbn.kbp.events2014.TypeRoleFillerRealis;
 import com.bbn.kbp.events2014.TypeRoleFillerRealisSet;
 
-import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
 import com.google.common.collect.Sets;
 
 import java.util.Set;
@@ -44,22 +41,19 @@ public class ExactMatchEventArgumentLinkingAligner implements EventArgumentLinki
     // validly include responses which were not included in the answerKey because
     // there was a higher scoring system response in the same equivalence class
 
-    final ImmutableMultimap<TypeRoleFillerRealis, Response> canonicalToResponses =
-        Multimaps.index(responseLinking.allResponses(),
-            TypeRoleFillerRealis.extractFromSystemResponse(
-                answerKey.corefAnnotation().strictCASNormalizerFunction()));
-
-    final Multimap<Response, TypeRoleFillerRealis> responsesToCanonical =
-        canonicalToResponses.inverse();
+    // response sets are canonicalized through interned equivalence class IDs
+    final EquivalenceClassIndex equivalenceClasses = EquivalenceClassIndex.create(
+        responseLinking.allResponses(),
+        TypeRoleFillerRealis.extractFromSystemResponse(
+            answerKey.corefAnnotation().strictCASNormalizerFunction()));
 
     final ImmutableSet.Builder<TypeRoleFillerRealisSet> coreffedArgs = ImmutableSet.builder();
     for (final ResponseSet responseSet : responseLinking.responseSets()) {
       coreffedArgs.add(TypeRoleFillerRealisSet.from(
-          canonicalizeResponseSet(responseSet.asSet(),
-              canonicalToResponses, responsesToCanonical)));
+          canonicalizeResponseSet(responseSet.asSet(), equivalenceClasses)));
     }
     final ImmutableSet<TypeRoleFillerRealis> incompleteResponses = canonicalizeResponseSet(
-        responseLinking.incompleteResponses(), canonicalToResponses, responsesToCanonical);
+        responseLinking.incompleteResponses(), equivalenceClasses);
 
     return EventArgumentLinking.builder().docID(responseLinking.docID())
         .eventFrames(coreffedArgs.build()).incomplete(incompleteResponses).build();
@@ -81,49 +75,32 @@ public class ExactMatchEventArgumentLinkingAligner implements EventArgumentLinki
     // For every Response in answerKey, answerKey.corefAnnotation().strictCASNormalizerFunction() will try to find
     // a canonical coreferent for the Response's CAS (KBPString), by checking CorefAnnotation.CASesToIDs
     // If the KBPString does not exist in CASesToIDs, then an Exception will be thrown
-    final ImmutableMultimap<TypeRoleFillerRealis, Response> canonicalToResponses =
-        Multimaps.index(answerKey.allResponses(),
-            TypeRoleFillerRealis.extractFromSystemResponse(
-                answerKey.corefAnnotation().strictCASNormalizerFunction()));
-
-    final ImmutableSet.Builder<Response> incompletes = ImmutableSet.builder();
-    for (final TypeRoleFillerRealis incompleteEquivClass : eventArgumentLinking.incomplete()) {
-      incompletes.addAll(canonicalToResponses.get(incompleteEquivClass));
-    }
+    final EquivalenceClassIndex equivalenceClasses = EquivalenceClassIndex.create(
+        answerKey.allResponses(),
+        TypeRoleFillerRealis.extractFromSystemResponse(
+            answerKey.corefAnnotation().strictCASNormalizerFunction()));
+
+    final ImmutableSet<Response> incompletes = equivalenceClasses.responses(
+        equivalenceClasses.idsOfEquivalenceClasses(eventArgumentLinking.incomplete()));
 
     final ImmutableSet.Builder<ResponseSet> responseSets = ImmutableSet.builder();
     for (final TypeRoleFillerRealisSet equivClassSet : eventArgumentLinking.eventFrames()) {
-      final ImmutableSet.Builder<Response> setBuilder = ImmutableSet.builder();
-      for (final TypeRoleFillerRealis trfr : equivClassSet.asSet()) {
-        setBuilder.addAll(canonicalToResponses.get(trfr));
-      }
-      responseSets.add(ResponseSet.from(setBuilder.build()));
+      responseSets.add(ResponseSet.from(equivalenceClasses.responses(
+          equivalenceClasses.idsOfEquivalenceClasses(equivClassSet.asSet()))));
     }
 
     return ResponseLinking.builder().docID(answerKey.docId()).responseSets(responseSets.build())
-        .incompleteResponses(incompletes.build()).build();
+        .incompleteResponses(incompletes).build();
   }
 
   /**
-   * Maps a {@code Set<Response>} to a {@code Set<TypeRoleFillerRealis>} which is supported by
-   * exactly the same responses.  If any response supporting a TRFR is present in {@code
-   * responseGroup}, that TRFR will appear in the returned set. However, if such a TRFR is supported
-   * by responses but within and outside {@code responseSet}, an {@link
-   * java.lang.IllegalArgumentException} is thrown.
+   * Maps a {@code Set<Response>} to the {@code Set<TypeRoleFillerRealis>} of the equivalence
+   * classes of its responses.  The result is ordered by equivalence class ID, so it does not
+   * depend on the iteration order of {@code responseGroup}.
    */
   private static ImmutableSet<TypeRoleFillerRealis> canonicalizeResponseSet(
-      Set<Response> responseGroup,
-      Multimap<TypeRoleFillerRealis, Response> canonicalToResponses,
-      Multimap<Response, TypeRoleFillerRealis> responsesToCanonical)
-      throws InconsistentLinkingException {
-    final ImmutableSet.Builder<TypeRoleFillerRealis> canonicalizationsWithResponsesInGroupBuilder =
-        ImmutableSet.builder();
-    for (final Response response : responseGroup) {
-      for (final TypeRoleFillerRealis canonicalization : responsesToCanonical.get(response)) {
-        canonicalizationsWithResponsesInGroupBuilder.add(canonicalization);
-      }
-    }
-
-    return canonicalizationsWithResponsesInGroupBuilder.build();
+      Set<Response> responseGroup, EquivalenceClassIndex equivalenceClasses) {
+    return equivalenceClasses.equivalenceClasses(
+        equivalenceClasses.idsOfResponses(responseGroup));
   }
 }
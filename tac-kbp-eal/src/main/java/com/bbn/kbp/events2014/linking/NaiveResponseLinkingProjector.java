@@ -15,11 +15,8 @@ import com.bbn.kbp.events2014.io.AssessmentSpecFormats;
 import com.bbn.kbp.events2014.io.LinkingStore;
 import com.bbn.kbp.events2014.io.LinkingStoreSource;
 
-import com.google.common.base.Function;
 import com.google.common.base.Optional;
-import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Sets;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -79,36 +76,38 @@ public final class NaiveResponseLinkingProjector {
     checkState(sourceLinking != null, "You forgot to call from()");
     checkState(targetAnswerKey.docId() == sourceLinking.docID());
 
-    final Function<Response, Optional<TypeRoleFillerRealis>> toEquivalenceClassIfPossible =
+    // source and target responses are canonicalized together, once each, so projection can be
+    // done on sorted arrays of equivalence class IDs
+    final Iterable<Response> targetResponses = transform(targetAnswerKey.annotatedResponses(),
+        AssessedResponseFunctions.response());
+    final EquivalenceClassIndex equivalenceClasses = EquivalenceClassIndex.createIfPossible(
+        concat(sourceLinking.allResponses(), targetResponses),
         TypeRoleFillerRealis.extractFromSystemResponseIfPossible(
-            targetAnswerKey.corefAnnotation().normalizeCASIfPossibleFunction());
+            targetAnswerKey.corefAnnotation().normalizeCASIfPossibleFunction()));
 
     final ImmutableSet.Builder<TypeRoleFillerRealisSet> projectedSetsB =
         ImmutableSet.builder();
+    int[] idsInProjection = new int[0];
 
     for (final ResponseSet responseSet : sourceLinking.responseSets()) {
       // get the equivalence class for every response for which
       // coref information is available in the target
-      final ImmutableSet<TypeRoleFillerRealis> projectedEquivalenceClasSet =
-          ImmutableSet.copyOf(Optional.presentInstances(
-              transform(responseSet, toEquivalenceClassIfPossible)));
+      final int[] projectedEquivalenceClassIDs = equivalenceClasses.idsOfResponses(responseSet);
       // empty sets are meaningless and invalid, so no response in the source
       // could be projected to the target, the set isn't projected either
-      if (!projectedEquivalenceClasSet.isEmpty()) {
-        projectedSetsB.add(TypeRoleFillerRealisSet.from(projectedEquivalenceClasSet));
+      if (projectedEquivalenceClassIDs.length > 0) {
+        projectedSetsB.add(TypeRoleFillerRealisSet.from(
+            equivalenceClasses.equivalenceClasses(projectedEquivalenceClassIDs)));
+        idsInProjection =
+            EquivalenceClassIndex.union(idsInProjection, projectedEquivalenceClassIDs);
       }
     }
     final ImmutableSet<TypeRoleFillerRealisSet> projectedSets = projectedSetsB.build();
-    final ImmutableSet<TypeRoleFillerRealis> TRFRsInProjection =
-        ImmutableSet.copyOf(concat(projectedSets));
-    final ImmutableSet<TypeRoleFillerRealis> allTargetTRFRs = ImmutableSet.copyOf(
-        Optional.presentInstances(FluentIterable
-            .from(targetAnswerKey.annotatedResponses())
-            .transform(AssessedResponseFunctions.response())
-            .transform(toEquivalenceClassIfPossible)));
+    final int[] allTargetIDs = equivalenceClasses.idsOfResponses(targetResponses);
 
     final Set<TypeRoleFillerRealis> projectedIncompletesNotFoundElsewhere =
-        Sets.difference(allTargetTRFRs, TRFRsInProjection);
+        equivalenceClasses.equivalenceClasses(
+            EquivalenceClassIndex.difference(allTargetIDs, idsInProjection));
 
     final EventArgumentLinking projectedEventArgumentLinking = EventArgumentLinking.builder()
         .docID(targetAnswerKey.docId()).eventFrames(projectedSets)
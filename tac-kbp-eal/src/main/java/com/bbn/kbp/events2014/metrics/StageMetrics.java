@@ -0,0 +1,455 @@
+package com.bbn.kbp.events2014.metrics;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Counters, timers and histograms for the stages of a single scoring or validation run, so we can
+ * see where the time goes on a full corpus without attaching a profiler.
+ *
+ * A {@link Timer} records how long one stage took for each document it is used on; at the end of
+ * the run we report the total, mean, median, 99th percentile and maximum time per document for
+ * each stage, along with the documents per second the stage processed. Work which is not done
+ * per document, such as writing corpus-level results or drawing bootstrap samples, is timed as a
+ * phase instead; phases report how many times they ran and how long that took, but no document
+ * throughput. A {@link Counter} is just
+ * a running total and a {@link Histogram} records arbitrary per-document quantities, such as the
+ * number of responses.  Percentiles are exact, since we keep every observation; at one
+ * observation per document per stage this is cheap.
+ *
+ * Everything may be used from several threads at once.  Metrics are reported in the order they
+ * were first requested, which for the scorers is roughly the order of the pipeline. Stages run
+ * concurrently on prefetching threads, so the time of all stages may exceed the elapsed time of
+ * the run; documents per second for a stage is what one thread running it would manage.
+ *
+ * {@link #disabled()} returns metrics which record nothing, for callers who do not want them.
+ */
+public final class StageMetrics {
+
+  private static final Logger log = LoggerFactory.getLogger(StageMetrics.class);
+
+  private static final StageMetrics DISABLED = new StageMetrics(false);
+
+  private final boolean enabled;
+  private final long startNanos = System.nanoTime();
+  // guarded by this
+  private final Map<String, Timer> timers = Maps.newLinkedHashMap();
+  private final Map<String, Timer> phases = Maps.newLinkedHashMap();
+  private final Map<String, Counter> counters = Maps.newLinkedHashMap();
+  private final Map<String, Histogram> histograms = Maps.newLinkedHashMap();
+
+  private final Timer disabledTimer;
+  private final Counter disabledCounter;
+  private final Histogram disabledHistogram;
+
+  private StageMetrics(final boolean enabled) {
+    this.enabled = enabled;
+    this.disabledTimer = new Timer("disabled", false);
+    this.disabledCounter = new Counter(false);
+    this.disabledHistogram = new Histogram(false);
+  }
+
+  public static StageMetrics create() {
+    return new StageMetrics(true);
+  }
+
+  /**
+   * Metrics which record nothing and whose timers never read the clock.
+   */
+  public static StageMetrics disabled() {
+    return DISABLED;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * The timer for the named stage, created on first use.
+   */
+  public synchronized Timer timer(final String stage) {
+    checkNotNull(stage);
+    if (!enabled) {
+      return disabledTimer;
+    }
+    Timer ret = timers.get(stage);
+    if (ret == null) {
+      ret = new Timer(stage, true);
+      timers.put(stage, ret);
+    }
+    return ret;
+  }
+
+  /**
+   * The timer for the named phase, created on first use. Each use of a phase timer is one run of
+   * the phase rather than one document.
+   */
+  public synchronized Timer phase(final String name) {
+    checkNotNull(name);
+    if (!enabled) {
+      return disabledTimer;
+    }
+    Timer ret = phases.get(name);
+    if (ret == null) {
+      ret = new Timer(name, true);
+      phases.put(name, ret);
+    }
+    return ret;
+  }
+
+  /**
+   * The named counter, created on first use.
+   */
+  public synchronized Counter counter(final String name) {
+    checkNotNull(name);
+    if (!enabled) {
+      return disabledCounter;
+    }
+    Counter ret = counters.get(name);
+    if (ret == null) {
+      ret = new Counter(true);
+      counters.put(name, ret);
+    }
+    return ret;
+  }
+
+  /**
+   * The named histogram, created on first use.
+   */
+  public synchronized Histogram histogram(final String name) {
+    checkNotNull(name);
+    if (!enabled) {
+      return disabledHistogram;
+    }
+    Histogram ret = histograms.get(name);
+    if (ret == null) {
+      ret = new Histogram(true);
+      histograms.put(name, ret);
+    }
+    return ret;
+  }
+
+  /**
+   * Starts timing one document's pass through the named stage. Equivalent to {@code
+   * timer(stage).start()}.
+   */
+  public Timer.Context time(final String stage) {
+    return timer(stage).start();
+  }
+
+  /**
+   * Starts timing one run of the named phase. Equivalent to {@code phase(name).start()}.
+   */
+  public Timer.Context timePhase(final String name) {
+    return phase(name).start();
+  }
+
+  public long elapsedMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+  }
+
+  /**
+   * Renders every metric recorded so far as a JSON object with {@code elapsedMillis}, {@code
+   * stages}, {@code phases}, {@code counters} and {@code histograms} fields.
+   */
+  public String toJSON() {
+    final ImmutableMap<String, Timer> timersCopy;
+    final ImmutableMap<String, Timer> phasesCopy;
+    final ImmutableMap<String, Counter> countersCopy;
+    final ImmutableMap<String, Histogram> histogramsCopy;
+    synchronized (this) {
+      timersCopy = ImmutableMap.copyOf(timers);
+      phasesCopy = ImmutableMap.copyOf(phases);
+      countersCopy = ImmutableMap.copyOf(counters);
+      histogramsCopy = ImmutableMap.copyOf(histograms);
+    }
+
+    final StringBuilder sb = new StringBuilder();
+    sb.append("{\n  \"elapsedMillis\": ").append(elapsedMillis()).append(",\n");
+
+    sb.append("  \"stages\": {");
+    String separator = "\n";
+    for (final Map.Entry<String, Timer> e : timersCopy.entrySet()) {
+      final Snapshot nanos = e.getValue().nanos.snapshot();
+      sb.append(separator).append("    ");
+      appendString(e.getKey(), sb);
+      sb.append(": {\"documents\": ").append(nanos.count)
+          .append(", \"totalMillis\": ").append(format(millis(nanos.sum)))
+          .append(", \"meanMillis\": ").append(format(millis(nanos.mean())))
+          .append(", \"p50Millis\": ").append(format(millis(nanos.percentile(0.5))))
+          .append(", \"p99Millis\": ").append(format(millis(nanos.percentile(0.99))))
+          .append(", \"maxMillis\": ").append(format(millis(nanos.max())))
+          .append(", \"documentsPerSecond\": ")
+          .append(format(nanos.sum == 0 ? 0.0 : nanos.count * 1.0e9 / nanos.sum))
+          .append("}");
+      separator = ",\n";
+    }
+    sb.append(timersCopy.isEmpty() ? "},\n" : "\n  },\n");
+
+    sb.append("  \"phases\": {");
+    separator = "\n";
+    for (final Map.Entry<String, Timer> e : phasesCopy.entrySet()) {
+      final Snapshot nanos = e.getValue().nanos.snapshot();
+      sb.append(separator).append("    ");
+      appendString(e.getKey(), sb);
+      sb.append(": {\"runs\": ").append(nanos.count)
+          .append(", \"totalMillis\": ").append(format(millis(nanos.sum)))
+          .append(", \"meanMillis\": ").append(format(millis(nanos.mean())))
+          .append(", \"maxMillis\": ").append(format(millis(nanos.max())))
+          .append("}");
+      separator = ",\n";
+    }
+    sb.append(phasesCopy.isEmpty() ? "},\n" : "\n  },\n");
+
+    sb.append("  \"counters\": {");
+    separator = "\n";
+    for (final Map.Entry<String, Counter> e : countersCopy.entrySet()) {
+      sb.append(separator).append("    ");
+      appendString(e.getKey(), sb);
+      sb.append(": ").append(e.getValue().get());
+      separator = ",\n";
+    }
+    sb.append(countersCopy.isEmpty() ? "},\n" : "\n  },\n");
+
+    sb.append("  \"histograms\": {");
+    separator = "\n";
+    for (final Map.Entry<String, Histogram> e : histogramsCopy.entrySet()) {
+      final Snapshot values = e.getValue().snapshot();
+      sb.append(separator).append("    ");
+      appendString(e.getKey(), sb);
+      sb.append(": {\"count\": ").append(values.count)
+          .append(", \"sum\": ").append(values.sum)
+          .append(", \"mean\": ").append(format(values.mean()))
+          .append(", \"p50\": ").append(values.percentile(0.5))
+          .append(", \"p99\": ").append(values.percentile(0.99))
+          .append(", \"max\": ").append(values.max())
+          .append("}");
+      separator = ",\n";
+    }
+    sb.append(histogramsCopy.isEmpty() ? "}\n" : "\n  }\n");
+    sb.append("}\n");
+    return sb.toString();
+  }
+
+  /**
+   * Writes {@link #toJSON()} to {@code f}. Does nothing if these metrics are disabled.
+   */
+  public void writeJSON(final File f) throws IOException {
+    if (enabled) {
+      Files.createParentDirs(f);
+      Files.asCharSink(f, Charsets.UTF_8).write(toJSON());
+    }
+  }
+
+  /**
+   * Logs the total and per-document times of each stage and the total time of each phase.
+   */
+  public void logSummary() {
+    final ImmutableMap<String, Timer> timersCopy;
+    final ImmutableMap<String, Timer> phasesCopy;
+    synchronized (this) {
+      timersCopy = ImmutableMap.copyOf(timers);
+      phasesCopy = ImmutableMap.copyOf(phases);
+    }
+    for (final Timer timer : timersCopy.values()) {
+      final Snapshot nanos = timer.nanos.snapshot();
+      log.info("Spent {} ms {} for {} documents (median {} ms, 99th percentile {} ms)",
+          TimeUnit.NANOSECONDS.toMillis(nanos.sum), timer.stage, nanos.count,
+          format(millis(nanos.percentile(0.5))), format(millis(nanos.percentile(0.99))));
+    }
+    for (final Timer phase : phasesCopy.values()) {
+      final Snapshot nanos = phase.nanos.snapshot();
+      log.info("Spent {} ms {} over {} runs", TimeUnit.NANOSECONDS.toMillis(nanos.sum),
+          phase.stage, nanos.count);
+    }
+  }
+
+  private static double millis(final double nanos) {
+    return nanos / 1.0e6;
+  }
+
+  private static String format(final double x) {
+    // the root locale so the output is valid JSON regardless of the default locale
+    return String.format(Locale.ROOT, "%.3f", x);
+  }
+
+  private static void appendString(final String s, final StringBuilder sb) {
+    sb.append('"');
+    for (int i = 0; i < s.length(); ++i) {
+      final char c = s.charAt(i);
+      if (c == '"' || c == '\\') {
+        sb.append('\\').append(c);
+      } else if (c < 0x20) {
+        sb.append(String.format("\\u%04x", (int) c));
+      } else {
+        sb.append(c);
+      }
+    }
+    sb.append('"');
+  }
+
+  /**
+   * Times each document's pass through a stage.  Typical use is
+   *
+   * <pre>
+   *   try (StageMetrics.Timer.Context ignored = metrics.time("aligning arguments")) {
+   *     ...
+   *   }
+   * </pre>
+   */
+  public static final class Timer {
+
+    private final String stage;
+    private final Histogram nanos;
+    private final Context disabledContext;
+
+    private Timer(final String stage, final boolean enabled) {
+      this.stage = stage;
+      this.nanos = new Histogram(enabled);
+      this.disabledContext = new Context(this, 0L);
+    }
+
+    /**
+     * Starts timing one document. The time is recorded when the returned context is closed.
+     */
+    public Context start() {
+      if (!nanos.enabled) {
+        return disabledContext;
+      }
+      return new Context(this, System.nanoTime());
+    }
+
+    public void record(final long duration, final TimeUnit unit) {
+      nanos.record(unit.toNanos(duration));
+    }
+
+    public static final class Context implements AutoCloseable {
+
+      private final Timer timer;
+      private final long startNanos;
+
+      private Context(final Timer timer, final long startNanos) {
+        this.timer = timer;
+        this.startNanos = startNanos;
+      }
+
+      @Override
+      public void close() {
+        if (timer.nanos.enabled) {
+          timer.nanos.record(System.nanoTime() - startNanos);
+        }
+      }
+    }
+  }
+
+  public static final class Counter {
+
+    private final boolean enabled;
+    private final AtomicLong count = new AtomicLong();
+
+    private Counter(final boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public void increment() {
+      add(1);
+    }
+
+    public void add(final long n) {
+      if (enabled) {
+        count.addAndGet(n);
+      }
+    }
+
+    public long get() {
+      return count.get();
+    }
+  }
+
+  public static final class Histogram {
+
+    private final boolean enabled;
+    // guarded by this
+    private long[] values = new long[16];
+    private int size = 0;
+
+    private Histogram(final boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public void record(final long value) {
+      if (enabled) {
+        synchronized (this) {
+          if (size == values.length) {
+            values = Arrays.copyOf(values, 2 * values.length);
+          }
+          values[size++] = value;
+        }
+      }
+    }
+
+    private Snapshot snapshot() {
+      final long[] copy;
+      synchronized (this) {
+        copy = Arrays.copyOf(values, size);
+      }
+      return new Snapshot(copy);
+    }
+  }
+
+  /**
+   * The sorted observations of a {@link Histogram} at some moment.
+   */
+  private static final class Snapshot {
+
+    private final long[] sorted;
+    private final int count;
+    private final long sum;
+
+    private Snapshot(final long[] values) {
+      this.sorted = values;
+      Arrays.sort(sorted);
+      this.count = sorted.length;
+      long sum = 0;
+      for (final long value : sorted) {
+        sum += value;
+      }
+      this.sum = sum;
+    }
+
+    private double mean() {
+      return count == 0 ? 0.0 : sum / (double) count;
+    }
+
+    private long max() {
+      return count == 0 ? 0 : sorted[count - 1];
+    }
+
+    /**
+     * The nearest-rank percentile, or zero if there are no observations.
+     */
+    private long percentile(final double p) {
+      checkArgument(p > 0.0 && p <= 1.0);
+      if (count == 0) {
+        return 0;
+      }
+      return sorted[Math.max(0, (int) Math.ceil(p * count) - 1)];
+    }
+  }
+}
@@ -0,0 +1,17 @@
+package com.bbn.kbp.events2014.transformers;
+
+import com.bbn.kbp.events2014.ScoringData;
+
+/**
+ * Base for {@link FusableScoringDataTransformation}s which implement their logic only once, in
+ * {@link #transform(FusedScoringDataTransformation.DocumentState)}. Applying one on its own
+ * behaves exactly like a fused transformation with a single stage.
+ */
+public abstract class AbstractFusableScoringDataTransformation
+    implements FusableScoringDataTransformation {
+
+  @Override
+  public final ScoringData transform(final ScoringData scoringData) {
+    return FusedScoringDataTransformation.applyAlone(this, scoringData);
+  }
+}
@@ -1,7 +1,5 @@
 package com.bbn.kbp.events2014.transformers;
 
-import com.bbn.kbp.events2014.ScoringData;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -11,7 +9,8 @@ import static com.google.common.base.Preconditions.checkNotNull;
 /**
  * Created by rgabbard on 6/25/15.
  */
-public class ApplyAnswerKeyToResponseMappingRuleToAll implements ScoringDataTransformation {
+public class ApplyAnswerKeyToResponseMappingRuleToAll
+    extends AbstractFusableScoringDataTransformation {
   private static final Logger log = LoggerFactory
       .getLogger(ApplyAnswerKeyToResponseMappingRuleToAll.class);
 
@@ -26,31 +25,22 @@ public class ApplyAnswerKeyToResponseMappingRuleToAll implements ScoringDataTran
     return new ApplyAnswerKeyToResponseMappingRuleToAll(rule);
   }
 
+  /* package-private */ AnswerKeyToResponseMappingRule rule() {
+    return rule;
+  }
+
   @Override
-  public ScoringData transform(ScoringData input) {
-    checkArgument(input.answerKey().isPresent(), "Cannot apply a transformation based on "
+  public void transform(final FusedScoringDataTransformation.DocumentState state) {
+    checkArgument(state.hasAnswerKey(), "Cannot apply a transformation based on "
         + "the answer key if it is absent");
-    input.answerKey().get().checkCompletelyAssesses(input.argumentOutput().get());
+    state.answerKey().checkCompletelyAssesses(state.systemResponses());
     final ResponseMapping responseMapping = rule.computeResponseTransformation(
-        input.answerKey().get());
+        state.answerKey());
     if (!responseMapping.isIdentity()) {
       log.info("Rule {} resulted in {}", rule, responseMapping.summaryString());
-
-      ScoringData.Builder ret = ScoringData.builder().from(input)
-          .answerKey(responseMapping.apply(input.answerKey().get()));
-      if (input.argumentOutput().isPresent()) {
-        ret.argumentOutput(responseMapping.apply(input.argumentOutput().get()));
-      }
-      if (input.systemLinking().isPresent()) {
-        ret.systemLinking(responseMapping.apply(input.systemLinking().get()));
-      }
-      if (input.referenceLinking().isPresent()) {
-        ret.referenceLinking(responseMapping.apply(input.referenceLinking().get()));
-      }
-
-      return ret.build();
-    } else {
-      return input;
+      state.setAnswerKey(responseMapping.apply(state.answerKey()));
+      state.mapSystemResponses(responseMapping);
+      state.mapReferenceResponses(responseMapping);
     }
   }
 
@@ -58,4 +48,9 @@ public class ApplyAnswerKeyToResponseMappingRuleToAll implements ScoringDataTran
   public void logStats() {
 
   }
+
+  @Override
+  public String toString() {
+    return rule.getClass().getSimpleName();
+  }
 }
@@ -0,0 +1,20 @@
+package com.bbn.kbp.events2014.transformers;
+
+/**
+ * A {@link ScoringDataTransformation} which can also run as one stage of a {@link
+ * FusedScoringDataTransformation}. Instead of rebuilding the whole {@link
+ * com.bbn.kbp.events2014.ScoringData}, a fused stage records its decisions on the shared {@link
+ * FusedScoringDataTransformation.DocumentState} so that all stages' mappings of system and
+ * reference responses can be applied together once per document.
+ *
+ * Implementations should usually extend {@link AbstractFusableScoringDataTransformation}, which
+ * derives {@link #transform(com.bbn.kbp.events2014.ScoringData)} from the fused path.
+ */
+public interface FusableScoringDataTransformation extends ScoringDataTransformation {
+
+  /**
+   * Applies this transformation to the document being transformed. This must have the same effect
+   * as {@link #transform(com.bbn.kbp.events2014.ScoringData)}.
+   */
+  void transform(FusedScoringDataTransformation.DocumentState state);
+}
@@ -0,0 +1,311 @@
+package com.bbn.kbp.events2014.transformers;
+
+import com.bbn.kbp.events2014.AnswerKey;
+import com.bbn.kbp.events2014.ArgumentOutput;
+import com.bbn.kbp.events2014.Response;
+import com.bbn.kbp.events2014.ResponseLinking;
+import com.bbn.kbp.events2014.ScoringData;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Applies a sequence of {@link ScoringDataTransformation}s, equivalent to {@link
+ * ScoringDataTransformationSequence} but avoiding rebuilding the system output and linkings after
+ * every step.
+ *
+ * Each {@link FusableScoringDataTransformation} contributes its response mapping to a pending
+ * mapping for the system output and linking and another for the reference linking. These are
+ * composed and applied only when a later stage needs to look at the materialized system output
+ * and once at the end.  The answer key is still updated after each stage which changes it, since
+ * later rules are computed from it. Transformations which are not fusable are applied as usual
+ * to the fully materialized data.
+ *
+ * {@link #logStats()} reports the time spent in and the system responses mapped and deleted by
+ * each stage in addition to each stage's own statistics.
+ */
+public final class FusedScoringDataTransformation implements ScoringDataTransformation {
+
+  private static final Logger log = LoggerFactory.getLogger(FusedScoringDataTransformation.class);
+
+  private final ImmutableList<Stage> stages;
+  private final Stage materialization = new Stage("applying combined response mappings");
+
+  private FusedScoringDataTransformation(
+      final Iterable<? extends ScoringDataTransformation> transformations) {
+    final ImmutableList.Builder<Stage> stagesB = ImmutableList.builder();
+    for (final ScoringDataTransformation transformation : transformations) {
+      if (transformation instanceof FusedScoringDataTransformation) {
+        // flatten nested fused transformations so all their stages are fused with ours
+        stagesB.addAll(((FusedScoringDataTransformation) transformation).stages);
+      } else {
+        stagesB.add(new Stage(checkNotNull(transformation)));
+      }
+    }
+    this.stages = stagesB.build();
+  }
+
+  public static FusedScoringDataTransformation fuse(
+      final Iterable<? extends ScoringDataTransformation> transformations) {
+    return new FusedScoringDataTransformation(transformations);
+  }
+
+  public static FusedScoringDataTransformation fuse(
+      final ScoringDataTransformation... transformations) {
+    return fuse(ImmutableList.copyOf(transformations));
+  }
+
+  @Override
+  public ScoringData transform(final ScoringData scoringData) {
+    DocumentState state = new DocumentState(scoringData);
+    for (final Stage stage : stages) {
+      final Stopwatch stopwatch = Stopwatch.createStarted();
+      if (stage.transformation instanceof FusableScoringDataTransformation) {
+        state.currentStage = stage;
+        ((FusableScoringDataTransformation) stage.transformation).transform(state);
+        state.currentStage = null;
+      } else {
+        final ScoringData before = state.finish();
+        final ScoringData after = stage.transformation.transform(before);
+        stage.recordChanges(before, after);
+        state = new DocumentState(after);
+      }
+      stage.recordDocument(stopwatch);
+    }
+
+    final Stopwatch stopwatch = Stopwatch.createStarted();
+    final ScoringData ret = state.finish();
+    materialization.recordDocument(stopwatch);
+    return ret;
+  }
+
+  /**
+   * Applies a single fusable transformation to fully materialized data. This is how {@link
+   * AbstractFusableScoringDataTransformation}s implement {@link #transform(ScoringData)}, so the
+   * fused and unfused paths share one implementation.
+   */
+  static ScoringData applyAlone(final FusableScoringDataTransformation transformation,
+      final ScoringData scoringData) {
+    final DocumentState state = new DocumentState(scoringData);
+    transformation.transform(state);
+    return state.finish();
+  }
+
+  @Override
+  public void logStats() {
+    for (final Stage stage : stages) {
+      stage.logStats();
+      stage.transformation.logStats();
+    }
+    materialization.logStats();
+  }
+
+  /**
+   * The state of a single document partway through a {@link FusedScoringDataTransformation}.
+   */
+  public static final class DocumentState {
+
+    private Optional<AnswerKey> answerKey;
+    private Optional<ArgumentOutput> argumentOutput;
+    private Optional<ResponseLinking> systemLinking;
+    private Optional<ResponseLinking> referenceLinking;
+    // mappings which have been requested but not yet applied to the system output and linking
+    // and to the reference linking, respectively
+    private ResponseMapping pendingSystemMapping = ResponseMapping.identity();
+    private ResponseMapping pendingReferenceMapping = ResponseMapping.identity();
+    // the system responses after applying the pending mapping, if we have computed them
+    private Optional<ImmutableSet<Response>> systemResponses = Optional.absent();
+    private Stage currentStage = null;
+
+    private DocumentState(final ScoringData scoringData) {
+      this.answerKey = scoringData.answerKey();
+      this.argumentOutput = scoringData.argumentOutput();
+      this.systemLinking = scoringData.systemLinking();
+      this.referenceLinking = scoringData.referenceLinking();
+    }
+
+    public AnswerKey answerKey() {
+      checkState(answerKey.isPresent(), "Answer key is absent");
+      return answerKey.get();
+    }
+
+    public boolean hasAnswerKey() {
+      return answerKey.isPresent();
+    }
+
+    public void setAnswerKey(final AnswerKey answerKey) {
+      this.answerKey = Optional.of(answerKey);
+    }
+
+    public boolean hasArgumentOutput() {
+      return argumentOutput.isPresent();
+    }
+
+    public boolean hasSystemLinking() {
+      return systemLinking.isPresent();
+    }
+
+    public boolean hasReferenceLinking() {
+      return referenceLinking.isPresent();
+    }
+
+    /**
+     * The system responses as they would be after all mappings so far. Unlike {@link
+     * #argumentOutput()}, this does not require rebuilding the system output.
+     */
+    public ImmutableSet<Response> systemResponses() {
+      checkState(argumentOutput.isPresent(), "System output is absent");
+      if (!systemResponses.isPresent()) {
+        systemResponses = Optional.of(pendingSystemMapping.mapResponses(
+            argumentOutput.get().responses()));
+      }
+      return systemResponses.get();
+    }
+
+    /**
+     * The system output with all mappings so far applied. Prefer {@link #systemResponses()} where
+     * possible, since this must rebuild the system output if there are pending mappings.
+     */
+    public ArgumentOutput argumentOutput() {
+      checkState(argumentOutput.isPresent(), "System output is absent");
+      applyPendingSystemMapping();
+      return argumentOutput.get();
+    }
+
+    /**
+     * The system linking with all mappings so far applied. Like {@link #argumentOutput()}, this
+     * may need to rebuild the system output and linking.
+     */
+    public ResponseLinking systemLinking() {
+      checkState(systemLinking.isPresent(), "System linking is absent");
+      applyPendingSystemMapping();
+      return systemLinking.get();
+    }
+
+    /**
+     * Requests that {@code mapping} be applied to the system output and system linking.
+     */
+    public void mapSystemResponses(final ResponseMapping mapping) {
+      if (!mapping.isIdentity()) {
+        final Optional<ResponseMapping> composed =
+            ResponseMapping.compose(pendingSystemMapping, mapping);
+        if (composed.isPresent()) {
+          pendingSystemMapping = composed.get();
+        } else {
+          // the mappings can't be combined, so we need to apply the earlier ones first
+          applyPendingSystemMapping();
+          pendingSystemMapping = mapping;
+        }
+        systemResponses = Optional.absent();
+        if (currentStage != null) {
+          currentStage.recordMapping(mapping);
+        }
+      }
+    }
+
+    /**
+     * Requests that {@code mapping} be applied to the reference linking.
+     */
+    public void mapReferenceResponses(final ResponseMapping mapping) {
+      final Optional<ResponseMapping> composed =
+          ResponseMapping.compose(pendingReferenceMapping, mapping);
+      if (composed.isPresent()) {
+        pendingReferenceMapping = composed.get();
+      } else {
+        applyPendingReferenceMapping();
+        pendingReferenceMapping = mapping;
+      }
+    }
+
+    private void applyPendingSystemMapping() {
+      if (!pendingSystemMapping.isIdentity()) {
+        if (argumentOutput.isPresent()) {
+          argumentOutput = Optional.of(pendingSystemMapping.apply(argumentOutput.get()));
+        }
+        if (systemLinking.isPresent()) {
+          systemLinking = Optional.of(pendingSystemMapping.apply(systemLinking.get()));
+        }
+        pendingSystemMapping = ResponseMapping.identity();
+      }
+    }
+
+    private void applyPendingReferenceMapping() {
+      if (referenceLinking.isPresent() && !pendingReferenceMapping.isIdentity()) {
+        referenceLinking = Optional.of(pendingReferenceMapping.apply(referenceLinking.get()));
+      }
+      pendingReferenceMapping = ResponseMapping.identity();
+    }
+
+    private ScoringData finish() {
+      applyPendingSystemMapping();
+      applyPendingReferenceMapping();
+      return ScoringData.builder()
+          .answerKey(answerKey)
+          .argumentOutput(argumentOutput)
+          .systemLinking(systemLinking)
+          .referenceLinking(referenceLinking)
+          .build();
+    }
+  }
+
+  private static final class Stage {
+
+    private final String name;
+    private final ScoringDataTransformation transformation;
+    private int numDocuments = 0;
+    private long nanos = 0;
+    private int numMapped = 0;
+    private int numDeleted = 0;
+
+    private Stage(final ScoringDataTransformation transformation) {
+      this.name = transformation.toString();
+      this.transformation = transformation;
+    }
+
+    // used only for reporting time not attributable to any single transformation
+    private Stage(final String name) {
+      this.name = checkNotNull(name);
+      this.transformation = null;
+    }
+
+    private void recordDocument(final Stopwatch stopwatch) {
+      ++numDocuments;
+      nanos += stopwatch.elapsed(TimeUnit.NANOSECONDS);
+    }
+
+    private void recordMapping(final ResponseMapping mapping) {
+      numMapped += mapping.numReplaced();
+      numDeleted += mapping.numDeleted();
+    }
+
+    private void recordChanges(final ScoringData before, final ScoringData after) {
+      if (before.argumentOutput().isPresent() && after.argumentOutput().isPresent()) {
+        final int sizeChange = before.argumentOutput().get().size()
+            - after.argumentOutput().get().size();
+        if (sizeChange > 0) {
+          numDeleted += sizeChange;
+        }
+      }
+    }
+
+    private void logStats() {
+      if (transformation == null) {
+        log.info("Spent {} ms {} for {} documents", TimeUnit.NANOSECONDS.toMillis(nanos),
+            name, numDocuments);
+      } else {
+        log.info("{} took {} ms over {} documents, mapping {} and deleting {} system responses",
+            name, TimeUnit.NANOSECONDS.toMillis(nanos), numDocuments, numMapped, numDeleted);
+      }
+    }
+  }
+}
@@ -29,6 +29,7 @@ import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Predicates.compose;
 import static com.google.common.base.Predicates.equalTo;
@@ -75,6 +76,39 @@ public final class KeepBestJustificationOnly {
   }
 
 
+  /**
+   * Keeps only the best justification for each TRFR of the system output, using the answer key's
+   * coreference to normalize CASes. The system output and system linking must be present.
+   */
+  public static FusableScoringDataTransformation asTransformationUsingAnswerKeyCoref() {
+    return new UsingAnswerKeyCoref();
+  }
+
+  private static final class UsingAnswerKeyCoref
+      extends AbstractFusableScoringDataTransformation {
+
+    @Override
+    public void transform(final FusedScoringDataTransformation.DocumentState state) {
+      checkArgument(state.hasAnswerKey() && state.hasArgumentOutput()
+          && state.hasSystemLinking());
+      // selecting the best justification depends on scores and linking, so this needs the
+      // materialized system output
+      state.mapSystemResponses(computeResponseMappingUsingProvidedCoref(
+          DocumentSystemOutput2015.from(state.argumentOutput(), state.systemLinking()),
+          state.answerKey().corefAnnotation()));
+    }
+
+    @Override
+    public void logStats() {
+
+    }
+
+    @Override
+    public String toString() {
+      return "KeepBestJustificationOnly";
+    }
+  }
+
   private static ResponseMapping computeResponseMapping(DocumentSystemOutput input,
       Function<KBPString, KBPString> CASNormalizer) {
     checkNotNull(input);
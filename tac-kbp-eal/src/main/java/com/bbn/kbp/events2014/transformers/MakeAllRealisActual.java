@@ -5,7 +5,6 @@ import com.bbn.kbp.events2014.AssessedResponse;
 import com.bbn.kbp.events2014.KBPRealis;
 import com.bbn.kbp.events2014.Response;
 import com.bbn.kbp.events2014.ResponseAssessment;
-import com.bbn.kbp.events2014.ScoringData;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -17,7 +16,7 @@ import java.util.Random;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
-public final class MakeAllRealisActual implements ScoringDataTransformation {
+public final class MakeAllRealisActual extends AbstractFusableScoringDataTransformation {
 
   private static final Logger log = LoggerFactory.getLogger(MakeAllRealisActual.class);
 
@@ -76,37 +75,26 @@ public final class MakeAllRealisActual implements ScoringDataTransformation {
   }
 
   @Override
-  public ScoringData transform(final ScoringData scoringData) {
-    checkArgument(scoringData.answerKey().isPresent(), "Answer key must be present to neutralize realis");
+  public void transform(final FusedScoringDataTransformation.DocumentState state) {
+    checkArgument(state.hasAnswerKey(), "Answer key must be present to neutralize realis");
 
-    final ScoringData.Builder ret = ScoringData.builder().from(scoringData);
-
-    final ResponseMapping responseMapping = responseMapping(scoringData.answerKey().get());
+    final ResponseMapping responseMapping = responseMapping(state.answerKey());
     if (!responseMapping.isIdentity()) {
       log.info("Realis neutralization resulting in {}", responseMapping.summaryString());
     }
 
-    AnswerKey newAnswerKey = neutralizeAssessments(
-        responseMapping.apply(scoringData.answerKey().get()));
-    ret.answerKey(newAnswerKey);
-
-    if (scoringData.argumentOutput().isPresent()) {
-      ret.argumentOutput(responseMapping.apply(scoringData.argumentOutput().get()));
-    }
-
-    if(scoringData.referenceLinking().isPresent()) {
-      ret.referenceLinking(responseMapping.apply(scoringData.referenceLinking().get()));
-    }
-
-    if(scoringData.systemLinking().isPresent()) {
-      ret.systemLinking(responseMapping.apply(scoringData.systemLinking().get()));
-    }
-
-    return ret.build();
+    state.setAnswerKey(neutralizeAssessments(responseMapping.apply(state.answerKey())));
+    state.mapSystemResponses(responseMapping);
+    state.mapReferenceResponses(responseMapping);
   }
 
   @Override
   public void logStats() {
 
   }
+
+  @Override
+  public String toString() {
+    return "MakeAllRealisActual";
+  }
 }
@@ -4,14 +4,13 @@ import com.bbn.kbp.events2014.AnswerKey;
 import com.bbn.kbp.events2014.AssessedResponse;
 import com.bbn.kbp.events2014.FieldAssessment;
 import com.bbn.kbp.events2014.KBPTIMEXExpression;
-import com.bbn.kbp.events2014.ScoringData;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
-public final class MakeBrokenTimesWrong implements ScoringDataTransformation {
+public final class MakeBrokenTimesWrong extends AbstractFusableScoringDataTransformation {
 
   private static final Logger log = LoggerFactory.getLogger(MakeBrokenTimesWrong.class);
 
@@ -43,15 +42,18 @@ public final class MakeBrokenTimesWrong implements ScoringDataTransformation {
   }
 
   @Override
-  public ScoringData transform(final ScoringData scoringData) {
-    checkArgument(scoringData.answerKey().isPresent(), "It only makes sense to alter assessment if you have an answer key");
-    return ScoringData.builder().from(scoringData)
-        .answerKey(makeBrokenTimesWrong(scoringData.answerKey().get()))
-        .build();
+  public void transform(final FusedScoringDataTransformation.DocumentState state) {
+    checkArgument(state.hasAnswerKey(), "It only makes sense to alter assessment if you have an answer key");
+    state.setAnswerKey(makeBrokenTimesWrong(state.answerKey()));
   }
 
   @Override
   public void logStats() {
 
   }
+
+  @Override
+  public String toString() {
+    return "MakeBrokenTimesWrong";
+  }
 }
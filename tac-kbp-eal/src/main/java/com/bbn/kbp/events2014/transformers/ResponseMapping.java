@@ -15,6 +15,7 @@ import com.bbn.kbp.events2014.io.CrossDocSystemOutputStore;
 
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
+import com.google.common.base.MoreObjects;
 import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
 import com.google.common.collect.BiMap;
@@ -23,6 +24,7 @@ import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
@@ -33,6 +35,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Predicates.in;
@@ -71,6 +74,74 @@ public final class ResponseMapping {
     return create(ImmutableMap.<Response, Response>of(), toDelete);
   }
 
+  public static ResponseMapping identity() {
+    return IDENTITY;
+  }
+
+  private static final ResponseMapping IDENTITY =
+      create(ImmutableMap.<Response, Response>of(), ImmutableSet.<Response>of());
+
+  /**
+   * Creates a single mapping equivalent to applying {@code first} and then applying {@code
+   * second} to the result. This is absent if no single mapping is equivalent, which happens when
+   * the combined mapping would replace a response with one which is itself deleted or replaced
+   * (e.g. if {@code first} deletes a response which {@code second} maps another response to).
+   */
+  public static Optional<ResponseMapping> compose(final ResponseMapping first,
+      final ResponseMapping second) {
+    if (second.isIdentity()) {
+      return Optional.of(first);
+    }
+    if (first.isIdentity()) {
+      return Optional.of(second);
+    }
+
+    final Map<Response, Response> replacements = Maps.newHashMap();
+    final Set<Response> deletions = Sets.newHashSet(first.deletedResponses);
+
+    // responses altered by the first mapping are then subject to the second
+    for (final Map.Entry<Response, Response> replacement : first.replacedResponses.entrySet()) {
+      final Response intermediate = replacement.getValue();
+      if (second.deletedResponses.contains(intermediate)) {
+        deletions.add(replacement.getKey());
+      } else {
+        final Response result = MoreObjects.firstNonNull(
+            second.replacedResponses.get(intermediate), intermediate);
+        if (!result.equals(replacement.getKey())) {
+          replacements.put(replacement.getKey(), result);
+        }
+      }
+    }
+
+    // responses untouched by the first mapping are subject only to the second
+    for (final Response response : second.deletedResponses) {
+      if (!first.replacedResponses.containsKey(response)) {
+        deletions.add(response);
+      }
+    }
+    for (final Map.Entry<Response, Response> replacement : second.replacedResponses.entrySet()) {
+      final Response original = replacement.getKey();
+      if (!first.replacedResponses.containsKey(original) && !deletions.contains(original)) {
+        replacements.put(original, replacement.getValue());
+      }
+    }
+
+    for (final Response replacement : replacements.values()) {
+      if (deletions.contains(replacement) || replacements.containsKey(replacement)) {
+        return Optional.absent();
+      }
+    }
+    return Optional.of(create(replacements, deletions));
+  }
+
+  public int numReplaced() {
+    return replacedResponses.size();
+  }
+
+  public int numDeleted() {
+    return deletedResponses.size();
+  }
+
   public boolean isIdentity() {
     if (!deletedResponses.isEmpty()) {
       return false;
@@ -99,6 +170,20 @@ public final class ResponseMapping {
     return ret.build();
   }
 
+  /**
+   * Applies this mapping to a bare set of responses, dropping deleted responses and replacing
+   * mapped ones.
+   */
+  public ImmutableSet<Response> mapResponses(Iterable<Response> responses) {
+    final ImmutableSet.Builder<Response> ret = ImmutableSet.builder();
+    for (final Response response : responses) {
+      if (!deletedResponses.contains(response)) {
+        ret.add(MoreObjects.firstNonNull(replacedResponses.get(response), response));
+      }
+    }
+    return ret.build();
+  }
+
   public ArgumentOutput apply(ArgumentOutput argumentOutput) {
     final ArgumentOutput.Builder ret = argumentOutput.modifiedCopyBuilder();
     for (final Response response : argumentOutput.responses()) {
@@ -0,0 +1,107 @@
+package com.bbn.kbp.events2014;
+
+import com.bbn.bue.common.scoring.Scored;
+import com.bbn.bue.common.symbols.Symbol;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public final class ArgumentOutputTest {
+
+  private static final Symbol DOC_ID = Symbol.from("doc");
+
+  private final Response response = response("Attacker", "police", 10);
+  private final Response otherResponse = response("Target", "protesters", 30);
+
+  @Test
+  public void testStrictlyHigherScoreReplacesResponseAndMetadata() {
+    final ArgumentOutput union = ArgumentOutput.maximumScoreUnionBuilder(DOC_ID)
+        .add(output(response, 0.5, "first"))
+        .add(output(response, 0.8, "second"))
+        .build();
+    assertEquals(ImmutableSet.of(response), union.responses());
+    assertEquals(0.8, union.confidence(response), 0.0);
+    assertEquals("second", union.metadata(response));
+  }
+
+  @Test
+  public void testTieKeepsFirst() {
+    final ArgumentOutput union = ArgumentOutput.maximumScoreUnionBuilder(DOC_ID)
+        .add(output(response, 0.5, "first"))
+        .add(output(response, 0.5, "second"))
+        .build();
+    assertEquals(0.5, union.confidence(response), 0.0);
+    assertEquals("first", union.metadata(response));
+  }
+
+  @Test
+  public void testLowerScoreKeepsFirst() {
+    final ArgumentOutput union = ArgumentOutput.maximumScoreUnionBuilder(DOC_ID)
+        .add(output(response, 0.5, "first"))
+        .add(output(response, 0.2, "second"))
+        .build();
+    assertEquals(0.5, union.confidence(response), 0.0);
+    assertEquals("first", union.metadata(response));
+  }
+
+  @Test
+  public void testKeepsResponsesFromEveryOutput() {
+    final ArgumentOutput union = ArgumentOutput.maximumScoreUnionBuilder(DOC_ID)
+        .add(output(response, 0.5, "first"))
+        .add(output(otherResponse, 0.3, "second"))
+        .build();
+    assertEquals(ImmutableSet.of(response, otherResponse), union.responses());
+    assertEquals(ImmutableMap.of(response, "first", otherResponse, "second"),
+        union.allMetadata());
+  }
+
+  @Test
+  public void testUnionKeepingMaximumScoreMatchesBuilder() {
+    final ImmutableList<ArgumentOutput> outputs = ImmutableList.of(
+        output(response, 0.5, "first"), output(response, 0.5, "second"),
+        output(otherResponse, 0.3, "third"), output(otherResponse, 0.6, "fourth"));
+    final ArgumentOutput.MaximumScoreUnionBuilder builder =
+        ArgumentOutput.maximumScoreUnionBuilder(DOC_ID);
+    for (final ArgumentOutput output : outputs) {
+      builder.add(output);
+    }
+    final ArgumentOutput fromBuilder = builder.build();
+    final ArgumentOutput union = ArgumentOutput.unionKeepingMaximumScore(outputs);
+
+    assertEquals(fromBuilder, union);
+    assertEquals(fromBuilder.allMetadata(), union.allMetadata());
+    assertEquals(ImmutableMap.of(response, "first", otherResponse, "fourth"),
+        union.allMetadata());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsOutputForAnotherDocument() {
+    final Symbol otherDoc = Symbol.from("otherDoc");
+    ArgumentOutput.maximumScoreUnionBuilder(DOC_ID)
+        .add(ArgumentOutput.createWithConstantScore(otherDoc,
+            ImmutableList.of(Response.of(otherDoc, Symbol.from("Conflict.Attack"),
+                Symbol.from("Attacker"), KBPString.from("police", 10, 15),
+                CharOffsetSpan.fromOffsetsOnly(10, 15), ImmutableSet.<CharOffsetSpan>of(),
+                ImmutableSet.of(CharOffsetSpan.fromOffsetsOnly(0, 50)), KBPRealis.Actual)),
+            0.5));
+  }
+
+  private static Response response(final String role, final String cas, final int start) {
+    final int end = start + cas.length() - 1;
+    return Response.of(DOC_ID, Symbol.from("Conflict.Attack"), Symbol.from(role),
+        KBPString.from(cas, start, end), CharOffsetSpan.fromOffsetsOnly(start, end),
+        ImmutableSet.<CharOffsetSpan>of(),
+        ImmutableSet.of(CharOffsetSpan.fromOffsetsOnly(0, 50)), KBPRealis.Actual);
+  }
+
+  private static ArgumentOutput output(final Response response, final double score,
+      final String metadata) {
+    return ArgumentOutput.from(DOC_ID, ImmutableList.of(Scored.from(response, score)),
+        ImmutableMap.of(response, metadata));
+  }
+}
@@ -0,0 +1,185 @@
+package com.bbn.kbp.events2014;
+
+import com.bbn.bue.common.symbols.Symbol;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multisets;
+
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class CorefAnnotationTest {
+
+  private static final Symbol DOC = Symbol.from("DOC");
+
+  @Test
+  public void testMergeJoinsDominantClusterOrStartsNewOne() {
+    final KBPString a = KBPString.from("a", 0, 1);
+    final KBPString b = KBPString.from("b", 2, 3);
+    final KBPString c = KBPString.from("c", 4, 5);
+    final KBPString d = KBPString.from("d", 6, 7);
+    final KBPString e = KBPString.from("e", 8, 9);
+    final KBPString f = KBPString.from("f", 10, 11);
+
+    final CorefAnnotation baseline = CorefAnnotation.strictBuilder(DOC)
+        .corefCAS(a, 1).corefCAS(b, 1).corefCAS(c, 2).addUnannotatedCAS(f).build();
+    // d is clustered with a, b, and c, so joins a and b's cluster; e starts a new cluster, and
+    // baseline clusters are never joined
+    final CorefAnnotation toMerge = CorefAnnotation.strictBuilder(DOC)
+        .corefCAS(a, 7).corefCAS(b, 7).corefCAS(c, 7).corefCAS(d, 7).corefCAS(e, 8)
+        .corefCAS(f, 8).build();
+
+    final CorefAnnotation merged = baseline.copyMerging(toMerge);
+    assertEquals(1, (int) merged.corefId(d).get());
+    assertEquals(2, (int) merged.corefId(c).get());
+    assertEquals(3, (int) merged.corefId(e).get());
+    // f was unannotated in the baseline, so it joins e's new cluster
+    assertEquals(3, (int) merged.corefId(f).get());
+    assertEquals(ImmutableSet.<KBPString>of(), merged.unannotatedCASes());
+  }
+
+  @Test
+  public void testMergingBuilderMatchesPreviousMerge() {
+    final Random rng = new Random(0);
+    for (int trial = 0; trial < 500; ++trial) {
+      final List<KBPString> pool = Lists.newArrayList();
+      final int poolSize = 1 + rng.nextInt(25);
+      for (int i = 0; i < poolSize; ++i) {
+        pool.add(KBPString.from("cas" + i, i, i));
+      }
+
+      CorefAnnotation expected = randomAnnotation(pool, rng);
+      CorefAnnotation copyMerged = expected;
+      final CorefAnnotation.MergingBuilder builder = CorefAnnotation.mergingBuilder(expected);
+      final int numMerges = 1 + rng.nextInt(4);
+      for (int i = 0; i < numMerges; ++i) {
+        final CorefAnnotation toMerge = randomAnnotation(pool, rng);
+        expected = referenceMerge(expected, toMerge);
+        copyMerged = copyMerged.copyMerging(toMerge);
+        builder.merge(toMerge);
+      }
+
+      assertSameAnnotation(expected, copyMerged);
+      assertSameAnnotation(expected, builder.build());
+    }
+  }
+
+  @Test
+  public void testNormalizersUseFirstCASOfCluster() {
+    final Random rng = new Random(0);
+    for (int trial = 0; trial < 100; ++trial) {
+      final List<KBPString> pool = Lists.newArrayList();
+      for (int i = 0; i < 20; ++i) {
+        pool.add(KBPString.from("cas" + i, i, i));
+      }
+      final CorefAnnotation annotation = randomAnnotation(pool, rng);
+      for (final KBPString CAS : pool) {
+        if (annotation.corefId(CAS).isPresent()) {
+          final KBPString canonical = Iterables.getFirst(
+              annotation.clusterIDToMembersMap().get(annotation.corefId(CAS).get()), null);
+          assertEquals(canonical, annotation.normalizeStrictly(CAS));
+          assertEquals(canonical, annotation.strictCASNormalizerFunction().apply(CAS));
+          assertEquals(canonical, annotation.laxCASNormalizerFunction().apply(CAS));
+          assertEquals(canonical,
+              annotation.normalizeCASIfPossibleFunction().apply(CAS).get());
+        } else {
+          assertEquals(CAS, annotation.laxCASNormalizerFunction().apply(CAS));
+          assertEquals(false,
+              annotation.normalizeCASIfPossibleFunction().apply(CAS).isPresent());
+        }
+      }
+    }
+  }
+
+  private static void assertSameAnnotation(final CorefAnnotation expected,
+      final CorefAnnotation actual) {
+    assertEquals(expected, actual);
+    // equality ignores the order of CASes, which decides canonical CASes and tie-breaking
+    assertEquals(ImmutableList.copyOf(expected.CASesToIDs().entrySet()),
+        ImmutableList.copyOf(actual.CASesToIDs().entrySet()));
+    assertEquals(ImmutableList.copyOf(expected.unannotatedCASes()),
+        ImmutableList.copyOf(actual.unannotatedCASes()));
+  }
+
+  /**
+   * Coreffs a random subset of {@code pool} into a few clusters with arbitrary (sometimes
+   * negative) IDs and marks some of the rest as unannotated.
+   */
+  private static CorefAnnotation randomAnnotation(final List<KBPString> pool, final Random rng) {
+    final List<KBPString> shuffled = Lists.newArrayList(pool);
+    Collections.shuffle(shuffled, rng);
+    final int[] clusterIDs = new int[1 + rng.nextInt(5)];
+    for (int i = 0; i < clusterIDs.length; ++i) {
+      clusterIDs[i] = rng.nextInt(20) - 5;
+    }
+    final CorefAnnotation.Builder ret = CorefAnnotation.laxBuilder(DOC);
+    for (final KBPString CAS : shuffled) {
+      switch (rng.nextInt(4)) {
+        case 0:
+          ret.addUnannotatedCAS(CAS);
+          break;
+        case 1:
+          break;
+        default:
+          ret.corefCAS(CAS, clusterIDs[rng.nextInt(clusterIDs.length)]);
+      }
+    }
+    return ret.build();
+  }
+
+  /**
+   * The merge as {@link CorefAnnotation#copyMerging(CorefAnnotation)} used to perform it, with a
+   * multiset of clustermate coref IDs and a scan for the next free ID.
+   */
+  private static CorefAnnotation referenceMerge(final CorefAnnotation baseline,
+      final CorefAnnotation toMerge) {
+    final Map<KBPString, Integer> newCASToCoref = Maps.newHashMap(baseline.CASesToIDs());
+    final CorefAnnotation.Builder ret = baseline.strictCopyBuilder();
+    int nextIndex = newCASToCoref.isEmpty() ? 1 : (1 + Collections.max(newCASToCoref.values()));
+    final Multimap<Integer, KBPString> additionalCorefToCAS = toMerge.clusterIDToMembersMap();
+
+    for (final Map.Entry<KBPString, Integer> newCorefRelation : toMerge.CASesToIDs().entrySet()) {
+      final KBPString CAS = newCorefRelation.getKey();
+      if (!newCASToCoref.containsKey(CAS)) {
+        final Collection<KBPString> clusterMates =
+            additionalCorefToCAS.get(newCorefRelation.getValue());
+        final ImmutableMultiset.Builder<Integer> corefIDsOfClusterMatesB =
+            ImmutableMultiset.builder();
+        for (final KBPString clusterMate : clusterMates) {
+          final Integer corefForClusterMate = newCASToCoref.get(clusterMate);
+          if (corefForClusterMate != null) {
+            corefIDsOfClusterMatesB.add(corefForClusterMate);
+          }
+        }
+        final ImmutableMultiset<Integer> corefIDsOfClusterMates = corefIDsOfClusterMatesB.build();
+        final int newCorefIdx;
+        if (!corefIDsOfClusterMates.isEmpty()) {
+          newCorefIdx = Iterables.getFirst(
+              Multisets.copyHighestCountFirst(corefIDsOfClusterMates), null);
+        } else {
+          newCorefIdx = nextIndex;
+          nextIndex = baseline.nextFreeIndex(nextIndex, newCASToCoref);
+        }
+        newCASToCoref.put(CAS, newCorefIdx);
+        ret.corefCAS(CAS, newCorefIdx);
+      }
+    }
+    for (final KBPString unannotatedCAS : toMerge.unannotatedCASes()) {
+      ret.addUnannotatedCAS(unannotatedCAS);
+    }
+    return ret.build();
+  }
+}
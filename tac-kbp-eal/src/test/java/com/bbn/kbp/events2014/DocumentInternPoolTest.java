@@ -0,0 +1,79 @@
+package com.bbn.kbp.events2014;
+
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.kbp.events2014.io.TACKBPEALIOUtils;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class DocumentInternPoolTest {
+
+  @Test
+  public void testSpanSetsAreSortedAndShared() {
+    final DocumentInternPool pool = DocumentInternPool.create();
+    final ImmutableSet<CharOffsetSpan> a = pool.spanSet(ImmutableList.of(
+        CharOffsetSpan.fromOffsetsOnly(642, 838), CharOffsetSpan.fromOffsetsOnly(10, 20),
+        CharOffsetSpan.fromOffsetsOnly(642, 700), CharOffsetSpan.fromOffsetsOnly(10, 20)));
+    final ImmutableSet<CharOffsetSpan> b = pool.spanSet(ImmutableList.of(
+        CharOffsetSpan.fromOffsetsOnly(642, 700), CharOffsetSpan.fromOffsetsOnly(642, 838),
+        CharOffsetSpan.fromOffsetsOnly(10, 20)));
+
+    assertSame(a, b);
+    assertEquals(ImmutableList.of(CharOffsetSpan.fromOffsetsOnly(10, 20),
+        CharOffsetSpan.fromOffsetsOnly(642, 700), CharOffsetSpan.fromOffsetsOnly(642, 838)),
+        a.asList());
+    assertSame(pool.span(10, 20), a.asList().get(0));
+  }
+
+  @Test
+  public void testKBPStringsAreShared() {
+    final DocumentInternPool pool = DocumentInternPool.create();
+    final KBPString a = pool.kbpString("police", CharOffsetSpan.fromOffsetsOnly(1134, 1139));
+    final KBPString b = pool.kbpString(" police", pool.span(1134, 1139));
+    assertSame(a, b);
+    assertEquals(KBPString.from("police", 1134, 1139), a);
+  }
+
+  @Test
+  public void testInternedResponsesHashAsBefore() {
+    final DocumentInternPool pool = DocumentInternPool.create();
+    final Symbol doc = Symbol.from("AFP_ENG_20100414.0615");
+    final ImmutableSet<CharOffsetSpan> pjs = ImmutableSet.of(
+        CharOffsetSpan.fromOffsetsOnly(1039, 1243), CharOffsetSpan.fromOffsetsOnly(642, 838));
+    final Response plain = Response.of(doc, Symbol.from("Life.Die"), Symbol.from("Agent"),
+        KBPString.from("police", 1134, 1139), CharOffsetSpan.fromOffsetsOnly(1134, 1139),
+        ImmutableSet.<CharOffsetSpan>of(), pjs, KBPRealis.Actual);
+    final Response interned = Response.of(doc, Symbol.from("Life.Die"), Symbol.from("Agent"),
+        pool.kbpString("police", pool.span(1134, 1139)), pool.span(1134, 1139),
+        pool.spanSet(ImmutableSet.<CharOffsetSpan>of()), pool.spanSet(pjs), KBPRealis.Actual);
+
+    assertEquals(plain, interned);
+    assertEquals(plain.uniqueIdentifier(), interned.uniqueIdentifier());
+  }
+
+  @Test
+  public void testPooledSpanParsingAcceptsWhatIntegerParsingDid() {
+    final DocumentInternPool pool = DocumentInternPool.create();
+    for (final String span : ImmutableList.of("5-10", "+5-10", "5-+10", "+0-+0", "007-10")) {
+      assertEquals(TACKBPEALIOUtils.parseCharOffsetSpan(span),
+          TACKBPEALIOUtils.parseCharOffsetSpan(span, pool));
+    }
+  }
+
+  @Test(expected = TACKBPEALException.class)
+  public void testPooledSpanParsingRejectsBareSign() {
+    TACKBPEALIOUtils.parseCharOffsetSpan("+-10", DocumentInternPool.create());
+  }
+
+  @Test
+  public void testPacking() {
+    final long packed = DocumentInternPool.pack(Integer.MAX_VALUE, Integer.MAX_VALUE);
+    assertEquals(Integer.MAX_VALUE, DocumentInternPool.packedStart(packed));
+    assertEquals(Integer.MAX_VALUE, DocumentInternPool.packedEnd(packed));
+  }
+}
@@ -0,0 +1,140 @@
+package com.bbn.kbp.events2014.bin;
+
+import com.bbn.bue.common.scoring.Scored;
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.kbp.events2014.ArgumentOutput;
+import com.bbn.kbp.events2014.CharOffsetSpan;
+import com.bbn.kbp.events2014.DocumentSystemOutput;
+import com.bbn.kbp.events2014.DocumentSystemOutput2014;
+import com.bbn.kbp.events2014.KBPRealis;
+import com.bbn.kbp.events2014.KBPString;
+import com.bbn.kbp.events2014.Response;
+import com.bbn.kbp.events2014.io.SystemOutputStore;
+import com.bbn.kbp.events2014.transformers.KeepBestJustificationOnly;
+import com.bbn.kbp.events2014.transformers.QuoteFilter;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that pooling a document one store at a time gives the same output as reading every
+ * store's output for the document and taking {@link ArgumentOutput#unionKeepingMaximumScore(Iterable)}
+ * of them, as the pooler used to.
+ */
+public final class PoolSystemOutputTest {
+
+  private static final Symbol DOC_ID = Symbol.from("doc");
+
+  private final Response attacker = response("Attacker", "police", 10, 10);
+  private final Response target = response("Target", "protesters", 30, 30);
+  private final Response place = response("Place", "Cairo", 50, 50);
+  private final Response instrument = response("Instrument", "batons", 70, 70);
+  // same type, role, CAS and realis as instrument, so KeepBestJustificationOnly drops it
+  private final Response instrumentOtherFiller = response("Instrument", "batons", 70, 90);
+
+  @Test
+  public void testPoolingMatchesUnionOfStores() throws IOException {
+    final ImmutableMap<String, SystemOutputStore> stores =
+        ImmutableMap.<String, SystemOutputStore>of(
+            "storeA", store("storeA", ImmutableMap.of(attacker, 0.5, target, 0.9)),
+            // a strictly higher score for attacker and a tie for target
+            "storeB", store("storeB", ImmutableMap.of(attacker, 0.7, target, 0.9, place, 0.3)),
+            "storeC", store("storeC", ImmutableMap.of(attacker, 0.6, instrument, 0.8,
+                instrumentOtherFiller, 0.4)));
+
+    final ArgumentOutput pooled = PoolSystemOutput.poolDocument(DOC_ID, stores,
+        Optional.<QuoteFilter>absent()).combinedOutput();
+
+    final List<ArgumentOutput> storeOutputs = Lists.newArrayList();
+    for (final SystemOutputStore store : stores.values()) {
+      storeOutputs.add(KeepBestJustificationOnly.asFunctionOnSystemOutput()
+          .apply(store.read(DOC_ID)).arguments());
+    }
+    final ArgumentOutput union = ArgumentOutput.unionKeepingMaximumScore(storeOutputs);
+
+    assertEquals(union, pooled);
+    assertEquals(union.allMetadata(), pooled.allMetadata());
+
+    // and against hand-computed results, in case the union itself changes
+    assertEquals(ImmutableSet.of(attacker, target, place, instrument), pooled.responses());
+    assertEquals(0.7, pooled.confidence(attacker), 0.0);
+    assertEquals(0.9, pooled.confidence(target), 0.0);
+    assertEquals(ImmutableMap.of(attacker, "storeB", target, "storeA", place, "storeB",
+        instrument, "storeC"), pooled.allMetadata());
+  }
+
+  private static Response response(final String role, final String cas, final int casStart,
+      final int baseFillerStart) {
+    return Response.of(DOC_ID, Symbol.from("Conflict.Attack"), Symbol.from(role),
+        KBPString.from(cas, casStart, casStart + cas.length() - 1),
+        CharOffsetSpan.fromOffsetsOnly(baseFillerStart, baseFillerStart + cas.length() - 1),
+        ImmutableSet.<CharOffsetSpan>of(),
+        ImmutableSet.of(CharOffsetSpan.fromOffsetsOnly(0, 100)), KBPRealis.Actual);
+  }
+
+  /**
+   * A store holding only {@link #DOC_ID}, whose responses have the given scores and are all tagged
+   * with the store's name as metadata.
+   */
+  private static SystemOutputStore store(final String name,
+      final Map<Response, Double> responses) {
+    final ImmutableList.Builder<Scored<Response>> scored = ImmutableList.builder();
+    final ImmutableMap.Builder<Response, String> metadata = ImmutableMap.builder();
+    for (final Map.Entry<Response, Double> entry : responses.entrySet()) {
+      scored.add(Scored.from(entry.getKey(), entry.getValue()));
+      metadata.put(entry.getKey(), name);
+    }
+    return new InMemoryStore(Symbol.from(name), DocumentSystemOutput2014.from(
+        ArgumentOutput.from(DOC_ID, scored.build(), metadata.build())));
+  }
+
+  private static final class InMemoryStore implements SystemOutputStore {
+
+    private final Symbol systemID;
+    private final DocumentSystemOutput output;
+
+    private InMemoryStore(final Symbol systemID, final DocumentSystemOutput output) {
+      this.systemID = systemID;
+      this.output = output;
+    }
+
+    @Override
+    public Symbol systemID() {
+      return systemID;
+    }
+
+    @Override
+    public Set<Symbol> docIDs() {
+      return ImmutableSet.of(output.docID());
+    }
+
+    @Override
+    public DocumentSystemOutput read(final Symbol docID) throws IOException {
+      if (!docID.equals(output.docID())) {
+        throw new IOException("No such document " + docID);
+      }
+      return output;
+    }
+
+    @Override
+    public void write(final DocumentSystemOutput output) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package com.bbn.kbp.events2014.diagnostics;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class DiagnosticsTest {
+
+  @Test
+  public void testRecordsWrittenPerChannel() throws IOException {
+    final File dir = new File(Files.createTempDir(), "diagnostics");
+    final Diagnostics diagnostics = Diagnostics.writingTo(dir);
+    final Diagnostics.Channel foo = diagnostics.channel("foo");
+    assertTrue(foo.isEnabled());
+    foo.record("doc1", "{} of {} matched", 2, 3);
+    diagnostics.channel("bar").record("doc2", "nothing to format");
+    foo.record("doc3", "{}", "last");
+    diagnostics.close();
+
+    assertEquals(ImmutableList.of("doc1\t2 of 3 matched", "doc3\tlast"),
+        Files.readLines(new File(dir, "foo.tsv"), Charsets.UTF_8));
+    assertEquals(ImmutableList.of("doc2\tnothing to format"),
+        Files.readLines(new File(dir, "bar.tsv"), Charsets.UTF_8));
+  }
+
+  @Test
+  public void testDisabledRecordsNothing() throws IOException {
+    final Diagnostics diagnostics = Diagnostics.disabled();
+    final Diagnostics.Channel channel = diagnostics.channel("foo");
+    assertFalse(diagnostics.isEnabled());
+    assertFalse(channel.isEnabled());
+    channel.record("doc", "{}", new Object() {
+      @Override
+      public String toString() {
+        throw new AssertionError("Disabled diagnostics should never render arguments");
+      }
+    });
+    diagnostics.close();
+  }
+}
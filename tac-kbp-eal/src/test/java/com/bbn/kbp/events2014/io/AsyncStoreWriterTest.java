@@ -0,0 +1,144 @@
+package com.bbn.kbp.events2014.io;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Writes numbered documents, each to a file of the same name, atomically the way the directory
+ * stores do.  To make writing a document fail for real, we put a non-empty directory where its
+ * file should go, so its contents are written to a temporary file which cannot be renamed.
+ */
+public final class AsyncStoreWriterTest {
+
+  private static final int NUM_DOCS = 20;
+
+  @Test
+  public void testWritesEverything() throws IOException {
+    final File dir = Files.createTempDir();
+    final AsyncStoreWriter<Integer> writer = AsyncStoreWriter.create(new FileWriter(dir), 3, 4);
+    for (int doc = 0; doc < NUM_DOCS; ++doc) {
+      writer.write(doc);
+    }
+    writer.finish();
+
+    final ImmutableSet.Builder<String> expected = ImmutableSet.builder();
+    for (int doc = 0; doc < NUM_DOCS; ++doc) {
+      expected.add(Integer.toString(doc));
+    }
+    assertEquals(expected.build(), TACKBPEALIOUtils.documentFileNames(dir));
+    assertOnlyCompleteDocuments(dir);
+  }
+
+  @Test
+  public void testWriteFailureSurfacesFromFinish() throws IOException {
+    final File dir = Files.createTempDir();
+    blockDocument(dir, 5);
+    // one I/O thread so we know every document before the failure was written
+    final AsyncStoreWriter<Integer> writer = AsyncStoreWriter.create(new FileWriter(dir), 1, 1);
+    try {
+      for (int doc = 0; doc < 6; ++doc) {
+        writer.write(doc);
+      }
+      writer.finish();
+      fail("Expected writing document 5 to fail");
+    } catch (IOException expected) {
+      // the failure is the rename's own exception, not a wrapper
+      assertTrue(expected instanceof FileSystemException);
+    }
+    for (int doc = 0; doc < 5; ++doc) {
+      assertEquals(content(doc), Files.toString(new File(dir, Integer.toString(doc)),
+          Charsets.UTF_8));
+    }
+    assertOnlyCompleteDocuments(dir);
+  }
+
+  @Test
+  public void testRuntimeExceptionSurfacesFromFinish() throws IOException {
+    final IllegalStateException failure = new IllegalStateException("bad document");
+    final AsyncStoreWriter<Integer> writer =
+        AsyncStoreWriter.create(new AsyncStoreWriter.DocumentWriter<Integer>() {
+          @Override
+          public void write(final Integer document) {
+            throw failure;
+          }
+        }, 2, 2);
+    writer.write(0);
+    try {
+      writer.finish();
+      fail("Expected writing document 0 to fail");
+    } catch (IllegalStateException e) {
+      assertSame(failure, e);
+    }
+  }
+
+  @Test
+  public void testWriteFailureSurfacesFromLaterWrite() throws IOException {
+    final File dir = Files.createTempDir();
+    blockDocument(dir, 0);
+    final AsyncStoreWriter<Integer> writer = AsyncStoreWriter.create(new FileWriter(dir), 1, 1);
+    writer.write(0);
+    // with one pending document allowed, this waits for document 0 to fail
+    writer.write(1);
+    try {
+      writer.write(2);
+      fail("Expected the failure writing document 0 to be thrown");
+    } catch (IOException expected) {
+      // expected
+    }
+    // nothing is written after a failure
+    assertFalse(new File(dir, "1").exists());
+    assertFalse(new File(dir, "2").exists());
+    assertOnlyCompleteDocuments(dir);
+  }
+
+  // a non-empty directory in the way of a document's file makes renaming onto it fail
+  private static void blockDocument(final File dir, final int doc) throws IOException {
+    final File blocker = new File(dir, Integer.toString(doc));
+    blocker.mkdir();
+    Files.touch(new File(blocker, "blocker"));
+  }
+
+  private static void assertOnlyCompleteDocuments(final File dir) throws IOException {
+    for (final File f : dir.listFiles()) {
+      assertFalse(f.getName(), TACKBPEALIOUtils.isInProgressWrite(f));
+      if (f.isFile()) {
+        assertEquals(content(Integer.parseInt(f.getName())), Files.toString(f, Charsets.UTF_8));
+      }
+    }
+  }
+
+  private static String content(final int doc) {
+    final StringBuilder sb = new StringBuilder();
+    for (int line = 0; line < 1000; ++line) {
+      sb.append(doc).append("\t").append(line).append("\n");
+    }
+    return sb.toString();
+  }
+
+  private static final class FileWriter implements AsyncStoreWriter.DocumentWriter<Integer> {
+
+    private final File dir;
+
+    private FileWriter(final File dir) {
+      this.dir = dir;
+    }
+
+    @Override
+    public void write(final Integer doc) throws IOException {
+      TACKBPEALIOUtils.writeAtomically(content(doc), new File(dir, Integer.toString(doc)));
+    }
+  }
+}
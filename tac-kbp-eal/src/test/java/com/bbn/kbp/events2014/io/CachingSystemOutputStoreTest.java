@@ -0,0 +1,141 @@
+package com.bbn.kbp.events2014.io;
+
+import com.bbn.bue.common.scoring.Scored;
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.kbp.events2014.ArgumentOutput;
+import com.bbn.kbp.events2014.DocumentSystemOutput;
+import com.bbn.kbp.events2014.DocumentSystemOutput2014;
+import com.bbn.kbp.events2014.Response;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multiset;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Wraps a fake store which counts how many times each document is read from it.
+ */
+public final class CachingSystemOutputStoreTest {
+
+  private static final Symbol DOC_A = Symbol.from("DOC_A");
+  private static final Symbol DOC_B = Symbol.from("DOC_B");
+  private static final Symbol DOC_C = Symbol.from("DOC_C");
+
+  @Test
+  public void testRepeatedReadsHitWrappedStoreOnce() throws IOException {
+    final CountingStore wrapped = new CountingStore();
+    final CachingSystemOutputStore store = CachingSystemOutputStore.wrap(wrapped, 2);
+
+    final DocumentSystemOutput first = store.read(DOC_A);
+    for (int i = 0; i < 4; ++i) {
+      assertSame(first, store.read(DOC_A));
+    }
+    store.read(DOC_B);
+    store.read(DOC_A);
+
+    assertEquals(1, wrapped.reads.count(DOC_A));
+    assertEquals(1, wrapped.reads.count(DOC_B));
+    assertEquals(7, store.numReads());
+    assertEquals(2, store.numUnderlyingReads());
+    assertEquals(ImmutableSet.<Symbol>of(), store.docIDsReadMoreThanOnce());
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsedBeyondBound() throws IOException {
+    final CountingStore wrapped = new CountingStore();
+    final CachingSystemOutputStore store = CachingSystemOutputStore.wrap(wrapped, 2);
+
+    store.read(DOC_A);
+    store.read(DOC_B);
+    // a third document pushes out the least recently read one, DOC_A
+    store.read(DOC_C);
+    store.read(DOC_C);
+    store.read(DOC_B);
+    assertEquals(3, store.numUnderlyingReads());
+
+    store.read(DOC_A);
+    assertEquals(2, wrapped.reads.count(DOC_A));
+    assertEquals(1, wrapped.reads.count(DOC_B));
+    assertEquals(1, wrapped.reads.count(DOC_C));
+    assertEquals(ImmutableSet.of(DOC_A), store.docIDsReadMoreThanOnce());
+  }
+
+  @Test
+  public void testWriteInvalidatesCachedDocument() throws IOException {
+    final CountingStore wrapped = new CountingStore();
+    final CachingSystemOutputStore store = CachingSystemOutputStore.wrap(wrapped, 2);
+
+    store.write(store.read(DOC_A));
+    store.read(DOC_A);
+    assertEquals(2, wrapped.reads.count(DOC_A));
+    assertEquals(1, wrapped.writes.count(DOC_A));
+  }
+
+  @Test
+  public void testIOExceptionPropagates() {
+    final IOException failure = new IOException("cannot read");
+    final CachingSystemOutputStore store =
+        CachingSystemOutputStore.wrap(new CountingStore() {
+          @Override
+          public DocumentSystemOutput read(final Symbol docID) throws IOException {
+            throw failure;
+          }
+        }, 2);
+    try {
+      store.read(DOC_A);
+      fail("Expected reading DOC_A to fail");
+    } catch (IOException e) {
+      assertSame(failure, e);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMustCacheSomething() {
+    CachingSystemOutputStore.wrap(new CountingStore(), 0);
+  }
+
+  /**
+   * Returns a fresh, empty output for every read, recording which documents were read and
+   * written.
+   */
+  private static class CountingStore implements SystemOutputStore {
+
+    private final Multiset<Symbol> reads = HashMultiset.create();
+    private final Multiset<Symbol> writes = HashMultiset.create();
+
+    @Override
+    public Symbol systemID() {
+      return Symbol.from("counting");
+    }
+
+    @Override
+    public Set<Symbol> docIDs() {
+      return ImmutableSet.of(DOC_A, DOC_B, DOC_C);
+    }
+
+    @Override
+    public DocumentSystemOutput read(final Symbol docID) throws IOException {
+      reads.add(docID);
+      return DocumentSystemOutput2014.from(ArgumentOutput.createWithoutMetadata(docID,
+          ImmutableList.<Scored<Response>>of()));
+    }
+
+    @Override
+    public void write(final DocumentSystemOutput output) {
+      writes.add(output.docID());
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package com.bbn.kbp.events2014.io;
+
+import com.bbn.bue.common.symbols.Symbol;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public final class PrefetchingDocumentIteratorTest {
+
+  private final ImmutableList<Symbol> docIDs = ImmutableList.of(Symbol.from("doc1"),
+      Symbol.from("doc2"), Symbol.from("doc3"), Symbol.from("doc4"), Symbol.from("doc5"));
+
+  @Test
+  public void testReturnsDocumentsInOrder() {
+    final PrefetchingDocumentIterator<String> it = PrefetchingDocumentIterator.create(docIDs,
+        new PrefetchingDocumentIterator.DocumentLoader<String>() {
+          @Override
+          public String load(final Symbol docID) throws IOException {
+            // make earlier documents slower to load so they finish out of order
+            try {
+              Thread.sleep(10 * (5 - Integer.parseInt(docID.asString().substring(3))));
+            } catch (InterruptedException e) {
+              throw new IOException(e);
+            }
+            return docID.asString();
+          }
+        }, 3);
+
+    final List<String> loaded = Lists.newArrayList(it);
+    assertEquals(ImmutableList.of("doc1", "doc2", "doc3", "doc4", "doc5"), loaded);
+  }
+
+  @Test
+  public void testFailuresPropagatedInOrder() {
+    final AtomicInteger numLoaded = new AtomicInteger(0);
+    final PrefetchingDocumentIterator<String> it = PrefetchingDocumentIterator.create(docIDs,
+        new PrefetchingDocumentIterator.DocumentLoader<String>() {
+          @Override
+          public String load(final Symbol docID) throws IOException {
+            if (docID.asString().equals("doc3")) {
+              throw new IOException("Cannot load " + docID);
+            }
+            numLoaded.incrementAndGet();
+            return docID.asString();
+          }
+        }, 2);
+
+    assertEquals("doc1", it.next());
+    assertEquals("doc2", it.next());
+    try {
+      it.next();
+      fail("Expected loading doc3 to fail");
+    } catch (RuntimeException e) {
+      assertTrue(e.getCause() instanceof IOException);
+    }
+    assertFalse(it.hasNext());
+    // we never prefetch more than two documents past the last one returned
+    assertTrue(numLoaded.get() <= 4);
+  }
+}
@@ -0,0 +1,140 @@
+package com.bbn.kbp.events2014.io;
+
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.kbp.events2014.CharOffsetSpan;
+import com.bbn.kbp.events2014.TACKBPEALException;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SourceCorpusIndexTest {
+
+  @Test
+  public void testSpansMatchOriginalText() throws IOException {
+    final File dir = Files.createTempDir();
+    // a mix of one, two, three, and four byte characters, long enough to need many checkpoints
+    final String text = Strings.repeat("<doc> caf\u00e9 \u4e2d\u6587 \ud83d\ude00 ok\n", 200);
+    final File ascii = new File(dir, "ascii.txt");
+    final File mixed = new File(dir, "mixed.txt");
+    Files.write("The police arrived.", ascii, Charsets.UTF_8);
+    Files.write(text, mixed, Charsets.UTF_8);
+    final Symbol asciiID = Symbol.from("ascii");
+    final Symbol mixedID = Symbol.from("mixed");
+
+    try (SourceCorpusIndex index = SourceCorpusIndex.build(
+        ImmutableMap.of(asciiID, ascii, mixedID, mixed))) {
+      assertEquals(19, index.length(asciiID));
+      assertEquals("police",
+          index.text(asciiID, CharOffsetSpan.fromOffsetsOnly(4, 9)));
+      assertEquals(text.length(), index.length(mixedID));
+      assertEquals(text, index.text(mixedID));
+      for (int start = 0; start < text.length(); start += 7) {
+        for (int end = start; end <= text.length(); end += 331) {
+          assertEquals(text.substring(start, end), index.substring(mixedID, start, end));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testOnlyRequestedDocumentsAreIndexed() throws IOException {
+    final File dir = Files.createTempDir();
+    final File a = new File(dir, "a.txt");
+    Files.write("a", a, Charsets.UTF_8);
+    final Symbol aID = Symbol.from("a");
+    final Symbol bID = Symbol.from("b");
+
+    try (SourceCorpusIndex index = SourceCorpusIndex.build(
+        ImmutableMap.of(aID, a, bID, new File(dir, "missing.txt")), ImmutableSet.of(aID))) {
+      assertEquals(ImmutableSet.of(aID), index.docIDs());
+      assertFalse(index.contains(bID));
+    }
+  }
+
+  @Test
+  public void testDocumentsAreOnlyReadWhenNeeded() throws IOException {
+    final File dir = Files.createTempDir();
+    final File a = new File(dir, "a.txt");
+    Files.write("abc", a, Charsets.UTF_8);
+    final Symbol aID = Symbol.from("a");
+    final Symbol missingID = Symbol.from("missing");
+
+    // a missing file is only a problem for the document which needs it
+    try (SourceCorpusIndex index = SourceCorpusIndex.build(
+        ImmutableMap.of(aID, a, missingID, new File(dir, "missing.txt")))) {
+      assertTrue(index.contains(missingID));
+      assertEquals(3, index.length(aID));
+      try {
+        index.length(missingID);
+        fail("Should not be able to index a missing file");
+      } catch (TACKBPEALException expected) {
+        assertTrue(expected.getCause() instanceof IOException);
+      }
+      assertEquals("bc", index.substring(aID, 1, 3));
+    }
+  }
+
+  @Test
+  public void testConcurrentIndexingWithEviction() throws Exception {
+    final File dir = Files.createTempDir();
+    final ImmutableMap.Builder<Symbol, File> filesB = ImmutableMap.builder();
+    final ImmutableMap.Builder<Symbol, String> textsB = ImmutableMap.builder();
+    for (int i = 0; i < 20; ++i) {
+      final String text = Strings.repeat("doc" + i + " caf\u00e9 \u4e2d \ud83d\ude00\n", 50 + i);
+      final File file = new File(dir, i + ".txt");
+      Files.write(text, file, Charsets.UTF_8);
+      filesB.put(Symbol.from("doc" + i), file);
+      textsB.put(Symbol.from("doc" + i), text);
+    }
+    final ImmutableMap<Symbol, File> files = filesB.build();
+    final ImmutableMap<Symbol, String> texts = textsB.build();
+
+    // room for only a few documents' text at once, so most will be read more than once
+    try (SourceCorpusIndex index =
+             SourceCorpusIndex.build(files, files.keySet(), 4 * 1024)) {
+      final ExecutorService executor = Executors.newFixedThreadPool(8);
+      try {
+        final List<Future<Void>> futures = Lists.newArrayList();
+        for (int trial = 0; trial < 10; ++trial) {
+          for (final Map.Entry<Symbol, String> entry : texts.entrySet()) {
+            futures.add(executor.submit(new Callable<Void>() {
+              @Override
+              public Void call() {
+                final String text = entry.getValue();
+                assertEquals(text.length(), index.length(entry.getKey()));
+                assertEquals(text.substring(7, text.length() - 5),
+                    index.substring(entry.getKey(), 7, text.length() - 5));
+                return null;
+              }
+            }));
+          }
+        }
+        for (final Future<Void> future : futures) {
+          future.get();
+        }
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+  }
+}
@@ -0,0 +1,293 @@
+package com.bbn.kbp.events2014.io;
+
+import com.bbn.bue.common.symbols.Symbol;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs transforms between an in-memory source and sink.  The source holds documents {@code
+ * DOC00} through {@code DOC29}, each of whose contents is its ID in lower case; a transformed
+ * document is its ID followed by a space and the upper-cased contents.
+ */
+public final class StoreTransformRunnerTest {
+
+  private static final int NUM_DOCS = 30;
+
+  @Test
+  public void testTransformsEveryDocument() throws IOException {
+    final InMemorySink sink = new InMemorySink();
+    final StoreTransformRunner.Stats stats =
+        StoreTransformRunner.builder(source(), new UpperCase(), sink).numThreads(4).build().run();
+
+    assertEquals(expectedOutput(allDocIDs()), sink.documents);
+    assertEquals(NUM_DOCS, stats.numProcessed());
+    assertEquals(NUM_DOCS, stats.numWritten());
+    assertEquals(0, stats.numSkipped());
+  }
+
+  @Test
+  public void testWritesInDocumentIDOrder() throws IOException {
+    // with a single writer thread, the sink sees documents in the order they are handed over
+    final InMemorySink sink = new InMemorySink();
+    StoreTransformRunner.builder(source(), new UpperCase(), sink).numThreads(1).build().run();
+    assertEquals(allDocIDs(), sink.writeOrder);
+  }
+
+  @Test
+  public void testRestrictedToDocIDs() throws IOException {
+    final ImmutableList<Symbol> docIDs = ImmutableList.of(docID(3), docID(17));
+    final InMemorySink sink = new InMemorySink();
+    final StoreTransformRunner.Stats stats =
+        StoreTransformRunner.builder(source(), new UpperCase(), sink)
+            .docIDs(docIDs).numThreads(3).build().run();
+    assertEquals(expectedOutput(docIDs), sink.documents);
+    assertEquals(2, stats.numProcessed());
+  }
+
+  @Test
+  public void testResumeSkipsDocumentsAlreadyWritten() throws IOException {
+    final InMemorySink sink = new InMemorySink();
+    final ImmutableSet<Symbol> alreadyDone = ImmutableSet.of(docID(0), docID(11), docID(29));
+    for (final Symbol docID : alreadyDone) {
+      sink.documents.put(docID, docID + " from an earlier run");
+    }
+    final UpperCase transform = new UpperCase();
+    final StoreTransformRunner.Stats stats = StoreTransformRunner.builder(source(), transform, sink)
+        .resume(true).numThreads(4).build().run();
+
+    assertEquals(NUM_DOCS - alreadyDone.size(), transform.numCalls.get());
+    assertEquals(NUM_DOCS - alreadyDone.size(), stats.numProcessed());
+    assertEquals(alreadyDone.size(), stats.numSkipped());
+    for (final Symbol docID : allDocIDs()) {
+      if (alreadyDone.contains(docID)) {
+        assertEquals(docID + " from an earlier run", sink.documents.get(docID));
+        assertFalse(sink.writeOrder.contains(docID));
+      } else {
+        assertEquals(expectedOutput(docID), sink.documents.get(docID));
+      }
+    }
+  }
+
+  @Test
+  public void testWithoutResumeRewritesEverything() throws IOException {
+    final InMemorySink sink = new InMemorySink();
+    sink.documents.put(docID(11), docID(11) + " from an earlier run");
+    final StoreTransformRunner.Stats stats =
+        StoreTransformRunner.builder(source(), new UpperCase(), sink).numThreads(4).build().run();
+    assertEquals(expectedOutput(allDocIDs()), sink.documents);
+    assertEquals(0, stats.numSkipped());
+  }
+
+  @Test
+  public void testAbsentResultsAreNotWritten() throws IOException {
+    final InMemorySink sink = new InMemorySink();
+    final StoreTransformRunner.Stats stats = StoreTransformRunner.builder(source(),
+        new StoreTransformRunner.DocumentTransform<String, String>() {
+          @Override
+          public Optional<String> transform(final Symbol docID, final String input) {
+            // drop the odd-numbered documents
+            if (Integer.parseInt(docID.asString().substring(3)) % 2 == 1) {
+              return Optional.absent();
+            }
+            return Optional.of(docID + " " + input.toUpperCase());
+          }
+        }, sink).numThreads(4).build().run();
+
+    final List<Symbol> evenDocIDs = Lists.newArrayList();
+    for (int doc = 0; doc < NUM_DOCS; doc += 2) {
+      evenDocIDs.add(docID(doc));
+    }
+    assertEquals(expectedOutput(evenDocIDs), sink.documents);
+    assertEquals(NUM_DOCS, stats.numProcessed());
+    assertEquals(NUM_DOCS / 2, stats.numWritten());
+  }
+
+  @Test
+  public void testTransformIOExceptionPropagates() throws IOException {
+    final IOException failure = new IOException("cannot transform");
+    try {
+      StoreTransformRunner.builder(source(), new FailingTransform(docID(7), failure),
+          new InMemorySink()).numThreads(4).build().run();
+      fail("Expected transforming DOC07 to fail");
+    } catch (RuntimeException e) {
+      // checked exceptions from transforms are wrapped with the document which failed
+      assertSame(failure, e.getCause());
+    }
+  }
+
+  @Test
+  public void testTransformRuntimeExceptionPropagates() throws IOException {
+    final IllegalArgumentException failure = new IllegalArgumentException("bad document");
+    try {
+      StoreTransformRunner.builder(source(), new FailingTransform(docID(7), failure),
+          new InMemorySink()).numThreads(4).build().run();
+      fail("Expected transforming DOC07 to fail");
+    } catch (IllegalArgumentException e) {
+      assertSame(failure, e);
+    }
+  }
+
+  @Test
+  public void testSinkFailurePropagates() {
+    final IOException failure = new IOException("disk full");
+    final InMemorySink sink = new InMemorySink() {
+      @Override
+      public void write(final String document) throws IOException {
+        if (document.startsWith(docID(12).asString())) {
+          throw failure;
+        }
+        super.write(document);
+      }
+    };
+    try {
+      StoreTransformRunner.builder(source(), new UpperCase(), sink).numThreads(4).build().run();
+      fail("Expected writing DOC12 to fail");
+    } catch (IOException e) {
+      assertSame(failure, e);
+    }
+    assertFalse(sink.documents.containsKey(docID(12)));
+  }
+
+  private static Symbol docID(final int doc) {
+    return Symbol.from(String.format("DOC%02d", doc));
+  }
+
+  private static ImmutableList<Symbol> allDocIDs() {
+    final ImmutableList.Builder<Symbol> ret = ImmutableList.builder();
+    for (int doc = 0; doc < NUM_DOCS; ++doc) {
+      ret.add(docID(doc));
+    }
+    return ret.build();
+  }
+
+  private static String expectedOutput(final Symbol docID) {
+    return docID + " " + docID.asString().toUpperCase();
+  }
+
+  private static Map<Symbol, String> expectedOutput(final Iterable<Symbol> docIDs) {
+    final Map<Symbol, String> ret = Maps.newHashMap();
+    for (final Symbol docID : docIDs) {
+      ret.put(docID, expectedOutput(docID));
+    }
+    return ret;
+  }
+
+  private static StoreTransformRunner.DocumentSource<String> source() {
+    final ImmutableMap.Builder<Symbol, String> documents = ImmutableMap.builder();
+    // insert out of order, since the runner should sort documents itself
+    final List<Symbol> docIDs = Lists.newArrayList(allDocIDs());
+    Collections.shuffle(docIDs, new Random(0));
+    for (final Symbol docID : docIDs) {
+      documents.put(docID, docID.asString().toLowerCase());
+    }
+    return new InMemorySource(documents.build());
+  }
+
+  private static final class InMemorySource
+      implements StoreTransformRunner.DocumentSource<String> {
+
+    private final ImmutableMap<Symbol, String> documents;
+
+    private InMemorySource(final ImmutableMap<Symbol, String> documents) {
+      this.documents = documents;
+    }
+
+    @Override
+    public Set<Symbol> docIDs() {
+      return documents.keySet();
+    }
+
+    @Override
+    public String read(final Symbol docID) throws IOException {
+      final String ret = documents.get(docID);
+      if (ret == null) {
+        throw new IOException("No such document " + docID);
+      }
+      return ret;
+    }
+  }
+
+  /**
+   * Writes a document under the document ID at its start.
+   */
+  private static class InMemorySink implements StoreTransformRunner.DocumentSink<String> {
+
+    private final ConcurrentMap<Symbol, String> documents = Maps.newConcurrentMap();
+    private final List<Symbol> writeOrder =
+        Collections.synchronizedList(Lists.<Symbol>newArrayList());
+
+    @Override
+    public Set<Symbol> docIDs() {
+      return ImmutableSet.copyOf(documents.keySet());
+    }
+
+    @Override
+    public void write(final String document) throws IOException {
+      final Symbol docID = Symbol.from(document.substring(0, document.indexOf(' ')));
+      writeOrder.add(docID);
+      documents.put(docID, document);
+    }
+  }
+
+  private static final class UpperCase
+      implements StoreTransformRunner.DocumentTransform<String, String> {
+
+    private final AtomicInteger numCalls = new AtomicInteger();
+
+    @Override
+    public Optional<String> transform(final Symbol docID, final String input) {
+      numCalls.incrementAndGet();
+      // earlier documents are slower, so transforms finish out of order
+      try {
+        Thread.sleep((NUM_DOCS - Integer.parseInt(docID.asString().substring(3))) / 5);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return Optional.of(docID + " " + input.toUpperCase());
+    }
+  }
+
+  private static final class FailingTransform
+      implements StoreTransformRunner.DocumentTransform<String, String> {
+
+    private final Symbol failOn;
+    private final Exception failure;
+
+    private FailingTransform(final Symbol failOn, final Exception failure) {
+      this.failOn = failOn;
+      this.failure = failure;
+    }
+
+    @Override
+    public Optional<String> transform(final Symbol docID, final String input) throws IOException {
+      if (docID.equals(failOn)) {
+        if (failure instanceof IOException) {
+          throw (IOException) failure;
+        }
+        throw (RuntimeException) failure;
+      }
+      return Optional.of(docID + " " + input.toUpperCase());
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package com.bbn.kbp.events2014.io;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reads the same small submission packed as a zip, a ustar tarball, a pax tgz, and a tgz written by
+ * GNU tar's incremental mode.  The GNU archive keeps access and change times where ustar keeps its
+ * path prefix, stores its directories as dumpdir ({@code 'D'}) entries, uses {@code ././@LongLink}
+ * entries for long paths, and has {@code arguments/DOC2} marked as a contiguous ({@code '7'}) file.
+ * The tarballs also hold a symlink {@code arguments/LINK}, which should be skipped.
+ */
+public final class SubmissionArchiveTest {
+
+  private static final String LONG_DIR =
+      "long/" + Strings.repeat("x", 60) + "/" + Strings.repeat("y", 60);
+
+  @Test
+  public void testZip() throws IOException {
+    assertReadsSubmission("submission.zip");
+  }
+
+  @Test
+  public void testUstarTar() throws IOException {
+    assertReadsSubmission("submission.tar");
+  }
+
+  @Test
+  public void testPaxTgz() throws IOException {
+    assertReadsSubmission("submission.tgz");
+  }
+
+  @Test
+  public void testGnuTgz() throws IOException {
+    assertReadsSubmission("gnu/submission.tgz");
+  }
+
+  @Test
+  public void testConcurrentReads() throws Exception {
+    for (final String fixture : new String[]{"submission.zip", "submission.tar",
+        "submission.tgz", "gnu/submission.tgz"}) {
+      final SubmissionArchive archive = SubmissionArchive.open(fixture(fixture));
+      final ExecutorService executor = Executors.newFixedThreadPool(4);
+      try {
+        final Future<?>[] futures = new Future<?>[16];
+        for (int i = 0; i < futures.length; ++i) {
+          final String path = (i % 2 == 0) ? "arguments/DOC1" : LONG_DIR + "/DOC3";
+          final String expected = (i % 2 == 0) ? "doc1 arguments\n" : "doc3 arguments\n";
+          futures[i] = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+              assertEquals(expected, archive.file(path).get().read());
+              return null;
+            }
+          });
+        }
+        for (final Future<?> future : futures) {
+          future.get();
+        }
+      } finally {
+        executor.shutdownNow();
+        archive.close();
+      }
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testTruncatedTarFails() throws IOException {
+    final File truncated = new File(Files.createTempDir(), "truncated.tar");
+    // cuts off the contents of arguments/DOC1
+    Files.asByteSource(fixture("submission.tar")).slice(0, 1024 + 512 + 7).copyTo(
+        Files.asByteSink(truncated));
+    SubmissionArchive.open(truncated).close();
+  }
+
+  private static void assertReadsSubmission(final String fixture) throws IOException {
+    final SubmissionArchive archive = SubmissionArchive.open(fixture(fixture));
+    try {
+      assertEquals("submission", archive.name());
+      assertEquals(ImmutableSet.of("arguments", "empty", "linking", "long"),
+          archive.childNames(""));
+      assertEquals(ImmutableSet.of("DOC1", "DOC2"), archive.fileNames("arguments"));
+      assertEquals(ImmutableSet.of("DOC1"), archive.fileNames("linking"));
+      assertEquals(ImmutableSet.of("DOC3"), archive.fileNames(LONG_DIR));
+      assertEquals(ImmutableSet.<String>of(), archive.childNames("empty"));
+
+      assertTrue(archive.isDirectory("empty"));
+      assertTrue(archive.isDirectory(LONG_DIR));
+      assertFalse(archive.isDirectory("arguments/DOC1"));
+
+      assertEquals("doc1 arguments\n", archive.file("arguments/DOC1").get().read());
+      assertEquals("doc2 arguments\n", archive.file("arguments/DOC2").get().read());
+      assertEquals("doc1 linking\n", archive.file("./linking/DOC1").get().read());
+      assertEquals("doc3 arguments\n", archive.file(LONG_DIR + "/DOC3").get().read());
+      // reading a file twice gives the same result
+      assertEquals("doc1 arguments\n", archive.file("arguments/DOC1").get().read());
+      assertFalse(archive.file("arguments/LINK").isPresent());
+      assertFalse(archive.file("arguments/DOC3").isPresent());
+    } finally {
+      archive.close();
+    }
+  }
+
+  private static File fixture(final String name) {
+    return new File(SubmissionArchiveTest.class
+        .getResource("/com/bbn/kbp/events2014/io/submissionArchive/" + name).getFile());
+  }
+}
@@ -0,0 +1,62 @@
+package com.bbn.kbp.events2014.io;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public final class TACKBPEALIOUtilsTest {
+
+  @Test
+  public void testWriteAtomicallyReplacesContents() throws IOException {
+    final File dir = Files.createTempDir();
+    final File doc = new File(dir, "DOC1");
+    TACKBPEALIOUtils.writeAtomically("first\n", doc);
+    TACKBPEALIOUtils.writeAtomically(new StringBuilder("second\n"), doc);
+    assertEquals("second\n", Files.toString(doc, Charsets.UTF_8));
+    assertEquals(ImmutableSet.of("DOC1"), ImmutableSet.copyOf(dir.list()));
+  }
+
+  @Test
+  public void testFailedRenameLeavesNoTemporaryFile() throws IOException {
+    final File dir = Files.createTempDir();
+    // renaming onto a non-empty directory fails after the content has been written
+    final File doc = new File(dir, "DOC1");
+    doc.mkdir();
+    Files.touch(new File(doc, "blocker"));
+    try {
+      TACKBPEALIOUtils.writeAtomically("contents\n", doc);
+      fail("Expected renaming onto a directory to fail");
+    } catch (IOException expected) {
+      // expected
+    }
+    assertTrue(doc.isDirectory());
+    assertEquals(ImmutableSet.of("DOC1"), ImmutableSet.copyOf(dir.list()));
+  }
+
+  @Test
+  public void testDocumentFileNamesSkipsOnlyInProgressWrites() throws IOException {
+    final File dir = Files.createTempDir();
+    TACKBPEALIOUtils.writeAtomically("contents\n", new File(dir, "DOC1"));
+    TACKBPEALIOUtils.writeAtomically("contents\n", new File(dir, ".DOC2"));
+    // what a writer which crashed part way through DOC3 would leave behind
+    final File crashed = new File(dir, ".DOC3.inprogress-8231947562319");
+    Files.touch(crashed);
+    Files.touch(new File(dir, ".inprogress-12"));
+    Files.touch(new File(dir, ".DOC4.inprogress-tmp"));
+
+    assertTrue(TACKBPEALIOUtils.isInProgressWrite(crashed));
+    assertFalse(TACKBPEALIOUtils.isInProgressWrite(new File(dir, ".DOC2")));
+    assertEquals(ImmutableSet.of("DOC1", ".DOC2", ".inprogress-12", ".DOC4.inprogress-tmp"),
+        TACKBPEALIOUtils.documentFileNames(dir));
+  }
+}
@@ -0,0 +1,223 @@
+package com.bbn.kbp.events2014.linking;
+
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.kbp.events2014.AnswerKey;
+import com.bbn.kbp.events2014.AssessedResponse;
+import com.bbn.kbp.events2014.CharOffsetSpan;
+import com.bbn.kbp.events2014.CorefAnnotation;
+import com.bbn.kbp.events2014.EventArgumentLinking;
+import com.bbn.kbp.events2014.FieldAssessment;
+import com.bbn.kbp.events2014.FillerMentionType;
+import com.bbn.kbp.events2014.KBPRealis;
+import com.bbn.kbp.events2014.KBPString;
+import com.bbn.kbp.events2014.Response;
+import com.bbn.kbp.events2014.ResponseAssessment;
+import com.bbn.kbp.events2014.ResponseLinking;
+import com.bbn.kbp.events2014.ResponseSet;
+import com.bbn.kbp.events2014.TypeRoleFillerRealis;
+import com.bbn.kbp.events2014.TypeRoleFillerRealisSet;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Besides the array helpers, checks that aligning and projecting linkings through the index gives
+ * the linkings worked out by hand for a small document.  In the document, {@code Alice} and
+ * {@code she} corefer, two attacker responses and two target responses share equivalence classes,
+ * and the two victim responses differ only in realis.
+ */
+public final class EquivalenceClassIndexTest {
+
+  private static final Symbol DOC = Symbol.from("DOC");
+  private static final Symbol ATTACK = Symbol.from("Conflict.Attack");
+  private static final Symbol DIE = Symbol.from("Life.Die");
+  private static final Symbol ATTACKER = Symbol.from("Attacker");
+  private static final Symbol TARGET = Symbol.from("Target");
+  private static final Symbol PLACE = Symbol.from("Place");
+  private static final Symbol INSTRUMENT = Symbol.from("Instrument");
+  private static final Symbol VICTIM = Symbol.from("Victim");
+
+  private static final KBPString ALICE = KBPString.from("Alice", 0, 4);
+  private static final KBPString SHE = KBPString.from("she", 10, 12);
+  private static final KBPString BOB = KBPString.from("Bob", 20, 22);
+  private static final KBPString PARIS = KBPString.from("Paris", 30, 34);
+  private static final KBPString KNIFE = KBPString.from("knife", 40, 44);
+  private static final KBPString CAROL = KBPString.from("Carol", 50, 54);
+
+  private static final Response ALICE_ATTACKER = response(0, ATTACK, ATTACKER, ALICE);
+  private static final Response SHE_ATTACKER = response(1, ATTACK, ATTACKER, SHE);
+  private static final Response BOB_TARGET = response(2, ATTACK, TARGET, BOB);
+  // differs from BOB_TARGET only in its justification
+  private static final Response BOB_TARGET_AGAIN = response(3, ATTACK, TARGET, BOB);
+  private static final Response PARIS_PLACE = response(4, ATTACK, PLACE, PARIS);
+  private static final Response KNIFE_INSTRUMENT = response(5, ATTACK, INSTRUMENT, KNIFE);
+  private static final Response BOB_VICTIM = response(6, DIE, VICTIM, BOB);
+  private static final Response BOB_OTHER_VICTIM =
+      response(7, DIE, VICTIM, BOB, KBPRealis.Other);
+  private static final Response CAROL_ATTACKER = response(8, ATTACK, ATTACKER, CAROL);
+
+  private static final CorefAnnotation SOURCE_COREF = CorefAnnotation.strictBuilder(DOC)
+      .corefCAS(ALICE, 1).corefCAS(SHE, 1).corefCAS(BOB, 2).corefCAS(PARIS, 3)
+      .corefCAS(KNIFE, 4).build();
+  private static final AnswerKey SOURCE_KEY = answerKey(SOURCE_COREF, ALICE_ATTACKER,
+      SHE_ATTACKER, BOB_TARGET, BOB_TARGET_AGAIN, PARIS_PLACE, KNIFE_INSTRUMENT, BOB_VICTIM,
+      BOB_OTHER_VICTIM);
+
+  private static final ResponseLinking SOURCE_LINKING = ResponseLinking.builder().docID(DOC)
+      .responseSets(ImmutableSet.of(
+          ResponseSet.from(ImmutableSet.of(ALICE_ATTACKER, BOB_TARGET)),
+          ResponseSet.from(ImmutableSet.of(SHE_ATTACKER, PARIS_PLACE, BOB_VICTIM)),
+          ResponseSet.from(ImmutableSet.of(BOB_TARGET_AGAIN, KNIFE_INSTRUMENT)),
+          ResponseSet.from(ImmutableSet.of(KNIFE_INSTRUMENT))))
+      .incompleteResponses(ImmutableSet.of(BOB_OTHER_VICTIM)).build();
+
+  @Test
+  public void testSortedDistinct() {
+    final int[] ids = {5, 1, 3, 1, 5, 0, 99};
+    // only the first six elements are considered
+    assertArrayEquals(new int[]{0, 1, 3, 5}, EquivalenceClassIndex.sortedDistinct(ids, 6));
+    assertArrayEquals(new int[0], EquivalenceClassIndex.sortedDistinct(new int[4], 0));
+  }
+
+  @Test
+  public void testMerges() {
+    final int[] a = {0, 2, 3, 7};
+    final int[] b = {1, 2, 7, 8};
+    assertArrayEquals(new int[]{0, 1, 2, 3, 7, 8}, EquivalenceClassIndex.union(a, b));
+    assertArrayEquals(new int[]{0, 3}, EquivalenceClassIndex.difference(a, b));
+    assertArrayEquals(new int[]{1, 8}, EquivalenceClassIndex.difference(b, a));
+    assertArrayEquals(a, EquivalenceClassIndex.union(a, new int[0]));
+    assertArrayEquals(new int[0], EquivalenceClassIndex.difference(a, a));
+  }
+
+  @Test
+  public void testAlign() {
+    final EventArgumentLinking expected = EventArgumentLinking.builder().docID(DOC)
+        .eventFrames(ImmutableSet.of(
+            frame(trfr(SOURCE_COREF, ALICE_ATTACKER), trfr(SOURCE_COREF, BOB_TARGET)),
+            frame(trfr(SOURCE_COREF, ALICE_ATTACKER), trfr(SOURCE_COREF, PARIS_PLACE),
+                trfr(SOURCE_COREF, BOB_VICTIM)),
+            frame(trfr(SOURCE_COREF, BOB_TARGET), trfr(SOURCE_COREF, KNIFE_INSTRUMENT)),
+            frame(trfr(SOURCE_COREF, KNIFE_INSTRUMENT))))
+        .incomplete(ImmutableSet.of(trfr(SOURCE_COREF, BOB_OTHER_VICTIM))).build();
+
+    assertEquals(expected, ExactMatchEventArgumentLinkingAligner.create()
+        .align(SOURCE_LINKING, SOURCE_KEY));
+  }
+
+  @Test
+  public void testAlignToResponseLinking() {
+    final TypeRoleFillerRealis absentFromKey =
+        TypeRoleFillerRealis.of(DOC, DIE, PLACE, KBPRealis.Actual, PARIS);
+    final EventArgumentLinking linking = EventArgumentLinking.builder().docID(DOC)
+        .eventFrames(ImmutableSet.of(
+            frame(trfr(SOURCE_COREF, SHE_ATTACKER), trfr(SOURCE_COREF, BOB_TARGET)),
+            frame(trfr(SOURCE_COREF, PARIS_PLACE), trfr(SOURCE_COREF, KNIFE_INSTRUMENT)),
+            // an equivalence class with no responses in the answer key contributes nothing
+            frame(trfr(SOURCE_COREF, BOB_VICTIM), absentFromKey)))
+        .incomplete(ImmutableSet.of(trfr(SOURCE_COREF, BOB_OTHER_VICTIM))).build();
+
+    // each equivalence class brings in every response of the answer key in it
+    final ResponseLinking expected = ResponseLinking.builder().docID(DOC)
+        .responseSets(ImmutableSet.of(
+            ResponseSet.from(ImmutableSet.of(ALICE_ATTACKER, SHE_ATTACKER, BOB_TARGET,
+                BOB_TARGET_AGAIN)),
+            ResponseSet.from(ImmutableSet.of(PARIS_PLACE, KNIFE_INSTRUMENT)),
+            ResponseSet.from(ImmutableSet.of(BOB_VICTIM))))
+        .incompleteResponses(ImmutableSet.of(BOB_OTHER_VICTIM)).build();
+
+    final ExactMatchEventArgumentLinkingAligner aligner =
+        ExactMatchEventArgumentLinkingAligner.create();
+    final ResponseLinking aligned = aligner.alignToResponseLinking(linking, SOURCE_KEY);
+    assertEquals(expected, aligned);
+    // and back again, less the equivalence class which is not in the answer key
+    assertEquals(EventArgumentLinking.builder().docID(DOC)
+            .eventFrames(ImmutableSet.of(
+                frame(trfr(SOURCE_COREF, SHE_ATTACKER), trfr(SOURCE_COREF, BOB_TARGET)),
+                frame(trfr(SOURCE_COREF, PARIS_PLACE), trfr(SOURCE_COREF, KNIFE_INSTRUMENT)),
+                frame(trfr(SOURCE_COREF, BOB_VICTIM))))
+            .incomplete(ImmutableSet.of(trfr(SOURCE_COREF, BOB_OTHER_VICTIM))).build(),
+        aligner.align(aligned, SOURCE_KEY));
+  }
+
+  @Test
+  public void testProjectWhereSomeResponsesHaveNoCoref() {
+    // in the target, "she" is split from "Alice", the knife response is gone so its CAS has no
+    // coref, and Carol is newly found to be an attacker
+    final CorefAnnotation targetCoref = CorefAnnotation.strictBuilder(DOC)
+        .corefCAS(ALICE, 1).corefCAS(SHE, 5).corefCAS(BOB, 2).corefCAS(PARIS, 3)
+        .corefCAS(CAROL, 6).build();
+    final AnswerKey targetKey = answerKey(targetCoref, ALICE_ATTACKER, SHE_ATTACKER,
+        BOB_TARGET, BOB_TARGET_AGAIN, PARIS_PLACE, BOB_VICTIM, BOB_OTHER_VICTIM, CAROL_ATTACKER);
+
+    // the knife response is dropped from the third response set, and the fourth, which has
+    // nothing else, is dropped entirely.  Everything in the target not in some response set is
+    // incomplete.
+    final ResponseLinking expected = ResponseLinking.builder().docID(DOC)
+        .responseSets(ImmutableSet.of(
+            ResponseSet.from(ImmutableSet.of(ALICE_ATTACKER, BOB_TARGET, BOB_TARGET_AGAIN)),
+            ResponseSet.from(ImmutableSet.of(SHE_ATTACKER, PARIS_PLACE, BOB_VICTIM)),
+            ResponseSet.from(ImmutableSet.of(BOB_TARGET, BOB_TARGET_AGAIN))))
+        .incompleteResponses(ImmutableSet.of(BOB_OTHER_VICTIM, CAROL_ATTACKER)).build();
+
+    assertEquals(expected,
+        NaiveResponseLinkingProjector.create().from(SOURCE_LINKING).projectTo(targetKey));
+  }
+
+  @Test
+  public void testCreateIfPossibleSkipsResponsesWithoutCoref() {
+    final EquivalenceClassIndex index = EquivalenceClassIndex.createIfPossible(
+        ImmutableSet.of(ALICE_ATTACKER, SHE_ATTACKER, KNIFE_INSTRUMENT, CAROL_ATTACKER),
+        TypeRoleFillerRealis.extractFromSystemResponseIfPossible(
+            SOURCE_COREF.normalizeCASIfPossibleFunction()));
+    // Alice and she share an ID; the knife response is indexed but Carol is not coreffed
+    assertArrayEquals(new int[]{0},
+        index.idsOfResponses(ImmutableSet.of(ALICE_ATTACKER, SHE_ATTACKER, CAROL_ATTACKER)));
+    assertArrayEquals(new int[]{0, 1},
+        index.idsOfResponses(ImmutableSet.of(KNIFE_INSTRUMENT, SHE_ATTACKER)));
+    assertEquals(ImmutableSet.of(ALICE_ATTACKER, SHE_ATTACKER, KNIFE_INSTRUMENT),
+        index.responses(new int[]{0, 1}));
+    assertEquals(ImmutableSet.of(trfr(SOURCE_COREF, KNIFE_INSTRUMENT)),
+        index.equivalenceClasses(index.idsOfEquivalenceClasses(ImmutableSet.of(
+            trfr(SOURCE_COREF, KNIFE_INSTRUMENT), TypeRoleFillerRealis.of(DOC, ATTACK, ATTACKER,
+                KBPRealis.Actual, CAROL)))));
+  }
+
+  private static TypeRoleFillerRealis trfr(final CorefAnnotation coref, final Response response) {
+    return TypeRoleFillerRealis.of(DOC, response.type(), response.role(), response.realis(),
+        coref.normalizeStrictly(response.canonicalArgument()));
+  }
+
+  private static TypeRoleFillerRealisSet frame(final TypeRoleFillerRealis... equivalenceClasses) {
+    return TypeRoleFillerRealisSet.from(ImmutableSet.copyOf(equivalenceClasses));
+  }
+
+  private static Response response(final int idx, final Symbol type, final Symbol role,
+      final KBPString cas) {
+    return response(idx, type, role, cas, KBPRealis.Actual);
+  }
+
+  // each response gets its own predicate justification
+  private static Response response(final int idx, final Symbol type, final Symbol role,
+      final KBPString cas, final KBPRealis realis) {
+    final CharOffsetSpan justification = CharOffsetSpan.fromOffsetsOnly(100 + idx, 100 + idx);
+    return Response.of(DOC, type, role, cas, cas.charOffsetSpan(),
+        ImmutableSet.<CharOffsetSpan>of(), ImmutableSet.of(justification), realis);
+  }
+
+  private static AnswerKey answerKey(final CorefAnnotation coref, final Response... responses) {
+    final ImmutableSet.Builder<AssessedResponse> assessed = ImmutableSet.builder();
+    for (final Response response : responses) {
+      assessed.add(AssessedResponse.of(response, ResponseAssessment.of(
+          Optional.of(FieldAssessment.CORRECT), Optional.of(FieldAssessment.CORRECT),
+          Optional.of(FieldAssessment.CORRECT), Optional.of(response.realis()),
+          Optional.of(FieldAssessment.CORRECT), Optional.of(FillerMentionType.NAME))));
+    }
+    return AnswerKey.from(DOC, assessed.build(), ImmutableSet.<Response>of(), coref);
+  }
+}
@@ -0,0 +1,67 @@
+package com.bbn.kbp.events2014.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class StageMetricsTest {
+
+  @Test
+  public void testPercentilesAndThroughput() {
+    final StageMetrics metrics = StageMetrics.create();
+    final StageMetrics.Timer timer = metrics.timer("stage");
+    for (int i = 1; i <= 100; ++i) {
+      timer.record(i, TimeUnit.MILLISECONDS);
+    }
+    final String json = metrics.toJSON();
+    assertTrue(json, json.contains("\"stage\": {\"documents\": 100, \"totalMillis\": 5050.000, "
+        + "\"meanMillis\": 50.500, \"p50Millis\": 50.000, \"p99Millis\": 99.000, "
+        + "\"maxMillis\": 100.000, \"documentsPerSecond\": 19.802}"));
+  }
+
+  @Test
+  public void testPhasesReportRunsNotDocuments() {
+    final StageMetrics metrics = StageMetrics.create();
+    final StageMetrics.Timer phase = metrics.phase("bootstrap sample");
+    phase.record(10, TimeUnit.MILLISECONDS);
+    phase.record(30, TimeUnit.MILLISECONDS);
+    final String json = metrics.toJSON();
+    assertTrue(json, json.contains("\"phases\": {\n    \"bootstrap sample\": {\"runs\": 2, "
+        + "\"totalMillis\": 40.000, \"meanMillis\": 20.000, \"maxMillis\": 30.000}\n  }"));
+    // phases are not stages, so they have no document throughput
+    assertTrue(json, json.contains("\"stages\": {},"));
+    assertFalse(json, json.contains("documentsPerSecond"));
+  }
+
+  @Test
+  public void testCountersAndHistograms() {
+    final StageMetrics metrics = StageMetrics.create();
+    metrics.counter("documents").increment();
+    metrics.counter("documents").add(2);
+    metrics.histogram("responses").record(3);
+    metrics.histogram("responses").record(1);
+    final String json = metrics.toJSON();
+    assertTrue(json, json.contains("\"documents\": 3"));
+    assertTrue(json, json.contains("\"responses\": {\"count\": 2, \"sum\": 4, \"mean\": 2.000, "
+        + "\"p50\": 1, \"p99\": 3, \"max\": 3}"));
+  }
+
+  @Test
+  public void testDisabledRecordsNothing() {
+    final StageMetrics metrics = StageMetrics.disabled();
+    try (StageMetrics.Timer.Context ignored = metrics.time("stage")) {
+      metrics.counter("documents").increment();
+    }
+    try (StageMetrics.Timer.Context ignored = metrics.timePhase("phase")) {
+      metrics.counter("documents").increment();
+    }
+    assertFalse(metrics.isEnabled());
+    assertEquals(0, metrics.counter("documents").get());
+    assertFalse(metrics.toJSON().contains("\"stage\""));
+    assertFalse(metrics.toJSON().contains("\"phase\""));
+  }
+}
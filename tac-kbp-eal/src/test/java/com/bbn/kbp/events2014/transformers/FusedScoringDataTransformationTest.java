@@ -0,0 +1,293 @@
+package com.bbn.kbp.events2014.transformers;
+
+import com.bbn.bue.common.scoring.Scored;
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.kbp.events2014.AnswerKey;
+import com.bbn.kbp.events2014.ArgumentOutput;
+import com.bbn.kbp.events2014.AssessedResponse;
+import com.bbn.kbp.events2014.DocumentSystemOutput2015;
+import com.bbn.kbp.events2014.EventArgumentLinking;
+import com.bbn.kbp.events2014.FieldAssessment;
+import com.bbn.kbp.events2014.KBPRealis;
+import com.bbn.kbp.events2014.KBPTIMEXExpression;
+import com.bbn.kbp.events2014.Response;
+import com.bbn.kbp.events2014.ResponseLinking;
+import com.bbn.kbp.events2014.ScoringData;
+import com.bbn.kbp.events2014.io.AnnotationStore;
+import com.bbn.kbp.events2014.io.AssessmentSpecFormats;
+import com.bbn.kbp.events2014.linking.EventArgumentLinkingAligners;
+import com.bbn.kbp.events2014.linking.LinkingUtils;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Checks that fusing the scorer's preprocessing stages gives exactly what the unfused stages did,
+ * on a real assessed document. Since each fusable stage now derives its {@link
+ * ScoringDataTransformation#transform(ScoringData)} from its fused path, the expected results come
+ * from reference copies of the stages' pre-fusion implementations, which materialize the system
+ * output, linkings, and answer key after every stage.
+ */
+public class FusedScoringDataTransformationTest {
+
+  private static final Symbol DOC_ID = Symbol.from("AFP_ENG_20091024.0206");
+
+  @Test
+  public void testFusedMatchesReferenceWithRealisNeutralized() throws IOException {
+    final ImmutableList<ScoringDataTransformation> stages =
+        ImmutableList.<ScoringDataTransformation>of(
+            MakeAllRealisActual.create(),
+            MakeBrokenTimesWrong.create(),
+            DeleteInjureForCorrectDie.asTransformationForBoth(),
+            OnlyMostSpecificTemporal.asTransformationForBoth(),
+            FixLowercaseXInTemporals.asTransformationForBoth(),
+            KeepBestJustificationOnly.asTransformationUsingAnswerKeyCoref());
+    final ImmutableList<ScoringDataTransformation> reference =
+        ImmutableList.<ScoringDataTransformation>of(
+            new ReferenceMakeAllRealisActual(),
+            new ReferenceMakeBrokenTimesWrong(),
+            referenceRule(DeleteInjureForCorrectDie.asTransformationForBoth()),
+            referenceRule(OnlyMostSpecificTemporal.asTransformationForBoth()),
+            referenceRule(FixLowercaseXInTemporals.asTransformationForBoth()),
+            new ReferenceKeepBestJustificationOnly());
+    assertFusedMatchesReference(stages, reference);
+  }
+
+  @Test
+  public void testFusedMatchesReferenceAroundUnfusableStage() throws IOException {
+    final ImmutableList<ScoringDataTransformation> stages =
+        ImmutableList.<ScoringDataTransformation>of(
+            MakeBrokenTimesWrong.create(),
+            DeleteInjureForCorrectDie.asTransformationForBoth(),
+            new DropEveryOtherSystemResponse(),
+            OnlyMostSpecificTemporal.asTransformationForBoth(),
+            KeepBestJustificationOnly.asTransformationUsingAnswerKeyCoref());
+    final ImmutableList<ScoringDataTransformation> reference =
+        ImmutableList.<ScoringDataTransformation>of(
+            new ReferenceMakeBrokenTimesWrong(),
+            referenceRule(DeleteInjureForCorrectDie.asTransformationForBoth()),
+            new DropEveryOtherSystemResponse(),
+            referenceRule(OnlyMostSpecificTemporal.asTransformationForBoth()),
+            new ReferenceKeepBestJustificationOnly());
+    assertFusedMatchesReference(stages, reference);
+  }
+
+  @Test
+  public void testEachStageAloneMatchesReference() throws IOException {
+    final ScoringData input = scoringDataForFixture();
+    assertEquals(new ReferenceMakeAllRealisActual().transform(input),
+        MakeAllRealisActual.create().transform(input));
+    assertEquals(new ReferenceMakeBrokenTimesWrong().transform(input),
+        MakeBrokenTimesWrong.create().transform(input));
+    for (final ScoringDataTransformation ruleStage : ImmutableList.of(
+        DeleteInjureForCorrectDie.asTransformationForBoth(),
+        OnlyMostSpecificTemporal.asTransformationForBoth(),
+        FixLowercaseXInTemporals.asTransformationForBoth())) {
+      assertEquals(ruleStage.toString(), referenceRule(ruleStage).transform(input),
+          ruleStage.transform(input));
+    }
+    assertEquals(new ReferenceKeepBestJustificationOnly().transform(input),
+        KeepBestJustificationOnly.asTransformationUsingAnswerKeyCoref().transform(input));
+  }
+
+  private static void assertFusedMatchesReference(
+      final ImmutableList<ScoringDataTransformation> stages,
+      final ImmutableList<ScoringDataTransformation> reference) throws IOException {
+    final ScoringData input = scoringDataForFixture();
+    ScoringData expected = input;
+    for (final ScoringDataTransformation referenceStage : reference) {
+      expected = referenceStage.transform(expected);
+    }
+    final ScoringData fused = FusedScoringDataTransformation.fuse(stages).transform(input);
+
+    // make sure the fixture actually exercises the stages
+    assertNotEquals(input, expected);
+    assertEquals(expected, fused);
+    // the unfused sequence should agree too
+    assertEquals(expected, ScoringDataTransformationSequence.compose(stages).transform(input));
+  }
+
+  private static ScoringData scoringDataForFixture() throws IOException {
+    final File dir = new File(FusedScoringDataTransformationTest.class
+        .getResource("/com/bbn/kbp/events2014/io/linkingTest").getFile());
+    final AnnotationStore annotationStore =
+        AssessmentSpecFormats.openAnnotationStore(dir, AssessmentSpecFormats.Format.KBP2015);
+    final AnswerKey answerKey = annotationStore.read(DOC_ID);
+    annotationStore.close();
+
+    final AnswerKey linkableAnswerKey =
+        answerKey.filter(LinkingUtils.linkableResponseFilter2015ForGold());
+    final ResponseLinking linking = EventArgumentLinkingAligners
+        .getExactMatchEventArgumentLinkingAligner()
+        .alignToResponseLinking(EventArgumentLinking.createMinimalLinkingFrom(linkableAnswerKey),
+            linkableAnswerKey);
+
+    // every assessed response is in the system output, with varying scores so selecting the best
+    // justification is not decided by ties alone
+    final ImmutableList.Builder<Scored<Response>> scoredResponses = ImmutableList.builder();
+    int i = 0;
+    for (final Response response : answerKey.allResponses()) {
+      scoredResponses.add(Scored.from(response, (i++ % 3 + 1) / 3.0));
+    }
+
+    return ScoringData.builder()
+        .answerKey(answerKey)
+        .argumentOutput(ArgumentOutput.createWithoutMetadata(DOC_ID, scoredResponses.build()))
+        .systemLinking(linking)
+        .referenceLinking(linking)
+        .build();
+  }
+
+  /**
+   * A transformation which cannot be fused, forcing the fused transformation to materialize its
+   * pending mappings partway through.
+   */
+  private static final class DropEveryOtherSystemResponse implements ScoringDataTransformation {
+
+    @Override
+    public ScoringData transform(final ScoringData input) {
+      final ImmutableList.Builder<Response> toDelete = ImmutableList.builder();
+      int i = 0;
+      for (final Response response : input.argumentOutput().get().responses()) {
+        if (i++ % 2 == 0) {
+          toDelete.add(response);
+        }
+      }
+      final ResponseMapping mapping = ResponseMapping.delete(toDelete.build());
+      return ScoringData.builder().from(input)
+          .argumentOutput(mapping.apply(input.argumentOutput().get()))
+          .systemLinking(mapping.apply(input.systemLinking().get()))
+          .build();
+    }
+
+    @Override
+    public void logStats() {
+    }
+  }
+
+  private static ScoringDataTransformation referenceRule(final ScoringDataTransformation stage) {
+    return new ReferenceRuleApplication(((ApplyAnswerKeyToResponseMappingRuleToAll) stage).rule());
+  }
+
+  /**
+   * Applies a response mapping to everything in {@code input}, materializing the result.
+   */
+  private static ScoringData applyToAll(final ResponseMapping mapping, final ScoringData input,
+      final AnswerKey newAnswerKey) {
+    final ScoringData.Builder ret = ScoringData.builder().from(input).answerKey(newAnswerKey);
+    if (input.argumentOutput().isPresent()) {
+      ret.argumentOutput(mapping.apply(input.argumentOutput().get()));
+    }
+    if (input.systemLinking().isPresent()) {
+      ret.systemLinking(mapping.apply(input.systemLinking().get()));
+    }
+    if (input.referenceLinking().isPresent()) {
+      ret.referenceLinking(mapping.apply(input.referenceLinking().get()));
+    }
+    return ret.build();
+  }
+
+  /**
+   * {@link MakeAllRealisActual} as it was before fusion.
+   */
+  private static final class ReferenceMakeAllRealisActual extends ReferenceStage {
+
+    @Override
+    public ScoringData transform(final ScoringData input) {
+      final ImmutableMap.Builder<Response, Response> replacements = ImmutableMap.builder();
+      for (final Response response : input.answerKey().get().allResponses()) {
+        final Response replacement = response.withRealis(KBPRealis.Actual);
+        if (!response.equals(replacement)) {
+          replacements.put(response, replacement);
+        }
+      }
+      final ResponseMapping mapping =
+          ResponseMapping.create(replacements.build(), ImmutableSet.<Response>of());
+      return applyToAll(mapping, input, MakeAllRealisActual.neutralizeAssessments(
+          mapping.apply(input.answerKey().get())));
+    }
+  }
+
+  /**
+   * {@link MakeBrokenTimesWrong} as it was before fusion.
+   */
+  private static final class ReferenceMakeBrokenTimesWrong extends ReferenceStage {
+
+    @Override
+    public ScoringData transform(final ScoringData input) {
+      final AnswerKey answerKey = input.answerKey().get();
+      final AnswerKey.Builder ret = answerKey.modifiedCopyBuilder();
+      for (final AssessedResponse assessedResponse : answerKey.annotatedResponses()) {
+        if (assessedResponse.response().isTemporal() && FieldAssessment
+            .isAcceptable(assessedResponse.assessment().entityCorrectFiller())) {
+          try {
+            KBPTIMEXExpression.parseTIMEX(
+                assessedResponse.response().canonicalArgument().string());
+          } catch (KBPTIMEXExpression.KBPTIMEXException te) {
+            ret.replaceAssessment(assessedResponse.response(),
+                assessedResponse.assessment().withEntityCorrectFiller(FieldAssessment.INCORRECT));
+          }
+        }
+      }
+      return ScoringData.builder().from(input).answerKey(ret.build()).build();
+    }
+  }
+
+  /**
+   * {@link ApplyAnswerKeyToResponseMappingRuleToAll} as it was before fusion.
+   */
+  private static final class ReferenceRuleApplication extends ReferenceStage {
+
+    private final AnswerKeyToResponseMappingRule rule;
+
+    private ReferenceRuleApplication(final AnswerKeyToResponseMappingRule rule) {
+      this.rule = rule;
+    }
+
+    @Override
+    public ScoringData transform(final ScoringData input) {
+      input.answerKey().get().checkCompletelyAssesses(input.argumentOutput().get());
+      final ResponseMapping mapping = rule.computeResponseTransformation(input.answerKey().get());
+      if (mapping.isIdentity()) {
+        return input;
+      }
+      return applyToAll(mapping, input, mapping.apply(input.answerKey().get()));
+    }
+  }
+
+  /**
+   * {@link KeepBestJustificationOnly#asTransformationUsingAnswerKeyCoref()} as it was before
+   * fusion.
+   */
+  private static final class ReferenceKeepBestJustificationOnly extends ReferenceStage {
+
+    @Override
+    public ScoringData transform(final ScoringData input) {
+      final ResponseMapping mapping =
+          KeepBestJustificationOnly.computeResponseMappingUsingProvidedCoref(
+              DocumentSystemOutput2015.from(input.argumentOutput().get(),
+                  input.systemLinking().get()),
+              input.answerKey().get().corefAnnotation());
+      return ScoringData.builder().from(input)
+          .argumentOutput(mapping.apply(input.argumentOutput().get()))
+          .systemLinking(mapping.apply(input.systemLinking().get()))
+          .build();
+    }
+  }
+
+  private abstract static class ReferenceStage implements ScoringDataTransformation {
+
+    @Override
+    public void logStats() {
+    }
+  }
+}
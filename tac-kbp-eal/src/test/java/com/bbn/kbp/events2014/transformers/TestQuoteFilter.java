@@ -3,7 +3,10 @@ package com.bbn.kbp.events2014.transformers;
 
 import com.bbn.bue.common.io.ByteArraySink;
 import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.kbp.events2014.CharOffsetSpan;
+import com.bbn.kbp.events2014.Response;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableRangeSet;
 import com.google.common.collect.Range;
@@ -13,9 +16,12 @@ import com.google.common.io.CharSource;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.BitSet;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class TestQuoteFilter {
 
@@ -55,4 +61,64 @@ public class TestQuoteFilter {
     final Object restored = QuoteFilter.loadFrom(source);
     assertEquals(reference, restored);
   }
+
+  @Test
+  public void testBinarySerialization() throws IOException {
+    final QuoteFilter reference = QuoteFilter.createFromBannedRegions(
+        ImmutableMap.of(
+            Symbol.from("dummy"),
+            ImmutableRangeSet.<Integer>builder().add(Range.closed(4, 60)).add(Range.closed(67, 88))
+                .build(),
+            Symbol.from("dummy2"), ImmutableRangeSet.of(Range.closed(0, 20)),
+            Symbol.from("dummy3"), ImmutableRangeSet.<Integer>of()));
+
+    final ByteArraySink sink = ByteArraySink.create();
+    reference.saveBinaryTo(sink);
+    final ByteSource source = ByteSource.wrap(sink.toByteArray());
+    final QuoteFilter restored = QuoteFilter.loadFrom(source);
+    assertEquals(reference, restored);
+    assertTrue(restored.isInQuote(Symbol.from("dummy"), CharOffsetSpan.fromOffsetsOnly(60, 62)));
+    assertFalse(restored.isInQuote(Symbol.from("dummy"), CharOffsetSpan.fromOffsetsOnly(61, 66)));
+  }
+
+  @Test
+  public void testBulkSpanLookupMatchesSingleLookup() {
+    final Symbol docid = Symbol.from("dummy");
+    final QuoteFilter filter = QuoteFilter.createFromBannedRegions(ImmutableMap.of(docid,
+        ImmutableRangeSet.<Integer>builder().add(Range.closed(4, 60)).add(Range.closed(67, 88))
+            .build()));
+
+    final ImmutableList.Builder<CharOffsetSpan> spansB = ImmutableList.builder();
+    for (int start = 0; start < 95; start += 3) {
+      for (int length = 0; length < 10; length += 4) {
+        spansB.add(CharOffsetSpan.fromOffsetsOnly(start, start + length));
+      }
+    }
+    final ImmutableList<CharOffsetSpan> spans = spansB.build();
+
+    final BitSet inQuotes = filter.spansInQuotes(docid, spans);
+    for (int i = 0; i < spans.size(); ++i) {
+      assertEquals(filter.isInQuote(docid, spans.get(i)), inQuotes.get(i));
+    }
+  }
+
+  @Test
+  public void testNothingToCheckInUnknownDocument() {
+    final QuoteFilter filter = QuoteFilter.createFromBannedRegions(ImmutableMap.of(
+        Symbol.from("dummy"), ImmutableRangeSet.of(Range.closed(0, 20))));
+    // checking spans one at a time never looked the document up when it had none, so neither
+    // does the bulk lookup
+    assertTrue(filter.spansInQuotes(Symbol.from("unknown"),
+        ImmutableList.<CharOffsetSpan>of()).isEmpty());
+    assertTrue(filter.responsesInQuotes(Symbol.from("unknown"),
+        ImmutableList.<Response>of()).isEmpty());
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testSpansInUnknownDocument() {
+    final QuoteFilter filter = QuoteFilter.createFromBannedRegions(ImmutableMap.of(
+        Symbol.from("dummy"), ImmutableRangeSet.of(Range.closed(0, 20))));
+    filter.spansInQuotes(Symbol.from("unknown"),
+        ImmutableList.of(CharOffsetSpan.fromOffsetsOnly(0, 4)));
+  }
 }
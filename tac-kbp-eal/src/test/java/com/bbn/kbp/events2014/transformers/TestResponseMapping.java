@@ -14,6 +14,7 @@ import org.junit.Test;
 
 import static com.bbn.kbp.events2014.KBPEATestUtils.dummyTRFR;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 /**
  * Created by rgabbard on 6/25/15.
@@ -44,4 +45,37 @@ public class TestResponseMapping {
 
     assertEquals(expectedResult, mapping.apply(sourceLinking));
   }
+
+  @Test
+  public void testComposedMappingMatchesSequentialApplication() {
+    final Symbol docID = Symbol.from("foo");
+
+    final KBPEATestUtils.DummyResponseGenerator rGen = new KBPEATestUtils.DummyResponseGenerator();
+    final Response a = rGen.responseFor(dummyTRFR(docID, KBPEATestUtils.kbpString("a")));
+    final Response b = rGen.responseFor(dummyTRFR(docID, KBPEATestUtils.kbpString("b")));
+    final Response c = rGen.responseFor(dummyTRFR(docID, KBPEATestUtils.kbpString("c")));
+    final Response d = rGen.responseFor(dummyTRFR(docID, KBPEATestUtils.kbpString("d")));
+    final Response e = rGen.responseFor(dummyTRFR(docID, KBPEATestUtils.kbpString("e")));
+    final Response f = rGen.responseFor(dummyTRFR(docID, KBPEATestUtils.kbpString("f")));
+    final Response g = rGen.responseFor(dummyTRFR(docID, KBPEATestUtils.kbpString("g")));
+
+    final ResponseLinking sourceLinking = ResponseLinking.builder().docID(docID)
+        .responseSets(ImmutableSet.of(ResponseSet.from(a, b), ResponseSet.from(c, d),
+            ResponseSet.from(e)))
+        .incompleteResponses(ImmutableList.of(f)).build();
+    // a is mapped and then deleted, b is mapped twice, d is deleted
+    final ResponseMapping first = ResponseMapping.create(
+        ImmutableMap.of(a, g, b, c), ImmutableSet.of(d));
+    final ResponseMapping second = ResponseMapping.create(
+        ImmutableMap.of(c, e), ImmutableSet.of(g));
+
+    final ResponseMapping composed = ResponseMapping.compose(first, second).get();
+    assertEquals(second.apply(first.apply(sourceLinking)), composed.apply(sourceLinking));
+    assertEquals(ImmutableSet.of(e, f),
+        composed.mapResponses(ImmutableSet.of(a, b, c, d, e, f, g)));
+
+    // a response deleted by the first mapping can't also be the target of the second
+    assertFalse(ResponseMapping.compose(first,
+        ResponseMapping.create(ImmutableMap.of(f, d), ImmutableSet.<Response>of())).isPresent());
+  }
 }